@@ -1,9 +1,13 @@
 package org.wso2.carbon.event.admin.internal;
 
+import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.event.admin.internal.exception.EventAdminException;
 import org.wso2.carbon.event.admin.internal.util.EventAdminHolder;
 import org.wso2.carbon.event.core.EventBroker;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
+import org.wso2.carbon.event.core.metrics.EventSinkStatistics;
+import org.wso2.carbon.event.core.metrics.TopicStatistics;
 import org.wso2.carbon.event.core.topic.TopicManager;
 import org.wso2.carbon.event.core.topic.TopicNode;
 import org.wso2.carbon.event.core.topic.TopicRolePermission;
@@ -173,4 +177,14 @@ public class TopicManagerAdminService {
             throw new EventAdminException(e.getMessage(), e);
         }
     }
+
+    public TopicStatistics[] getTopicStatistics() {
+        return EventBrokerMetrics.getInstance().getTopicStatistics(
+                CarbonContext.getThreadLocalCarbonContext().getTenantId());
+    }
+
+    public EventSinkStatistics[] getEventSinkStatistics() {
+        return EventBrokerMetrics.getInstance().getEventSinkStatistics(
+                CarbonContext.getThreadLocalCarbonContext().getTenantId());
+    }
 }
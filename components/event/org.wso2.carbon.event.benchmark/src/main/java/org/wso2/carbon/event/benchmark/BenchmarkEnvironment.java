@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.context.internal.OSGiDataHolder;
+import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
+import org.wso2.carbon.event.core.subscription.EventDispatcher;
+import org.wso2.carbon.event.core.subscription.Subscription;
+import org.wso2.carbon.utils.ConfigurationContextService;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * sets up the services the event broker expects from the carbon runtime so that the broker
+ * can run in a plain JVM. The realm service is a stub which authorizes every user, the
+ * configuration context service has no clustering agent so that cluster messages are not
+ * sent, and all the benchmarks run in the flow of the super tenant.
+ */
+public final class BenchmarkEnvironment {
+
+    public static final int TENANT_ID = MultitenantConstants.SUPER_TENANT_ID;
+    public static final String TENANT_DOMAIN = MultitenantConstants.SUPER_TENANT_DOMAIN_NAME;
+    public static final String USER_NAME = "admin";
+
+    private static final AtomicLong subscriptionCount = new AtomicLong();
+
+    private static boolean initialized;
+
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * registers the stub services. Can be called any number of times.
+     */
+    public static synchronized void init() {
+        if (initialized) {
+            return;
+        }
+        if (System.getProperty("carbon.home") == null) {
+            System.setProperty("carbon.home", System.getProperty("java.io.tmpdir"));
+        }
+        EventBrokerHolder.getInstance().registerRealmService(StubRealmService.create());
+
+        ConfigurationContext configurationContext = new ConfigurationContext(new AxisConfiguration());
+        ConfigurationContextService configurationContextService =
+                new ConfigurationContextService(configurationContext, configurationContext);
+        EventBrokerHolder.getInstance().registerConfigurationContextService(configurationContextService);
+        // the shared memory subscription storage looks the service up through the carbon context
+        OSGiDataHolder.getInstance().setBundleContext(StubBundleContext.create(
+                Collections.<String, Object>singletonMap(ConfigurationContextService.class.getName(),
+                                                         configurationContextService)));
+        initialized = true;
+    }
+
+    /**
+     * starts the flow of the benchmark tenant in the current thread. Must be followed by
+     * {@link #endTenantFlow()}.
+     */
+    public static void startTenantFlow() {
+        PrivilegedCarbonContext.startTenantFlow();
+        PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+        carbonContext.setTenantId(TENANT_ID);
+        carbonContext.setTenantDomain(TENANT_DOMAIN);
+        carbonContext.setUsername(USER_NAME);
+    }
+
+    public static void endTenantFlow() {
+        PrivilegedCarbonContext.endTenantFlow();
+    }
+
+    /**
+     * creates a subscription of the benchmark tenant which delivers to the given dispatcher.
+     * @param topicName - subscribed topic, may end with a wild card
+     * @param eventDispatcher - dispatcher the events are delivered to
+     * @return subscription with a unique id and event sink url
+     */
+    public static Subscription newSubscription(String topicName, EventDispatcher eventDispatcher) {
+        long count = subscriptionCount.incrementAndGet();
+        Subscription subscription = new Subscription();
+        subscription.setId("benchmark-subscription-" + count);
+        subscription.setTopicName(topicName);
+        subscription.setEventSinkURL("http://localhost:8280/benchmark/sink/" + count);
+        subscription.setEventDispatcher(eventDispatcher);
+        subscription.setOwner(USER_NAME);
+        subscription.setTenantId(TENANT_ID);
+        subscription.setTenantDomain(TENANT_DOMAIN);
+        return subscription;
+    }
+}
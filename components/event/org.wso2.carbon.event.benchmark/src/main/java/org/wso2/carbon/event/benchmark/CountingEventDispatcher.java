@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.subscription.EventDispatcher;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * event dispatcher which only counts the notifications, so that a benchmark can wait until
+ * all the subscriptions of a published event have been notified.
+ */
+public class CountingEventDispatcher implements EventDispatcher {
+
+    private final AtomicLong notificationCount = new AtomicLong();
+
+    public void notify(Message message, Subscription subscription) {
+        this.notificationCount.incrementAndGet();
+    }
+
+    public long getNotificationCount() {
+        return this.notificationCount.get();
+    }
+
+    /**
+     * waits until the given number of notifications have been delivered in total.
+     * @param notificationCount - total notification count to wait for
+     */
+    public void awaitNotificationCount(long notificationCount) {
+        while (this.notificationCount.get() < notificationCount) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.internal.CarbonEventBroker;
+import org.wso2.carbon.event.core.internal.delivery.inmemory.InMemoryDeliveryManager;
+import org.wso2.carbon.event.core.internal.delivery.inmemory.InMemoryMatchingManager;
+import org.wso2.carbon.event.core.internal.subscription.inmemory.InMemorySubscriptionManager;
+import org.wso2.carbon.event.core.internal.util.BoundedThreadPoolExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * publishes events through CarbonEventBroker.publish, which matches the topic in
+ * InMemoryDeliveryManager and fans the event out to the CarbonNotificationManager of every
+ * matching subscription. Each invocation waits until all the subscriptions have been
+ * notified, so the score is the time from publishing to the last delivery.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PublishFanOutBenchmark {
+
+    private static final String TOPIC_STORAGE_PATH = "/_system/governance/event/topics";
+    private static final int MAX_QUEUED_TASKS = 100000;
+
+    @Param({"2", "4", "8"})
+    public int topicDepth;
+
+    @Param({"0", "0.1", "0.5"})
+    public double wildcardRatio;
+
+    @Param({"10", "1000", "10000"})
+    public int subscriberCount;
+
+    /**
+     * delivery batch size of the delivery manager, 1 delivers each subscription with its own task
+     */
+    @Param({"1", "64"})
+    public int deliveryBatchSize;
+
+    @Param({"4"})
+    public int threadCount;
+
+    private TopicSet topicSet;
+    private int[] fanOuts;
+    private CountingEventDispatcher eventDispatcher;
+    private CarbonEventBroker eventBroker;
+    private BoundedThreadPoolExecutor publishExecutor;
+    private BoundedThreadPoolExecutor deliveryExecutor;
+    private Message message;
+    private int topicIndex;
+
+    @Setup
+    public void setUp() throws EventBrokerException {
+        BenchmarkEnvironment.init();
+        BenchmarkEnvironment.startTenantFlow();
+        try {
+            this.topicSet = new TopicSet(this.topicDepth, this.wildcardRatio, this.subscriberCount);
+            this.eventDispatcher = new CountingEventDispatcher();
+            this.message = new Message();
+
+            InMemoryMatchingManager matchingManager = new InMemoryMatchingManager();
+            this.deliveryExecutor = new BoundedThreadPoolExecutor("BenchmarkDeliveryManager", this.threadCount,
+                    this.threadCount, 60, TimeUnit.SECONDS, MAX_QUEUED_TASKS,
+                    BoundedThreadPoolExecutor.OVERFLOW_POLICY_BLOCK, 0);
+            InMemoryDeliveryManager deliveryManager =
+                    new InMemoryDeliveryManager(this.deliveryExecutor, TOPIC_STORAGE_PATH);
+            deliveryManager.setMatchingManager(matchingManager);
+            deliveryManager.setDeliveryBatchSize(this.deliveryBatchSize);
+
+            this.publishExecutor = new BoundedThreadPoolExecutor("BenchmarkEventBroker", this.threadCount,
+                    this.threadCount, 60, TimeUnit.SECONDS, MAX_QUEUED_TASKS,
+                    BoundedThreadPoolExecutor.OVERFLOW_POLICY_BLOCK, 0);
+            this.eventBroker = new CarbonEventBroker();
+            this.eventBroker.setSubscriptionManager(new InMemorySubscriptionManager());
+            this.eventBroker.setTopicManager(new StubTopicManager());
+            this.eventBroker.setDelivaryManager(deliveryManager);
+            this.eventBroker.setExecutor(this.publishExecutor);
+            this.eventBroker.init();
+            this.eventBroker.initializeTenant();
+
+            for (String topicName : this.topicSet.getSubscribedTopics()) {
+                this.eventBroker.subscribe(BenchmarkEnvironment.newSubscription(topicName, this.eventDispatcher));
+            }
+            String[] publishedTopics = this.topicSet.getPublishedTopics();
+            this.fanOuts = new int[publishedTopics.length];
+            for (int i = 0; i < publishedTopics.length; i++) {
+                this.fanOuts[i] = matchingManager.getMatchingSubscriptions(publishedTopics[i]).size();
+            }
+        } finally {
+            BenchmarkEnvironment.endTenantFlow();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws EventBrokerException {
+        this.eventBroker.cleanUp();
+        this.publishExecutor.shutdownNow();
+        this.deliveryExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public long publish(TenantFlowState tenantFlowState) throws EventBrokerException {
+        int index = this.topicIndex++ & (TopicSet.PUBLISHED_TOPIC_COUNT - 1);
+        long notificationCount = this.eventDispatcher.getNotificationCount() + this.fanOuts[index];
+        this.eventBroker.publish(this.message, this.topicSet.getPublishedTopic(index));
+        this.eventDispatcher.awaitNotificationCount(notificationCount);
+        return notificationCount;
+    }
+}
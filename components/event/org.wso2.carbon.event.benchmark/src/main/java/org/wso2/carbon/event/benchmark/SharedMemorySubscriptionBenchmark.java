@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.sharedmemory.SharedMemorySubscriptionStorage;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * matching and subscription churn of SharedMemorySubscriptionStorage on a single node. The
+ * replicated subscriptions are applied to the local replica straight away, the deltas are
+ * sent to the (absent) cluster in the background.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedMemorySubscriptionBenchmark {
+
+    private static final int CHURN_SUBSCRIPTION_COUNT = 1024;
+
+    @Param({"2", "4", "8"})
+    public int topicDepth;
+
+    @Param({"0", "0.1", "0.5"})
+    public double wildcardRatio;
+
+    @Param({"10", "1000", "10000"})
+    public int subscriberCount;
+
+    private TopicSet topicSet;
+    private SharedMemorySubscriptionStorage subscriptionStorage;
+    private Subscription[] churnSubscriptions;
+    private final AtomicInteger churnIndex = new AtomicInteger();
+    private int topicIndex;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.init();
+        BenchmarkEnvironment.startTenantFlow();
+        try {
+            this.topicSet = new TopicSet(this.topicDepth, this.wildcardRatio, this.subscriberCount);
+            this.subscriptionStorage = new SharedMemorySubscriptionStorage();
+            CountingEventDispatcher eventDispatcher = new CountingEventDispatcher();
+            for (String topicName : this.topicSet.getSubscribedTopics()) {
+                this.subscriptionStorage.addSubscription(
+                        BenchmarkEnvironment.newSubscription(topicName, eventDispatcher));
+            }
+            String[] subscribedTopics = this.topicSet.getSubscribedTopics();
+            this.churnSubscriptions = new Subscription[CHURN_SUBSCRIPTION_COUNT];
+            for (int i = 0; i < CHURN_SUBSCRIPTION_COUNT; i++) {
+                this.churnSubscriptions[i] = BenchmarkEnvironment.newSubscription(
+                        subscribedTopics[i % subscribedTopics.length], eventDispatcher);
+            }
+        } finally {
+            BenchmarkEnvironment.endTenantFlow();
+        }
+    }
+
+    @Benchmark
+    public List<Subscription> match(TenantFlowState tenantFlowState) {
+        return this.subscriptionStorage.getMatchingSubscriptions(
+                this.topicSet.getPublishedTopic(this.topicIndex++));
+    }
+
+    @Benchmark
+    public void addAndRemove(TenantFlowState tenantFlowState) throws EventBrokerException {
+        Subscription subscription =
+                this.churnSubscriptions[this.churnIndex.getAndIncrement() & (CHURN_SUBSCRIPTION_COUNT - 1)];
+        this.subscriptionStorage.addSubscription(subscription);
+        this.subscriptionStorage.unSubscribe(subscription.getId());
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceReference;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * bundle context which serves a fixed set of services, so that the OSGi service lookups of the
+ * carbon context work in a plain JVM. Only what a service tracker needs to find a registered
+ * service is supported: filters match every reference and there are no service events.
+ */
+public final class StubBundleContext {
+
+    private StubBundleContext() {
+    }
+
+    /**
+     * @param services - service objects keyed by the class name they are registered under
+     * @return bundle context serving the given services
+     */
+    public static BundleContext create(Map<String, Object> services) {
+        return (BundleContext) newProxy(BundleContext.class, new BundleContextHandler(services));
+    }
+
+    private static Object newProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(StubBundleContext.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object invokeObjectMethod(Object proxy, Method method, Object[] args, String name) {
+        if ("equals".equals(method.getName())) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(method.getName())) {
+            return System.identityHashCode(proxy);
+        }
+        return name;
+    }
+
+    private static class BundleContextHandler implements InvocationHandler {
+
+        private final Map<String, Object> services;
+
+        private BundleContextHandler(Map<String, Object> services) {
+            this.services = services;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args, "Stub bundle context");
+            }
+
+            String name = method.getName();
+            if ("createFilter".equals(name)) {
+                return newProxy(Filter.class, new FilterHandler((String) args[0]));
+            } else if ("getServiceReferences".equals(name) || "getAllServiceReferences".equals(name)) {
+                ServiceReference reference = getReference((String) args[0]);
+                return reference == null ? null : new ServiceReference[]{reference};
+            } else if ("getServiceReference".equals(name)) {
+                return getReference((String) args[0]);
+            } else if ("getService".equals(name)) {
+                return this.services.get(((ServiceReferenceHandler) Proxy.getInvocationHandler(args[0])).className);
+            } else if ("ungetService".equals(name)) {
+                return Boolean.TRUE;
+            } else if (method.getReturnType() == void.class) {
+                // service listeners are not notified, the set of services does not change
+                return null;
+            }
+            throw new UnsupportedOperationException(name + " is not supported by the stub");
+        }
+
+        private ServiceReference getReference(String className) {
+            if (className == null || !this.services.containsKey(className)) {
+                return null;
+            }
+            return (ServiceReference) newProxy(ServiceReference.class, new ServiceReferenceHandler(className));
+        }
+    }
+
+    private static class ServiceReferenceHandler implements InvocationHandler {
+
+        private final String className;
+
+        private ServiceReferenceHandler(String className) {
+            this.className = className;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args, "Stub reference of " + this.className);
+            }
+
+            String name = method.getName();
+            if ("getProperty".equals(name)) {
+                if (Constants.OBJECTCLASS.equals(args[0])) {
+                    return new String[]{this.className};
+                } else if (Constants.SERVICE_ID.equals(args[0])) {
+                    return (long) this.className.hashCode();
+                } else if (Constants.SERVICE_RANKING.equals(args[0])) {
+                    return 0;
+                }
+                return null;
+            } else if ("getPropertyKeys".equals(name)) {
+                return new String[]{Constants.OBJECTCLASS, Constants.SERVICE_ID};
+            } else if ("isAssignableTo".equals(name)) {
+                return Boolean.TRUE;
+            } else if ("compareTo".equals(name)) {
+                return 0;
+            }
+            return null;
+        }
+    }
+
+    private static class FilterHandler implements InvocationHandler {
+
+        private final String filter;
+
+        private FilterHandler(String filter) {
+            this.filter = filter;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args, this.filter);
+            }
+            // every reference of the stub matches
+            return Boolean.TRUE;
+        }
+    }
+}
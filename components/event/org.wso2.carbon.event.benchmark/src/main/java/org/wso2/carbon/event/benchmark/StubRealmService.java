@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.wso2.carbon.user.api.UserRealmService;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * realm service which allows every action. Every user api interface reached through it
+ * (user realm, authorization manager, user store manager ..) is a proxy which returns true
+ * for the boolean methods, empty arrays and zeros for the others, so the event broker sees
+ * every user as authorized to publish and subscribe to every topic.
+ */
+public final class StubRealmService {
+
+    private StubRealmService() {
+    }
+
+    public static UserRealmService create() {
+        return (UserRealmService) newStub(UserRealmService.class);
+    }
+
+    private static Object newStub(Class<?> type) {
+        return Proxy.newProxyInstance(StubRealmService.class.getClassLoader(), new Class<?>[]{type},
+                                      new StubInvocationHandler(type));
+    }
+
+    private static class StubInvocationHandler implements InvocationHandler {
+
+        private final Class<?> type;
+
+        private StubInvocationHandler(Class<?> type) {
+            this.type = type;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "Stub " + this.type.getName();
+            }
+
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class || returnType == Boolean.class) {
+                return Boolean.TRUE;
+            } else if (returnType.isArray()) {
+                return Array.newInstance(returnType.getComponentType(), 0);
+            } else if (returnType.isInterface() && returnType.getName().startsWith("org.wso2.carbon.user")) {
+                return newStub(returnType);
+            } else if (returnType == int.class) {
+                return 0;
+            } else if (returnType == long.class) {
+                return 0L;
+            } else if (returnType.isPrimitive() && returnType != void.class) {
+                throw new UnsupportedOperationException(method.getName() + " is not supported by the stub");
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.subscription.Subscription;
+import org.wso2.carbon.event.core.topic.IndexedTopicManager;
+import org.wso2.carbon.event.core.topic.TopicNode;
+import org.wso2.carbon.event.core.topic.TopicRolePermission;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * topic manager which keeps the topic names in memory instead of the registry. The
+ * registry topic manager needs a running registry, which the benchmarks do not have, and
+ * it is only used by the broker when subscribing.
+ */
+public class StubTopicManager implements IndexedTopicManager {
+
+    private final Map<String, Boolean> topicMap = new ConcurrentHashMap<String, Boolean>();
+
+    public TopicNode getTopicTree() throws EventBrokerException {
+        return new TopicNode("/", "/");
+    }
+
+    public void addTopic(String topicName) throws EventBrokerException {
+        this.topicMap.put(topicName, Boolean.TRUE);
+    }
+
+    public TopicRolePermission[] getTopicRolePermission(String topicName) throws EventBrokerException {
+        return new TopicRolePermission[0];
+    }
+
+    public void updatePermissions(String topicName, TopicRolePermission[] topicRolePermissions)
+            throws EventBrokerException {
+    }
+
+    public Subscription[] getSubscriptions(String topicName, boolean withChildren) throws EventBrokerException {
+        return new Subscription[0];
+    }
+
+    public Subscription[] getJMSSubscriptions(String topicName) throws EventBrokerException {
+        return new Subscription[0];
+    }
+
+    public Subscription getSubscription(String topicName, String eventSinkURL) throws EventBrokerException {
+        // every benchmark subscription has its own sink
+        return null;
+    }
+
+    public String[] getBackendRoles() throws EventBrokerException {
+        return new String[0];
+    }
+
+    public boolean removeTopic(String topicName) throws EventBrokerException {
+        return this.topicMap.remove(topicName) != null;
+    }
+
+    public boolean isTopicExists(String topicName) throws EventBrokerException {
+        return this.topicMap.containsKey(topicName);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * keeps the benchmark thread in the flow of the benchmark tenant. JMH sets up thread
+ * scoped states in the thread which runs the benchmark method.
+ */
+@State(Scope.Thread)
+public class TenantFlowState {
+
+    @Setup(Level.Trial)
+    public void startTenantFlow() {
+        BenchmarkEnvironment.init();
+        BenchmarkEnvironment.startTenantFlow();
+    }
+
+    @TearDown(Level.Trial)
+    public void endTenantFlow() {
+        BenchmarkEnvironment.endTenantFlow();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.carbon.event.core.internal.delivery.TopicTrie;
+import org.wso2.carbon.event.core.internal.delivery.inmemory.InMemorySubscriptionStorage;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * resolves published topics to their subscriptions in the in memory matching manager.
+ * storageMatch goes through InMemorySubscriptionStorage and is served from its fan out
+ * cache once every published topic has been seen, trieMatch walks the topic trie on every
+ * call as the storage does after each subscription change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicMatchingBenchmark {
+
+    @Param({"2", "4", "8"})
+    public int topicDepth;
+
+    @Param({"0", "0.1", "0.5"})
+    public double wildcardRatio;
+
+    @Param({"10", "1000", "10000"})
+    public int subscriberCount;
+
+    private TopicSet topicSet;
+    private InMemorySubscriptionStorage subscriptionStorage;
+    private TopicTrie<Subscription> topicTrie;
+    private int topicIndex;
+
+    @Setup
+    public void setUp() {
+        this.topicSet = new TopicSet(this.topicDepth, this.wildcardRatio, this.subscriberCount);
+        this.subscriptionStorage = new InMemorySubscriptionStorage();
+        this.topicTrie = new TopicTrie<Subscription>();
+        CountingEventDispatcher eventDispatcher = new CountingEventDispatcher();
+        for (String topicName : this.topicSet.getSubscribedTopics()) {
+            Subscription subscription = BenchmarkEnvironment.newSubscription(topicName, eventDispatcher);
+            this.subscriptionStorage.addSubscription(subscription);
+            this.topicTrie.put(topicName, subscription.getId(), subscription);
+        }
+    }
+
+    @Benchmark
+    public List<Subscription> storageMatch() {
+        return this.subscriptionStorage.getMatchingSubscriptions(this.topicSet.getPublishedTopic(this.topicIndex++));
+    }
+
+    @Benchmark
+    public List<Subscription> trieMatch() {
+        List<Subscription> matches = new ArrayList<Subscription>();
+        this.topicTrie.getMatches(this.topicSet.getPublishedTopic(this.topicIndex++), matches);
+        return matches;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.benchmark;
+
+import java.util.Random;
+
+/**
+ * generates the subscribed and published topics of a benchmark.
+ *
+ * Every subscription is made to a random topic of topicDepth segments, each segment taken
+ * from SEGMENT_COUNT names. A wildcardRatio share of the subscriptions replace the end of
+ * their topic with a * or # wild card at a random depth. Published topics are the full
+ * topics the subscriptions were generated from, so every published topic has at least one
+ * candidate subscription and the fan out grows with the wild card ratio.
+ *
+ * The topics only depend on the parameters and the seed, so runs before and after a change
+ * can be compared.
+ */
+public class TopicSet {
+
+    public static final int SEGMENT_COUNT = 8;
+
+    /**
+     * number of published topics, a power of two so that the topics can be cycled with a mask
+     */
+    public static final int PUBLISHED_TOPIC_COUNT = 1024;
+
+    private static final long SEED = 20140101L;
+
+    private final String[] subscribedTopics;
+    private final String[] publishedTopics;
+
+    /**
+     * @param topicDepth - number of segments of the published topics
+     * @param wildcardRatio - share of the subscriptions made with a wild card, 0 to 1
+     * @param subscriptionCount - number of subscribed topics
+     */
+    public TopicSet(int topicDepth, double wildcardRatio, int subscriptionCount) {
+        Random random = new Random(SEED);
+        String[] fullTopics = new String[subscriptionCount];
+        this.subscribedTopics = new String[subscriptionCount];
+        for (int i = 0; i < subscriptionCount; i++) {
+            String[] segments = new String[topicDepth];
+            for (int j = 0; j < topicDepth; j++) {
+                segments[j] = "s" + random.nextInt(SEGMENT_COUNT);
+            }
+            fullTopics[i] = toTopic(segments, topicDepth);
+            if (random.nextDouble() < wildcardRatio) {
+                int prefixLength = random.nextInt(topicDepth);
+                String wildcard = random.nextBoolean() ? "*" : "#";
+                String prefix = toTopic(segments, prefixLength);
+                this.subscribedTopics[i] = (prefixLength == 0 ? "" : prefix) + "/" + wildcard;
+            } else {
+                this.subscribedTopics[i] = fullTopics[i];
+            }
+        }
+
+        this.publishedTopics = new String[PUBLISHED_TOPIC_COUNT];
+        for (int i = 0; i < PUBLISHED_TOPIC_COUNT; i++) {
+            this.publishedTopics[i] = fullTopics[random.nextInt(subscriptionCount)];
+        }
+    }
+
+    private static String toTopic(String[] segments, int length) {
+        StringBuilder topic = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            topic.append('/').append(segments[i]);
+        }
+        return topic.length() == 0 ? "/" : topic.toString();
+    }
+
+    public String[] getSubscribedTopics() {
+        return subscribedTopics;
+    }
+
+    public String[] getPublishedTopics() {
+        return publishedTopics;
+    }
+
+    /**
+     * @param index - any non negative number
+     * @return published topic at the index, cycling through all the published topics
+     */
+    public String getPublishedTopic(int index) {
+        return this.publishedTopics[index & (PUBLISHED_TOPIC_COUNT - 1)];
+    }
+}
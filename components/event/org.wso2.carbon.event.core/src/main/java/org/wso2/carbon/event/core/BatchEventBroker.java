@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core;
+
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * event broker which can publish the events of a burst as a batch. Components which publish
+ * batches should check whether the event broker service implements this interface and publish
+ * the messages one by one otherwise.
+ */
+public interface BatchEventBroker extends EventBroker {
+
+    /**
+     * publish a batch of events to the given topic asynchornously. the topic is authorized
+     * and matched once for the whole batch and each subscription receives the batch with one
+     * task. the list is shared with the delivery threads, hence it must not be changed
+     * after calling this method.
+     * @param messages - messages to publish in the order they should be delivered
+     * @param topicName
+     */
+    public void publishBatch(List<Message> messages, String topicName) throws EventBrokerException;
+
+    /**
+     * publish a batch of events to the given topic asynchornously.
+     * @param messages - messages to publish in the order they should be delivered
+     * @param topicName
+     * @param deliveryMode - persist or not
+     */
+    public void publishBatch(List<Message> messages, String topicName, int deliveryMode)
+            throws EventBrokerException;
+
+    /**
+     * publish batches of events to several topics asynchornously.
+     * @param topicMessages - messages to publish keyed by the topic name. topics are published
+     * in the iteration order of the map
+     */
+    public void publishBatch(Map<String, List<Message>> topicMessages) throws EventBrokerException;
+
+    /**
+     * publish batches of events to several topics asynchornously.
+     * @param topicMessages - messages to publish keyed by the topic name
+     * @param deliveryMode - persist or not
+     */
+    public void publishBatch(Map<String, List<Message>> topicMessages, int deliveryMode)
+            throws EventBrokerException;
+}
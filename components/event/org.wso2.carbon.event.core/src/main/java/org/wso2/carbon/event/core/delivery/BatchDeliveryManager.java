@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.delivery;
+
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+
+import java.util.List;
+
+/**
+ * delivery manager which can publish a batch of messages to a topic at once. The event broker
+ * publishes a batch message by message to delivery managers which do not implement this
+ * interface.
+ */
+public interface BatchDeliveryManager extends DeliveryManager {
+
+    /**
+     * publish a batch of messages to a topic. the topic is authorized and matched once for
+     * the whole batch.
+     * @param messages - messages in the order they should be delivered
+     * @param topicName
+     * @param deliveryMode
+     */
+    public void publishBatch(List<Message> messages, String topicName, int deliveryMode) throws EventBrokerException;
+}
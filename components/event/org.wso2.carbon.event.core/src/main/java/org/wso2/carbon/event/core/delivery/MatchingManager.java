@@ -33,7 +33,8 @@ public interface MatchingManager {
     public void addSubscription(Subscription subscription) throws EventBrokerException;
 
     /**
-     * then the matching subscriptions
+     * then the matching subscriptions. implementations may return a shared list, hence
+     * callers must not modify it.
      * @param topicName
      * @return
      */
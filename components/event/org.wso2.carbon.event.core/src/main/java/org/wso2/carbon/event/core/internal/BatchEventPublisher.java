@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.delivery.BatchDeliveryManager;
+import org.wso2.carbon.event.core.delivery.DeliveryManager;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * worker for the executor pool which publishes batches of messages to one or more topics
+ * within a single tenant flow.
+ */
+public class BatchEventPublisher implements Runnable {
+
+    private static final Log log = LogFactory.getLog(BatchEventPublisher.class);
+
+    private Map<String, List<Message>> topicMessages;
+    private DeliveryManager delivaryManager;
+    private int deliveryMode;
+    private int tenantID;
+
+    public BatchEventPublisher(Map<String, List<Message>> topicMessages,
+                               DeliveryManager delivaryManager,
+                               int deliveryMode,
+                               int tenantID) {
+        this.topicMessages = topicMessages;
+        this.delivaryManager = delivaryManager;
+        this.deliveryMode = deliveryMode;
+        this.tenantID = tenantID;
+    }
+
+    public void run() {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantID);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain(true);
+            for (Map.Entry<String, List<Message>> entry : this.topicMessages.entrySet()) {
+                try {
+                    if (this.delivaryManager instanceof BatchDeliveryManager) {
+                        ((BatchDeliveryManager) this.delivaryManager).publishBatch(
+                                entry.getValue(), entry.getKey(), this.deliveryMode);
+                    } else {
+                        for (Message message : entry.getValue()) {
+                            this.delivaryManager.publish(message, entry.getKey(), this.deliveryMode);
+                        }
+                    }
+                } catch (EventBrokerException e) {
+                    // a failed topic should not stop the rest of the batch
+                    log.error("Can not publish the messages to topic " + entry.getKey(), e);
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+}
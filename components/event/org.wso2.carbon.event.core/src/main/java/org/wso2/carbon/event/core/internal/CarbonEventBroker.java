@@ -17,32 +17,44 @@
 package org.wso2.carbon.event.core.internal;
 
 import org.apache.axiom.util.UIDGenerator;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.base.MultitenantConstants;
-import org.wso2.carbon.event.core.EventBroker;
+import org.wso2.carbon.event.core.BatchEventBroker;
 import org.wso2.carbon.event.core.Message;
 import org.wso2.carbon.event.core.delivery.DeliveryManager;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 import org.wso2.carbon.event.core.internal.notify.CarbonNotificationManager;
+import org.wso2.carbon.event.core.internal.subscription.registry.RegistrySubscriptionIndex;
+import org.wso2.carbon.event.core.internal.util.AuthorizationCache;
 import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
+import org.wso2.carbon.event.core.internal.util.JavaUtil;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
 import org.wso2.carbon.event.core.subscription.EventDispatcher;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.subscription.SubscriptionManager;
+import org.wso2.carbon.event.core.topic.IndexedTopicManager;
 import org.wso2.carbon.event.core.topic.TopicManager;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
 import org.wso2.carbon.user.api.AuthorizationManager;
 import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
 
-import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
  * carbon event broker implemenation.
  */
-public class CarbonEventBroker implements EventBroker {
+public class CarbonEventBroker implements BatchEventBroker {
+
+    private static final Log log = LogFactory.getLog(CarbonEventBroker.class);
 
     private SubscriptionManager subscriptionManager;
 
@@ -54,6 +66,17 @@ public class CarbonEventBroker implements EventBroker {
 
     private ExecutorService executor;
 
+    /**
+     * publishes the events of a topic in the order they are published, if ordered
+     * delivery is enabled
+     */
+    private StripedExecutor orderedExecutor;
+
+    /**
+     * removes the subscriptions from the subscription and delivery managers when they expire
+     */
+    private SubscriptionExpiryWheel expiryWheel;
+
     public void init() throws EventBrokerConfigurationException {
 
         this.notificationManager = new CarbonNotificationManager();
@@ -63,21 +86,22 @@ public class CarbonEventBroker implements EventBroker {
         // to notify subscriptions if wanted.
         this.delivaryManager.setNotificationManager(this.notificationManager);
         // re subscribe the already existing subscriptions.
-        // TODO: do the validations eg. expiraty time
         loadExistingSubscriptions();
     }
 
     private void loadExistingSubscriptions() throws EventBrokerConfigurationException {
         try {
-            Calendar calendar = Calendar.getInstance();
+            long currentTime = System.currentTimeMillis();
             for (Subscription subscription : this.subscriptionManager.getAllSubscriptions()){
-                if ((subscription.getExpires() == null) || (calendar.before(subscription.getExpires()))){
+                if (subscription.getExpiryTime() > currentTime){
                     if (EventBrokerHolder.getInstance().getTenantDomain() != null) {
                         subscription.setTenantDomain(EventBrokerHolder.getInstance().getTenantDomain());
                         subscription.setTenantId(EventBrokerHolder.getInstance().getTenantId());
                     }
                     delivaryManager.subscribe(subscription);
                 }
+                // subscriptions which have already expired are removed at the next tick
+                scheduleExpiry(subscription);
             }
         } catch (EventBrokerException e) {
             throw new EventBrokerConfigurationException("Can not get the subscriptions ", e);
@@ -107,6 +131,7 @@ public class CarbonEventBroker implements EventBroker {
         } catch (UserStoreException e) {
             throw new EventBrokerConfigurationException("Can not get roles from user store", e);
         }
+        AuthorizationCache.getInstance().invalidate(EventBrokerHolder.getInstance().getTenantId());
         this.delivaryManager.initializeTenant();
         loadExistingSubscriptions();
     }
@@ -128,6 +153,7 @@ public class CarbonEventBroker implements EventBroker {
         subscription.setId(UIDGenerator.generateUID());
         this.topicManager.addTopic(subscription.getTopicName());
         this.delivaryManager.subscribe(subscription);
+        scheduleExpiry(subscription);
 
         if (subscription.getEventDispatcherName() != null){
             // we persists a subscription only if it has a event dispatcher
@@ -144,14 +170,18 @@ public class CarbonEventBroker implements EventBroker {
 
     private Subscription getExistingNonExpiredSubscription(Subscription newSubscription)
             throws EventBrokerException {
+        if (this.topicManager instanceof IndexedTopicManager) {
+            return ((IndexedTopicManager) this.topicManager).getSubscription(newSubscription.getTopicName(),
+                                                                             newSubscription.getEventSinkURL());
+        }
         Subscription[] subscriptions =
                 this.topicManager.getSubscriptions(newSubscription.getTopicName(), false);
         Subscription existingSubscription = null;
-        Calendar calendar = Calendar.getInstance();
+        long currentTime = System.currentTimeMillis();
         for (Subscription subscription : subscriptions) {
             if (subscription.getEventSinkURL() != null) {
                 if (subscription.getEventSinkURL().equalsIgnoreCase(newSubscription.getEventSinkURL())) {
-                    if ((subscription.getExpires() == null) || (calendar.before(subscription.getExpires()))) {
+                    if (subscription.getExpiryTime() > currentTime) {
                         existingSubscription = subscription;
                         break;
                     }
@@ -164,6 +194,67 @@ public class CarbonEventBroker implements EventBroker {
     public void unsubscribe(String id) throws EventBrokerException {
         this.subscriptionManager.unSubscribe(id);
         this.delivaryManager.unSubscribe(id);
+        if (this.expiryWheel != null) {
+            this.expiryWheel.cancel(id);
+        }
+    }
+
+    /**
+     * removes an expired subscription. Called by the expiry wheel. The subscription may have
+     * been renewed at another node sharing the subscription store, so the persisted expiry
+     * time is checked first. A renewed subscription is kept with the new expiry time, and a
+     * subscription whose persisted copy can not be read is only removed from the delivery manager.
+     * @param tenantId - tenant of the subscription
+     * @param subscription - expired subscription
+     */
+    void expireSubscription(int tenantId, Subscription subscription) {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain(true);
+
+            Subscription persistedSubscription = null;
+            boolean verified = false;
+            try {
+                persistedSubscription = this.subscriptionManager.getSubscription(subscription.getId());
+                verified = true;
+            } catch (EventBrokerException e) {
+                log.debug("Can not read the persisted subscription " + subscription.getId(), e);
+            }
+
+            if (persistedSubscription != null
+                && persistedSubscription.getExpiryTime() > System.currentTimeMillis()) {
+                Subscription renewedSubscription =
+                        JavaUtil.copySubscription(subscription, subscription.getTopicName());
+                renewedSubscription.setExpires(persistedSubscription.getExpires());
+                this.delivaryManager.renewSubscription(renewedSubscription);
+                scheduleExpiry(renewedSubscription);
+                return;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Removing the expired subscription " + subscription.getId());
+            }
+            try {
+                this.delivaryManager.unSubscribe(subscription.getId());
+            } catch (EventBrokerException e) {
+                // subscriptions which had expired before they were loaded are not in the delivery manager
+                log.debug("Expired subscription " + subscription.getId() + " is not in the delivery manager", e);
+            }
+            if (verified && persistedSubscription != null) {
+                this.subscriptionManager.unSubscribe(subscription.getId());
+            }
+        } catch (EventBrokerException e) {
+            log.error("Can not remove the expired subscription " + subscription.getId(), e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private void scheduleExpiry(Subscription subscription) {
+        if (this.expiryWheel != null) {
+            this.expiryWheel.schedule(subscription);
+        }
     }
 
     public Subscription getSubscription(String id) throws EventBrokerException {
@@ -174,6 +265,10 @@ public class CarbonEventBroker implements EventBroker {
         // save the new expiration time to registry
         this.subscriptionManager.renewSubscription(subscription);
         this.delivaryManager.renewSubscription(subscription);
+        if (subscription.getExpires() != null) {
+            // the expiry time is only changed if the renewal has one
+            scheduleExpiry(subscription);
+        }
     }
 
     public List<Subscription> getAllSubscriptions(String filter) throws EventBrokerException {
@@ -185,13 +280,19 @@ public class CarbonEventBroker implements EventBroker {
     }
 
     public void publish(Message message, String topicName, int deliveryMode) throws EventBrokerException {
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        EventBrokerMetrics.getInstance().recordPublish(tenantId, topicName, 1);
          EventPublisher eventPublisher =
                 new EventPublisher(message,
                         topicName,
                         this.delivaryManager,
                         deliveryMode,
-                        CarbonContext.getThreadLocalCarbonContext().getTenantId());
-        this.executor.execute(eventPublisher);
+                        tenantId);
+        if (this.orderedExecutor != null) {
+            this.orderedExecutor.execute(tenantId + ":" + topicName, eventPublisher);
+        } else {
+            this.executor.execute(eventPublisher);
+        }
     }
 
     public void publishRobust(Message message, String topicName) throws EventBrokerException {
@@ -199,9 +300,46 @@ public class CarbonEventBroker implements EventBroker {
     }
 
     public void publishRobust(Message message, String topicName, int deliveryMode) throws EventBrokerException {
+        EventBrokerMetrics.getInstance().recordPublish(
+                CarbonContext.getThreadLocalCarbonContext().getTenantId(), topicName, 1);
          this.delivaryManager.publish(message, topicName, deliveryMode);
     }
 
+    public void publishBatch(List<Message> messages, String topicName) throws EventBrokerException {
+        publishBatch(messages, topicName, EventBrokerConstants.EB_NON_PERSISTENT);
+    }
+
+    public void publishBatch(List<Message> messages, String topicName, int deliveryMode)
+            throws EventBrokerException {
+        publishBatch(Collections.singletonMap(topicName, messages), deliveryMode);
+    }
+
+    public void publishBatch(Map<String, List<Message>> topicMessages) throws EventBrokerException {
+        publishBatch(topicMessages, EventBrokerConstants.EB_NON_PERSISTENT);
+    }
+
+    public void publishBatch(Map<String, List<Message>> topicMessages, int deliveryMode)
+            throws EventBrokerException {
+        if (topicMessages.isEmpty()) {
+            return;
+        }
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        for (Map.Entry<String, List<Message>> entry : topicMessages.entrySet()) {
+            EventBrokerMetrics.getInstance().recordPublish(tenantId, entry.getKey(), entry.getValue().size());
+        }
+        if (this.orderedExecutor != null) {
+            // each topic goes through its own lane to keep the order with the other events of the topic
+            for (Map.Entry<String, List<Message>> entry : topicMessages.entrySet()) {
+                this.orderedExecutor.execute(tenantId + ":" + entry.getKey(),
+                        new BatchEventPublisher(Collections.singletonMap(entry.getKey(), entry.getValue()),
+                                this.delivaryManager, deliveryMode, tenantId));
+            }
+        } else {
+            this.executor.execute(
+                    new BatchEventPublisher(topicMessages, this.delivaryManager, deliveryMode, tenantId));
+        }
+    }
+
     public void registerEventDispatcher(String eventDispatcherName, EventDispatcher eventDispatcher) {
         this.notificationManager.registerEventDispatcher(eventDispatcherName, eventDispatcher);
     }
@@ -234,10 +372,28 @@ public class CarbonEventBroker implements EventBroker {
         this.executor = executor;
     }
 
+    public void setOrderedExecutor(StripedExecutor orderedExecutor) {
+        this.orderedExecutor = orderedExecutor;
+    }
+
+    public void setExpiryWheel(SubscriptionExpiryWheel expiryWheel) {
+        this.expiryWheel = expiryWheel;
+    }
+
     /**
      * this method is used for any clean up methods of the carbon broker manager or any of
      */
     public void cleanUp() throws EventBrokerException {
+         if (this.expiryWheel != null) {
+             this.expiryWheel.stop();
+         }
+         // stop publishing before the delivery manager stops delivering
+         this.executor.shutdown();
+         if (this.orderedExecutor != null) {
+             this.orderedExecutor.shutdown();
+         }
          this.delivaryManager.cleanUp();
+         RegistrySubscriptionIndex.getInstance().stop();
+         EventBrokerMetrics.getInstance().unregisterMBean();
     }
 }
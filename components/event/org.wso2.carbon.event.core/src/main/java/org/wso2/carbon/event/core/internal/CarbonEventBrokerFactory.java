@@ -24,7 +24,12 @@ import org.wso2.carbon.event.core.topic.TopicManagerFactory;
 import org.wso2.carbon.event.core.delivery.DeliveryManagerFactory;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
+import org.wso2.carbon.event.core.internal.util.AuthorizationCache;
+import org.wso2.carbon.event.core.internal.util.BoundedThreadPoolExecutor;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
+import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.subscription.SubscriptionManagerFactory;
 
 import javax.xml.namespace.QName;
@@ -39,6 +44,16 @@ public class CarbonEventBrokerFactory implements EventBrokerFactory {
     public static final String EB_MAX_THREADS = "maxThreads";
     public static final String EB_MAX_QUEUED_REQUESTS = "maxQueuedRequests";
     public static final String EB_KEEP_ALIVE_TIME = "keepAliveTime";
+    public static final String EB_OVERFLOW_POLICY = "overflowPolicy";
+    public static final String EB_MAX_QUEUED_REQUESTS_PER_TENANT = "maxQueuedRequestsPerTenant";
+    public static final String EB_ORDERED_DELIVERY = "orderedDelivery";
+    public static final String EB_AUTHZ_CACHE_EXPIRY_TIME = "expiryTime";
+    public static final String EB_AUTHZ_CACHE_MAX_ENTRIES = "maxEntriesPerTenant";
+    public static final String EB_EXPIRY_TICK_DURATION = "tickDuration";
+    public static final String EB_EXPIRY_WHEEL_SIZE = "wheelSize";
+    public static final String EB_METRICS_ENABLED = "enabled";
+    public static final String EB_METRICS_MAX_TOPICS = "maxTopics";
+    public static final String EB_METRICS_MAX_EVENT_SINKS = "maxEventSinks";
 
     public EventBroker getEventBroker(OMElement config) throws EventBrokerConfigurationException {
 
@@ -79,13 +94,71 @@ public class CarbonEventBrokerFactory implements EventBrokerFactory {
         int maxQueuedRequests =
                 Integer.parseInt(JavaUtil.getValue(eventPublisher, EB_MAX_QUEUED_REQUESTS));
         long keepAliveTime = Integer.parseInt(JavaUtil.getValue(eventPublisher, EB_KEEP_ALIVE_TIME));
-
-
-        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(maxQueuedRequests);
-
-        ExecutorService executor = new ThreadPoolExecutor(minSpareThreads, maxThreads,
-                keepAliveTime, TimeUnit.MILLISECONDS, queue);
+        String overflowPolicy = JavaUtil.getValue(eventPublisher, EB_OVERFLOW_POLICY,
+                BoundedThreadPoolExecutor.OVERFLOW_POLICY_REJECT);
+        int maxQueuedRequestsPerTenant =
+                Integer.parseInt(JavaUtil.getValue(eventPublisher, EB_MAX_QUEUED_REQUESTS_PER_TENANT, "0"));
+        if (!BoundedThreadPoolExecutor.isOverflowPolicy(overflowPolicy)) {
+            throw new EventBrokerConfigurationException("Unknown overflow policy " + overflowPolicy
+                                                        + " for the event publisher");
+        }
+
+        BoundedThreadPoolExecutor executor = new BoundedThreadPoolExecutor("EventPublisher", minSpareThreads,
+                maxThreads, keepAliveTime, TimeUnit.MILLISECONDS, maxQueuedRequests, overflowPolicy,
+                maxQueuedRequestsPerTenant);
         carbonEventBroker.setExecutor(executor);
+        StripedExecutor orderedExecutor = null;
+        if (Boolean.parseBoolean(JavaUtil.getValue(eventPublisher, EB_ORDERED_DELIVERY, "false"))) {
+            // events of a topic are published one after the other by one of the maxThreads lanes
+            orderedExecutor = new StripedExecutor("EventPublisher", maxThreads, keepAliveTime,
+                    maxQueuedRequests, overflowPolicy, maxQueuedRequestsPerTenant);
+            carbonEventBroker.setOrderedExecutor(orderedExecutor);
+        }
+
+        // authorization decision cache used when publishing and subscribing
+        OMElement authorizationCache = config.getFirstChildWithName(new QName(EventBrokerConstants.EB_CONF_NAMESPACE,
+                        EventBrokerConstants.EB_CONF_ELE_AUTHORIZATION_CACHE));
+        if (authorizationCache != null) {
+            AuthorizationCache.getInstance().setExpiryTime(Long.parseLong(JavaUtil.getValue(authorizationCache,
+                    EB_AUTHZ_CACHE_EXPIRY_TIME, String.valueOf(AuthorizationCache.DEFAULT_EXPIRY_TIME))));
+            AuthorizationCache.getInstance().setMaxEntriesPerTenant(Integer.parseInt(JavaUtil.getValue(authorizationCache,
+                    EB_AUTHZ_CACHE_MAX_ENTRIES, String.valueOf(AuthorizationCache.DEFAULT_MAX_ENTRIES_PER_TENANT))));
+        }
+
+        // timer wheel which removes the expired subscriptions
+        OMElement subscriptionExpiry = config.getFirstChildWithName(new QName(EventBrokerConstants.EB_CONF_NAMESPACE,
+                        EventBrokerConstants.EB_CONF_ELE_SUBSCRIPTION_EXPIRY));
+        long tickDuration = SubscriptionExpiryWheel.DEFAULT_TICK_DURATION;
+        int wheelSize = SubscriptionExpiryWheel.DEFAULT_WHEEL_SIZE;
+        if (subscriptionExpiry != null) {
+            tickDuration = Long.parseLong(JavaUtil.getValue(subscriptionExpiry, EB_EXPIRY_TICK_DURATION,
+                    String.valueOf(tickDuration)));
+            wheelSize = Integer.parseInt(JavaUtil.getValue(subscriptionExpiry, EB_EXPIRY_WHEEL_SIZE,
+                    String.valueOf(wheelSize)));
+        }
+        final CarbonEventBroker expiringEventBroker = carbonEventBroker;
+        carbonEventBroker.setExpiryWheel(new SubscriptionExpiryWheel(new SubscriptionExpiryWheel.ExpiryHandler() {
+            public void expire(int tenantId, Subscription subscription) {
+                expiringEventBroker.expireSubscription(tenantId, subscription);
+            }
+        }, tickDuration, wheelSize));
+
+        // publish and delivery metrics, exposed through JMX
+        OMElement metrics = config.getFirstChildWithName(new QName(EventBrokerConstants.EB_CONF_NAMESPACE,
+                        EventBrokerConstants.EB_CONF_ELE_METRICS));
+        EventBrokerMetrics eventBrokerMetrics = EventBrokerMetrics.getInstance();
+        eventBrokerMetrics.setPublishExecutors(executor, orderedExecutor);
+        if (metrics != null) {
+            eventBrokerMetrics.setEnabled(Boolean.parseBoolean(JavaUtil.getValue(metrics, EB_METRICS_ENABLED,
+                    Boolean.TRUE.toString())));
+            eventBrokerMetrics.setMaxTopics(Integer.parseInt(JavaUtil.getValue(metrics, EB_METRICS_MAX_TOPICS,
+                    String.valueOf(EventBrokerMetrics.DEFAULT_MAX_TOPICS))));
+            eventBrokerMetrics.setMaxEventSinks(Integer.parseInt(JavaUtil.getValue(metrics, EB_METRICS_MAX_EVENT_SINKS,
+                    String.valueOf(EventBrokerMetrics.DEFAULT_MAX_EVENT_SINKS))));
+        }
+        if (eventBrokerMetrics.isEnabled()) {
+            eventBrokerMetrics.registerMBean();
+        }
 
         carbonEventBroker.init();
 
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * hashed timer wheel which hands the subscriptions to the expiry handler when they expire.
+ * The wheel has wheelSize buckets, each covering tickDuration milliseconds. A subscription is
+ * put in to the bucket of its expiry tick together with the number of rotations left until
+ * then, so every tick only looks at one bucket instead of all the subscriptions.
+ *
+ * Scheduling, renewing and cancelling only queue the change, the buckets are only touched by
+ * the wheel thread. A subscription expires at most one tick after its expiry time.
+ */
+public class SubscriptionExpiryWheel {
+
+    private static final Log log = LogFactory.getLog(SubscriptionExpiryWheel.class);
+
+    public static final long DEFAULT_TICK_DURATION = 1000;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private final ExpiryHandler expiryHandler;
+    private final long tickDuration;
+    private final List<List<Timeout>> buckets;
+    private final int mask;
+
+    /**
+     * scheduled timeouts by the tenant id and subscription id
+     */
+    private final Map<String, Timeout> timeoutMap;
+    private final Queue<Timeout> pendingTimeouts;
+
+    private final long startTime;
+    private long lastTick;
+
+    private ScheduledExecutorService wheelExecutor;
+
+    /**
+     * @param expiryHandler - removes the expired subscriptions
+     * @param tickDuration - milliseconds covered by a bucket
+     * @param wheelSize - number of buckets, rounded up to a power of two
+     */
+    public SubscriptionExpiryWheel(ExpiryHandler expiryHandler, long tickDuration, int wheelSize) {
+        this.expiryHandler = expiryHandler;
+        this.tickDuration = Math.max(1, tickDuration);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.buckets = new ArrayList<List<Timeout>>(size);
+        for (int i = 0; i < size; i++) {
+            this.buckets.add(new ArrayList<Timeout>());
+        }
+        this.mask = size - 1;
+        this.timeoutMap = new ConcurrentHashMap<String, Timeout>();
+        this.pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+        this.startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * schedules the expiry of the subscription of the current tenant, replacing the one
+     * scheduled before for the same subscription. Subscriptions with out an expiry time
+     * are not scheduled.
+     * @param subscription - subscription with the id and the expiry time set
+     */
+    public void schedule(Subscription subscription) {
+        schedule(EventBrokerHolder.getInstance().getTenantId(), subscription);
+    }
+
+    /**
+     * schedules the expiry of the subscription of the given tenant.
+     * @param tenantId
+     * @param subscription - subscription with the id and the expiry time set
+     */
+    void schedule(int tenantId, Subscription subscription) {
+        String key = tenantId + ":" + subscription.getId();
+        long expiryTime = subscription.getExpiryTime();
+        Timeout timeout = null;
+        if (expiryTime != Long.MAX_VALUE) {
+            timeout = new Timeout(key, tenantId, subscription, expiryTime);
+        }
+        Timeout previous = (timeout == null) ? this.timeoutMap.remove(key) : this.timeoutMap.put(key, timeout);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        if (timeout != null) {
+            this.pendingTimeouts.offer(timeout);
+            start();
+        }
+    }
+
+    /**
+     * cancels the expiry of the subscription of the current tenant.
+     * @param subscriptionId
+     */
+    public void cancel(String subscriptionId) {
+        cancel(EventBrokerHolder.getInstance().getTenantId(), subscriptionId);
+    }
+
+    /**
+     * cancels the expiry of the subscription of the given tenant.
+     * @param tenantId
+     * @param subscriptionId
+     */
+    void cancel(int tenantId, String subscriptionId) {
+        Timeout timeout = this.timeoutMap.remove(tenantId + ":" + subscriptionId);
+        if (timeout != null) {
+            timeout.cancelled = true;
+        }
+    }
+
+    /**
+     * @return number of subscriptions waiting to expire
+     */
+    public int getScheduledCount() {
+        return this.timeoutMap.size();
+    }
+
+    public synchronized void stop() {
+        if (this.wheelExecutor != null) {
+            this.wheelExecutor.shutdownNow();
+            this.wheelExecutor = null;
+        }
+    }
+
+    private synchronized void start() {
+        if (this.wheelExecutor != null) {
+            return;
+        }
+        this.wheelExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SubscriptionExpiryWheel");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.wheelExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    advance();
+                } catch (Throwable e) {
+                    log.error("Error while removing the expired subscriptions", e);
+                }
+            }
+        }, this.tickDuration, this.tickDuration, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * processes the ticks passed since the last run. Only called by the wheel thread.
+     */
+    private void advance() {
+        long currentTick = (System.currentTimeMillis() - this.startTime) / this.tickDuration;
+        List<Timeout> expiredTimeouts = new ArrayList<Timeout>();
+        while (this.lastTick < currentTick) {
+            this.lastTick++;
+            addPendingTimeouts();
+            List<Timeout> bucket = this.buckets.get((int) (this.lastTick & this.mask));
+            for (Iterator<Timeout> iterator = bucket.iterator(); iterator.hasNext();) {
+                Timeout timeout = iterator.next();
+                if (timeout.cancelled) {
+                    iterator.remove();
+                } else if (timeout.remainingRounds <= 0) {
+                    iterator.remove();
+                    expiredTimeouts.add(timeout);
+                } else {
+                    timeout.remainingRounds--;
+                }
+            }
+        }
+        for (Timeout timeout : expiredTimeouts) {
+            // the subscription may have been renewed after the bucket was processed
+            if (!timeout.cancelled && this.timeoutMap.remove(timeout.key) == timeout) {
+                expire(timeout);
+            }
+        }
+    }
+
+    private void addPendingTimeouts() {
+        for (Timeout timeout = this.pendingTimeouts.poll(); timeout != null; timeout = this.pendingTimeouts.poll()) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // first tick which starts after the expiry time
+            long expiryTick = (timeout.expiryTime - this.startTime + this.tickDuration - 1) / this.tickDuration;
+            long tick = Math.max(expiryTick, this.lastTick);
+            timeout.remainingRounds = (tick - this.lastTick) / this.buckets.size();
+            this.buckets.get((int) (tick & this.mask)).add(timeout);
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        try {
+            this.expiryHandler.expire(timeout.tenantId, timeout.subscription);
+        } catch (Throwable e) {
+            log.error("Can not remove the expired subscription " + timeout.subscription.getId(), e);
+        }
+    }
+
+    /**
+     * removes the subscriptions handed over by the wheel thread
+     */
+    public interface ExpiryHandler {
+
+        /**
+         * @param tenantId - tenant of the subscription
+         * @param subscription - subscription as it was scheduled
+         */
+        void expire(int tenantId, Subscription subscription);
+    }
+
+    /**
+     * expiry of a subscription
+     */
+    private static class Timeout {
+
+        private final String key;
+        private final int tenantId;
+        private final Subscription subscription;
+        private final long expiryTime;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(String key, int tenantId, Subscription subscription, long expiryTime) {
+            this.key = key;
+            this.tenantId = tenantId;
+            this.subscription = subscription;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.notify.NotificationManager;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.List;
+
+/**
+ * sends a message to a set of subscriptions of the same tenant within a single tenant flow.
+ * This is used instead of a {@link Worker} per subscription when the delivery manager is
+ * configured with a delivery batch size.
+ */
+public class BatchWorker implements Runnable {
+
+    private static final Log log = LogFactory.getLog(BatchWorker.class);
+
+    private NotificationManager notificationManager;
+    private Message message;
+    private List<Subscription> subscriptions;
+    private int tenantId;
+
+    public BatchWorker(NotificationManager notificationManager,
+                       Message message,
+                       List<Subscription> subscriptions,
+                       int tenantId) {
+        this.notificationManager = notificationManager;
+        this.message = message;
+        this.subscriptions = subscriptions;
+        this.tenantId = tenantId;
+    }
+
+    public void run() {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext carbonContext = PrivilegedCarbonContext.getThreadLocalCarbonContext();
+            carbonContext.setTenantId(this.tenantId);
+            carbonContext.getTenantDomain(true);
+            for (Subscription subscription : this.subscriptions) {
+                carbonContext.setUsername(subscription.getOwner());
+                try {
+                    this.notificationManager.sendNotification(this.message, subscription);
+                } catch (EventBrokerException e) {
+                    // one failed subscription should not stop the rest of the batch
+                    log.error("Can not send the notification ", e);
+                } catch (RuntimeException e) {
+                    log.error("Can not send the notification to subscription " + subscription.getId(), e);
+                }
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+}
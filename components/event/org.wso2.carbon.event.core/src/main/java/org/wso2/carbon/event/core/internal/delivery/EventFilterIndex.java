@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery;
+
+import org.apache.axiom.om.xpath.AXIOMXPath;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jaxen.JaxenException;
+import org.jaxen.SimpleNamespaceContext;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.subscription.EventFilter;
+import org.wso2.carbon.event.core.subscription.Subscription;
+import org.wso2.carbon.event.core.util.EventBrokerConstants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * index of the compiled content filters of the subscriptions. Subscriptions with the same
+ * filter share one compiled filter, and a published message is evaluated once per distinct
+ * filter, before any delivery is scheduled.
+ *
+ * Only the WSO2 XPath and property filter dialects are content filters. Filters of the other
+ * dialects, including the standard XPath dialect, name the topic of the subscription and match
+ * every message.
+ *
+ * An XPath filter may start with namespace declarations of the form xmlns:prefix="uri", which
+ * bind the prefixes used in the expression.
+ *
+ * A property filter is a list of predicates joined with " and ", each one of name=value,
+ * name!=value or name, which checks that the message has the property.
+ *
+ * At most maxFilters compiled filters are kept, the least recently used one is dropped first.
+ */
+public class EventFilterIndex {
+
+    private static final Log log = LogFactory.getLog(EventFilterIndex.class);
+
+    public static final int DEFAULT_MAX_FILTERS = 1000;
+
+    private static final String PREDICATE_SEPARATOR = " and ";
+
+    private static final Pattern NAMESPACE_DECLARATION =
+            Pattern.compile("\\s*xmlns:([^\\s=]+)\\s*=\\s*\"([^\"]*)\"");
+
+    private static EventFilterIndex instance = new EventFilterIndex();
+
+    private Map<String, CompiledFilter> compiledFilterMap;
+
+    private volatile int maxFilters = DEFAULT_MAX_FILTERS;
+
+    private EventFilterIndex() {
+        // access ordered, so the eldest entry is the least recently used filter
+        this.compiledFilterMap = new LinkedHashMap<String, CompiledFilter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledFilter> eldest) {
+                return size() > maxFilters;
+            }
+        };
+    }
+
+    public static EventFilterIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param eventFilter - filter of a subscription, may be null
+     * @return true if the filter selects messages by their content
+     */
+    public static boolean isContentFilter(EventFilter eventFilter) {
+        return eventFilter != null && eventFilter.getValue() != null
+               && (EventBrokerConstants.EB_FILTER_DIALECT_CONTENT_XPATH.equals(eventFilter.getDialect())
+                   || EventBrokerConstants.EB_FILTER_DIALECT_PROPERTY.equals(eventFilter.getDialect()));
+    }
+
+    /**
+     * @param subscription - subscription to deliver to
+     * @param message - published message
+     * @return true if the subscription has no content filter or its filter matches the message
+     */
+    public boolean matches(Subscription subscription, Message message) {
+        return !isContentFilter(subscription.getEventFilter())
+               || getCompiledFilter(subscription.getEventFilter()).matches(message);
+    }
+
+    /**
+     * returns the subscriptions whose filter matches the message.
+     * @param subscriptions - subscriptions of the topic, not modified
+     * @param message - published message
+     * @return the given list if none of the subscriptions has a content filter, a new list otherwise
+     */
+    public List<Subscription> filter(List<Subscription> subscriptions, Message message) {
+        int first = indexOfContentFilter(subscriptions);
+        if (first < 0) {
+            return subscriptions;
+        }
+        Map<CompiledFilter, Boolean> results = new HashMap<CompiledFilter, Boolean>();
+        List<Subscription> matchingSubscriptions = new ArrayList<Subscription>(subscriptions.size());
+        matchingSubscriptions.addAll(subscriptions.subList(0, first));
+        for (int i = first; i < subscriptions.size(); i++) {
+            Subscription subscription = subscriptions.get(i);
+            if (!isContentFilter(subscription.getEventFilter())) {
+                matchingSubscriptions.add(subscription);
+                continue;
+            }
+            CompiledFilter compiledFilter = getCompiledFilter(subscription.getEventFilter());
+            Boolean matches = results.get(compiledFilter);
+            if (matches == null) {
+                matches = compiledFilter.matches(message);
+                results.put(compiledFilter, matches);
+            }
+            if (matches) {
+                matchingSubscriptions.add(subscription);
+            }
+        }
+        return matchingSubscriptions;
+    }
+
+    /**
+     * returns the messages of a batch which match the filter of the subscription.
+     * @param subscription - subscription to deliver to
+     * @param messages - published messages, not modified
+     * @param results - matching messages of the filters already evaluated for this batch
+     * @return the given list if the subscription has no content filter
+     */
+    public List<Message> filter(Subscription subscription,
+                                List<Message> messages,
+                                Map<Object, List<Message>> results) {
+        if (!isContentFilter(subscription.getEventFilter())) {
+            return messages;
+        }
+        CompiledFilter compiledFilter = getCompiledFilter(subscription.getEventFilter());
+        List<Message> matchingMessages = results.get(compiledFilter);
+        if (matchingMessages == null) {
+            matchingMessages = new ArrayList<Message>();
+            for (Message message : messages) {
+                if (compiledFilter.matches(message)) {
+                    matchingMessages.add(message);
+                }
+            }
+            results.put(compiledFilter, matchingMessages);
+        }
+        return matchingMessages;
+    }
+
+    public void setMaxFilters(int maxFilters) {
+        this.maxFilters = maxFilters;
+    }
+
+    private int indexOfContentFilter(List<Subscription> subscriptions) {
+        for (int i = 0; i < subscriptions.size(); i++) {
+            if (isContentFilter(subscriptions.get(i).getEventFilter())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private CompiledFilter getCompiledFilter(EventFilter eventFilter) {
+        String key = eventFilter.getDialect() + "\n" + eventFilter.getValue();
+        CompiledFilter compiledFilter;
+        synchronized (this.compiledFilterMap) {
+            compiledFilter = this.compiledFilterMap.get(key);
+        }
+        if (compiledFilter == null) {
+            // compiled out side the lock, a filter compiled twice at the same time is harmless
+            compiledFilter = compile(eventFilter);
+            synchronized (this.compiledFilterMap) {
+                this.compiledFilterMap.put(key, compiledFilter);
+            }
+        }
+        return compiledFilter;
+    }
+
+    private CompiledFilter compile(EventFilter eventFilter) {
+        String value = eventFilter.getValue().trim();
+        if (EventBrokerConstants.EB_FILTER_DIALECT_CONTENT_XPATH.equals(eventFilter.getDialect())) {
+            Map<String, String> namespaces = new HashMap<String, String>();
+            String expression = parseNamespaces(value, namespaces);
+            try {
+                AXIOMXPath xpath = new AXIOMXPath(expression);
+                xpath.setNamespaceContext(new SimpleNamespaceContext(namespaces));
+                return new XPathFilter(xpath);
+            } catch (JaxenException e) {
+                log.warn("Invalid XPath filter " + value + ", the subscriptions with it will not get any message", e);
+                return new PropertyFilter(null);
+            }
+        }
+        return new PropertyFilter(parsePredicates(value));
+    }
+
+    /**
+     * reads the namespace declarations at the start of an XPath filter.
+     * @param value - filter value
+     * @param namespaces - map to put the declared prefixes and namespace uris
+     * @return the XPath expression after the declarations
+     */
+    static String parseNamespaces(String value, Map<String, String> namespaces) {
+        Matcher matcher = NAMESPACE_DECLARATION.matcher(value);
+        int start = 0;
+        while (matcher.region(start, value.length()).lookingAt()) {
+            namespaces.put(matcher.group(1), matcher.group(2));
+            start = matcher.end();
+        }
+        return value.substring(start).trim();
+    }
+
+    /**
+     * @param value - property filter value
+     * @return the predicates of the filter, each one is {name, expected value, excluded value}
+     */
+    static String[][] parsePredicates(String value) {
+        String[] predicates = value.trim().split(PREDICATE_SEPARATOR);
+        String[][] compiledPredicates = new String[predicates.length][];
+        for (int i = 0; i < predicates.length; i++) {
+            String predicate = predicates[i].trim();
+            int index = predicate.indexOf('=');
+            if (index < 0) {
+                compiledPredicates[i] = new String[]{predicate, null, null};
+            } else if (index > 0 && predicate.charAt(index - 1) == '!') {
+                compiledPredicates[i] = new String[]{predicate.substring(0, index - 1).trim(), null,
+                        predicate.substring(index + 1).trim()};
+            } else {
+                compiledPredicates[i] = new String[]{predicate.substring(0, index).trim(),
+                        predicate.substring(index + 1).trim(), null};
+            }
+        }
+        return compiledPredicates;
+    }
+
+    /**
+     * filter compiled once and evaluated for any number of messages
+     */
+    private interface CompiledFilter {
+
+        public boolean matches(Message message);
+    }
+
+    private static class XPathFilter implements CompiledFilter {
+
+        private final AXIOMXPath xpath;
+
+        private XPathFilter(AXIOMXPath xpath) {
+            this.xpath = xpath;
+        }
+
+        public boolean matches(Message message) {
+            if (message.getMessage() == null) {
+                return false;
+            }
+            try {
+                return this.xpath.booleanValueOf(message.getMessage());
+            } catch (JaxenException e) {
+                log.debug("Can not evaluate the XPath filter " + this.xpath, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * predicates of a property filter, each one is {name, expected value, excluded value}.
+     * A null predicate list matches nothing.
+     */
+    private static class PropertyFilter implements CompiledFilter {
+
+        private final String[][] predicates;
+
+        private PropertyFilter(String[][] predicates) {
+            this.predicates = predicates;
+        }
+
+        public boolean matches(Message message) {
+            if (this.predicates == null) {
+                return false;
+            }
+            for (String[] predicate : this.predicates) {
+                String value = message.getProperty(predicate[0]);
+                if (predicate[2] != null) {
+                    if (predicate[2].equals(value)) {
+                        return false;
+                    }
+                } else if (value == null || (predicate[1] != null && !predicate[1].equals(value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.notify.BatchNotificationManager;
+import org.wso2.carbon.event.core.notify.NotificationManager;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.List;
+
+/**
+ * sends a batch of messages published together to one subscription. This is used by the
+ * delivery managers instead of a {@link Worker} per message when a batch is published.
+ */
+public class MessageBatchWorker implements Runnable {
+
+    private static final Log log = LogFactory.getLog(MessageBatchWorker.class);
+
+    private NotificationManager notificationManager;
+    private List<Message> messages;
+    private Subscription subscription;
+
+    public MessageBatchWorker(NotificationManager notificationManager,
+                              List<Message> messages,
+                              Subscription subscription) {
+        this.notificationManager = notificationManager;
+        this.messages = messages;
+        this.subscription = subscription;
+    }
+
+    public void run() {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(this.subscription.getTenantId());
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setUsername(this.subscription.getOwner());
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain(true);
+            if (this.notificationManager instanceof BatchNotificationManager) {
+                ((BatchNotificationManager) this.notificationManager).sendNotification(
+                        this.messages, this.subscription);
+            } else {
+                for (Message message : this.messages) {
+                    this.notificationManager.sendNotification(message, this.subscription);
+                }
+            }
+        } catch (EventBrokerException e) {
+            log.error("Can not send the notifications ", e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * concurrent topic tree used by the matching managers to resolve a published topic to the
+ * values registered against it. Every node represents one topic segment and keeps three
+ * value slots
+ * <ul>
+ * <li>exact values - registered with the topic name of the node itself. eg. /a/b</li>
+ * <li>child values - registered with the * wild card. eg. /a/b/* matches /a/b and /a/b/c</li>
+ * <li>descendant values - registered with the # wild card. eg. /a/b/# matches /a/b and every
+ * topic below it</li>
+ * </ul>
+ * A wild card in the middle of a topic name is treated as a normal segment, which is the
+ * same behaviour as the name based lookup this replaces.
+ *
+ * Matching walks the tree once per published topic and compares topic segments in place,
+ * so no intermediate topic names are created. Readers never lock, writers lock the node
+ * they modify. Nodes left without values or children by a removal are pruned, so topics
+ * which come and go do not grow the tree.
+ *
+ * @param <V> value type kept against the topics
+ */
+public class TopicTrie<V> {
+
+    private static final String DESCENDANT_WILDCARD = "#";
+    private static final String CHILD_WILDCARD = "*";
+
+    private final Node<V> root = new Node<V>("");
+
+    /**
+     * registers the value against the given topic name under the given key.
+     * @param topicName - normalized topic name starting with /. Can end with * or #
+     * @param key - key used to identify the value. eg. subscription id
+     * @param value - value to keep
+     */
+    public void put(String topicName, String key, V value) {
+        // retry if a node on the path is pruned by a concurrent removal
+        while (!tryPut(topicName, key, value)) {
+            Thread.yield();
+        }
+    }
+
+    private boolean tryPut(String topicName, String key, V value) {
+        int end = topicName.length();
+        Node<V> node = this.root;
+        int slot = Node.EXACT;
+        int start = 1;
+        while (start <= end) {
+            int segmentEnd = topicName.indexOf('/', start);
+            if (segmentEnd == -1) {
+                segmentEnd = end;
+            }
+            if (segmentEnd == end) {
+                // last segment decides the slot if it is a wild card
+                if (isSegment(topicName, start, segmentEnd, DESCENDANT_WILDCARD)) {
+                    slot = Node.DESCENDANT;
+                    break;
+                } else if (isSegment(topicName, start, segmentEnd, CHILD_WILDCARD)) {
+                    slot = Node.CHILD;
+                    break;
+                }
+            }
+            if (segmentEnd > start || segmentEnd < end) {
+                node = node.getOrCreateChild(topicName, start, segmentEnd);
+                if (node == null) {
+                    return false;
+                }
+            }
+            start = segmentEnd + 1;
+        }
+        synchronized (node) {
+            if (node.removed) {
+                return false;
+            }
+            node.getOrCreateValues(slot).put(key, value);
+        }
+        return true;
+    }
+
+    /**
+     * returns the value registered against the topic name with the given key
+     * @param topicName - normalized topic name
+     * @param key - key of the value
+     * @return the value or null if there is no such value
+     */
+    public V get(String topicName, String key) {
+        List<Node<V>> path = new ArrayList<Node<V>>();
+        int slot = findPath(topicName, path);
+        if (slot == -1) {
+            return null;
+        }
+        Map<String, V> values = path.get(path.size() - 1).getValues(slot);
+        return values == null ? null : values.get(key);
+    }
+
+    /**
+     * removes the value registered against the topic name with the given key.
+     * @param topicName - normalized topic name
+     * @param key - key of the value
+     * @return removed value or null if there is no such value
+     */
+    public V remove(String topicName, String key) {
+        List<Node<V>> path = new ArrayList<Node<V>>();
+        int slot = findPath(topicName, path);
+        if (slot == -1) {
+            return null;
+        }
+        Map<String, V> values = path.get(path.size() - 1).getValues(slot);
+        V value = values == null ? null : values.remove(key);
+        if (value != null) {
+            prune(path);
+        }
+        return value;
+    }
+
+    /**
+     * @return true if there is no value in the tree
+     */
+    public boolean isEmpty() {
+        synchronized (this.root) {
+            return this.root.isEmpty();
+        }
+    }
+
+    /**
+     * removes the empty nodes of the path from the bottom up. The parent is locked before the
+     * child, and writers lock one node at a time, so this can not dead lock with them.
+     */
+    private void prune(List<Node<V>> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node<V> parent = path.get(i - 1);
+            Node<V> child = path.get(i);
+            synchronized (parent) {
+                synchronized (child) {
+                    if (parent.removed || child.removed || !child.isEmpty()) {
+                        return;
+                    }
+                    child.removed = true;
+                    parent.removeChild(child);
+                }
+            }
+        }
+    }
+
+    /**
+     * adds all the values which match the given published topic to the matches collection.
+     * @param topicName - normalized topic name starting with /
+     * @param matches - collection to add the matching values
+     */
+    public void getMatches(String topicName, Collection<V> matches) {
+        int end = topicName.length();
+        Node<V> node = this.root;
+        node.addValues(Node.DESCENDANT, matches);
+        if (end == 1) {
+            // root topic only matches /# and /
+            node.addValues(Node.EXACT, matches);
+            return;
+        }
+        boolean lastSegment = topicName.indexOf('/', 1) == -1;
+        if (lastSegment) {
+            node.addValues(Node.CHILD, matches);
+        }
+        int start = 1;
+        while (node != null) {
+            int segmentEnd = topicName.indexOf('/', start);
+            if (segmentEnd == -1) {
+                segmentEnd = end;
+            }
+            node = node.getChild(topicName, start, segmentEnd);
+            if (node == null) {
+                break;
+            }
+            node.addValues(Node.DESCENDANT, matches);
+            if (segmentEnd == end) {
+                node.addValues(Node.CHILD, matches);
+                node.addValues(Node.EXACT, matches);
+                break;
+            }
+            start = segmentEnd + 1;
+            if (topicName.indexOf('/', start) == -1) {
+                // next one is the last segment, so this is the parent of the topic
+                node.addValues(Node.CHILD, matches);
+            }
+        }
+    }
+
+    /**
+     * checks whether a value registered against the given topic name matches the published
+     * topic, with the same rules as {@link #getMatches(String, Collection)}.
+     * @param topicName - normalized topic name the value is registered against. Can end with * or #
+     * @param publishedTopicName - normalized published topic name
+     * @return true if the value would be matched for the published topic
+     */
+    public static boolean matches(String topicName, String publishedTopicName) {
+        if (topicName.endsWith("/" + DESCENDANT_WILDCARD)) {
+            String base = topicName.substring(0, topicName.length() - 2);
+            return base.length() == 0 || publishedTopicName.equals(base) || isBelow(publishedTopicName, base);
+        } else if (topicName.endsWith("/" + CHILD_WILDCARD)) {
+            String base = topicName.substring(0, topicName.length() - 2);
+            if (base.length() == 0) {
+                // root topic does not match /*
+                return publishedTopicName.length() > 1 && publishedTopicName.indexOf('/', 1) == -1;
+            }
+            return publishedTopicName.equals(base) || (isBelow(publishedTopicName, base)
+                    && publishedTopicName.indexOf('/', base.length() + 1) == -1);
+        }
+        return topicName.equals(publishedTopicName);
+    }
+
+    private static boolean isBelow(String topicName, String parentTopicName) {
+        return topicName.length() > parentTopicName.length() && topicName.startsWith(parentTopicName)
+               && topicName.charAt(parentTopicName.length()) == '/';
+    }
+
+    /**
+     * collects the nodes from the root to the node of the topic name.
+     * @return the value slot of the topic name in the last node, or -1 if there is no such node
+     */
+    private int findPath(String topicName, List<Node<V>> path) {
+        int end = topicName.length();
+        Node<V> node = this.root;
+        path.add(node);
+        int slot = Node.EXACT;
+        int start = 1;
+        while (node != null && start <= end) {
+            int segmentEnd = topicName.indexOf('/', start);
+            if (segmentEnd == -1) {
+                segmentEnd = end;
+            }
+            if (segmentEnd == end) {
+                if (isSegment(topicName, start, segmentEnd, DESCENDANT_WILDCARD)) {
+                    slot = Node.DESCENDANT;
+                    break;
+                } else if (isSegment(topicName, start, segmentEnd, CHILD_WILDCARD)) {
+                    slot = Node.CHILD;
+                    break;
+                }
+            }
+            if (segmentEnd > start || segmentEnd < end) {
+                node = node.getChild(topicName, start, segmentEnd);
+                if (node != null) {
+                    path.add(node);
+                }
+            }
+            start = segmentEnd + 1;
+        }
+        return node == null ? -1 : slot;
+    }
+
+    private static boolean isSegment(String topicName, int start, int end, String segment) {
+        return (end - start == segment.length()) && topicName.startsWith(segment, start);
+    }
+
+    /**
+     * one segment of the topic tree. child nodes are kept in an open addressing table which is
+     * replaced as a whole on writes, so that lookups can compare segments without creating
+     * substrings. A node is marked removed, under its lock, when it is pruned from its parent.
+     */
+    private static final class Node<V> {
+
+        static final int EXACT = 0;
+        static final int CHILD = 1;
+        static final int DESCENDANT = 2;
+
+        private final String segment;
+        private final int hash;
+        private volatile Node<V>[] children;
+        private int childCount;
+        private volatile Map<String, V> exactValues;
+        private volatile Map<String, V> childValues;
+        private volatile Map<String, V> descendantValues;
+        private boolean removed;
+
+        @SuppressWarnings("unchecked")
+        Node(String segment) {
+            this.segment = segment;
+            this.hash = segment.hashCode();
+            this.children = new Node[0];
+        }
+
+        Node<V> getChild(String topicName, int start, int end) {
+            Node<V>[] table = this.children;
+            if (table.length == 0) {
+                return null;
+            }
+            int segmentHash = hash(topicName, start, end);
+            int mask = table.length - 1;
+            int index = segmentHash & mask;
+            Node<V> child;
+            while ((child = table[index]) != null) {
+                if (child.hash == segmentHash && child.segment.length() == end - start
+                        && topicName.regionMatches(start, child.segment, 0, end - start)) {
+                    return child;
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        /**
+         * @return the child, or null if this node has been pruned
+         */
+        synchronized Node<V> getOrCreateChild(String topicName, int start, int end) {
+            if (this.removed) {
+                return null;
+            }
+            Node<V> child = getChild(topicName, start, end);
+            if (child == null) {
+                child = new Node<V>(topicName.substring(start, end));
+                Node<V>[] table = this.children;
+                if ((this.childCount + 1) * 2 > table.length) {
+                    table = resize(table, Math.max(4, table.length * 2));
+                } else {
+                    table = table.clone();
+                }
+                insert(table, child);
+                this.childCount++;
+                // publish the new table to the readers
+                this.children = table;
+            }
+            return child;
+        }
+
+        /**
+         * removes the child from the table. Must be called with the lock of this node held.
+         */
+        void removeChild(Node<V> child) {
+            Node<V>[] table = this.children;
+            @SuppressWarnings("unchecked")
+            Node<V>[] newTable = new Node[table.length];
+            for (Node<V> node : table) {
+                if (node != null && node != child) {
+                    insert(newTable, node);
+                }
+            }
+            this.childCount--;
+            this.children = newTable;
+        }
+
+        boolean isEmpty() {
+            return this.childCount == 0 && isEmpty(this.exactValues) && isEmpty(this.childValues)
+                   && isEmpty(this.descendantValues);
+        }
+
+        private static boolean isEmpty(Map<?, ?> values) {
+            return values == null || values.isEmpty();
+        }
+
+        Map<String, V> getValues(int slot) {
+            switch (slot) {
+                case EXACT:
+                    return this.exactValues;
+                case CHILD:
+                    return this.childValues;
+                default:
+                    return this.descendantValues;
+            }
+        }
+
+        Map<String, V> getOrCreateValues(int slot) {
+            Map<String, V> slotValues = getValues(slot);
+            if (slotValues == null) {
+                synchronized (this) {
+                    slotValues = getValues(slot);
+                    if (slotValues == null) {
+                        slotValues = new ConcurrentHashMap<String, V>();
+                        if (slot == EXACT) {
+                            this.exactValues = slotValues;
+                        } else if (slot == CHILD) {
+                            this.childValues = slotValues;
+                        } else {
+                            this.descendantValues = slotValues;
+                        }
+                    }
+                }
+            }
+            return slotValues;
+        }
+
+        void addValues(int slot, Collection<V> matches) {
+            Map<String, V> slotValues = getValues(slot);
+            if (slotValues != null && !slotValues.isEmpty()) {
+                matches.addAll(slotValues.values());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Node<V>[] resize(Node<V>[] table, int size) {
+            Node<V>[] newTable = new Node[size];
+            for (Node<V> child : table) {
+                if (child != null) {
+                    insert(newTable, child);
+                }
+            }
+            return newTable;
+        }
+
+        private static <V> void insert(Node<V>[] table, Node<V> child) {
+            int mask = table.length - 1;
+            int index = child.hash & mask;
+            while (table[index] != null) {
+                index = (index + 1) & mask;
+            }
+            table[index] = child;
+        }
+
+        /**
+         * same as String.hashCode for the given region of the topic name
+         */
+        private static int hash(String topicName, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + topicName.charAt(i);
+            }
+            return h;
+        }
+    }
+}
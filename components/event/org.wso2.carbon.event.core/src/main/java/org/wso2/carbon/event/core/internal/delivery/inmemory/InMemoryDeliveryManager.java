@@ -18,32 +18,62 @@ package org.wso2.carbon.event.core.internal.delivery.inmemory;
 
 import org.wso2.carbon.event.core.Message;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
-import org.wso2.carbon.event.core.delivery.DeliveryManager;
+import org.wso2.carbon.event.core.delivery.BatchDeliveryManager;
 import org.wso2.carbon.event.core.delivery.MatchingManager;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.internal.delivery.BatchWorker;
+import org.wso2.carbon.event.core.internal.delivery.EventFilterIndex;
+import org.wso2.carbon.event.core.internal.delivery.MessageBatchWorker;
 import org.wso2.carbon.event.core.internal.delivery.Worker;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
-import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
+import org.wso2.carbon.event.core.internal.util.AuthorizationCache;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
 import org.wso2.carbon.event.core.notify.NotificationManager;
 import org.wso2.carbon.event.core.subscription.Subscription;
-import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.CarbonConstants;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
  * in memory implementation of the delivary manager.
  */
-public class InMemoryDeliveryManager implements DeliveryManager {
+public class InMemoryDeliveryManager implements BatchDeliveryManager {
+
+    /**
+     * reused by submitBatches to mark the subscriptions already put in to a batch
+     */
+    private static final ThreadLocal<boolean[]> GROUPED_FLAGS = new ThreadLocal<boolean[]>() {
+        @Override
+        protected boolean[] initialValue() {
+            return new boolean[16];
+        }
+    };
 
     private ExecutorService executor;
     private NotificationManager notificationManager;
     private MatchingManager matchingManager;
     private String topicStoragePath;
 
+    /**
+     * maximum number of subscriptions delivered by one executor task. if this is 1 each
+     * subscription is delivered with its own worker.
+     */
+    private int deliveryBatchSize = 1;
+
+    /**
+     * delivers the events of a subscription in the order they are published. if this is set
+     * deliveries are not batched.
+     */
+    private StripedExecutor orderedExecutor;
+
     public InMemoryDeliveryManager(ExecutorService executor, String topicStoragePath) {
         this.executor = executor;
         this.topicStoragePath = topicStoragePath;
@@ -52,16 +82,14 @@ public class InMemoryDeliveryManager implements DeliveryManager {
     public void subscribe(Subscription subscription) throws EventBrokerException {
        String resoucePath = JavaUtil.getResourcePath(subscription.getTopicName(), this.topicStoragePath);
         try {
-            UserRealm userRealm =
-                    EventBrokerHolder.getInstance().getRealmService().getTenantUserRealm
-                                               (CarbonContext.getThreadLocalCarbonContext().getTenantId());
             String userName = subscription.getOwner();
             // trim the domain part if it is there.
             if (userName.indexOf("@") != -1){
                 userName = userName.substring(0, userName.indexOf("@"));
             }
             if (userName.equals(CarbonConstants.REGISTRY_SYSTEM_USERNAME) ||
-                    userRealm.getAuthorizationManager().isUserAuthorized(
+                    AuthorizationCache.getInstance().isUserAuthorized(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(),
                         userName,
                         resoucePath,
                         EventBrokerConstants.EB_PERMISSION_SUBSCRIBE)){
@@ -82,25 +110,73 @@ public class InMemoryDeliveryManager implements DeliveryManager {
 
     public void publish(Message message, String topicName, int deliveryMode) throws EventBrokerException {
 
+        List<Subscription> subscriptions =
+                EventFilterIndex.getInstance().filter(getAuthorizedSubscriptions(topicName), message);
+        if (this.orderedExecutor != null) {
+            for (Subscription subscription : subscriptions) {
+                this.orderedExecutor.execute(subscription.getId(),
+                        new Worker(this.notificationManager, message, subscription));
+            }
+        } else if (this.deliveryBatchSize > 1) {
+            submitBatches(message, subscriptions);
+        } else {
+            for (Subscription subscription : subscriptions) {
+                this.executor.submit(new Worker(this.notificationManager, message, subscription));
+            }
+        }
+    }
+
+    public void publishBatch(List<Message> messages, String topicName, int deliveryMode)
+            throws EventBrokerException {
+
+        if (messages.isEmpty()) {
+            return;
+        }
+        // each subscription gets the messages of the batch which match its filter with one task
+        Map<Object, List<Message>> filterResults = new HashMap<Object, List<Message>>();
+        for (Subscription subscription : getAuthorizedSubscriptions(topicName)) {
+            List<Message> matchingMessages =
+                    EventFilterIndex.getInstance().filter(subscription, messages, filterResults);
+            if (matchingMessages.isEmpty()) {
+                continue;
+            }
+            MessageBatchWorker worker =
+                    new MessageBatchWorker(this.notificationManager, matchingMessages, subscription);
+            if (this.orderedExecutor != null) {
+                this.orderedExecutor.execute(subscription.getId(), worker);
+            } else {
+                this.executor.submit(worker);
+            }
+        }
+    }
+
+    /**
+     * checks whether the current user can publish to the topic and returns the subscriptions
+     * of the topic.
+     * @param topicName
+     * @return matching subscriptions
+     * @throws EventBrokerException - if the user is not authorized to publish to the topic
+     */
+    private List<Subscription> getAuthorizedSubscriptions(String topicName) throws EventBrokerException {
+
         String resoucePath = JavaUtil.getResourcePath(topicName, this.topicStoragePath);
         try {
-            UserRealm userRealm =
-                    EventBrokerHolder.getInstance().getRealmService().getTenantUserRealm
-                            (CarbonContext.getThreadLocalCarbonContext().getTenantId());
             String userName = CarbonContext.getThreadLocalCarbonContext().getUsername();
             
             if (userName == null){
                 userName = CarbonConstants.REGISTRY_SYSTEM_USERNAME;
             }
             if (userName.equals(CarbonConstants.REGISTRY_SYSTEM_USERNAME) ||
-                    userRealm.getAuthorizationManager().isUserAuthorized(
+                    AuthorizationCache.getInstance().isUserAuthorized(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(),
                         userName,
                         resoucePath,
                         EventBrokerConstants.EB_PERMISSION_PUBLISH)) {
+                long startTime = System.nanoTime();
                 List<Subscription> subscriptions = this.matchingManager.getMatchingSubscriptions(topicName);
-                for (Subscription subscription : subscriptions) {
-                    this.executor.submit(new Worker(this.notificationManager, message, subscription));
-                }
+                EventBrokerMetrics.getInstance().recordMatch(CarbonContext.getThreadLocalCarbonContext().getTenantId(),
+                        topicName, System.nanoTime() - startTime, subscriptions.size());
+                return subscriptions;
             } else {
                 throw new EventBrokerException("User " + CarbonContext.getThreadLocalCarbonContext().getUsername()
                         + " is not allowed to publish to " + topicName);
@@ -110,6 +186,74 @@ public class InMemoryDeliveryManager implements DeliveryManager {
         }
     }
 
+    /**
+     * groups the subscriptions by tenant and event dispatcher and submits a batch worker for
+     * each slice of deliveryBatchSize subscriptions of a group. Groups are found by comparing
+     * the subscriptions with the first one of each group, using a per thread flag array, so
+     * only the slices themselves are allocated.
+     * @param message
+     * @param subscriptions
+     */
+    private void submitBatches(Message message, List<Subscription> subscriptions) {
+        int size = subscriptions.size();
+        if (size == 1) {
+            this.executor.submit(new Worker(this.notificationManager, message, subscriptions.get(0)));
+            return;
+        }
+        boolean[] grouped = getGroupedFlags(size);
+        for (int i = 0; i < size; i++) {
+            if (grouped[i]) {
+                continue;
+            }
+            Subscription first = subscriptions.get(i);
+            List<Subscription> slice = new ArrayList<Subscription>(Math.min(this.deliveryBatchSize, size - i));
+            slice.add(first);
+            for (int j = i + 1; j < size; j++) {
+                if (grouped[j] || !isSameBatchGroup(first, subscriptions.get(j))) {
+                    continue;
+                }
+                grouped[j] = true;
+                if (slice.size() == this.deliveryBatchSize) {
+                    this.executor.submit(new BatchWorker(this.notificationManager, message, slice,
+                            first.getTenantId()));
+                    slice = new ArrayList<Subscription>(Math.min(this.deliveryBatchSize, size - j));
+                }
+                slice.add(subscriptions.get(j));
+            }
+            this.executor.submit(new BatchWorker(this.notificationManager, message, slice, first.getTenantId()));
+        }
+    }
+
+    private static boolean[] getGroupedFlags(int size) {
+        boolean[] grouped = GROUPED_FLAGS.get();
+        if (grouped.length < size) {
+            grouped = new boolean[Math.max(size, grouped.length * 2)];
+            GROUPED_FLAGS.set(grouped);
+        } else {
+            Arrays.fill(grouped, 0, size, false);
+        }
+        return grouped;
+    }
+
+    private static boolean isSameBatchGroup(Subscription first, Subscription subscription) {
+        if (first.getTenantId() != subscription.getTenantId()) {
+            return false;
+        }
+        if (first.getEventDispatcher() != null || subscription.getEventDispatcher() != null) {
+            return first.getEventDispatcher() == subscription.getEventDispatcher();
+        }
+        return first.getEventDispatcherName() == null ? subscription.getEventDispatcherName() == null
+                : first.getEventDispatcherName().equals(subscription.getEventDispatcherName());
+    }
+
+    public void setDeliveryBatchSize(int deliveryBatchSize) {
+        this.deliveryBatchSize = deliveryBatchSize;
+    }
+
+    public void setOrderedExecutor(StripedExecutor orderedExecutor) {
+        this.orderedExecutor = orderedExecutor;
+    }
+
     public void setMatchingManager(MatchingManager matchingManager) {
         this.matchingManager = matchingManager;
     }
@@ -119,7 +263,10 @@ public class InMemoryDeliveryManager implements DeliveryManager {
     }
 
     public void cleanUp() {
-        // nothing to clean up in the inmemory implementation.
+        this.executor.shutdown();
+        if (this.orderedExecutor != null) {
+            this.orderedExecutor.shutdown();
+        }
     }
 
     public void renewSubscription(Subscription subscription) throws EventBrokerException {
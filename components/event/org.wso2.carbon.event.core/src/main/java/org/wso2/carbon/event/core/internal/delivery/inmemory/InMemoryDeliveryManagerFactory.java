@@ -20,8 +20,11 @@ import org.wso2.carbon.event.core.delivery.DeliveryManagerFactory;
 import org.wso2.carbon.event.core.delivery.DeliveryManager;
 import org.wso2.carbon.event.core.delivery.MatchingManagerFactory;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
+import org.wso2.carbon.event.core.internal.util.BoundedThreadPoolExecutor;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
 import org.apache.axiom.om.OMElement;
 
 import javax.xml.namespace.QName;
@@ -37,6 +40,10 @@ public class InMemoryDeliveryManagerFactory implements DeliveryManagerFactory {
     public static final String EB_DM_MAX_QUEUED_REQUESTS = "maxQueuedRequests";
     public static final String EB_DM_KEEP_ALIVE_TIME = "keepAliveTime";
     public static final String EB_DM_TOPIC_STORAGE_PATH = "topicStoragePath";
+    public static final String EB_DM_DELIVERY_BATCH_SIZE = "deliveryBatchSize";
+    public static final String EB_DM_OVERFLOW_POLICY = "overflowPolicy";
+    public static final String EB_DM_MAX_QUEUED_REQUESTS_PER_TENANT = "maxQueuedRequestsPerTenant";
+    public static final String EB_DM_ORDERED_DELIVERY = "orderedDelivery";
 
     public DeliveryManager getDeliveryManger(OMElement config) throws EventBrokerConfigurationException {
 
@@ -46,14 +53,30 @@ public class InMemoryDeliveryManagerFactory implements DeliveryManagerFactory {
                 Integer.parseInt(JavaUtil.getValue(config, EB_DM_MAX_QUEUED_REQUESTS));
         int keepAliveTime = Integer.parseInt(JavaUtil.getValue(config, EB_DM_KEEP_ALIVE_TIME));
         String topicStoragePath = JavaUtil.getValue(config, EB_DM_TOPIC_STORAGE_PATH);
+        int deliveryBatchSize = Integer.parseInt(JavaUtil.getValue(config, EB_DM_DELIVERY_BATCH_SIZE, "1"));
+        String overflowPolicy = JavaUtil.getValue(config, EB_DM_OVERFLOW_POLICY,
+                BoundedThreadPoolExecutor.OVERFLOW_POLICY_REJECT);
+        int maxQueuedRequestsPerTenant =
+                Integer.parseInt(JavaUtil.getValue(config, EB_DM_MAX_QUEUED_REQUESTS_PER_TENANT, "0"));
+        if (!BoundedThreadPoolExecutor.isOverflowPolicy(overflowPolicy)) {
+            throw new EventBrokerConfigurationException("Unknown overflow policy " + overflowPolicy
+                                                        + " for the delivery manager");
+        }
 
-
-        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(maxQueuedRequests);
-
-        ExecutorService executor = new ThreadPoolExecutor(minSpareThreads, maxThreads,
-                keepAliveTime, TimeUnit.NANOSECONDS, queue);
+        BoundedThreadPoolExecutor executor = new BoundedThreadPoolExecutor("InMemoryDeliveryManager", minSpareThreads,
+                maxThreads, keepAliveTime, TimeUnit.MILLISECONDS, maxQueuedRequests, overflowPolicy,
+                maxQueuedRequestsPerTenant);
 
         InMemoryDeliveryManager delivaryManager = new InMemoryDeliveryManager(executor, topicStoragePath);
+        delivaryManager.setDeliveryBatchSize(deliveryBatchSize);
+        StripedExecutor orderedExecutor = null;
+        if (Boolean.parseBoolean(JavaUtil.getValue(config, EB_DM_ORDERED_DELIVERY, "false"))) {
+            // events of a subscription are delivered one after the other by one of the maxThreads lanes
+            orderedExecutor = new StripedExecutor("InMemoryDeliveryManager", maxThreads,
+                    keepAliveTime, maxQueuedRequests, overflowPolicy, maxQueuedRequestsPerTenant);
+            delivaryManager.setOrderedExecutor(orderedExecutor);
+        }
+        EventBrokerMetrics.getInstance().setDeliveryExecutors(executor, orderedExecutor);
 
         // creates the matching manager
         OMElement matchingManagerElement =
@@ -23,7 +23,7 @@ import org.wso2.carbon.context.CarbonContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -54,7 +54,7 @@ public class InMemoryMatchingManager implements MatchingManager {
         if(inMemorySubscriptionStorage != null) {
             return inMemorySubscriptionStorage.getMatchingSubscriptions(topicName);
         } else {
-            return new ArrayList<Subscription>();
+            return Collections.emptyList();
         }
     }
 
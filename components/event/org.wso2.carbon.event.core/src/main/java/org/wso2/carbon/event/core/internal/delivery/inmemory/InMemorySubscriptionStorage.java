@@ -16,110 +16,137 @@
 
 package org.wso2.carbon.event.core.internal.delivery.inmemory;
 
+import org.wso2.carbon.event.core.internal.delivery.TopicTrie;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * this class is used to keep the details of the subscription storage. Simply this contains
  * maps to keep the subscrition object deatils with the topic details
  */
 public class InMemorySubscriptionStorage {
+
     /**
-     * map to keep the subscription details with the topics. This is important in finding subscriptions
+     * upper limit of the published topics for which the fan out list is kept.
+     */
+    private static final int MAX_FAN_OUT_CACHE_SIZE = 10000;
+
+    /**
+     * topic tree to keep the subscription details with the topics. This is important in finding subscriptions
      * for a pirticular topic when publishing a message to a topic.
      */
-    private Map<String, Map<String, Subscription>> topicSubscriptionMap;
+    private TopicTrie<Subscription> topicSubscriptionTrie;
 
     /**
      * keep the subscription id with the topic name. This is important when subscribing the resouces.
      */
     private Map<String, String> subscriptionIDTopicNameMap;
 
+    /**
+     * keep the matching subscriptions of the normalized published topics, least recently published topic
+     * first. A subscription change only removes the topics the subscription matches.
+     */
+    private Map<String, List<Subscription>> topicFanOutMap;
+
+    /**
+     * incremented on every subscription change, so that a fan out list computed while the
+     * subscriptions change is not kept.
+     */
+    private AtomicLong subscriptionVersion;
+
     public InMemorySubscriptionStorage() {
-        this.topicSubscriptionMap = new ConcurrentHashMap<String, Map<String, Subscription>>();
+        this.topicSubscriptionTrie = new TopicTrie<Subscription>();
         this.subscriptionIDTopicNameMap = new ConcurrentHashMap<String, String>();
+        this.topicFanOutMap = Collections.synchronizedMap(
+                new LinkedHashMap<String, List<Subscription>>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, List<Subscription>> eldest) {
+                        return size() > MAX_FAN_OUT_CACHE_SIZE;
+                    }
+                });
+        this.subscriptionVersion = new AtomicLong();
     }
 
     public void addSubscription(Subscription subscription) {
         String topicName = getTopicName(subscription.getTopicName());
-        Map<String, Subscription> subscriptionsMap = this.topicSubscriptionMap.get(topicName);
-        if (subscriptionsMap == null){
-            subscriptionsMap = new ConcurrentHashMap<String, Subscription>();
-            this.topicSubscriptionMap.put(topicName, subscriptionsMap);
-        }
-        subscriptionsMap.put(subscription.getId(), subscription);
+        this.topicSubscriptionTrie.put(topicName, subscription.getId(), subscription);
         this.subscriptionIDTopicNameMap.put(subscription.getId(), topicName);
+        subscriptionsChanged(topicName);
     }
 
+    /**
+     * returns the subscriptions matching the given topic. The returned list is shared between
+     * the publishers of the topic and hence can not be modified.
+     * @param topicName - published topic name
+     * @return unmodifiable list of matching subscriptions
+     */
     public List<Subscription> getMatchingSubscriptions(String topicName) {
         topicName = getTopicName(topicName);
-        List<Subscription> subscriptions = new ArrayList();
+        List<Subscription> fanOut = this.topicFanOutMap.get(topicName);
+        if (fanOut != null) {
+            return fanOut;
+        }
 
-        List<String> matchingTopicNames = getTopicMatchingNames(topicName);
-        for (String matchingTopicName : matchingTopicNames){
-             if (this.topicSubscriptionMap.get(matchingTopicName) != null){
-                 subscriptions.addAll(this.topicSubscriptionMap.get(matchingTopicName).values());
-             }
+        long version = this.subscriptionVersion.get();
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        this.topicSubscriptionTrie.getMatches(topicName, subscriptions);
+        fanOut = Collections.unmodifiableList(subscriptions);
+        this.topicFanOutMap.put(topicName, fanOut);
+        if (this.subscriptionVersion.get() != version) {
+            // the subscriptions changed during the lookup, which may have been missed by it
+            this.topicFanOutMap.remove(topicName);
         }
-        return subscriptions;
+        return fanOut;
     }
 
     public void unSubscribe(String subscriptionID) throws EventBrokerException {
-        String topicName = getTopicName(this.subscriptionIDTopicNameMap.get(subscriptionID));
+        String topicName = this.subscriptionIDTopicNameMap.get(subscriptionID);
         if (topicName == null){
             throw new EventBrokerException("Subscription with ID " + subscriptionID + " does not exits");
         }
-        Map<String, Subscription> subscriptionsMap = this.topicSubscriptionMap.get(topicName);
-        if (subscriptionsMap == null){
+        if (this.topicSubscriptionTrie.remove(topicName, subscriptionID) == null){
             throw new EventBrokerException("Subscription with ID " + subscriptionID + " does not exits");
         }
-        subscriptionsMap.remove(subscriptionID);
         this.subscriptionIDTopicNameMap.remove(subscriptionID);
+        subscriptionsChanged(topicName);
     }
 
     public void renewSubscription(Subscription subscription) throws EventBrokerException {
         String topicName = getTopicName(subscription.getTopicName());
-        Map<String, Subscription> subscriptionsMap = this.topicSubscriptionMap.get(topicName);
-        if (subscriptionsMap == null){
-            throw new EventBrokerException("There is no subscriptions with topic " + topicName);
-        }
-
-        Subscription existingSubscription = subscriptionsMap.get(subscription.getId());
+        Subscription existingSubscription = this.topicSubscriptionTrie.get(topicName, subscription.getId());
 
         if (existingSubscription == null){
             throw new EventBrokerException("There is no subscription with subscription id " + subscription.getId());
         }
 
+        // the cached fan out lists hold the same subscription object, so they are still valid
         existingSubscription.setExpires(subscription.getExpires());
         existingSubscription.setProperties(subscription.getProperties());
-
     }
 
-    private List<String> getTopicMatchingNames(String topicName) {
-        List<String> matchingTopicNames = new ArrayList<String>();
-
-        if (topicName.equals("/")) {
-            matchingTopicNames.add("/#");
-        } else {
-            String currentTopicName = "";
-            String[] topicParts = topicName.split("/");
-            int i = 0; // the first part if the split parts are "" since always topics start with /
-            while (i < (topicParts.length)) {
-                currentTopicName = currentTopicName + topicParts[i] + "/";
-                matchingTopicNames.add(currentTopicName + "#");
-                if (i == (topicParts.length - 1)||i == (topicParts.length - 2)) {
-                    matchingTopicNames.add(currentTopicName + "*");
+    /**
+     * removes the cached fan out lists of the published topics the changed subscription matches.
+     * Must be called after the topic tree is changed.
+     * @param topicName - normalized topic name of the changed subscription
+     */
+    private void subscriptionsChanged(String topicName) {
+        this.subscriptionVersion.incrementAndGet();
+        synchronized (this.topicFanOutMap) {
+            for (Iterator<String> iterator = this.topicFanOutMap.keySet().iterator(); iterator.hasNext();) {
+                if (TopicTrie.matches(topicName, iterator.next())) {
+                    iterator.remove();
                 }
-                i++;
             }
         }
-        matchingTopicNames.add(topicName);
-        return matchingTopicNames;
     }
 
     private String getTopicName(String topicName){
@@ -20,7 +20,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.event.core.Message;
-import org.wso2.carbon.event.core.delivery.DeliveryManager;
+import org.wso2.carbon.event.core.delivery.BatchDeliveryManager;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
 import org.wso2.carbon.event.core.notify.NotificationManager;
@@ -31,6 +31,8 @@ import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import javax.jms.*;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,7 +40,7 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * this class provides a JMS based delivary manager
  */
-public abstract class JMSDeliveryManager implements DeliveryManager {
+public abstract class JMSDeliveryManager implements BatchDeliveryManager {
 
      private static final Log log = LogFactory.getLog(JMSDeliveryManager.class);
 
@@ -46,9 +48,15 @@ public abstract class JMSDeliveryManager implements DeliveryManager {
 
     private Map<String, JMSSubscriptionDetails> subscriptionIDSessionDetailsMap;
 
+    /**
+     * pooled connections, sessions and publishers used to publish messages
+     */
+    private JMSPublisherPool publisherPool;
+
     protected JMSDeliveryManager() {
         this.subscriptionIDSessionDetailsMap
                 = new ConcurrentHashMap<String, JMSSubscriptionDetails>();
+        this.publisherPool = new JMSPublisherPool(this);
     }
 
     protected abstract Properties getInitialContextProperties(String userName, String password);
@@ -120,12 +128,7 @@ public abstract class JMSDeliveryManager implements DeliveryManager {
             } else {
                 topicName = getTopicName(subscription.getTopicName());
             }
-            Topic topic = topicSession.createTopic(topicName);
-            //Some times we are not getting the proper topic with the required syntax, if it is not
-            //appropriate we need to check and add the BURL syntax to fix the issue https://wso2.org/jira/browse/MB-185
-            if(!topic.toString().startsWith("topic://amq.topic")){
-                topic = topicSession.createTopic("BURL:"+topicName);
-            }
+            Topic topic = createTopic(topicSession, topicName);
             TopicSubscriber topicSubscriber =
                              topicSession.createDurableSubscriber(topic, subscription.getId());
             topicSubscriber.setMessageListener(jmsMessageListener);
@@ -142,8 +145,16 @@ public abstract class JMSDeliveryManager implements DeliveryManager {
     }
 
     public void publish(Message message, String topicName, int deliveryMode) throws EventBrokerException {
+        publishBatch(Collections.singletonList(message), topicName, deliveryMode);
+    }
 
-        if (isDeactivated()){
+    /**
+     * publishes all the messages with the same pooled session and topic publisher.
+     */
+    public void publishBatch(List<Message> messages, String topicName, int deliveryMode)
+            throws EventBrokerException {
+
+        if (isDeactivated() || messages.isEmpty()){
             return;
         }
 
@@ -154,10 +165,6 @@ public abstract class JMSDeliveryManager implements DeliveryManager {
                 userName = CarbonConstants.REGISTRY_SYSTEM_USERNAME;
             }
 
-            TopicConnection topicConnection = getTopicConnection(userName);
-            TopicSession topicSession =
-                    topicConnection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
-
             String tenantDomain= EventBrokerHolder.getInstance().getTenantDomain();
             if (tenantDomain != null && (!tenantDomain.equals(org.wso2.carbon.base.MultitenantConstants.SUPER_TENANT_DOMAIN_NAME))) {
                 if (!topicName.startsWith("/")) {
@@ -169,38 +176,59 @@ public abstract class JMSDeliveryManager implements DeliveryManager {
                 topicName = getTopicName(topicName);
             }
 
-            Topic topic = topicSession.createTopic(topicName);
-            //Some times we are not getting the proper topic with the required syntax, if it is not
-            //appropriate we need to check and add the BURL syntax to fix the issue https://wso2.org/jira/browse/MB-185
-            if (!topic.toString().startsWith("topic://amq.topic")) {
-                topic = topicSession.createTopic("BURL:" + topicName);
-            }
-            TopicPublisher topicPublisher = topicSession.createPublisher(topic);
-            topicPublisher.setDeliveryMode(deliveryMode);
-            TextMessage textMessage =
-                    topicSession.createTextMessage(message.getMessage().toString());
-
-            Map<String, String> properties = message.getProperties();
-            for (String key : properties.keySet()){
-                textMessage.setStringProperty(key, properties.get(key));
-            }
-
-            // saving the domain to be used send with the soap header
-            if (CarbonContext.getThreadLocalCarbonContext().getTenantDomain() != null){
-                textMessage.setStringProperty(MultitenantConstants.TENANT_DOMAIN_HEADER_NAME,
-                                            CarbonContext.getThreadLocalCarbonContext().getTenantDomain());
+            JMSPublisherPool.PooledSession pooledSession = this.publisherPool.borrowSession(userName);
+            boolean published = false;
+            try {
+                TopicPublisher topicPublisher = pooledSession.getPublisher(topicName);
+                for (Message message : messages) {
+                    TextMessage textMessage =
+                            pooledSession.getTopicSession().createTextMessage(message.getMessage().toString());
+
+                    Map<String, String> properties = message.getProperties();
+                    for (String key : properties.keySet()){
+                        textMessage.setStringProperty(key, properties.get(key));
+                    }
+
+                    // saving the domain to be used send with the soap header
+                    if (CarbonContext.getThreadLocalCarbonContext().getTenantDomain() != null){
+                        textMessage.setStringProperty(MultitenantConstants.TENANT_DOMAIN_HEADER_NAME,
+                                                    CarbonContext.getThreadLocalCarbonContext().getTenantDomain());
+                    }
+
+                    topicPublisher.publish(textMessage, deliveryMode,
+                            javax.jms.Message.DEFAULT_PRIORITY, javax.jms.Message.DEFAULT_TIME_TO_LIVE);
+                }
+                published = true;
+            } finally {
+                // a session which failed to publish is closed together with its connection
+                this.publisherPool.returnSession(pooledSession, published);
             }
-
-            topicPublisher.publish(textMessage);
-            topicPublisher.close();
-            topicSession.close();
-            topicConnection.stop();
-            topicConnection.close();
         } catch (JMSException e) {
             throw new EventBrokerException("Can not publish to topic " + topicName + " " + e.getMessage(), e);
         }
     }
 
+    /**
+     * creates the topic with the given name in the session.
+     * @param topicSession
+     * @param topicName - JMS topic name
+     * @return the topic
+     * @throws JMSException
+     */
+    Topic createTopic(TopicSession topicSession, String topicName) throws JMSException {
+        Topic topic = topicSession.createTopic(topicName);
+        //Some times we are not getting the proper topic with the required syntax, if it is not
+        //appropriate we need to check and add the BURL syntax to fix the issue https://wso2.org/jira/browse/MB-185
+        if (!topic.toString().startsWith("topic://amq.topic")) {
+            topic = topicSession.createTopic("BURL:" + topicName);
+        }
+        return topic;
+    }
+
+    public JMSPublisherPool getPublisherPool() {
+        return publisherPool;
+    }
+
     public void unSubscribe(String id) throws EventBrokerException {
 
         JMSSubscriptionDetails jmsSubscriptionDetails =
@@ -230,6 +258,7 @@ public abstract class JMSDeliveryManager implements DeliveryManager {
             Thread.sleep(3000);
         } catch (InterruptedException e) {}
 
+        this.publisherPool.close();
         for (JMSSubscriptionDetails jmsSubscriptionDetails :
                 this.subscriptionIDSessionDetailsMap.values()) {
             jmsSubscriptionDetails.close();
@@ -17,6 +17,7 @@
 package org.wso2.carbon.event.core.internal.delivery.jms;
 
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.internal.delivery.EventFilterIndex;
 import org.wso2.carbon.event.core.notify.NotificationManager;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
@@ -71,6 +72,10 @@ public class JMSMessageListener implements MessageListener {
                     messageToSend.addProperty(key, message.getStringProperty(key));
                 }
 
+                // the JMS topic delivers every message of the topic, so content filters apply here
+                if (!EventFilterIndex.getInstance().matches(this.subscription, messageToSend)) {
+                    return;
+                }
                 this.notificationManager.sendNotification(messageToSend, this.subscription);
             } else {
                 log.warn("Non text message received");
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery.jms;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Session;
+import javax.jms.TopicConnection;
+import javax.jms.TopicPublisher;
+import javax.jms.TopicSession;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * pool of topic connections and sessions used by the JMS delivery manager to publish
+ * messages. There is one connection per user (the user name contains the tenant domain) and
+ * a set of idle sessions on it. Each session caches the publishers of the topics it has
+ * published to. A connection which reports an error through its exception listener or fails
+ * while publishing is dropped and recreated on the next publish. Sessions and connections
+ * which are not used for idleTimeout milliseconds are closed by a background task. A
+ * connection with borrowed sessions is never closed for being idle.
+ */
+public class JMSPublisherPool {
+
+    private static final Log log = LogFactory.getLog(JMSPublisherPool.class);
+
+    public static final int DEFAULT_MAX_IDLE_SESSIONS = 10;
+    public static final int DEFAULT_MAX_PUBLISHERS_PER_SESSION = 100;
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private JMSDeliveryManager deliveryManager;
+
+    private ConcurrentMap<String, PooledConnection> userConnectionMap;
+
+    private int maxIdleSessions = DEFAULT_MAX_IDLE_SESSIONS;
+    private int maxPublishersPerSession = DEFAULT_MAX_PUBLISHERS_PER_SESSION;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private ScheduledExecutorService evictionExecutor;
+
+    public JMSPublisherPool(JMSDeliveryManager deliveryManager) {
+        this.deliveryManager = deliveryManager;
+        this.userConnectionMap = new ConcurrentHashMap<String, PooledConnection>();
+    }
+
+    /**
+     * returns a session of the given user which is not used by any other thread. The session
+     * must be given back with {@link #returnSession(PooledSession, boolean)}.
+     * @param userName - user name including the tenant domain
+     * @return pooled session
+     * @throws EventBrokerException - if a connection or session can not be created
+     */
+    public PooledSession borrowSession(String userName) throws EventBrokerException {
+        startEvictionTask();
+        PooledConnection connection = getConnection(userName);
+        connection.borrowedSessionCount.incrementAndGet();
+        while (connection.failed) {
+            // the connection was invalidated after it was looked up, so get a new one
+            releaseBorrowedSession(connection);
+            connection = getConnection(userName);
+            connection.borrowedSessionCount.incrementAndGet();
+        }
+        connection.lastUsedTime = System.currentTimeMillis();
+        PooledSession session = connection.idleSessions.poll();
+        while (session != null) {
+            connection.idleSessionCount.decrementAndGet();
+            if (!session.isExpired(System.currentTimeMillis())) {
+                return session;
+            }
+            session.close();
+            session = connection.idleSessions.poll();
+        }
+        try {
+            TopicSession topicSession =
+                    connection.topicConnection.createTopicSession(false, Session.AUTO_ACKNOWLEDGE);
+            return new PooledSession(connection, topicSession);
+        } catch (JMSException e) {
+            // the connection is not usable any more
+            releaseBorrowedSession(connection);
+            invalidate(connection, true);
+            throw new EventBrokerException("Can not create topic session " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * gives the session back to the pool.
+     * @param session - borrowed session
+     * @param healthy - false if the session failed while it was used. Then the session and
+     * its connection are closed.
+     */
+    public void returnSession(PooledSession session, boolean healthy) {
+        PooledConnection connection = session.connection;
+        if (!healthy) {
+            session.close();
+            releaseBorrowedSession(connection);
+            invalidate(connection, true);
+            return;
+        }
+        long currentTime = System.currentTimeMillis();
+        session.lastUsedTime = currentTime;
+        connection.lastUsedTime = currentTime;
+        if (connection.failed || connection.idleSessionCount.get() >= this.maxIdleSessions) {
+            session.close();
+        } else {
+            connection.idleSessionCount.incrementAndGet();
+            connection.idleSessions.offer(session);
+        }
+        releaseBorrowedSession(connection);
+    }
+
+    /**
+     * closes all the pooled sessions and connections.
+     */
+    public void close() {
+        synchronized (this) {
+            if (this.evictionExecutor != null) {
+                this.evictionExecutor.shutdownNow();
+                this.evictionExecutor = null;
+            }
+        }
+        for (PooledConnection connection : this.userConnectionMap.values()) {
+            invalidate(connection, true);
+        }
+    }
+
+    public void setMaxIdleSessions(int maxIdleSessions) {
+        this.maxIdleSessions = maxIdleSessions;
+    }
+
+    public void setMaxPublishersPerSession(int maxPublishersPerSession) {
+        this.maxPublishersPerSession = maxPublishersPerSession;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    private PooledConnection getConnection(String userName) throws EventBrokerException {
+        PooledConnection connection = this.userConnectionMap.get(userName);
+        if (connection != null && !connection.failed) {
+            return connection;
+        }
+        synchronized (this.userConnectionMap) {
+            connection = this.userConnectionMap.get(userName);
+            if (connection == null || connection.failed) {
+                if (connection != null) {
+                    invalidate(connection, false);
+                }
+                connection = new PooledConnection(userName, this.deliveryManager.getTopicConnection(userName));
+                this.userConnectionMap.put(userName, connection);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * drops the connection from the pool and closes its idle sessions.
+     * @param connection - connection to drop
+     * @param force - if false the connection itself is only closed once all its borrowed
+     * sessions are returned
+     */
+    private void invalidate(PooledConnection connection, boolean force) {
+        connection.failed = true;
+        // a replacement connection of the same user may already be in the map
+        this.userConnectionMap.remove(connection.userName, connection);
+        for (PooledSession session = connection.idleSessions.poll(); session != null;
+             session = connection.idleSessions.poll()) {
+            connection.idleSessionCount.decrementAndGet();
+            session.close();
+        }
+        if (force || connection.borrowedSessionCount.get() == 0) {
+            connection.close();
+        }
+    }
+
+    private void releaseBorrowedSession(PooledConnection connection) {
+        if (connection.borrowedSessionCount.decrementAndGet() == 0 && connection.failed) {
+            connection.close();
+        }
+    }
+
+    private synchronized void startEvictionTask() {
+        if (this.evictionExecutor != null || this.idleTimeout <= 0) {
+            return;
+        }
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "JMSPublisherPoolEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, this.idleTimeout / 2);
+        this.evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evictIdle();
+                } catch (Throwable e) {
+                    log.error("Error while evicting idle JMS publisher sessions", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIdle() {
+        long currentTime = System.currentTimeMillis();
+        for (PooledConnection connection : this.userConnectionMap.values()) {
+            for (Iterator<PooledSession> iterator = connection.idleSessions.iterator(); iterator.hasNext();) {
+                PooledSession session = iterator.next();
+                if (session.isExpired(currentTime) && connection.idleSessions.remove(session)) {
+                    connection.idleSessionCount.decrementAndGet();
+                    session.close();
+                }
+            }
+            if (connection.borrowedSessionCount.get() == 0
+                && currentTime - connection.lastUsedTime > this.idleTimeout) {
+                // a session borrowed meanwhile keeps the connection open until it is returned
+                invalidate(connection, false);
+            }
+        }
+    }
+
+    /**
+     * topic connection of a user together with its idle sessions
+     */
+    private class PooledConnection implements ExceptionListener {
+
+        private final String userName;
+        private final TopicConnection topicConnection;
+        private final ConcurrentLinkedQueue<PooledSession> idleSessions;
+        private final AtomicInteger idleSessionCount;
+        private final AtomicInteger borrowedSessionCount;
+        private final AtomicBoolean closed;
+        private volatile boolean failed;
+        private volatile long lastUsedTime;
+
+        private PooledConnection(String userName, TopicConnection topicConnection) {
+            this.userName = userName;
+            this.topicConnection = topicConnection;
+            this.idleSessions = new ConcurrentLinkedQueue<PooledSession>();
+            this.idleSessionCount = new AtomicInteger();
+            this.borrowedSessionCount = new AtomicInteger();
+            this.closed = new AtomicBoolean();
+            this.lastUsedTime = System.currentTimeMillis();
+            try {
+                topicConnection.setExceptionListener(this);
+            } catch (JMSException e) {
+                log.warn("Can not register the exception listener of the pooled topic connection", e);
+            }
+        }
+
+        public void onException(JMSException e) {
+            log.warn("Pooled topic connection of user " + this.userName + " failed, it will be recreated", e);
+            invalidate(this, true);
+        }
+
+        private void close() {
+            if (!this.closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                this.topicConnection.stop();
+                this.topicConnection.close();
+            } catch (JMSException e) {
+                log.warn("Can not close the pooled topic connection of user " + this.userName, e);
+            }
+        }
+    }
+
+    /**
+     * topic session with the publishers created on it. A session is used by one thread at a time.
+     */
+    public class PooledSession {
+
+        private final PooledConnection connection;
+        private final TopicSession topicSession;
+        private final Map<String, TopicPublisher> topicPublisherMap;
+        private long lastUsedTime;
+
+        private PooledSession(PooledConnection connection, TopicSession topicSession) {
+            this.connection = connection;
+            this.topicSession = topicSession;
+            this.lastUsedTime = System.currentTimeMillis();
+            this.topicPublisherMap = new LinkedHashMap<String, TopicPublisher>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TopicPublisher> eldest) {
+                    if (size() > maxPublishersPerSession) {
+                        closePublisher(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        public TopicSession getTopicSession() {
+            return topicSession;
+        }
+
+        /**
+         * returns the cached publisher of the topic or creates a new one.
+         * @param topicName - JMS topic name
+         * @return topic publisher
+         * @throws JMSException - if the publisher can not be created
+         */
+        public TopicPublisher getPublisher(String topicName) throws JMSException {
+            TopicPublisher topicPublisher = this.topicPublisherMap.get(topicName);
+            if (topicPublisher == null) {
+                topicPublisher = this.topicSession.createPublisher(
+                        deliveryManager.createTopic(this.topicSession, topicName));
+                this.topicPublisherMap.put(topicName, topicPublisher);
+            }
+            return topicPublisher;
+        }
+
+        private boolean isExpired(long currentTime) {
+            return idleTimeout > 0 && currentTime - this.lastUsedTime > idleTimeout;
+        }
+
+        private void close() {
+            for (TopicPublisher topicPublisher : this.topicPublisherMap.values()) {
+                closePublisher(topicPublisher);
+            }
+            this.topicPublisherMap.clear();
+            try {
+                this.topicSession.close();
+            } catch (JMSException e) {
+                log.warn("Can not close the pooled topic session", e);
+            }
+        }
+
+        private void closePublisher(TopicPublisher topicPublisher) {
+            try {
+                topicPublisher.close();
+            } catch (JMSException e) {
+                log.warn("Can not close the pooled topic publisher", e);
+            }
+        }
+    }
+}
@@ -50,6 +50,10 @@ public class QpidJMSDeliveryManagerFactory implements DeliveryManagerFactory {
     public static final String EB_CLIENT_ID = "clientID";
     public static final String EB_VIRTUAL_HOST_NAME = "virtualHostName";
     public static final String EB_TYPE = "type";
+    public static final String EB_PUBLISHER_POOL = "publisherPool";
+    public static final String EB_POOL_MAX_IDLE_SESSIONS = "maxIdleSessionsPerUser";
+    public static final String EB_POOL_MAX_PUBLISHERS_PER_SESSION = "maxPublishersPerSession";
+    public static final String EB_POOL_IDLE_TIMEOUT = "idleTimeout";
     public static final String EB_REMOTE_MESSAGE_BROKER_PASSWORD_ALIAS = "eventBrokerConfig.eventBroker.deliveryManager.remoteMessageBroker.password";
 
     public DeliveryManager getDeliveryManger(OMElement config)
@@ -58,6 +62,20 @@ public class QpidJMSDeliveryManagerFactory implements DeliveryManagerFactory {
         String type = config.getAttributeValue(new QName(null, EB_TYPE));
         QpidJMSDeliveryManager qpidJMSDelivaryManager = new QpidJMSDeliveryManager(type);
 
+        // optional settings of the pool used to publish messages
+        OMElement publisherPool =
+                config.getFirstChildWithName(new QName(EventBrokerConstants.EB_CONF_NAMESPACE, EB_PUBLISHER_POOL));
+        if (publisherPool != null) {
+            JMSPublisherPool pool = qpidJMSDelivaryManager.getPublisherPool();
+            pool.setMaxIdleSessions(Integer.parseInt(JavaUtil.getValue(publisherPool, EB_POOL_MAX_IDLE_SESSIONS,
+                    String.valueOf(JMSPublisherPool.DEFAULT_MAX_IDLE_SESSIONS))));
+            pool.setMaxPublishersPerSession(Integer.parseInt(JavaUtil.getValue(publisherPool,
+                    EB_POOL_MAX_PUBLISHERS_PER_SESSION,
+                    String.valueOf(JMSPublisherPool.DEFAULT_MAX_PUBLISHERS_PER_SESSION))));
+            pool.setIdleTimeout(Long.parseLong(JavaUtil.getValue(publisherPool, EB_POOL_IDLE_TIMEOUT,
+                    String.valueOf(JMSPublisherPool.DEFAULT_IDLE_TIMEOUT))));
+        }
+
         if (QpidJMSDeliveryManager.MB_TYPE_REMOTE.equals(type)) {
 
             OMElement remoteQpidAdminService =
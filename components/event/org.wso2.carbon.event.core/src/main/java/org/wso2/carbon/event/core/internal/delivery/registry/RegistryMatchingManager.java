@@ -20,6 +20,7 @@ import org.wso2.carbon.event.core.delivery.MatchingManager;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
 import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
+import org.wso2.carbon.event.core.internal.subscription.registry.RegistrySubscriptionIndex;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.registry.core.Collection;
@@ -29,9 +30,14 @@ import org.wso2.carbon.registry.core.service.RegistryService;
 import org.wso2.carbon.registry.core.session.UserRegistry;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.List;
 
+/**
+ * matching manager which uses the subscriptions persisted by the registry subscription manager.
+ * Matching subscriptions are taken from the in memory subscription index maintained by the
+ * subscription manager. The registry is only read if the subscriptions of the tenant have not
+ * been loaded to the index yet.
+ */
 public class RegistryMatchingManager implements MatchingManager {
 
     /**
@@ -57,6 +63,16 @@ public class RegistryMatchingManager implements MatchingManager {
     public List<Subscription> getMatchingSubscriptions(String topicName)
             throws EventBrokerException {
 
+        List<Subscription> matchingSubscriptions = RegistrySubscriptionIndex.getInstance().getSubscriptions(
+                EventBrokerHolder.getInstance().getTenantId(), topicName);
+        if (matchingSubscriptions != null) {
+            return matchingSubscriptions;
+        }
+        return getPersistedSubscriptions(topicName);
+    }
+
+    private List<Subscription> getPersistedSubscriptions(String topicName) throws EventBrokerException {
+
         // since all the subscriptions for the same topic is stored in the
         // same path we can get all the subscriptions by getting all the chlid
         // resources under to topoic name.
@@ -74,6 +90,7 @@ public class RegistryMatchingManager implements MatchingManager {
             UserRegistry userRegistry =
                     this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
             String subscriptionID = null;
+            long currentTime = System.currentTimeMillis();
             if (userRegistry.resourceExists(topicResourcePath)) {
                 Collection subscriptions = (Collection) userRegistry.get(topicResourcePath);
                 String[] subscriptionPaths = (String[]) subscriptions.getContent();
@@ -84,15 +101,9 @@ public class RegistryMatchingManager implements MatchingManager {
                     subscription.setId(subscriptionID);
                     subscription.setTopicName(topicName);
 
-                    // check for expiration
-                    Calendar current = Calendar.getInstance(); //Get current date and time
-                    if (subscription.getExpires() != null) {
-                        if (current.before(subscription.getExpires())) {
-                            // add only valid subscriptions by checking the expiration
-                            matchingSubscriptions.add(subscription);
-                        }
-                    } else {
-                        // If a expiration dosen't exisits treat it as a never expire subscription, valid till unsubscribe
+                    // add only valid subscriptions by checking the expiration. If a expiration dosen't
+                    // exisits treat it as a never expire subscription, valid till unsubscribe
+                    if (subscription.getExpiryTime() > currentTime) {
                         matchingSubscriptions.add(subscription);
                     }
                 }
@@ -105,14 +116,15 @@ public class RegistryMatchingManager implements MatchingManager {
     }
 
     public void unSubscribe(String subscriptionID) throws EventBrokerException {
-         //TODO : implement the method properly
+        // the subscription manager removes it from the registry and the subscription index
     }
 
     public void renewSubscription(Subscription subscription) throws EventBrokerException {
-        //TODO: implement the method properly
+        // the subscription manager updates the registry and the subscription index
     }
 
     public void initializeTenant() throws EventBrokerException {
-        // there is nothing to do when initializing the tenant
+        // the subscription index of the tenant is loaded when the event broker loads the
+        // existing subscriptions
     }
 }
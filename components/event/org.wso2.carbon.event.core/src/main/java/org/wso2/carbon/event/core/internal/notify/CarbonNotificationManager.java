@@ -17,20 +17,22 @@
 package org.wso2.carbon.event.core.internal.notify;
 
 import org.wso2.carbon.event.core.exception.EventBrokerException;
-import org.wso2.carbon.event.core.notify.NotificationManager;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
+import org.wso2.carbon.event.core.notify.BatchNotificationManager;
+import org.wso2.carbon.event.core.subscription.BatchEventDispatcher;
 import org.wso2.carbon.event.core.subscription.EventDispatcher;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.Message;
 
+import java.util.List;
 import java.util.Map;
-import java.util.Calendar;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Notification manager of the carbon. This implements the send notification
  * method which can be used by any delivary manager interface
  */
-public class CarbonNotificationManager implements NotificationManager{
+public class CarbonNotificationManager implements BatchNotificationManager {
 
     private Map<String, EventDispatcher> eventDispatchMap;
 
@@ -41,17 +43,76 @@ public class CarbonNotificationManager implements NotificationManager{
     public void sendNotification(Message message, Subscription subscription)
             throws EventBrokerException {
 
-        if (subscription.getExpires() != null){
-            Calendar calendar = Calendar.getInstance();
-            if (calendar.after(subscription.getExpires())){
-                // this sequence has already expied.
-                return;
+        if (isExpired(subscription)){
+            // this sequence has already expied.
+            return;
+        }
+
+        EventDispatcher eventDispatcher = getEventDispatcher(subscription);
+        long startTime = System.nanoTime();
+        boolean failed = true;
+        try {
+            eventDispatcher.notify(message, subscription);
+            failed = false;
+        } finally {
+            recordDispatch(subscription, startTime, failed);
+        }
+    }
+
+    public void sendNotification(List<Message> messages, Subscription subscription)
+            throws EventBrokerException {
+
+        if (isExpired(subscription)){
+            return;
+        }
+
+        EventDispatcher eventDispatcher = getEventDispatcher(subscription);
+        if (eventDispatcher instanceof BatchEventDispatcher){
+            long startTime = System.nanoTime();
+            boolean failed = true;
+            try {
+                ((BatchEventDispatcher) eventDispatcher).notify(messages, subscription);
+                failed = false;
+            } finally {
+                recordDispatch(subscription, startTime, failed);
+            }
+        } else {
+            for (Message message : messages){
+                long startTime = System.nanoTime();
+                boolean failed = true;
+                try {
+                    eventDispatcher.notify(message, subscription);
+                    failed = false;
+                } finally {
+                    recordDispatch(subscription, startTime, failed);
+                }
             }
         }
+    }
+
+    /**
+     * records the time taken by the event dispatcher against the event sink of the subscription
+     */
+    private void recordDispatch(Subscription subscription, long startTime, boolean failed) {
+        EventBrokerMetrics.getInstance().recordDispatch(subscription.getTenantId(),
+                subscription.getEventSinkURL(), System.nanoTime() - startTime, failed);
+    }
 
-         //send the message using the appropriate method of the subscription attributes
+    /**
+     * expired subscriptions are removed by the expiry wheel of the event broker. This only
+     * covers the ones which expire before the wheel reaches them.
+     */
+    private boolean isExpired(Subscription subscription) {
+        return subscription.getExpiryTime() < System.currentTimeMillis();
+    }
+
+    /**
+     * returns the event dispatcher to send the messages using the appropriate method of the
+     * subscription attributes
+     */
+    private EventDispatcher getEventDispatcher(Subscription subscription) throws EventBrokerException {
         if (subscription.getEventDispatcher() != null){
-            subscription.getEventDispatcher().notify(message, subscription);
+            return subscription.getEventDispatcher();
         } else if (subscription.getEventDispatcherName() != null){
             EventDispatcher eventDispatcher =
                     this.eventDispatchMap.get(subscription.getEventDispatcherName());
@@ -59,11 +120,10 @@ public class CarbonNotificationManager implements NotificationManager{
                 throw new EventBrokerException("Event dispatcher with name "
                         + subscription.getEventDispatcherName() + " is not exists");
             }
-            eventDispatcher.notify(message, subscription);
+            return eventDispatcher;
         } else {
             throw new EventBrokerException("Can not send the notification ");
         }
-
     }
 
     public void registerEventDispatcher(String name, EventDispatcher eventDispatcher){
@@ -0,0 +1,539 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.subscription.registry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.internal.util.JavaUtil;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * in memory copy of the subscriptions persisted by the registry subscription manager. The
+ * registry subscription manager loads the subscriptions of a tenant when it reads all of
+ * them and updates the index whenever it writes to the registry. The registry matching
+ * manager then resolves the subscriptions of a published topic from this index without
+ * accessing the registry.
+ *
+ * Subscriptions are grouped by the topic path they are stored under, which is the same
+ * grouping the registry collections have. Expired subscriptions are skipped when matching
+ * until the expiry wheel of the event broker unsubscribes them. Subscriptions are also
+ * indexed by the topic path and the event sink url, which is used to find an existing
+ * subscription of the same sink when subscribing.
+ *
+ * The index only sees the writes made at this node. Subscriptions written by the other
+ * nodes sharing the registry are picked up by reloading the index of a tenant once it is
+ * older than the expiry time. The reload is done by a background task, for the tenants whose
+ * index has been used since it was loaded, and the current index is used until the reloaded
+ * one replaces it, so publishing never reads the registry. The reload reads the registry
+ * without holding the tenant lock and is discarded if the index has been written meanwhile.
+ */
+public class RegistrySubscriptionIndex {
+
+    private static final Log log = LogFactory.getLog(RegistrySubscriptionIndex.class);
+
+    public static final long DEFAULT_EXPIRY_TIME = 60 * 1000;
+
+    /**
+     * upper limit of the published topics for which the copy of a wild card subscription is kept.
+     */
+    private static final int MAX_TOPIC_COPIES = 1000;
+
+    private static RegistrySubscriptionIndex instance = new RegistrySubscriptionIndex();
+
+    private Map<Integer, TenantSubscriptionIndex> tenantIndexMap;
+
+    private volatile long expiryTime = DEFAULT_EXPIRY_TIME;
+
+    private volatile Loader loader;
+
+    private ScheduledExecutorService reloadExecutor;
+
+    private RegistrySubscriptionIndex() {
+        this.tenantIndexMap = new ConcurrentHashMap<Integer, TenantSubscriptionIndex>();
+    }
+
+    public static RegistrySubscriptionIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * returns the lock which must be held while the subscriptions of the tenant are written
+     * to the registry and to the index, so that a concurrent load does not miss the write.
+     * @param tenantId
+     * @return lock object of the tenant
+     */
+    public Object getLock(int tenantId) {
+        return getTenantIndex(tenantId);
+    }
+
+    /**
+     * @param expiryTime - milliseconds after which the index of a tenant is loaded again from
+     * the registry, so that the subscriptions written by the other nodes are seen. 0 keeps
+     * the index until it is invalidated
+     */
+    public void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * @param loader - loads the index of a tenant again once it has expired
+     */
+    public void setLoader(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @param tenantId
+     * @return true if the subscriptions of the tenant have been loaded to the index
+     */
+    public boolean isLoaded(int tenantId) {
+        return getLoadedIndex(tenantId) != null;
+    }
+
+    /**
+     * returns the version of the index of the tenant, which changes with every write. The
+     * version must be taken before reading the subscriptions to be loaded.
+     * @param tenantId
+     * @return current version
+     */
+    public long getVersion(int tenantId) {
+        return getTenantIndex(tenantId).version.get();
+    }
+
+    /**
+     * replaces the indexed subscriptions of the tenant with the given ones, unless the index
+     * has been written after the subscriptions were read. This must be called holding the
+     * tenant lock.
+     * @param tenantId
+     * @param subscriptions - all the persisted subscriptions of the tenant
+     * @param version - version of the index taken before reading the subscriptions
+     * @return false if the subscriptions are older than the index and were not loaded
+     */
+    public boolean load(int tenantId, List<Subscription> subscriptions, long version) {
+        TenantSubscriptionIndex tenantIndex = getTenantIndex(tenantId);
+        if (tenantIndex.version.get() != version) {
+            return false;
+        }
+        tenantIndex.pathSubscriptionsMap.clear();
+        tenantIndex.idPathMap.clear();
+        tenantIndex.sinkSubscriptionsMap.clear();
+        for (Subscription subscription : subscriptions) {
+            tenantIndex.put(subscription);
+        }
+        tenantIndex.loadedTime = System.currentTimeMillis();
+        tenantIndex.used = false;
+        tenantIndex.loaded = true;
+        startReloadTask();
+        return true;
+    }
+
+    /**
+     * adds or replaces the subscription in the index of the tenant.
+     * @param tenantId
+     * @param subscription - subscription with the id and the topic name set
+     */
+    public void addSubscription(int tenantId, Subscription subscription) {
+        TenantSubscriptionIndex tenantIndex = getTenantIndex(tenantId);
+        tenantIndex.version.incrementAndGet();
+        if (tenantIndex.loaded) {
+            tenantIndex.put(subscription);
+        }
+    }
+
+    /**
+     * removes the subscription from the index of the tenant.
+     * @param tenantId
+     * @param subscriptionID
+     */
+    public void removeSubscription(int tenantId, String subscriptionID) {
+        TenantSubscriptionIndex tenantIndex = getTenantIndex(tenantId);
+        tenantIndex.version.incrementAndGet();
+        tenantIndex.remove(subscriptionID);
+    }
+
+    /**
+     * returns the non expired subscriptions stored under the path of the given topic.
+     * @param tenantId
+     * @param topicName - published topic name
+     * @return indexed subscriptions or null if the tenant has not been loaded
+     */
+    public List<Subscription> getSubscriptions(int tenantId, String topicName) {
+        TenantSubscriptionIndex tenantIndex = getLoadedIndex(tenantId);
+        if (tenantIndex == null) {
+            return null;
+        }
+        Map<String, IndexedSubscription> subscriptions =
+                tenantIndex.pathSubscriptionsMap.get(getTopicPath(topicName));
+        if (subscriptions == null || subscriptions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        long currentTime = System.currentTimeMillis();
+        List<Subscription> matchingSubscriptions = new ArrayList<Subscription>(subscriptions.size());
+        for (IndexedSubscription indexedSubscription : subscriptions.values()) {
+            if (indexedSubscription.expiryTime > currentTime) {
+                matchingSubscriptions.add(indexedSubscription.getSubscription(topicName));
+            }
+        }
+        return matchingSubscriptions;
+    }
+
+    /**
+     * returns all the subscriptions stored under the given topic path, including the expired
+     * ones, with the topic name set to the topic of the path.
+     * @param tenantId
+     * @param topicName - topic name. Any wild card part is ignored
+     * @return indexed subscriptions or null if the tenant has not been loaded
+     */
+    public List<Subscription> getStoredSubscriptions(int tenantId, String topicName) {
+        TenantSubscriptionIndex tenantIndex = getLoadedIndex(tenantId);
+        if (tenantIndex == null) {
+            return null;
+        }
+        String topicPath = getTopicPath(topicName);
+        Map<String, IndexedSubscription> subscriptions = tenantIndex.pathSubscriptionsMap.get(topicPath);
+        if (subscriptions == null || subscriptions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String pathTopicName = topicPath.length() > 1 ? topicPath.substring(0, topicPath.length() - 1) : topicPath;
+        List<Subscription> storedSubscriptions = new ArrayList<Subscription>(subscriptions.size());
+        for (IndexedSubscription indexedSubscription : subscriptions.values()) {
+            storedSubscriptions.add(copy(indexedSubscription.subscription, pathTopicName));
+        }
+        return storedSubscriptions;
+    }
+
+    /**
+     * finds a non expired subscription stored under the path of the topic which sends the
+     * events to the given sink. The sink url is compared ignoring the case.
+     * @param tenantId
+     * @param topicName - topic name. Any wild card part is ignored
+     * @param eventSinkURL
+     * @return the subscription or null if there is none or the tenant has not been loaded
+     */
+    public Subscription getSubscription(int tenantId, String topicName, String eventSinkURL) {
+        TenantSubscriptionIndex tenantIndex = eventSinkURL == null ? null : getLoadedIndex(tenantId);
+        if (tenantIndex == null) {
+            return null;
+        }
+        Map<String, IndexedSubscription> subscriptions =
+                tenantIndex.sinkSubscriptionsMap.get(getSinkKey(getTopicPath(topicName), eventSinkURL));
+        if (subscriptions != null) {
+            long currentTime = System.currentTimeMillis();
+            for (IndexedSubscription indexedSubscription : subscriptions.values()) {
+                if (indexedSubscription.expiryTime > currentTime) {
+                    return copy(indexedSubscription.subscription, indexedSubscription.subscription.getTopicName());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * removes the subscriptions of the topic and its child topics from the index of the
+     * tenant. This must be called holding the tenant lock.
+     * @param tenantId
+     * @param topicName - removed topic
+     */
+    public void removeTopic(int tenantId, String topicName) {
+        TenantSubscriptionIndex tenantIndex = this.tenantIndexMap.get(tenantId);
+        if (tenantIndex != null) {
+            tenantIndex.version.incrementAndGet();
+            String topicPath = getTopicPath(topicName);
+            for (Iterator<Map.Entry<String, String>> iterator = tenantIndex.idPathMap.entrySet().iterator();
+                 iterator.hasNext();) {
+                Map.Entry<String, String> entry = iterator.next();
+                if (entry.getValue().startsWith(topicPath)) {
+                    tenantIndex.remove(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * drops the index of the tenant. The next full read of the subscriptions loads it again.
+     * @param tenantId
+     */
+    public void invalidate(int tenantId) {
+        TenantSubscriptionIndex tenantIndex = this.tenantIndexMap.get(tenantId);
+        if (tenantIndex != null) {
+            synchronized (tenantIndex) {
+                tenantIndex.version.incrementAndGet();
+                tenantIndex.loaded = false;
+                tenantIndex.pathSubscriptionsMap.clear();
+                tenantIndex.idPathMap.clear();
+                tenantIndex.sinkSubscriptionsMap.clear();
+            }
+        }
+    }
+
+    /**
+     * stops the background reload of the indexes. It is started again when an index is loaded.
+     */
+    public synchronized void stop() {
+        if (this.reloadExecutor != null) {
+            this.reloadExecutor.shutdownNow();
+            this.reloadExecutor = null;
+        }
+    }
+
+    /**
+     * returns the index of the tenant if it has been loaded, and marks it as used so that the
+     * background task reloads it once it expires.
+     */
+    private TenantSubscriptionIndex getLoadedIndex(int tenantId) {
+        TenantSubscriptionIndex tenantIndex = this.tenantIndexMap.get(tenantId);
+        if (tenantIndex == null || !tenantIndex.loaded) {
+            return null;
+        }
+        if (!tenantIndex.used) {
+            tenantIndex.used = true;
+        }
+        return tenantIndex;
+    }
+
+    private synchronized void startReloadTask() {
+        long expiryTime = this.expiryTime;
+        if (this.reloadExecutor != null || expiryTime <= 0) {
+            return;
+        }
+        this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RegistrySubscriptionIndexReloader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // checked twice per expiry time, so an index is reloaded at most half of it late
+        long checkPeriod = Math.max(1, expiryTime / 2);
+        this.reloadExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    reloadExpiredIndexes();
+                } catch (Throwable e) {
+                    log.error("Error while reloading the subscription indexes", e);
+                }
+            }
+        }, checkPeriod, checkPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * reloads the expired indexes which have been used since they were loaded. Only called by
+     * the reload task.
+     */
+    private void reloadExpiredIndexes() {
+        long expiryTime = this.expiryTime;
+        Loader loader = this.loader;
+        if (expiryTime <= 0 || loader == null) {
+            return;
+        }
+        long currentTime = System.currentTimeMillis();
+        for (Map.Entry<Integer, TenantSubscriptionIndex> entry : this.tenantIndexMap.entrySet()) {
+            TenantSubscriptionIndex tenantIndex = entry.getValue();
+            if (!tenantIndex.loaded || !tenantIndex.used || currentTime - tenantIndex.loadedTime < expiryTime) {
+                continue;
+            }
+            int tenantId = entry.getKey();
+            try {
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId);
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().getTenantDomain(true);
+                loader.load(tenantId);
+            } catch (EventBrokerException e) {
+                // the current index is used till a reload succeeds, it is retried at the next check
+                log.error("Can not reload the subscriptions of the tenant " + tenantId, e);
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+            }
+        }
+    }
+
+    /**
+     * subscriptions are stored under the topic name with out the wild card part. the path is
+     * taken relative to the topic storage path so that it does not depend on the configuration
+     * of the matching manager.
+     */
+    static String getTopicPath(String topicName) {
+        String topicPath = JavaUtil.getResourcePath(topicName, "");
+        if (!topicPath.endsWith("/")) {
+            topicPath += "/";
+        }
+        return topicPath;
+    }
+
+    private static String getSinkKey(String topicPath, String eventSinkURL) {
+        return topicPath + '\n' + eventSinkURL.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * indexed subscriptions are shared between the publishing threads, so the index keeps its
+     * own instances rather than the ones passed by the callers.
+     */
+    private static Subscription copy(Subscription subscription, String topicName) {
+        return JavaUtil.copySubscription(subscription, topicName);
+    }
+
+    private TenantSubscriptionIndex getTenantIndex(int tenantId) {
+        TenantSubscriptionIndex tenantIndex = this.tenantIndexMap.get(tenantId);
+        if (tenantIndex == null) {
+            synchronized (this.tenantIndexMap) {
+                tenantIndex = this.tenantIndexMap.get(tenantId);
+                if (tenantIndex == null) {
+                    tenantIndex = new TenantSubscriptionIndex();
+                    this.tenantIndexMap.put(tenantId, tenantIndex);
+                }
+            }
+        }
+        return tenantIndex;
+    }
+
+    /**
+     * subscriptions of a tenant grouped by the topic path
+     */
+    private static class TenantSubscriptionIndex {
+
+        private final Map<String, Map<String, IndexedSubscription>> pathSubscriptionsMap =
+                new ConcurrentHashMap<String, Map<String, IndexedSubscription>>();
+        private final Map<String, String> idPathMap = new ConcurrentHashMap<String, String>();
+        private final Map<String, Map<String, IndexedSubscription>> sinkSubscriptionsMap =
+                new ConcurrentHashMap<String, Map<String, IndexedSubscription>>();
+        private final AtomicLong version = new AtomicLong();
+        private volatile boolean loaded;
+        private volatile long loadedTime;
+        // used since the last load
+        private volatile boolean used;
+
+        private void put(Subscription subscription) {
+            String topicPath = getTopicPath(subscription.getTopicName());
+            // the topic of a subscription does not change, but remove it in case it does
+            String oldTopicPath = this.idPathMap.put(subscription.getId(), topicPath);
+            if (oldTopicPath != null) {
+                removeFromPath(oldTopicPath, subscription.getId());
+            }
+            IndexedSubscription indexedSubscription =
+                    new IndexedSubscription(copy(subscription, subscription.getTopicName()));
+            getSubscriptions(this.pathSubscriptionsMap, topicPath).put(subscription.getId(), indexedSubscription);
+            if (subscription.getEventSinkURL() != null) {
+                getSubscriptions(this.sinkSubscriptionsMap, getSinkKey(topicPath, subscription.getEventSinkURL()))
+                        .put(subscription.getId(), indexedSubscription);
+            }
+        }
+
+        private void remove(String subscriptionID) {
+            String topicPath = this.idPathMap.remove(subscriptionID);
+            if (topicPath != null) {
+                removeFromPath(topicPath, subscriptionID);
+            }
+        }
+
+        private void removeFromPath(String topicPath, String subscriptionID) {
+            Map<String, IndexedSubscription> subscriptions = this.pathSubscriptionsMap.get(topicPath);
+            if (subscriptions != null) {
+                IndexedSubscription indexedSubscription = subscriptions.remove(subscriptionID);
+                if (indexedSubscription != null && indexedSubscription.subscription.getEventSinkURL() != null) {
+                    Map<String, IndexedSubscription> sinkSubscriptions = this.sinkSubscriptionsMap.get(
+                            getSinkKey(topicPath, indexedSubscription.subscription.getEventSinkURL()));
+                    if (sinkSubscriptions != null) {
+                        sinkSubscriptions.remove(subscriptionID);
+                    }
+                }
+            }
+        }
+
+        private static Map<String, IndexedSubscription> getSubscriptions(
+                Map<String, Map<String, IndexedSubscription>> subscriptionsMap, String key) {
+            Map<String, IndexedSubscription> subscriptions = subscriptionsMap.get(key);
+            if (subscriptions == null) {
+                synchronized (subscriptionsMap) {
+                    subscriptions = subscriptionsMap.get(key);
+                    if (subscriptions == null) {
+                        subscriptions = new ConcurrentHashMap<String, IndexedSubscription>();
+                        subscriptionsMap.put(key, subscriptions);
+                    }
+                }
+            }
+            return subscriptions;
+        }
+    }
+
+    /**
+     * reads the persisted subscriptions of a tenant and loads them to the index
+     */
+    public interface Loader {
+
+        void load(int tenantId) throws EventBrokerException;
+    }
+
+    /**
+     * subscription together with its expiry time in milliseconds. A wild card subscription
+     * matches the published topics with copies carrying the published topic name, which are
+     * kept for the recently published topics. A changed subscription is indexed with a new
+     * instance, so the copies are never out of date.
+     */
+    private static class IndexedSubscription {
+
+        private final Subscription subscription;
+        private final long expiryTime;
+        private Map<String, Subscription> topicCopies;
+
+        private IndexedSubscription(Subscription subscription) {
+            this.subscription = subscription;
+            // Long.MAX_VALUE if it never expires, valid till unsubscribe
+            this.expiryTime = subscription.getExpiryTime();
+        }
+
+        /**
+         * @param topicName - published topic name
+         * @return the subscription carrying the published topic name
+         */
+        private synchronized Subscription getSubscription(String topicName) {
+            if (topicName.equals(this.subscription.getTopicName())) {
+                return this.subscription;
+            }
+            if (this.topicCopies == null) {
+                // access ordered, so the eldest entry is the least recently published topic
+                this.topicCopies = new LinkedHashMap<String, Subscription>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Subscription> eldest) {
+                        return size() > MAX_TOPIC_COPIES;
+                    }
+                };
+            }
+            Subscription topicCopy = this.topicCopies.get(topicName);
+            if (topicCopy == null) {
+                topicCopy = copy(this.subscription, topicName);
+                this.topicCopies.put(topicName, topicCopy);
+            }
+            return topicCopy;
+        }
+    }
+}
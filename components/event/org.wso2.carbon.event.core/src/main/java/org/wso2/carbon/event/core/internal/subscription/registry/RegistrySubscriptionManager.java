@@ -20,6 +20,7 @@ import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
+import org.wso2.carbon.event.core.internal.delivery.EventFilterIndex;
 import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
 import org.wso2.carbon.event.core.subscription.Subscription;
@@ -64,12 +65,23 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
      */
     private String indexStoragePath;
 
+    /**
+     * in memory copy of the persisted subscriptions used by the registry matching manager
+     */
+    private RegistrySubscriptionIndex subscriptionIndex;
+
     public RegistrySubscriptionManager(String topicStoragePath, String indexStoragePath)
             throws EventBrokerConfigurationException {
 
         this.registryService = EventBrokerHolder.getInstance().getRegistryService();
         this.topicStoragePath = topicStoragePath;
         this.indexStoragePath = indexStoragePath;
+        this.subscriptionIndex = RegistrySubscriptionIndex.getInstance();
+        this.subscriptionIndex.setLoader(new RegistrySubscriptionIndex.Loader() {
+            public void load(int tenantId) throws EventBrokerException {
+                loadSubscriptions(tenantId);
+            }
+        });
 
         // creates the the subscription intex
         // when creating subscriptions we going to add entries to this this resource
@@ -115,10 +127,10 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
      */
     public void addSubscription(Subscription subscription) throws EventBrokerException {
 
-
+        int tenantId = EventBrokerHolder.getInstance().getTenantId();
         try {
             UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+                    this.registryService.getGovernanceSystemRegistry(tenantId);
             String resourcePath = getResourcePath(subscription.getId(), subscription.getTopicName());
 
             Resource resource = userRegistry.newResource();
@@ -132,6 +144,11 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
             resource.setProperty(EventBrokerConstants.EB_RES_TOPIC_NAME, subscription.getTopicName());
             resource.setProperty(EventBrokerConstants.EB_RES_CREATED_TIME, System.currentTimeMillis()+"");
             resource.setProperty(EventBrokerConstants.EB_RES_MODE, JavaUtil.getSubscriptionMode(subscription.getTopicName()));
+            if (EventFilterIndex.isContentFilter(subscription.getEventFilter())) {
+                resource.setProperty(EventBrokerConstants.EB_RES_FILTER_DIALECT,
+                        subscription.getEventFilter().getDialect());
+                resource.setProperty(EventBrokerConstants.EB_RES_FILTER, subscription.getEventFilter().getValue());
+            }
 
             //set the other properties of the subscription.
             Map<String, String> properties = subscription.getProperties();
@@ -139,19 +156,25 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
                 resource.setProperty(key, properties.get(key));
             }
 
-            userRegistry.put(resourcePath, resource);
+            synchronized (this.subscriptionIndex.getLock(tenantId)) {
+                userRegistry.put(resourcePath, resource);
+
+                // add the subscription index
+                String fullPath = this.indexStoragePath;
+                Resource topicIndexResource;
+                if(userRegistry.resourceExists(fullPath)){
+                    topicIndexResource = userRegistry.get(fullPath);
+                    topicIndexResource.addProperty(subscription.getId(), subscription.getTopicName());
+                }else{
+                   topicIndexResource = userRegistry.newResource();
+                   topicIndexResource.addProperty(subscription.getId(), subscription.getTopicName());
+                }
+                userRegistry.put(fullPath, topicIndexResource);
 
-            // add the subscription index
-            String fullPath = this.indexStoragePath;
-            Resource topicIndexResource;
-            if(userRegistry.resourceExists(fullPath)){
-                topicIndexResource = userRegistry.get(fullPath);
-                topicIndexResource.addProperty(subscription.getId(), subscription.getTopicName());
-            }else{
-               topicIndexResource = userRegistry.newResource();
-               topicIndexResource.addProperty(subscription.getId(), subscription.getTopicName());                
+                // index the subscription as it is read back from the registry
+                this.subscriptionIndex.addSubscription(tenantId,
+                        getSubscription(resource, subscription.getId(), subscription.getTopicName()));
             }
-            userRegistry.put(fullPath, topicIndexResource);
 
         } catch (RegistryException e) {
             throw new EventBrokerException("Can not save to registry ", e);
@@ -202,11 +225,29 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
      * @throws org.wso2.carbon.event.core.exception.EventBrokerException
      */
     public List<Subscription> getAllSubscriptions() throws EventBrokerException {
+        return loadSubscriptions(EventBrokerHolder.getInstance().getTenantId());
+    }
+
+    /**
+     * reads all the subscriptions and refreshes the subscription index with them. The registry
+     * is read without holding the index lock, and the index version tells whether a
+     * subscription has been written meanwhile, in which case the index is not refreshed.
+     */
+    private List<Subscription> loadSubscriptions(int tenantId) throws EventBrokerException {
+        long version = this.subscriptionIndex.getVersion(tenantId);
+        List<Subscription> subscriptions = readAllSubscriptions(tenantId);
+        synchronized (this.subscriptionIndex.getLock(tenantId)) {
+            this.subscriptionIndex.load(tenantId, subscriptions, version);
+        }
+        return subscriptions;
+    }
+
+    private List<Subscription> readAllSubscriptions(int tenantId) throws EventBrokerException {
         List<Subscription> subscriptions = new ArrayList<Subscription>();
 
         try {
             UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+                    this.registryService.getGovernanceSystemRegistry(tenantId);
             if (userRegistry.resourceExists(this.indexStoragePath)) {
                 Resource topicIndexResource = userRegistry.get(this.indexStoragePath);
                 Properties savedSubscriptions = topicIndexResource.getProperties();
@@ -223,10 +264,7 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
                         topicName = topicIndexResource.getProperty(subscriptionID);
                         if (userRegistry.resourceExists(getResourcePath(subscriptionID, topicName))) {
                         	subscriptionResource = userRegistry.get(getResourcePath(subscriptionID, topicName));
-                            subscription = JavaUtil.getSubscription(subscriptionResource);
-                            subscription.setId(subscriptionID);
-                            subscription.setTopicName(topicName);
-                            subscription.setTenantId(EventBrokerHolder.getInstance().getTenantId());
+                            subscription = getSubscription(subscriptionResource, subscriptionID, topicName);
                             subscriptions.add(subscription);
                         }                        
                     }
@@ -245,8 +283,13 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
             UserRegistry userRegistry =
                     this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
             Resource topicIndexResource = userRegistry.get(this.indexStoragePath);
-            String subscriptionPath = getResourcePath(id, topicIndexResource.getProperty(id));
-            if (subscriptionPath != null && userRegistry.resourceExists(subscriptionPath)) {
+            String topicName = topicIndexResource.getProperty(id);
+            if (topicName == null) {
+                // there is no such subscription in the topic index
+                return null;
+            }
+            String subscriptionPath = getResourcePath(id, topicName);
+            if (userRegistry.resourceExists(subscriptionPath)) {
                 Resource subscriptionResource = userRegistry.get(subscriptionPath);
                 Subscription subscription = JavaUtil.getSubscription(subscriptionResource);
                 subscription.setTenantId(EventBrokerHolder.getInstance().getTenantId());
@@ -261,9 +304,10 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
 
     public void renewSubscription(Subscription subscription) throws EventBrokerException {
 
+         int tenantId = EventBrokerHolder.getInstance().getTenantId();
          try {
             UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+                    this.registryService.getGovernanceSystemRegistry(tenantId);
             Resource topicIndexResource = userRegistry.get(this.indexStoragePath);
             String topicName = topicIndexResource.getProperty(subscription.getId());
             String subscriptionPath = getResourcePath(subscription.getId(), topicName);
@@ -287,7 +331,11 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
                 for (String key : properties.keySet()) {
                     subscriptionResource.setProperty(key, properties.get(key));
                 }
-                userRegistry.put(subscriptionPath, subscriptionResource);
+                synchronized (this.subscriptionIndex.getLock(tenantId)) {
+                    userRegistry.put(subscriptionPath, subscriptionResource);
+                    this.subscriptionIndex.addSubscription(tenantId,
+                            getSubscription(subscriptionResource, subscription.getId(), topicName));
+                }
             } else {
                 throw new EventBrokerException("Can not find the resouce to the subscription with" +
                         " id " + subscription.getId());
@@ -299,24 +347,29 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
     }
 
     public void unSubscribe(String subscriptionID) throws EventBrokerException {
+        int tenantId = EventBrokerHolder.getInstance().getTenantId();
         try {
             UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+                    this.registryService.getGovernanceSystemRegistry(tenantId);
             String fullPath = this.indexStoragePath;
-            if (userRegistry.resourceExists(fullPath)) {
-                Resource topicIndexResource = userRegistry.get(fullPath);
-
-                String topicName = topicIndexResource.getProperty(subscriptionID);
-                // delete the subscriptions resource
-                // if the registry is read only there can be situations where the the subscriptions
-                // is not saved to registry and hence the topic name
-                if (topicName != null){
-                    userRegistry.delete(getResourcePath(subscriptionID, topicName));
-                }
+            synchronized (this.subscriptionIndex.getLock(tenantId)) {
+                // remove it from the in memory index first so that it is not matched any more
+                this.subscriptionIndex.removeSubscription(tenantId, subscriptionID);
+                if (userRegistry.resourceExists(fullPath)) {
+                    Resource topicIndexResource = userRegistry.get(fullPath);
+
+                    String topicName = topicIndexResource.getProperty(subscriptionID);
+                    // delete the subscriptions resource
+                    // if the registry is read only there can be situations where the the subscriptions
+                    // is not saved to registry and hence the topic name
+                    if (topicName != null){
+                        userRegistry.delete(getResourcePath(subscriptionID, topicName));
+                    }
 
-                topicIndexResource.removeProperty(subscriptionID);
+                    topicIndexResource.removeProperty(subscriptionID);
 
-                userRegistry.put(fullPath, topicIndexResource);
+                    userRegistry.put(fullPath, topicIndexResource);
+                }
             }
 
         } catch (RegistryException e) {
@@ -329,4 +382,12 @@ public class RegistrySubscriptionManager implements SubscriptionManager {
     public String getTopicStoragePath() throws EventBrokerException {
         return topicStoragePath;
     }
+
+    private Subscription getSubscription(Resource subscriptionResource, String subscriptionID, String topicName) {
+        Subscription subscription = JavaUtil.getSubscription(subscriptionResource);
+        subscription.setId(subscriptionID);
+        subscription.setTopicName(topicName);
+        subscription.setTenantId(EventBrokerHolder.getInstance().getTenantId());
+        return subscription;
+    }
 }
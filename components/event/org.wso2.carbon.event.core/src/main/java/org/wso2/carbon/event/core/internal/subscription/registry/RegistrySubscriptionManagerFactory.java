@@ -36,6 +36,7 @@ public class RegistrySubscriptionManagerFactory implements SubscriptionManagerFa
 
     public static final String EB_ELE_TOPIC_STORAGE_PATH = "topicStoragePath";
     public static final String EB_ELE_INDEX_STORAGE_PATH = "indexStoragePath";
+    public static final String EB_ELE_INDEX_EXPIRY_TIME = "indexExpiryTime";
 
     public static final String EB_ELE_SUBSCRIPTION = "subscription";
     public static final String EB_ATTR_ID = "id";
@@ -52,6 +53,8 @@ public class RegistrySubscriptionManagerFactory implements SubscriptionManagerFa
 
         RegistrySubscriptionManager registrySubscriptionManager =
                 new RegistrySubscriptionManager(topicStoragePath, indexStoragePath);
+        RegistrySubscriptionIndex.getInstance().setExpiryTime(Long.parseLong(JavaUtil.getValue(config,
+                EB_ELE_INDEX_EXPIRY_TIME, String.valueOf(RegistrySubscriptionIndex.DEFAULT_EXPIRY_TIME))));
 
         // add the static subscriptions
        Iterator subscriptionsIter =
@@ -25,10 +25,14 @@ import org.wso2.carbon.event.core.topic.TopicManagerFactory;
 public class RegisistryTopicManagerFactory implements TopicManagerFactory{
 
     public static final String EB_ELE_TOPIC_STORAGE_PATH = "topicStoragePath";
+    public static final String EB_ELE_TOPIC_CACHE_EXPIRY_TIME = "topicCacheExpiryTime";
 
     public TopicManager getTopicManager(OMElement config) throws EventBrokerConfigurationException {
 
         String topicStoragePath = JavaUtil.getValue(config, EB_ELE_TOPIC_STORAGE_PATH);
-        return new RegistryTopicManager(topicStoragePath);
+        RegistryTopicManager topicManager = new RegistryTopicManager(topicStoragePath);
+        topicManager.setTopicCacheExpiryTime(Long.parseLong(JavaUtil.getValue(config,
+                EB_ELE_TOPIC_CACHE_EXPIRY_TIME, String.valueOf(RegistryTopicManager.DEFAULT_TOPIC_CACHE_EXPIRY_TIME))));
+        return topicManager;
     }
 }
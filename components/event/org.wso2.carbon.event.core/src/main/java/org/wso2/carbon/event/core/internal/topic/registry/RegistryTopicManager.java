@@ -19,10 +19,12 @@ package org.wso2.carbon.event.core.internal.topic.registry;
 import org.wso2.carbon.CarbonConstants;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.internal.subscription.registry.RegistrySubscriptionIndex;
+import org.wso2.carbon.event.core.internal.util.AuthorizationCache;
 import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
 import org.wso2.carbon.event.core.subscription.Subscription;
-import org.wso2.carbon.event.core.topic.TopicManager;
+import org.wso2.carbon.event.core.topic.IndexedTopicManager;
 import org.wso2.carbon.event.core.topic.TopicNode;
 import org.wso2.carbon.event.core.topic.TopicRolePermission;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
@@ -36,26 +38,102 @@ import org.wso2.carbon.user.api.UserStoreException;
 import org.apache.axis2.databinding.utils.ConverterUtil;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 import java.util.regex.Pattern;
 
-public class RegistryTopicManager implements TopicManager {
+public class RegistryTopicManager implements IndexedTopicManager {
+
+    public static final long DEFAULT_TOPIC_CACHE_EXPIRY_TIME = 60 * 1000;
 
     private String topicStoragePath;
     private RegistryService registryService;
 
+    /**
+     * in memory topic tree of the tenants. null if the cache is disabled
+     */
+    private TopicTreeCache topicTreeCache;
+
+    /**
+     * lock held while the topic tree is read from the registry and while topics are created
+     * or removed, so that a tree being loaded does not miss a concurrent change
+     */
+    private final Object topicTreeLock = new Object();
+
+    private RegistrySubscriptionIndex subscriptionIndex;
+
 
     public RegistryTopicManager(String topicStoragePath) {
         this.topicStoragePath = topicStoragePath;
         this.registryService = EventBrokerHolder.getInstance().getRegistryService();
+        this.topicTreeCache = new TopicTreeCache(DEFAULT_TOPIC_CACHE_EXPIRY_TIME);
+        this.subscriptionIndex = RegistrySubscriptionIndex.getInstance();
+    }
+
+    /**
+     * sets the time the topic tree of a tenant is cached before it is read from the registry
+     * again. 0 or less disables the cache.
+     * @param topicCacheExpiryTime - expiry time in milliseconds
+     */
+    public void setTopicCacheExpiryTime(long topicCacheExpiryTime) {
+        this.topicTreeCache = (topicCacheExpiryTime > 0) ? new TopicTreeCache(topicCacheExpiryTime) : null;
     }
 
     public TopicNode getTopicTree() throws EventBrokerException {
+        int tenantId = EventBrokerHolder.getInstance().getTenantId();
+        TopicTreeCache topicTreeCache = this.topicTreeCache;
+        if (topicTreeCache == null) {
+            return readTopicTree(tenantId);
+        }
+        loadTopicTree(topicTreeCache, tenantId);
+        TopicNode rootTopic = topicTreeCache.getTopicTree(tenantId);
+        return (rootTopic != null) ? rootTopic : readTopicTree(tenantId);
+    }
+
+    private void loadTopicTree(TopicTreeCache topicTreeCache, int tenantId) throws EventBrokerException {
+        if (topicTreeCache.isLoaded(tenantId)) {
+            return;
+        }
+        synchronized (this.topicTreeLock) {
+            if (!topicTreeCache.isLoaded(tenantId)) {
+                List<String> topicPaths = new ArrayList<String>();
+                addTopicPaths(readTopicTree(tenantId), topicPaths);
+                topicTreeCache.load(tenantId, topicPaths);
+            }
+        }
+    }
+
+    private void addTopicPaths(TopicNode topicNode, List<String> topicPaths) {
+        if (topicNode.getChildren() != null) {
+            for (TopicNode childNode : topicNode.getChildren()) {
+                topicPaths.add(childNode.getTopicName());
+                addTopicPaths(childNode, topicPaths);
+            }
+        }
+    }
+
+    /**
+     * topics are kept in the topic tree cache relative to the topic storage path without the
+     * leading and trailing /. eg. /a/b/ is kept as a/b
+     */
+    private String getCachedTopicPath(String topicName) {
+        String topicPath = JavaUtil.getResourcePath(topicName, "");
+        int beginIndex = 0;
+        int endIndex = topicPath.length();
+        while (beginIndex < endIndex && topicPath.charAt(beginIndex) == '/') {
+            beginIndex++;
+        }
+        while (endIndex > beginIndex && topicPath.charAt(endIndex - 1) == '/') {
+            endIndex--;
+        }
+        return topicPath.substring(beginIndex, endIndex);
+    }
+
+    private TopicNode readTopicTree(int tenantId) throws EventBrokerException {
         try {
-            UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+            UserRegistry userRegistry = this.registryService.getGovernanceSystemRegistry(tenantId);
             if (!userRegistry.resourceExists(topicStoragePath)) {
                 userRegistry.put(topicStoragePath,
                                  userRegistry.newCollection());
@@ -111,15 +189,21 @@ public class RegistryTopicManager implements TopicManager {
         String loggedInUser = CarbonContext.getThreadLocalCarbonContext().getUsername();
 
         try {
-            UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+            int tenantId = EventBrokerHolder.getInstance().getTenantId();
+            UserRegistry userRegistry = this.registryService.getGovernanceSystemRegistry(tenantId);
             String resourcePath = JavaUtil.getResourcePath(topicName, this.topicStoragePath);
+            TopicTreeCache topicTreeCache = this.topicTreeCache;
 
             //we add the topic only if it does not exits. if the topic exists then
             //we don't do any thing.
             if (!userRegistry.resourceExists(resourcePath)) {
-                Collection collection = userRegistry.newCollection();
-                userRegistry.put(resourcePath, collection);
+                synchronized (this.topicTreeLock) {
+                    Collection collection = userRegistry.newCollection();
+                    userRegistry.put(resourcePath, collection);
+                    if (topicTreeCache != null) {
+                        topicTreeCache.addTopic(tenantId, getCachedTopicPath(topicName));
+                    }
+                }
 
                 // Grant this user (owner) rights to update permission on newly created topic
                 UserRealm userRealm = EventBrokerHolder.getInstance().getRealmService().getTenantUserRealm(
@@ -127,6 +211,9 @@ public class RegistryTopicManager implements TopicManager {
 
                 userRealm.getAuthorizationManager().authorizeUser(
                         loggedInUser, resourcePath, EventBrokerConstants.EB_PERMISSION_CHANGE_PERMISSION);
+            } else if (topicTreeCache != null) {
+                // the topic may have been created by another node after the tree was cached
+                topicTreeCache.addTopic(tenantId, getCachedTopicPath(topicName));
             }
         } catch (RegistryException e) {
             throw new EventBrokerException("Can not access the config registry", e);
@@ -227,6 +314,9 @@ public class RegistryTopicManager implements TopicManager {
             }
         } catch (UserStoreException e) {
             throw new EventBrokerException("Can not access the user store manager", e);
+        } finally {
+            // permissions are inherited by the child topics, so drop all the cached decisions
+            AuthorizationCache.getInstance().invalidate(EventBrokerHolder.getInstance().getTenantId());
         }
     }
 
@@ -242,7 +332,12 @@ public class RegistryTopicManager implements TopicManager {
     public Subscription[] getSubscriptions(String topicName,
                                            boolean withChildren) throws EventBrokerException {
 
-        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        List<Subscription> subscriptions = getIndexedSubscriptions(topicName, withChildren);
+        if (subscriptions != null) {
+            return subscriptions.toArray(new Subscription[subscriptions.size()]);
+        }
+
+        subscriptions = new ArrayList<Subscription>();
         Queue<String> pathsQueue = new LinkedList<String>();
         String resourcePath = JavaUtil.getResourcePath(topicName, this.topicStoragePath);
 
@@ -255,6 +350,63 @@ public class RegistryTopicManager implements TopicManager {
 
     }
 
+    /**
+     * reads the subscriptions from the subscription index of the registry subscription manager
+     * rather than from the registry, using the cached topic tree to find the child topics.
+     * @return subscriptions or null if the index or the topic tree is not available
+     */
+    private List<Subscription> getIndexedSubscriptions(String topicName, boolean withChildren)
+            throws EventBrokerException {
+        int tenantId = EventBrokerHolder.getInstance().getTenantId();
+        if (!this.subscriptionIndex.isLoaded(tenantId)) {
+            return null;
+        }
+        List<String> topicPaths;
+        if (withChildren) {
+            TopicTreeCache topicTreeCache = this.topicTreeCache;
+            if (topicTreeCache == null) {
+                return null;
+            }
+            loadTopicTree(topicTreeCache, tenantId);
+            topicPaths = topicTreeCache.getTopicPaths(tenantId, getCachedTopicPath(topicName));
+            if (topicPaths == null) {
+                return null;
+            }
+        } else {
+            topicPaths = Collections.singletonList(topicName);
+        }
+
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        for (String topicPath : topicPaths) {
+            List<Subscription> storedSubscriptions =
+                    this.subscriptionIndex.getStoredSubscriptions(tenantId, topicPath);
+            if (storedSubscriptions == null) {
+                // the index has been invalidated meanwhile
+                return null;
+            }
+            subscriptions.addAll(storedSubscriptions);
+        }
+        return subscriptions;
+    }
+
+    public Subscription getSubscription(String topicName, String eventSinkURL) throws EventBrokerException {
+        if (eventSinkURL == null) {
+            return null;
+        }
+        int tenantId = EventBrokerHolder.getInstance().getTenantId();
+        if (this.subscriptionIndex.isLoaded(tenantId)) {
+            return this.subscriptionIndex.getSubscription(tenantId, topicName, eventSinkURL);
+        }
+        long currentTime = System.currentTimeMillis();
+        for (Subscription subscription : getSubscriptions(topicName, false)) {
+            if (eventSinkURL.equalsIgnoreCase(subscription.getEventSinkURL())
+                && subscription.getExpiryTime() > currentTime) {
+                return subscription;
+            }
+        }
+        return null;
+    }
+
     public Subscription[] getJMSSubscriptions(String topicName) throws EventBrokerException {
         try {
             Subscription[] subscriptionsArray = new Subscription[0];
@@ -387,12 +539,23 @@ public class RegistryTopicManager implements TopicManager {
     public boolean removeTopic(String topicName) throws EventBrokerException {
 
         try {
-            UserRegistry userRegistry =
-                    this.registryService.getGovernanceSystemRegistry(EventBrokerHolder.getInstance().getTenantId());
+            int tenantId = EventBrokerHolder.getInstance().getTenantId();
+            UserRegistry userRegistry = this.registryService.getGovernanceSystemRegistry(tenantId);
             String resourcePath = JavaUtil.getResourcePath(topicName, this.topicStoragePath);
 
             if (userRegistry.resourceExists(resourcePath)) {
-                userRegistry.delete(resourcePath);
+                // the subscriptions of the topic and its child topics are deleted with it
+                synchronized (this.subscriptionIndex.getLock(tenantId)) {
+                    synchronized (this.topicTreeLock) {
+                        userRegistry.delete(resourcePath);
+                        TopicTreeCache topicTreeCache = this.topicTreeCache;
+                        if (topicTreeCache != null) {
+                            topicTreeCache.removeTopic(tenantId, getCachedTopicPath(topicName));
+                        }
+                    }
+                    this.subscriptionIndex.removeTopic(tenantId, topicName);
+                }
+                AuthorizationCache.getInstance().invalidate(tenantId);
                 return true;
             } else {
                 return false;
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.topic.registry;
+
+import org.wso2.carbon.event.core.topic.TopicNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * in memory copy of the topic tree of each tenant, so that the topic tree does not have to be
+ * read from the registry for every admin request. The tree of a tenant is read from the
+ * registry once and then updated by the topic manager whenever it adds or removes a topic.
+ *
+ * Topics added or removed through another node of the cluster are only seen after the tree
+ * expires, which happens expiryTime milliseconds after it was read.
+ *
+ * Topic paths are relative to the topic storage path and do not start with a /. eg. a/b
+ */
+public class TopicTreeCache {
+
+    private final long expiryTime;
+
+    private final Map<Integer, TopicTree> tenantTopicTreeMap;
+
+    /**
+     * @param expiryTime - milliseconds a tree is kept after it was read from the registry
+     */
+    public TopicTreeCache(long expiryTime) {
+        this.expiryTime = expiryTime;
+        this.tenantTopicTreeMap = new ConcurrentHashMap<Integer, TopicTree>();
+    }
+
+    /**
+     * @param tenantId
+     * @return true if there is a tree of the tenant which has not expired
+     */
+    public boolean isLoaded(int tenantId) {
+        TopicTree topicTree = this.tenantTopicTreeMap.get(tenantId);
+        return topicTree != null && System.currentTimeMillis() - topicTree.loadedTime < this.expiryTime;
+    }
+
+    /**
+     * replaces the tree of the tenant.
+     * @param tenantId
+     * @param topicPaths - paths of all the topics of the tenant
+     */
+    public void load(int tenantId, List<String> topicPaths) {
+        TopicTree topicTree = new TopicTree();
+        for (String topicPath : topicPaths) {
+            topicTree.add(topicPath);
+        }
+        this.tenantTopicTreeMap.put(tenantId, topicTree);
+    }
+
+    /**
+     * adds the topic and its parent topics to the tree of the tenant, if the tree is cached.
+     * @param tenantId
+     * @param topicPath
+     */
+    public void addTopic(int tenantId, String topicPath) {
+        TopicTree topicTree = this.tenantTopicTreeMap.get(tenantId);
+        if (topicTree != null) {
+            topicTree.add(topicPath);
+        }
+    }
+
+    /**
+     * removes the topic and its child topics from the tree of the tenant.
+     * @param tenantId
+     * @param topicPath
+     */
+    public void removeTopic(int tenantId, String topicPath) {
+        TopicTree topicTree = this.tenantTopicTreeMap.get(tenantId);
+        if (topicTree != null) {
+            topicTree.remove(topicPath);
+        }
+    }
+
+    /**
+     * @param tenantId
+     * @return copy of the cached tree, or null if the tree is not loaded
+     */
+    public TopicNode getTopicTree(int tenantId) {
+        TopicTree topicTree = this.tenantTopicTreeMap.get(tenantId);
+        return topicTree == null ? null : topicTree.toTopicNode();
+    }
+
+    /**
+     * @param tenantId
+     * @param topicPath
+     * @return the path of the topic and the paths of all its child topics, or null if the tree
+     * is not loaded. The path of the topic is always included, even if it is not in the tree.
+     */
+    public List<String> getTopicPaths(int tenantId, String topicPath) {
+        TopicTree topicTree = this.tenantTopicTreeMap.get(tenantId);
+        return topicTree == null ? null : topicTree.getTopicPaths(topicPath);
+    }
+
+    public void invalidate(int tenantId) {
+        this.tenantTopicTreeMap.remove(tenantId);
+    }
+
+    /**
+     * topic tree of a tenant. Modified and read holding the tree lock, which is only contended
+     * by the admin operations.
+     */
+    private static class TopicTree {
+
+        private final CachedTopic root = new CachedTopic("/", "/");
+        private final long loadedTime = System.currentTimeMillis();
+
+        private synchronized void add(String topicPath) {
+            CachedTopic topic = this.root;
+            for (String name : split(topicPath)) {
+                CachedTopic child = topic.children.get(name);
+                if (child == null) {
+                    String childPath = (topic == this.root) ? name : topic.topicPath + "/" + name;
+                    child = new CachedTopic(name, childPath);
+                    topic.children.put(name, child);
+                }
+                topic = child;
+            }
+        }
+
+        private synchronized void remove(String topicPath) {
+            String[] names = split(topicPath);
+            if (names.length == 0) {
+                this.root.children.clear();
+                return;
+            }
+            CachedTopic topic = this.root;
+            for (int i = 0; i < names.length - 1 && topic != null; i++) {
+                topic = topic.children.get(names[i]);
+            }
+            if (topic != null) {
+                topic.children.remove(names[names.length - 1]);
+            }
+        }
+
+        private synchronized TopicNode toTopicNode() {
+            return toTopicNode(this.root);
+        }
+
+        private TopicNode toTopicNode(CachedTopic topic) {
+            TopicNode topicNode = new TopicNode(topic.name, topic.topicPath);
+            List<TopicNode> children = new ArrayList<TopicNode>(topic.children.size());
+            for (CachedTopic child : topic.children.values()) {
+                children.add(toTopicNode(child));
+            }
+            topicNode.setChildren(children.toArray(new TopicNode[children.size()]));
+            return topicNode;
+        }
+
+        private synchronized List<String> getTopicPaths(String topicPath) {
+            List<String> topicPaths = new ArrayList<String>();
+            CachedTopic topic = this.root;
+            for (String name : split(topicPath)) {
+                topic = topic.children.get(name);
+                if (topic == null) {
+                    break;
+                }
+            }
+            if (topic == null) {
+                topicPaths.add(topicPath);
+            } else if (topic == this.root) {
+                topicPaths.add("");
+                addChildPaths(topic, topicPaths);
+            } else {
+                topicPaths.add(topic.topicPath);
+                addChildPaths(topic, topicPaths);
+            }
+            return topicPaths;
+        }
+
+        private void addChildPaths(CachedTopic topic, List<String> topicPaths) {
+            for (CachedTopic child : topic.children.values()) {
+                topicPaths.add(child.topicPath);
+                addChildPaths(child, topicPaths);
+            }
+        }
+
+        private static String[] split(String topicPath) {
+            List<String> names = new ArrayList<String>();
+            for (String name : topicPath.split("/")) {
+                if (name.length() > 0) {
+                    names.add(name);
+                }
+            }
+            return names.toArray(new String[names.size()]);
+        }
+    }
+
+    /**
+     * topic in the cached tree
+     */
+    private static class CachedTopic {
+
+        private final String name;
+        private final String topicPath;
+        private final Map<String, CachedTopic> children = new TreeMap<String, CachedTopic>();
+
+        private CachedTopic(String name, String topicPath) {
+            this.name = name;
+            this.topicPath = topicPath;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.util;
+
+import org.wso2.carbon.user.api.UserRealm;
+import org.wso2.carbon.user.api.UserStoreException;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * keeps the results of the user store authorization checks done when publishing and
+ * subscribing to topics, so that the user store is not called for every message.
+ * Decisions are kept per tenant for expiryTime milliseconds and the cache of a tenant is
+ * dropped whenever the topic permissions of that tenant change.
+ */
+public class AuthorizationCache {
+
+    public static final long DEFAULT_EXPIRY_TIME = 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES_PER_TENANT = 10000;
+
+    private static AuthorizationCache instance = new AuthorizationCache();
+
+    private ConcurrentMap<Integer, TenantAuthorizationCache> tenantCacheMap;
+
+    private volatile long expiryTime = DEFAULT_EXPIRY_TIME;
+    private volatile int maxEntriesPerTenant = DEFAULT_MAX_ENTRIES_PER_TENANT;
+
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+
+    private AuthorizationCache() {
+        this.tenantCacheMap = new ConcurrentHashMap<Integer, TenantAuthorizationCache>();
+    }
+
+    public static AuthorizationCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * checks whether the user is authorized to perform the action on the resource path. the
+     * user store of the tenant is only called if there is no valid cached decision.
+     * @param tenantId - tenant of the user
+     * @param userName - user name without the domain part
+     * @param resourcePath - topic resource path
+     * @param action - publish or subscribe permission
+     * @return true if the user is authorized
+     * @throws UserStoreException - if the user store can not be accessed
+     */
+    public boolean isUserAuthorized(int tenantId, String userName, String resourcePath, String action)
+            throws UserStoreException {
+        long currentExpiryTime = this.expiryTime;
+        if (currentExpiryTime <= 0) {
+            // caching is disabled
+            return getAuthorizationDecision(tenantId, userName, resourcePath, action);
+        }
+
+        TenantAuthorizationCache tenantCache = getTenantCache(tenantId);
+        AuthorizationKey key = new AuthorizationKey(userName, resourcePath, action);
+        long currentTime = System.currentTimeMillis();
+        AuthorizationDecision decision = tenantCache.decisions.get(key);
+        if (decision != null && decision.expiryTime > currentTime) {
+            this.hitCount.incrementAndGet();
+            return decision.authorized;
+        }
+
+        this.missCount.incrementAndGet();
+        boolean authorized = getAuthorizationDecision(tenantId, userName, resourcePath, action);
+        tenantCache.put(key, new AuthorizationDecision(authorized, currentTime + currentExpiryTime),
+                        this.maxEntriesPerTenant);
+        return authorized;
+    }
+
+    /**
+     * removes all the cached decisions of the tenant. This must be called when the
+     * permissions of any topic of the tenant changes.
+     * @param tenantId
+     */
+    public void invalidate(int tenantId) {
+        // decisions being computed with the old cache are added to the removed instance
+        this.tenantCacheMap.remove(tenantId);
+    }
+
+    public void invalidateAll() {
+        this.tenantCacheMap.clear();
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * @return number of cached decisions of all the tenants
+     */
+    public int getSize() {
+        int size = 0;
+        for (TenantAuthorizationCache tenantCache : this.tenantCacheMap.values()) {
+            size += tenantCache.decisions.size();
+        }
+        return size;
+    }
+
+    public long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(long expiryTime) {
+        this.expiryTime = expiryTime;
+        invalidateAll();
+    }
+
+    public int getMaxEntriesPerTenant() {
+        return maxEntriesPerTenant;
+    }
+
+    public void setMaxEntriesPerTenant(int maxEntriesPerTenant) {
+        this.maxEntriesPerTenant = maxEntriesPerTenant;
+    }
+
+    private boolean getAuthorizationDecision(int tenantId, String userName, String resourcePath,
+                                             String action) throws UserStoreException {
+        UserRealm userRealm = EventBrokerHolder.getInstance().getRealmService().getTenantUserRealm(tenantId);
+        return userRealm.getAuthorizationManager().isUserAuthorized(userName, resourcePath, action);
+    }
+
+    private TenantAuthorizationCache getTenantCache(int tenantId) {
+        TenantAuthorizationCache tenantCache = this.tenantCacheMap.get(tenantId);
+        if (tenantCache == null) {
+            TenantAuthorizationCache newTenantCache = new TenantAuthorizationCache();
+            tenantCache = this.tenantCacheMap.putIfAbsent(tenantId, newTenantCache);
+            if (tenantCache == null) {
+                tenantCache = newTenantCache;
+            }
+        }
+        return tenantCache;
+    }
+
+    private static class TenantAuthorizationCache {
+
+        private Map<AuthorizationKey, AuthorizationDecision> decisions =
+                new ConcurrentHashMap<AuthorizationKey, AuthorizationDecision>();
+
+        private void put(AuthorizationKey key, AuthorizationDecision decision, int maxEntries) {
+            if (this.decisions.size() >= maxEntries) {
+                evict(maxEntries);
+            }
+            this.decisions.put(key, decision);
+        }
+
+        /**
+         * removes the expired decisions first and then arbitrary decisions until there is
+         * space for new ones.
+         */
+        private synchronized void evict(int maxEntries) {
+            if (this.decisions.size() < maxEntries) {
+                return;
+            }
+            long currentTime = System.currentTimeMillis();
+            for (Iterator<AuthorizationDecision> iterator = this.decisions.values().iterator();
+                 iterator.hasNext();) {
+                if (iterator.next().expiryTime <= currentTime) {
+                    iterator.remove();
+                }
+            }
+            int target = maxEntries - Math.max(1, maxEntries / 10);
+            for (Iterator<AuthorizationKey> iterator = this.decisions.keySet().iterator();
+                 iterator.hasNext() && this.decisions.size() > target;) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class AuthorizationKey {
+
+        private final String userName;
+        private final String resourcePath;
+        private final String action;
+        private final int hash;
+
+        private AuthorizationKey(String userName, String resourcePath, String action) {
+            this.userName = userName;
+            this.resourcePath = resourcePath;
+            this.action = action;
+            this.hash = 31 * (31 * userName.hashCode() + resourcePath.hashCode()) + action.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof AuthorizationKey)) {
+                return false;
+            }
+            AuthorizationKey other = (AuthorizationKey) object;
+            return this.hash == other.hash && this.userName.equals(other.userName)
+                   && this.resourcePath.equals(other.resourcePath) && this.action.equals(other.action);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private static class AuthorizationDecision {
+
+        private final boolean authorized;
+        private final long expiryTime;
+
+        private AuthorizationDecision(boolean authorized, long expiryTime) {
+            this.authorized = authorized;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * thread pool executor with a bounded task queue used by the event broker to publish and
+ * deliver events. When the queue is full, or a tenant has used up its share of the queue,
+ * the new task is handled according to the overflow policy
+ * <ul>
+ * <li>reject - the submitting thread gets a RejectedExecutionException, as with a plain
+ * thread pool executor</li>
+ * <li>block - the submitting thread waits until there is space in the queue</li>
+ * <li>dropOldest - the oldest queued task (of the same tenant if the tenant quota is
+ * exceeded) is dropped</li>
+ * <li>dropNewest - the new task is dropped</li>
+ * <li>callerRuns - the submitting thread runs the task itself</li>
+ * </ul>
+ * The tenant of a task is the tenant of the thread which submits it.
+ */
+public class BoundedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private static final Log log = LogFactory.getLog(BoundedThreadPoolExecutor.class);
+
+    public static final String OVERFLOW_POLICY_REJECT = "reject";
+    public static final String OVERFLOW_POLICY_BLOCK = "block";
+    public static final String OVERFLOW_POLICY_DROP_OLDEST = "dropOldest";
+    public static final String OVERFLOW_POLICY_DROP_NEWEST = "dropNewest";
+    public static final String OVERFLOW_POLICY_CALLER_RUNS = "callerRuns";
+
+    /**
+     * rejections are logged once per this many rejected tasks
+     */
+    private static final int REJECTION_LOG_INTERVAL = 1000;
+
+    /**
+     * milliseconds a blocked submitter waits before it checks whether the executor has been shut down
+     */
+    private static final long BLOCK_CHECK_INTERVAL = 1000;
+
+    private final String name;
+    private final String overflowPolicy;
+    private final int maxQueuedTasksPerTenant;
+
+    private final Map<Integer, TenantQueue> tenantQueueMap;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param name - name used in the log messages
+     * @param corePoolSize - number of threads kept in the pool
+     * @param maximumPoolSize - maximum number of threads
+     * @param keepAliveTime - time an idle thread above the core pool size waits for tasks
+     * @param unit - time unit of the keep alive time
+     * @param maxQueuedTasks - capacity of the task queue
+     * @param overflowPolicy - one of the OVERFLOW_POLICY values
+     * @param maxQueuedTasksPerTenant - maximum number of queued tasks of a tenant. 0 or less
+     * disables the tenant quota
+     */
+    public BoundedThreadPoolExecutor(String name,
+                                     int corePoolSize,
+                                     int maximumPoolSize,
+                                     long keepAliveTime,
+                                     TimeUnit unit,
+                                     int maxQueuedTasks,
+                                     String overflowPolicy,
+                                     int maxQueuedTasksPerTenant) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit,
+              new ArrayBlockingQueue<Runnable>(maxQueuedTasks));
+        if (!isOverflowPolicy(overflowPolicy)) {
+            throw new IllegalArgumentException("Unknown overflow policy " + overflowPolicy);
+        }
+        this.name = name;
+        this.overflowPolicy = overflowPolicy;
+        this.maxQueuedTasksPerTenant = maxQueuedTasksPerTenant;
+        this.tenantQueueMap = new ConcurrentHashMap<Integer, TenantQueue>();
+        setRejectedExecutionHandler(new OverflowHandler());
+    }
+
+    /**
+     * @param overflowPolicy
+     * @return true if the given value is a supported overflow policy
+     */
+    public static boolean isOverflowPolicy(String overflowPolicy) {
+        return OVERFLOW_POLICY_REJECT.equals(overflowPolicy)
+               || OVERFLOW_POLICY_BLOCK.equals(overflowPolicy)
+               || OVERFLOW_POLICY_DROP_OLDEST.equals(overflowPolicy)
+               || OVERFLOW_POLICY_DROP_NEWEST.equals(overflowPolicy)
+               || OVERFLOW_POLICY_CALLER_RUNS.equals(overflowPolicy);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (this.maxQueuedTasksPerTenant <= 0 || command instanceof TenantTask) {
+            super.execute(command);
+            return;
+        }
+
+        TenantQueue tenantQueue = getTenantQueue(CarbonContext.getThreadLocalCarbonContext().getTenantId());
+        while (!tenantQueue.tryAcquire(this.maxQueuedTasksPerTenant)) {
+            // the tenant has used up its share of the queue
+            if (OVERFLOW_POLICY_REJECT.equals(this.overflowPolicy)) {
+                reject();
+                throw new RejectedExecutionException("The queue quota of the tenant in " + this.name
+                                                     + " has been used up");
+            } else if (OVERFLOW_POLICY_BLOCK.equals(this.overflowPolicy)) {
+                if (isShutdown()) {
+                    reject();
+                    throw new RejectedExecutionException(this.name + " has been shut down");
+                }
+                try {
+                    tenantQueue.awaitRelease(this.maxQueuedTasksPerTenant);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    reject();
+                    throw new RejectedExecutionException("Interrupted while waiting for space in " + this.name);
+                }
+            } else if (OVERFLOW_POLICY_DROP_OLDEST.equals(this.overflowPolicy)) {
+                if (!dropOldest(tenantQueue)) {
+                    // the queued tasks of the tenant have been taken by the workers meanwhile
+                    Thread.yield();
+                }
+            } else if (OVERFLOW_POLICY_DROP_NEWEST.equals(this.overflowPolicy)) {
+                reject();
+                return;
+            } else {
+                command.run();
+                return;
+            }
+        }
+        super.execute(new TenantTask(command, tenantQueue));
+    }
+
+    /**
+     * @return number of tasks waiting in the queue
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @param tenantId
+     * @return number of tasks of the tenant waiting in the queue. Only tracked if there is a
+     * tenant quota
+     */
+    public int getQueueDepth(int tenantId) {
+        TenantQueue tenantQueue = this.tenantQueueMap.get(tenantId);
+        return tenantQueue == null ? 0 : tenantQueue.queuedTasks.get();
+    }
+
+    /**
+     * @return number of tasks dropped, including the ones dropped to make space for newer tasks
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.get();
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    private TenantQueue getTenantQueue(int tenantId) {
+        TenantQueue tenantQueue = this.tenantQueueMap.get(tenantId);
+        if (tenantQueue == null) {
+            synchronized (this.tenantQueueMap) {
+                tenantQueue = this.tenantQueueMap.get(tenantId);
+                if (tenantQueue == null) {
+                    tenantQueue = new TenantQueue(OVERFLOW_POLICY_BLOCK.equals(this.overflowPolicy));
+                    this.tenantQueueMap.put(tenantId, tenantQueue);
+                }
+            }
+        }
+        return tenantQueue;
+    }
+
+    /**
+     * removes the oldest queued task of the tenant.
+     * @param tenantQueue - tenant of the task
+     * @return true if a task was removed
+     */
+    private boolean dropOldest(TenantQueue tenantQueue) {
+        for (Iterator<Runnable> iterator = getQueue().iterator(); iterator.hasNext();) {
+            Runnable runnable = iterator.next();
+            if (runnable instanceof TenantTask && ((TenantTask) runnable).tenantQueue == tenantQueue) {
+                if (getQueue().remove(runnable)) {
+                    tenantQueue.release();
+                    reject();
+                    return true;
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void reject() {
+        long count = this.rejectedCount.incrementAndGet();
+        if (count == 1 || count % REJECTION_LOG_INTERVAL == 0) {
+            log.warn("The task queue of " + this.name + " is full, " + count + " tasks have been rejected " +
+                     "with the " + this.overflowPolicy + " policy");
+        }
+    }
+
+    /**
+     * handles the tasks which do not fit in to the queue
+     */
+    private class OverflowHandler implements RejectedExecutionHandler {
+
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                release(runnable);
+                reject();
+                throw new RejectedExecutionException(name + " has been shut down");
+            }
+            if (OVERFLOW_POLICY_REJECT.equals(overflowPolicy)) {
+                release(runnable);
+                reject();
+                throw new RejectedExecutionException("The task queue of " + name + " is full");
+            } else if (OVERFLOW_POLICY_BLOCK.equals(overflowPolicy)) {
+                block(runnable, executor);
+            } else if (OVERFLOW_POLICY_DROP_OLDEST.equals(overflowPolicy)) {
+                Runnable oldest = executor.getQueue().poll();
+                if (oldest != null) {
+                    release(oldest);
+                    reject();
+                }
+                executor.execute(runnable);
+            } else if (OVERFLOW_POLICY_DROP_NEWEST.equals(overflowPolicy)) {
+                release(runnable);
+                reject();
+            } else {
+                runnable.run();
+            }
+        }
+
+        /**
+         * waits for space in the queue. The executor may be shut down while waiting or right
+         * after the task is queued, in which case no worker would take the task, so it is
+         * rejected instead.
+         */
+        private void block(Runnable runnable, ThreadPoolExecutor executor) {
+            try {
+                while (!executor.getQueue().offer(runnable, BLOCK_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown()) {
+                        release(runnable);
+                        reject();
+                        throw new RejectedExecutionException(name + " has been shut down");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                release(runnable);
+                reject();
+                throw new RejectedExecutionException("Interrupted while waiting for space in " + name);
+            }
+            if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+                release(runnable);
+                reject();
+                throw new RejectedExecutionException(name + " has been shut down");
+            }
+        }
+
+        private void release(Runnable runnable) {
+            if (runnable instanceof TenantTask) {
+                ((TenantTask) runnable).tenantQueue.release();
+            }
+        }
+    }
+
+    /**
+     * task counted against the queue quota of a tenant until it starts running
+     */
+    private static class TenantTask implements Runnable {
+
+        private final Runnable task;
+        private final TenantQueue tenantQueue;
+
+        private TenantTask(Runnable task, TenantQueue tenantQueue) {
+            this.task = task;
+            this.tenantQueue = tenantQueue;
+        }
+
+        public void run() {
+            this.tenantQueue.release();
+            this.task.run();
+        }
+    }
+
+    /**
+     * number of queued tasks of a tenant
+     */
+    private static class TenantQueue {
+
+        private final AtomicInteger queuedTasks = new AtomicInteger();
+        private final boolean blocking;
+
+        private TenantQueue(boolean blocking) {
+            this.blocking = blocking;
+        }
+
+        private boolean tryAcquire(int maxQueuedTasks) {
+            for (;;) {
+                int current = this.queuedTasks.get();
+                if (current >= maxQueuedTasks) {
+                    return false;
+                }
+                if (this.queuedTasks.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            this.queuedTasks.decrementAndGet();
+            if (this.blocking) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void awaitRelease(int maxQueuedTasks) throws InterruptedException {
+            if (this.queuedTasks.get() >= maxQueuedTasks) {
+                // wake up periodically in case the executor has been shut down
+                wait(1000);
+            }
+        }
+    }
+}
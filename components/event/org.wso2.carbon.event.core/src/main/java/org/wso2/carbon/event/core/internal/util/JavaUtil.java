@@ -21,6 +21,7 @@ import org.apache.axis2.databinding.utils.ConverterUtil;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.subscription.EventFilter;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
 import org.wso2.carbon.registry.core.Resource;
@@ -67,6 +68,25 @@ public class JavaUtil {
         return childElement.getText();
     }
 
+    /**
+     * returns the text of the given child element or the default value if the element
+     * is not present in the configuration.
+     *
+     * @param omElement
+     * @param localPart
+     * @param defaultValue
+     * @return
+     */
+    public static String getValue(OMElement omElement, String localPart, String defaultValue) {
+        OMElement childElement =
+                omElement.getFirstChildWithName(
+                        new QName(omElement.getNamespace().getNamespaceURI(), localPart));
+        if (childElement == null) {
+            return defaultValue;
+        }
+        return childElement.getText().trim();
+    }
+
     /**
      * creates the subscription object from the subscription resource
      *
@@ -99,6 +119,12 @@ public class JavaUtil {
                     subscription.setCreatedTime(new Date(Long.parseLong(subscriptionResource.getProperty(EventBrokerConstants.EB_RES_CREATED_TIME))));
                 } else if (EventBrokerConstants.EB_RES_MODE.equals(propertyName)) {
                     subscription.setMode(subscriptionResource.getProperty(EventBrokerConstants.EB_RES_MODE));
+                } else if (EventBrokerConstants.EB_RES_FILTER_DIALECT.equals(propertyName)) {
+                    // the filter is set together with its dialect
+                } else if (EventBrokerConstants.EB_RES_FILTER.equals(propertyName)) {
+                    subscription.setEventFilter(new EventFilter(
+                            subscriptionResource.getProperty(EventBrokerConstants.EB_RES_FILTER_DIALECT),
+                            subscriptionResource.getProperty(EventBrokerConstants.EB_RES_FILTER)));
                 } else {
                     subscription.addProperty(propertyName, subscriptionResource.getProperty(propertyName));
                 }
@@ -107,6 +133,33 @@ public class JavaUtil {
         return subscription;
     }
 
+    /**
+     * creates a copy of the subscription with the given topic name. subscriptions kept in
+     * memory are shared between the publishing threads, so they are copied instead of being
+     * changed in place.
+     *
+     * @param subscription
+     * @param topicName
+     * @return
+     */
+    public static Subscription copySubscription(Subscription subscription, String topicName) {
+        Subscription copy = new Subscription();
+        copy.setId(subscription.getId());
+        copy.setTopicName(topicName);
+        copy.setEventSinkURL(subscription.getEventSinkURL());
+        copy.setExpires(subscription.getExpires());
+        copy.setProperties(subscription.getProperties());
+        copy.setEventFilter(subscription.getEventFilter());
+        copy.setEventDispatcher(subscription.getEventDispatcher());
+        copy.setEventDispatcherName(subscription.getEventDispatcherName());
+        copy.setCreatedTime(subscription.getCreatedTime());
+        copy.setOwner(subscription.getOwner());
+        copy.setTenantDomain(subscription.getTenantDomain());
+        copy.setTenantId(subscription.getTenantId());
+        copy.setMode(subscription.getMode());
+        return copy;
+    }
+
     public static String getSubscriptionMode(String topicName) {
         int length = topicName.length();
         String modeSubstring = topicName.substring(length - 2);
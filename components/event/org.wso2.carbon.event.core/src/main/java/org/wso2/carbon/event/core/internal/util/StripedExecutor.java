@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * executor which runs the tasks submitted with the same key one after the other in the order
+ * they were submitted. Keys are spread over a fixed number of lanes, each lane is a single
+ * threaded bounded executor, so tasks of different keys run in parallel as long as they fall
+ * in different lanes. Lane threads are only kept while there are tasks to run.
+ *
+ * The order is kept with the block, dropOldest and dropNewest overflow policies. With the
+ * callerRuns policy a task which does not fit in to its lane may overtake the queued ones.
+ */
+public class StripedExecutor {
+
+    private final BoundedThreadPoolExecutor[] lanes;
+
+    /**
+     * @param name - name used in the log messages
+     * @param laneCount - number of lanes, which is the maximum number of threads
+     * @param keepAliveTime - time in milliseconds an idle lane keeps its thread
+     * @param maxQueuedTasksPerLane - capacity of the task queue of a lane
+     * @param overflowPolicy - overflow policy of the lanes
+     * @param maxQueuedTasksPerTenant - maximum number of queued tasks of a tenant in a lane
+     */
+    public StripedExecutor(String name,
+                           int laneCount,
+                           long keepAliveTime,
+                           int maxQueuedTasksPerLane,
+                           String overflowPolicy,
+                           int maxQueuedTasksPerTenant) {
+        this.lanes = new BoundedThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            this.lanes[i] = new BoundedThreadPoolExecutor(name + "-" + i, 1, 1,
+                    Math.max(1, keepAliveTime), TimeUnit.MILLISECONDS, maxQueuedTasksPerLane, overflowPolicy,
+                    maxQueuedTasksPerTenant);
+            this.lanes[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * runs the task after all the tasks previously submitted with the same key.
+     * @param key - ordering key. eg. subscription id
+     * @param task - task to run
+     */
+    public void execute(String key, Runnable task) {
+        this.lanes[(key.hashCode() & 0x7fffffff) % this.lanes.length].execute(task);
+    }
+
+    /**
+     * @return number of tasks waiting in all the lanes
+     */
+    public int getQueueDepth() {
+        int queueDepth = 0;
+        for (BoundedThreadPoolExecutor lane : this.lanes) {
+            queueDepth += lane.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * @param tenantId
+     * @return number of tasks of the tenant waiting in all the lanes. Only tracked if there is
+     * a tenant quota
+     */
+    public int getQueueDepth(int tenantId) {
+        int queueDepth = 0;
+        for (BoundedThreadPoolExecutor lane : this.lanes) {
+            queueDepth += lane.getQueueDepth(tenantId);
+        }
+        return queueDepth;
+    }
+
+    /**
+     * @return number of tasks rejected by all the lanes
+     */
+    public long getRejectedCount() {
+        long rejectedCount = 0;
+        for (BoundedThreadPoolExecutor lane : this.lanes) {
+            rejectedCount += lane.getRejectedCount();
+        }
+        return rejectedCount;
+    }
+
+    public void shutdown() {
+        for (BoundedThreadPoolExecutor lane : this.lanes) {
+            lane.shutdown();
+        }
+    }
+}
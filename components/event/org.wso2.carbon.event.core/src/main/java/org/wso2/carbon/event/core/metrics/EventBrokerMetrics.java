@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.core.internal.util.AuthorizationCache;
+import org.wso2.carbon.event.core.internal.util.BoundedThreadPoolExecutor;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * publish, matching and delivery metrics of the event broker, kept per tenant, topic and
+ * event sink. Counters are striped and timings go to histograms, so recording neither locks
+ * nor allocates once a topic or sink has been seen.
+ *
+ * Memory is bounded by maxTopics and maxEventSinks over all the tenants. Topics and sinks
+ * seen after the limit is reached are added up under [other] of their tenant.
+ */
+public class EventBrokerMetrics implements EventBrokerMetricsMBean {
+
+    private static final Log log = LogFactory.getLog(EventBrokerMetrics.class);
+
+    public static final int DEFAULT_MAX_TOPICS = 1000;
+    public static final int DEFAULT_MAX_EVENT_SINKS = 1000;
+
+    public static final String OTHER = "[other]";
+    public static final String LOCAL_EVENT_SINK = "[local]";
+
+    public static final String MBEAN_NAME = "org.wso2.carbon:type=EventBroker,name=Metrics";
+
+    private static EventBrokerMetrics instance = new EventBrokerMetrics();
+
+    private volatile boolean enabled = true;
+    private int maxTopics = DEFAULT_MAX_TOPICS;
+    private int maxEventSinks = DEFAULT_MAX_EVENT_SINKS;
+
+    private final Map<Integer, TenantMetrics> tenantMetricsMap;
+    private final AtomicInteger topicCount;
+    private final AtomicInteger eventSinkCount;
+
+    private final StripedCounter publishCount;
+    private final StripedCounter dispatchCount;
+    private final StripedCounter dispatchFailureCount;
+
+    // executors of the event publisher and the delivery manager, ordered ones may be null
+    private volatile BoundedThreadPoolExecutor publishExecutor;
+    private volatile StripedExecutor orderedPublishExecutor;
+    private volatile BoundedThreadPoolExecutor deliveryExecutor;
+    private volatile StripedExecutor orderedDeliveryExecutor;
+
+    private boolean registered;
+
+    private EventBrokerMetrics() {
+        this.tenantMetricsMap = new ConcurrentHashMap<Integer, TenantMetrics>();
+        this.topicCount = new AtomicInteger();
+        this.eventSinkCount = new AtomicInteger();
+        this.publishCount = new StripedCounter();
+        this.dispatchCount = new StripedCounter();
+        this.dispatchFailureCount = new StripedCounter();
+    }
+
+    public static EventBrokerMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * records events published to a topic.
+     * @param tenantId - publishing tenant
+     * @param topicName - published topic
+     * @param messageCount - number of published events
+     */
+    public void recordPublish(int tenantId, String topicName, int messageCount) {
+        if (!this.enabled) {
+            return;
+        }
+        this.publishCount.add(messageCount);
+        getTopicMetrics(tenantId, topicName).publishCount.add(messageCount);
+    }
+
+    /**
+     * records the time taken to find the subscriptions of a published topic.
+     * @param tenantId - publishing tenant
+     * @param topicName - published topic
+     * @param matchTime - matching time in nanoseconds
+     * @param fanOut - number of matching subscriptions
+     */
+    public void recordMatch(int tenantId, String topicName, long matchTime, int fanOut) {
+        if (!this.enabled) {
+            return;
+        }
+        TopicMetrics topicMetrics = getTopicMetrics(tenantId, topicName);
+        topicMetrics.matchTime.record(matchTime / 1000);
+        topicMetrics.fanOut.record(fanOut);
+    }
+
+    /**
+     * records a delivery to an event sink.
+     * @param tenantId - tenant of the subscription
+     * @param eventSinkURL - event sink of the subscription, may be null
+     * @param dispatchTime - time taken by the event dispatcher in nanoseconds
+     * @param failed - true if the event dispatcher failed
+     */
+    public void recordDispatch(int tenantId, String eventSinkURL, long dispatchTime, boolean failed) {
+        if (!this.enabled) {
+            return;
+        }
+        EventSinkMetrics eventSinkMetrics = getEventSinkMetrics(tenantId, eventSinkURL);
+        this.dispatchCount.increment();
+        eventSinkMetrics.dispatchCount.increment();
+        eventSinkMetrics.dispatchTime.record(dispatchTime / 1000);
+        if (failed) {
+            this.dispatchFailureCount.increment();
+            eventSinkMetrics.failureCount.increment();
+        }
+    }
+
+    /**
+     * records a failed delivery which the event dispatcher handled itself, so that the
+     * dispatch was recorded as a success.
+     * @param tenantId - tenant of the subscription
+     * @param eventSinkURL - event sink of the subscription
+     */
+    public void recordDispatchFailure(int tenantId, String eventSinkURL) {
+        if (!this.enabled) {
+            return;
+        }
+        this.dispatchFailureCount.increment();
+        getEventSinkMetrics(tenantId, eventSinkURL).failureCount.increment();
+    }
+
+    /**
+     * @param tenantId
+     * @return statistics of the topics of the tenant
+     */
+    public TopicStatistics[] getTopicStatistics(int tenantId) {
+        TenantMetrics tenantMetrics = this.tenantMetricsMap.get(tenantId);
+        if (tenantMetrics == null) {
+            return new TopicStatistics[0];
+        }
+        List<TopicStatistics> topicStatistics = new ArrayList<TopicStatistics>();
+        for (Map.Entry<String, TopicMetrics> entry : tenantMetrics.topicMetricsMap.entrySet()) {
+            topicStatistics.add(entry.getValue().getStatistics(tenantId, entry.getKey()));
+        }
+        return topicStatistics.toArray(new TopicStatistics[topicStatistics.size()]);
+    }
+
+    /**
+     * @param tenantId
+     * @return statistics of the event sinks of the tenant
+     */
+    public EventSinkStatistics[] getEventSinkStatistics(int tenantId) {
+        TenantMetrics tenantMetrics = this.tenantMetricsMap.get(tenantId);
+        if (tenantMetrics == null) {
+            return new EventSinkStatistics[0];
+        }
+        List<EventSinkStatistics> eventSinkStatistics = new ArrayList<EventSinkStatistics>();
+        for (Map.Entry<String, EventSinkMetrics> entry : tenantMetrics.eventSinkMetricsMap.entrySet()) {
+            eventSinkStatistics.add(entry.getValue().getStatistics(tenantId, entry.getKey()));
+        }
+        return eventSinkStatistics.toArray(new EventSinkStatistics[eventSinkStatistics.size()]);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMaxTopics(int maxTopics) {
+        this.maxTopics = maxTopics;
+    }
+
+    public void setMaxEventSinks(int maxEventSinks) {
+        this.maxEventSinks = maxEventSinks;
+    }
+
+    /**
+     * sets the executors whose queues are reported as the publish queues.
+     * @param executor - executor of the event publisher
+     * @param orderedExecutor - ordered executor of the event publisher, null if not used
+     */
+    public void setPublishExecutors(BoundedThreadPoolExecutor executor, StripedExecutor orderedExecutor) {
+        this.publishExecutor = executor;
+        this.orderedPublishExecutor = orderedExecutor;
+    }
+
+    /**
+     * sets the executors whose queues are reported as the delivery queues.
+     * @param executor - executor of the delivery manager
+     * @param orderedExecutor - ordered executor of the delivery manager, null if not used
+     */
+    public void setDeliveryExecutors(BoundedThreadPoolExecutor executor, StripedExecutor orderedExecutor) {
+        this.deliveryExecutor = executor;
+        this.orderedDeliveryExecutor = orderedExecutor;
+    }
+
+    public long getPublishCount() {
+        return this.publishCount.sum();
+    }
+
+    public long getDispatchCount() {
+        return this.dispatchCount.sum();
+    }
+
+    public long getDispatchFailureCount() {
+        return this.dispatchFailureCount.sum();
+    }
+
+    public int getTopicCount() {
+        return this.topicCount.get();
+    }
+
+    public int getEventSinkCount() {
+        return this.eventSinkCount.get();
+    }
+
+    public long getAuthorizationCacheHitCount() {
+        return AuthorizationCache.getInstance().getHitCount();
+    }
+
+    public long getAuthorizationCacheMissCount() {
+        return AuthorizationCache.getInstance().getMissCount();
+    }
+
+    public int getAuthorizationCacheSize() {
+        return AuthorizationCache.getInstance().getSize();
+    }
+
+    public int getPublishQueueDepth() {
+        return getQueueDepth(this.publishExecutor, this.orderedPublishExecutor);
+    }
+
+    public int getPublishQueueDepth(int tenantId) {
+        return getQueueDepth(this.publishExecutor, this.orderedPublishExecutor, tenantId);
+    }
+
+    public long getPublishRejectedCount() {
+        return getRejectedCount(this.publishExecutor, this.orderedPublishExecutor);
+    }
+
+    public int getDeliveryQueueDepth() {
+        return getQueueDepth(this.deliveryExecutor, this.orderedDeliveryExecutor);
+    }
+
+    public int getDeliveryQueueDepth(int tenantId) {
+        return getQueueDepth(this.deliveryExecutor, this.orderedDeliveryExecutor, tenantId);
+    }
+
+    public long getDeliveryRejectedCount() {
+        return getRejectedCount(this.deliveryExecutor, this.orderedDeliveryExecutor);
+    }
+
+    public String[] getTopicStatistics() {
+        List<String> lines = new ArrayList<String>();
+        for (Integer tenantId : this.tenantMetricsMap.keySet()) {
+            for (TopicStatistics statistics : getTopicStatistics(tenantId)) {
+                lines.add("tenant=" + tenantId + " topic=" + statistics.getTopicName()
+                          + " published=" + statistics.getPublishCount()
+                          + " matched=" + statistics.getMatchCount()
+                          + " matchTimeMeanUs=" + Math.round(statistics.getMeanMatchTime())
+                          + " matchTimeP99Us=" + statistics.getP99MatchTime()
+                          + " matchTimeMaxUs=" + statistics.getMaxMatchTime()
+                          + " fanOutMean=" + Math.round(statistics.getMeanFanOut())
+                          + " fanOutMax=" + statistics.getMaxFanOut());
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    public String[] getEventSinkStatistics() {
+        List<String> lines = new ArrayList<String>();
+        for (Integer tenantId : this.tenantMetricsMap.keySet()) {
+            for (EventSinkStatistics statistics : getEventSinkStatistics(tenantId)) {
+                lines.add("tenant=" + tenantId + " eventSink=" + statistics.getEventSinkURL()
+                          + " dispatched=" + statistics.getDispatchCount()
+                          + " failed=" + statistics.getFailureCount()
+                          + " dispatchTimeMeanUs=" + Math.round(statistics.getMeanDispatchTime())
+                          + " dispatchTimeP50Us=" + statistics.getP50DispatchTime()
+                          + " dispatchTimeP99Us=" + statistics.getP99DispatchTime()
+                          + " dispatchTimeMaxUs=" + statistics.getMaxDispatchTime());
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    public void reset() {
+        synchronized (this.tenantMetricsMap) {
+            this.tenantMetricsMap.clear();
+            this.topicCount.set(0);
+            this.eventSinkCount.set(0);
+        }
+        this.publishCount.reset();
+        this.dispatchCount.reset();
+        this.dispatchFailureCount.reset();
+    }
+
+    /**
+     * registers the metrics with the platform MBean server, if it is not registered yet.
+     */
+    public synchronized void registerMBean() {
+        if (this.registered) {
+            return;
+        }
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(this, objectName);
+            }
+            this.registered = true;
+        } catch (Exception e) {
+            log.warn("Can not register the event broker metrics MBean " + MBEAN_NAME, e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (!this.registered) {
+            return;
+        }
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(MBEAN_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            log.warn("Can not unregister the event broker metrics MBean " + MBEAN_NAME, e);
+        }
+        this.registered = false;
+    }
+
+    private static int getQueueDepth(BoundedThreadPoolExecutor executor, StripedExecutor orderedExecutor) {
+        int queueDepth = executor == null ? 0 : executor.getQueueDepth();
+        if (orderedExecutor != null) {
+            queueDepth += orderedExecutor.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    private static int getQueueDepth(BoundedThreadPoolExecutor executor,
+                                     StripedExecutor orderedExecutor,
+                                     int tenantId) {
+        int queueDepth = executor == null ? 0 : executor.getQueueDepth(tenantId);
+        if (orderedExecutor != null) {
+            queueDepth += orderedExecutor.getQueueDepth(tenantId);
+        }
+        return queueDepth;
+    }
+
+    private static long getRejectedCount(BoundedThreadPoolExecutor executor, StripedExecutor orderedExecutor) {
+        long rejectedCount = executor == null ? 0 : executor.getRejectedCount();
+        if (orderedExecutor != null) {
+            rejectedCount += orderedExecutor.getRejectedCount();
+        }
+        return rejectedCount;
+    }
+
+    private TenantMetrics getTenantMetrics(int tenantId) {
+        TenantMetrics tenantMetrics = this.tenantMetricsMap.get(tenantId);
+        if (tenantMetrics == null) {
+            synchronized (this.tenantMetricsMap) {
+                tenantMetrics = this.tenantMetricsMap.get(tenantId);
+                if (tenantMetrics == null) {
+                    tenantMetrics = new TenantMetrics();
+                    this.tenantMetricsMap.put(tenantId, tenantMetrics);
+                }
+            }
+        }
+        return tenantMetrics;
+    }
+
+    private TopicMetrics getTopicMetrics(int tenantId, String topicName) {
+        TenantMetrics tenantMetrics = getTenantMetrics(tenantId);
+        TopicMetrics topicMetrics = tenantMetrics.topicMetricsMap.get(topicName);
+        if (topicMetrics == null) {
+            synchronized (tenantMetrics) {
+                topicMetrics = tenantMetrics.topicMetricsMap.get(topicName);
+                if (topicMetrics == null) {
+                    if (reserve(this.topicCount, this.maxTopics)) {
+                        topicMetrics = new TopicMetrics();
+                        tenantMetrics.topicMetricsMap.put(topicName, topicMetrics);
+                    } else {
+                        topicName = OTHER;
+                        topicMetrics = tenantMetrics.topicMetricsMap.get(topicName);
+                        if (topicMetrics == null) {
+                            // [other] is not reserved so that each tenant always has one
+                            topicMetrics = new TopicMetrics();
+                            tenantMetrics.topicMetricsMap.put(topicName, topicMetrics);
+                            this.topicCount.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+        return topicMetrics;
+    }
+
+    private EventSinkMetrics getEventSinkMetrics(int tenantId, String eventSinkURL) {
+        if (eventSinkURL == null) {
+            eventSinkURL = LOCAL_EVENT_SINK;
+        }
+        TenantMetrics tenantMetrics = getTenantMetrics(tenantId);
+        EventSinkMetrics eventSinkMetrics = tenantMetrics.eventSinkMetricsMap.get(eventSinkURL);
+        if (eventSinkMetrics == null) {
+            synchronized (tenantMetrics) {
+                eventSinkMetrics = tenantMetrics.eventSinkMetricsMap.get(eventSinkURL);
+                if (eventSinkMetrics == null) {
+                    if (reserve(this.eventSinkCount, this.maxEventSinks)) {
+                        eventSinkMetrics = new EventSinkMetrics();
+                        tenantMetrics.eventSinkMetricsMap.put(eventSinkURL, eventSinkMetrics);
+                    } else {
+                        eventSinkURL = OTHER;
+                        eventSinkMetrics = tenantMetrics.eventSinkMetricsMap.get(eventSinkURL);
+                        if (eventSinkMetrics == null) {
+                            // [other] is not reserved so that each tenant always has one
+                            eventSinkMetrics = new EventSinkMetrics();
+                            tenantMetrics.eventSinkMetricsMap.put(eventSinkURL, eventSinkMetrics);
+                            this.eventSinkCount.incrementAndGet();
+                        }
+                    }
+                }
+            }
+        }
+        return eventSinkMetrics;
+    }
+
+    /**
+     * reserves one of the max entries over all the tenants. The per tenant locks do not
+     * guard the global count, so the reservation is a compare and set.
+     * @param count - entries reserved so far
+     * @param max - maximum number of entries
+     * @return true if an entry was reserved
+     */
+    private static boolean reserve(AtomicInteger count, int max) {
+        while (true) {
+            int current = count.get();
+            if (current >= max) {
+                return false;
+            }
+            if (count.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * metrics of the topics and event sinks of a tenant
+     */
+    private static class TenantMetrics {
+
+        private final Map<String, TopicMetrics> topicMetricsMap = new ConcurrentHashMap<String, TopicMetrics>();
+        private final Map<String, EventSinkMetrics> eventSinkMetricsMap =
+                new ConcurrentHashMap<String, EventSinkMetrics>();
+    }
+
+    private static class TopicMetrics {
+
+        private final StripedCounter publishCount = new StripedCounter();
+        private final Histogram matchTime = new Histogram();
+        private final Histogram fanOut = new Histogram();
+
+        private TopicStatistics getStatistics(int tenantId, String topicName) {
+            TopicStatistics statistics = new TopicStatistics();
+            statistics.setTenantId(tenantId);
+            statistics.setTopicName(topicName);
+            statistics.setPublishCount(this.publishCount.sum());
+            statistics.setMatchCount(this.matchTime.getCount());
+            statistics.setMeanMatchTime(this.matchTime.getMean());
+            statistics.setP99MatchTime(this.matchTime.getPercentile(99));
+            statistics.setMaxMatchTime(this.matchTime.getMax());
+            statistics.setMeanFanOut(this.fanOut.getMean());
+            statistics.setMaxFanOut(this.fanOut.getMax());
+            return statistics;
+        }
+    }
+
+    private static class EventSinkMetrics {
+
+        private final StripedCounter dispatchCount = new StripedCounter();
+        private final StripedCounter failureCount = new StripedCounter();
+        private final Histogram dispatchTime = new Histogram();
+
+        private EventSinkStatistics getStatistics(int tenantId, String eventSinkURL) {
+            EventSinkStatistics statistics = new EventSinkStatistics();
+            statistics.setTenantId(tenantId);
+            statistics.setEventSinkURL(eventSinkURL);
+            statistics.setDispatchCount(this.dispatchCount.sum());
+            statistics.setFailureCount(this.failureCount.sum());
+            statistics.setMeanDispatchTime(this.dispatchTime.getMean());
+            statistics.setP50DispatchTime(this.dispatchTime.getPercentile(50));
+            statistics.setP99DispatchTime(this.dispatchTime.getPercentile(99));
+            statistics.setMaxDispatchTime(this.dispatchTime.getMax());
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+/**
+ * JMX view of the event broker metrics, covering all the tenants.
+ */
+public interface EventBrokerMetricsMBean {
+
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    public long getPublishCount();
+
+    public long getDispatchCount();
+
+    public long getDispatchFailureCount();
+
+    /**
+     * @return number of topics with their own statistics
+     */
+    public int getTopicCount();
+
+    /**
+     * @return number of event sinks with their own statistics
+     */
+    public int getEventSinkCount();
+
+    /**
+     * @return one line per topic with the tenant id, topic name and the statistics
+     */
+    public String[] getTopicStatistics();
+
+    /**
+     * @return one line per event sink with the tenant id, event sink url and the statistics
+     */
+    public String[] getEventSinkStatistics();
+
+    /**
+     * @return number of publish and subscribe authorization checks answered from the cache
+     */
+    public long getAuthorizationCacheHitCount();
+
+    /**
+     * @return number of publish and subscribe authorization checks which went to the user store
+     */
+    public long getAuthorizationCacheMissCount();
+
+    /**
+     * @return number of cached authorization decisions
+     */
+    public int getAuthorizationCacheSize();
+
+    /**
+     * @return number of publish tasks waiting in the event publisher queues
+     */
+    public int getPublishQueueDepth();
+
+    /**
+     * @param tenantId
+     * @return number of publish tasks of the tenant waiting in the event publisher queues. Only
+     * tracked if there is a tenant quota
+     */
+    public int getPublishQueueDepth(int tenantId);
+
+    /**
+     * @return number of publish tasks rejected or dropped by the event publisher
+     */
+    public long getPublishRejectedCount();
+
+    /**
+     * @return number of delivery tasks waiting in the delivery manager queues
+     */
+    public int getDeliveryQueueDepth();
+
+    /**
+     * @param tenantId
+     * @return number of delivery tasks of the tenant waiting in the delivery manager queues.
+     * Only tracked if there is a tenant quota
+     */
+    public int getDeliveryQueueDepth(int tenantId);
+
+    /**
+     * @return number of delivery tasks rejected or dropped by the delivery manager
+     */
+    public long getDeliveryRejectedCount();
+
+    /**
+     * drops the statistics of all the topics and event sinks.
+     */
+    public void reset();
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+/**
+ * delivery statistics of an event sink since the metrics were last reset. Times are in
+ * microseconds. Subscriptions with out an event sink url are reported under [local], and the
+ * event sinks which did not fit in to the metrics under [other].
+ */
+public class EventSinkStatistics {
+
+    private String eventSinkURL;
+    private int tenantId;
+    private long dispatchCount;
+    private long failureCount;
+    private double meanDispatchTime;
+    private long p50DispatchTime;
+    private long p99DispatchTime;
+    private long maxDispatchTime;
+
+    public String getEventSinkURL() {
+        return eventSinkURL;
+    }
+
+    public void setEventSinkURL(String eventSinkURL) {
+        this.eventSinkURL = eventSinkURL;
+    }
+
+    public int getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(int tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public long getDispatchCount() {
+        return dispatchCount;
+    }
+
+    public void setDispatchCount(long dispatchCount) {
+        this.dispatchCount = dispatchCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public void setFailureCount(long failureCount) {
+        this.failureCount = failureCount;
+    }
+
+    public double getMeanDispatchTime() {
+        return meanDispatchTime;
+    }
+
+    public void setMeanDispatchTime(double meanDispatchTime) {
+        this.meanDispatchTime = meanDispatchTime;
+    }
+
+    public long getP50DispatchTime() {
+        return p50DispatchTime;
+    }
+
+    public void setP50DispatchTime(long p50DispatchTime) {
+        this.p50DispatchTime = p50DispatchTime;
+    }
+
+    public long getP99DispatchTime() {
+        return p99DispatchTime;
+    }
+
+    public void setP99DispatchTime(long p99DispatchTime) {
+        this.p99DispatchTime = p99DispatchTime;
+    }
+
+    public long getMaxDispatchTime() {
+        return maxDispatchTime;
+    }
+
+    public void setMaxDispatchTime(long maxDispatchTime) {
+        this.maxDispatchTime = maxDispatchTime;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * fixed size histogram of non negative values with a bounded relative error, in the same way
+ * as a HDR histogram. Values below 16 have their own bucket and every power of two above is
+ * split in to 8 buckets, so a reported percentile is within 12.5% of the recorded value.
+ * Values above MAX_VALUE are counted as MAX_VALUE.
+ *
+ * Recording is lock free and does not allocate. Reads are not atomic snapshots, which is
+ * fine for monitoring.
+ */
+public class Histogram {
+
+    /**
+     * largest value with its own bucket, about 19 hours in microseconds
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 4;
+    private static final int MAX_EXPONENT = 35;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final StripedCounter sum = new StripedCounter();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        } else if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        this.buckets.incrementAndGet(getBucketIndex(value));
+        this.sum.add(value);
+        long currentMax = this.max.get();
+        while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    /**
+     * @return number of recorded values
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += this.buckets.get(i);
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * @return mean of the recorded values, 0 if nothing has been recorded
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) this.sum.sum() / count;
+    }
+
+    /**
+     * @param percentile - percentile between 0 and 100
+     * @return the largest value of the bucket which holds the percentile, 0 if nothing has
+     * been recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(getBucketMaxValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.buckets.set(i, 0);
+        }
+        this.sum.reset();
+        this.max.set(0);
+    }
+
+    private static int getBucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getBucketMaxValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
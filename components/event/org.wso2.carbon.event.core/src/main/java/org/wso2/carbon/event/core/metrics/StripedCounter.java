@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counter which spreads the updates over a number of cells, each on its own cache line, so
+ * that threads incrementing the same counter do not contend on one value. The value is the
+ * sum of the cells and is not an atomic snapshot.
+ */
+public class StripedCounter {
+
+    /**
+     * longs per cell, so that two cells never share a 64 byte cache line
+     */
+    private static final int CELL_PADDING = 8;
+
+    private static final int MAX_STRIPES = 8;
+
+    private static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * CELL_PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long value) {
+        this.cells.getAndAdd(getCellIndex(), value);
+    }
+
+    /**
+     * @return sum of all the cells
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += this.cells.get(i * CELL_PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            this.cells.set(i * CELL_PADDING, 0);
+        }
+    }
+
+    private static int getCellIndex() {
+        long threadId = Thread.currentThread().getId();
+        int hash = (int) (threadId ^ (threadId >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * CELL_PADDING;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+/**
+ * publish and matching statistics of a topic since the metrics were last reset. Times are in
+ * microseconds. The statistics of the topics which did not fit in to the metrics are reported
+ * under the topic name [other].
+ */
+public class TopicStatistics {
+
+    private String topicName;
+    private int tenantId;
+    private long publishCount;
+    private long matchCount;
+    private double meanMatchTime;
+    private long p99MatchTime;
+    private long maxMatchTime;
+    private double meanFanOut;
+    private long maxFanOut;
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    public void setTopicName(String topicName) {
+        this.topicName = topicName;
+    }
+
+    public int getTenantId() {
+        return tenantId;
+    }
+
+    public void setTenantId(int tenantId) {
+        this.tenantId = tenantId;
+    }
+
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    public void setPublishCount(long publishCount) {
+        this.publishCount = publishCount;
+    }
+
+    public long getMatchCount() {
+        return matchCount;
+    }
+
+    public void setMatchCount(long matchCount) {
+        this.matchCount = matchCount;
+    }
+
+    public double getMeanMatchTime() {
+        return meanMatchTime;
+    }
+
+    public void setMeanMatchTime(double meanMatchTime) {
+        this.meanMatchTime = meanMatchTime;
+    }
+
+    public long getP99MatchTime() {
+        return p99MatchTime;
+    }
+
+    public void setP99MatchTime(long p99MatchTime) {
+        this.p99MatchTime = p99MatchTime;
+    }
+
+    public long getMaxMatchTime() {
+        return maxMatchTime;
+    }
+
+    public void setMaxMatchTime(long maxMatchTime) {
+        this.maxMatchTime = maxMatchTime;
+    }
+
+    public double getMeanFanOut() {
+        return meanFanOut;
+    }
+
+    public void setMeanFanOut(double meanFanOut) {
+        this.meanFanOut = meanFanOut;
+    }
+
+    public long getMaxFanOut() {
+        return maxFanOut;
+    }
+
+    public void setMaxFanOut(long maxFanOut) {
+        this.maxFanOut = maxFanOut;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.notify;
+
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.List;
+
+/**
+ * notification manager which can send a batch of messages to a subscription at once. Batches
+ * are sent message by message through notification managers which do not implement this
+ * interface.
+ */
+public interface BatchNotificationManager extends NotificationManager {
+
+    /**
+     * sends a batch of messages published together to the subscription.
+     * @param messages - messages in the order they were published
+     * @param subscription
+     * @throws EventBrokerException
+     */
+    public void sendNotification(List<Message> messages, Subscription subscription) throws EventBrokerException;
+}
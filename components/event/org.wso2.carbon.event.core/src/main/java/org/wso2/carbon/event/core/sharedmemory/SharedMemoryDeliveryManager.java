@@ -26,28 +26,33 @@ import org.wso2.carbon.event.core.Message;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
 import org.wso2.carbon.event.core.sharedmemory.util.SharedMemoryCacheUtil;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
-import org.wso2.carbon.event.core.delivery.DeliveryManager;
+import org.wso2.carbon.event.core.delivery.BatchDeliveryManager;
 import org.wso2.carbon.event.core.delivery.MatchingManager;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.internal.delivery.EventFilterIndex;
+import org.wso2.carbon.event.core.internal.delivery.MessageBatchWorker;
 import org.wso2.carbon.event.core.internal.delivery.Worker;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
-import org.wso2.carbon.event.core.internal.util.EventBrokerHolder;
+import org.wso2.carbon.event.core.internal.util.AuthorizationCache;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
 import org.wso2.carbon.event.core.notify.NotificationManager;
 import org.wso2.carbon.event.core.subscription.Subscription;
-import org.wso2.carbon.user.api.UserRealm;
 import org.wso2.carbon.user.api.UserStoreException;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.CarbonConstants;
 
 import javax.cache.Cache;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
  * shared memory implementation of the delivery manager.
  */
-public class SharedMemoryDeliveryManager implements DeliveryManager {
+public class SharedMemoryDeliveryManager implements BatchDeliveryManager {
 
 	private static final Log log = LogFactory.getLog(SharedMemoryDeliveryManager.class);
     private ExecutorService executor;
@@ -55,6 +60,11 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
     private String topicStoragePath;
     private EventBroker eventBroker;
 
+    /**
+     * delivers the events of a subscription in the order they are published
+     */
+    private StripedExecutor orderedExecutor;
+
     public SharedMemoryDeliveryManager(ExecutorService executor, String topicStoragePath) {
         this.executor = executor;
         this.topicStoragePath = topicStoragePath;
@@ -64,9 +74,6 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
 
        String resourcePath = JavaUtil.getResourcePath(subscription.getTopicName(), this.topicStoragePath);
         try {
-            UserRealm userRealm =
-                    EventBrokerHolder.getInstance().getRealmService().getTenantUserRealm
-                                               (CarbonContext.getThreadLocalCarbonContext().getTenantId());
             String userName = subscription.getOwner();
 
             // trim the domain part if it is there.
@@ -74,7 +81,8 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
                 userName = userName.substring(0, userName.indexOf('@'));
             }
             if (userName.equals(CarbonConstants.REGISTRY_SYSTEM_USERNAME) ||
-                    userRealm.getAuthorizationManager().isUserAuthorized(
+                    AuthorizationCache.getInstance().isUserAuthorized(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(),
                         userName,
                         resourcePath,
                         EventBrokerConstants.EB_PERMISSION_SUBSCRIBE)){
@@ -95,22 +103,68 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
 
     public void publish(Message message, String topicName, int deliveryMode) throws EventBrokerException {
 
+        List<Subscription> subscriptions =
+                EventFilterIndex.getInstance().filter(getAuthorizedSubscriptions(topicName), message);
+        for (Subscription subscription : subscriptions) {
+            Worker worker = new Worker(this.notificationManager, message, subscription);
+            if (this.orderedExecutor != null) {
+                this.orderedExecutor.execute(subscription.getId(), worker);
+            } else {
+                this.executor.submit(worker);
+            }
+        }
+    }
+
+    public void publishBatch(List<Message> messages, String topicName, int deliveryMode)
+            throws EventBrokerException {
+
+        if (messages.isEmpty()) {
+            return;
+        }
+        // each subscription gets the messages of the batch which match its filter with one task
+        Map<Object, List<Message>> filterResults = new HashMap<Object, List<Message>>();
+        for (Subscription subscription : getAuthorizedSubscriptions(topicName)) {
+            List<Message> matchingMessages =
+                    EventFilterIndex.getInstance().filter(subscription, messages, filterResults);
+            if (matchingMessages.isEmpty()) {
+                continue;
+            }
+            MessageBatchWorker worker =
+                    new MessageBatchWorker(this.notificationManager, matchingMessages, subscription);
+            if (this.orderedExecutor != null) {
+                this.orderedExecutor.execute(subscription.getId(), worker);
+            } else {
+                this.executor.submit(worker);
+            }
+        }
+    }
+
+    /**
+     * checks whether the current user can publish to the topic and returns the subscriptions
+     * of the topic.
+     * @param topicName
+     * @return matching subscriptions
+     * @throws EventBrokerException - if the user is not authorized to publish to the topic
+     */
+    private List<Subscription> getAuthorizedSubscriptions(String topicName) throws EventBrokerException {
+
         String resourcePath = JavaUtil.getResourcePath(topicName, this.topicStoragePath);
         try {
-            UserRealm userRealm =
-                    EventBrokerHolder.getInstance().getRealmService().getTenantUserRealm
-                            (CarbonContext.getThreadLocalCarbonContext().getTenantId());
             String userName = CarbonContext.getThreadLocalCarbonContext().getUsername();
             
             if (userName == null){
                 userName = CarbonConstants.REGISTRY_SYSTEM_USERNAME;
             }
             if (userName.equals(CarbonConstants.REGISTRY_SYSTEM_USERNAME) ||
-                    userRealm.getAuthorizationManager().isUserAuthorized(
+                    AuthorizationCache.getInstance().isUserAuthorized(
+                        CarbonContext.getThreadLocalCarbonContext().getTenantId(),
                         userName,
                         resourcePath,
                         EventBrokerConstants.EB_PERMISSION_PUBLISH)) {
+                long startTime = System.nanoTime();
                 List<Subscription> subscriptions = getMatchingManager().getMatchingSubscriptions(topicName);
+                EventBrokerMetrics.getInstance().recordMatch(CarbonContext.getThreadLocalCarbonContext().getTenantId(),
+                        topicName, System.nanoTime() - startTime, subscriptions.size());
 
                 for (Subscription subscription : subscriptions) {
                     String verified = org.wso2.carbon.event.core.sharedmemory.SharedMemorySubscriptionStorage
@@ -119,9 +173,8 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
                     if(verified != null && "false".equalsIgnoreCase(verified)){
                             subscription.addProperty("notVerfied", "false");
                     }
-
-                    this.executor.submit(new Worker(this.notificationManager, message, subscription));
                 }
+                return subscriptions;
             } else {
                 throw new EventBrokerException("User " + CarbonContext.getThreadLocalCarbonContext().getUsername()
                         + " is not allowed to publish to " + topicName);
@@ -131,6 +184,10 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
         }
     }
 
+    public void setOrderedExecutor(StripedExecutor orderedExecutor) {
+        this.orderedExecutor = orderedExecutor;
+    }
+
     public void setMatchingManager(MatchingManager matchingManager) {
     }
 
@@ -139,7 +196,10 @@ public class SharedMemoryDeliveryManager implements DeliveryManager {
     }
 
     public void cleanUp() {
-        // nothing to clean up in the shared memory implementation.
+        this.executor.shutdown();
+        if (this.orderedExecutor != null) {
+            this.orderedExecutor.shutdown();
+        }
     }
 
     public void renewSubscription(Subscription subscription) throws EventBrokerException {
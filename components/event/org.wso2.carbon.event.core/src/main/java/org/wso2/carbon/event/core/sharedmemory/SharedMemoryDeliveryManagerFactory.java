@@ -19,15 +19,14 @@
 
 package org.wso2.carbon.event.core.sharedmemory;
 
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.wso2.carbon.event.core.delivery.DeliveryManagerFactory;
 import org.wso2.carbon.event.core.delivery.DeliveryManager;
+import org.wso2.carbon.event.core.internal.util.BoundedThreadPoolExecutor;
 import org.wso2.carbon.event.core.internal.util.JavaUtil;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
 import org.apache.axiom.om.OMElement;
 
 /**
@@ -40,6 +39,9 @@ public class SharedMemoryDeliveryManagerFactory implements DeliveryManagerFactor
     public static final String EB_DM_MAX_QUEUED_REQUESTS = "maxQueuedRequests";
     public static final String EB_DM_KEEP_ALIVE_TIME = "keepAliveTime";
     public static final String EB_DM_TOPIC_STORAGE_PATH = "topicStoragePath";
+    public static final String EB_DM_OVERFLOW_POLICY = "overflowPolicy";
+    public static final String EB_DM_MAX_QUEUED_REQUESTS_PER_TENANT = "maxQueuedRequestsPerTenant";
+    public static final String EB_DM_ORDERED_DELIVERY = "orderedDelivery";
 
     public DeliveryManager getDeliveryManger(OMElement config) throws EventBrokerConfigurationException {
 
@@ -49,9 +51,26 @@ public class SharedMemoryDeliveryManagerFactory implements DeliveryManagerFactor
         int keepAliveTime = Integer.parseInt(JavaUtil.getValue(config, EB_DM_KEEP_ALIVE_TIME));
 
         String topicStoragePath = JavaUtil.getValue(config, EB_DM_TOPIC_STORAGE_PATH);
-        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(maxQueuedRequests);
-        ExecutorService executor = new ThreadPoolExecutor(minSpareThreads, maxThreads, keepAliveTime, TimeUnit.NANOSECONDS, queue);
+        String overflowPolicy = JavaUtil.getValue(config, EB_DM_OVERFLOW_POLICY,
+                BoundedThreadPoolExecutor.OVERFLOW_POLICY_REJECT);
+        int maxQueuedRequestsPerTenant =
+                Integer.parseInt(JavaUtil.getValue(config, EB_DM_MAX_QUEUED_REQUESTS_PER_TENANT, "0"));
+        if (!BoundedThreadPoolExecutor.isOverflowPolicy(overflowPolicy)) {
+            throw new EventBrokerConfigurationException("Unknown overflow policy " + overflowPolicy
+                                                        + " for the delivery manager");
+        }
+        BoundedThreadPoolExecutor executor = new BoundedThreadPoolExecutor("SharedMemoryDeliveryManager", minSpareThreads,
+                maxThreads, keepAliveTime, TimeUnit.MILLISECONDS, maxQueuedRequests, overflowPolicy,
+                maxQueuedRequestsPerTenant);
         SharedMemoryDeliveryManager deliveryManager = new SharedMemoryDeliveryManager(executor, topicStoragePath);
+        StripedExecutor orderedExecutor = null;
+        if (Boolean.parseBoolean(JavaUtil.getValue(config, EB_DM_ORDERED_DELIVERY, "false"))) {
+            // events of a subscription are delivered one after the other by one of the maxThreads lanes
+            orderedExecutor = new StripedExecutor("SharedMemoryDeliveryManager", maxThreads,
+                    keepAliveTime, maxQueuedRequests, overflowPolicy, maxQueuedRequestsPerTenant);
+            deliveryManager.setOrderedExecutor(orderedExecutor);
+        }
+        EventBrokerMetrics.getInstance().setDeliveryExecutors(executor, orderedExecutor);
 
         return deliveryManager;
     }
@@ -24,20 +24,45 @@ import org.wso2.carbon.event.core.delivery.MatchingManager;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 import org.wso2.carbon.event.core.exception.EventBrokerConfigurationException;
 import org.apache.axiom.om.OMElement;
+import org.wso2.carbon.event.core.internal.util.JavaUtil;
 import org.wso2.carbon.event.core.sharedmemory.util.SharedMemoryCacheUtil;
+import org.wso2.carbon.event.core.sharedmemory.util.SubscriptionReplicator;
 
 import javax.cache.Cache;
 
 public class SharedMemoryMatchingManagerFactory implements MatchingManagerFactory {
 
+    public static final String EB_ELE_REPLICATION_INTERVAL = "replicationInterval";
+    public static final String EB_ELE_MAX_REPLICATION_BATCH_SIZE = "maxReplicationBatchSize";
+    public static final String EB_ELE_DELTA_LOG_SIZE = "deltaLogSize";
+    public static final String EB_ELE_SNAPSHOT_INTERVAL = "snapshotInterval";
+    public static final String EB_ELE_REMOVED_SUBSCRIPTION_TIMEOUT = "removedSubscriptionTimeout";
+
 	private static Cache<Integer, SharedMemoryMatchingManager> getInMemoryMatchingCache() {
         return SharedMemoryCacheUtil.getInMemoryMatchingCache();
     }
 
     public MatchingManager getMatchingManager(OMElement config) throws EventBrokerConfigurationException {
-        SharedMemoryMatchingManager inMemoryMatchingManager = null ;
+        try {
+            SubscriptionReplicator replicator = SubscriptionReplicator.getInstance();
+            replicator.setReplicationInterval(Long.parseLong(JavaUtil.getValue(config, EB_ELE_REPLICATION_INTERVAL,
+                    String.valueOf(SubscriptionReplicator.DEFAULT_REPLICATION_INTERVAL))));
+            replicator.setMaxBatchSize(Integer.parseInt(JavaUtil.getValue(config, EB_ELE_MAX_REPLICATION_BATCH_SIZE,
+                    String.valueOf(SubscriptionReplicator.DEFAULT_MAX_BATCH_SIZE))));
+            replicator.setDeltaLogSize(Integer.parseInt(JavaUtil.getValue(config, EB_ELE_DELTA_LOG_SIZE,
+                    String.valueOf(SubscriptionReplicator.DEFAULT_DELTA_LOG_SIZE))));
+            replicator.setSnapshotInterval(Integer.parseInt(JavaUtil.getValue(config, EB_ELE_SNAPSHOT_INTERVAL,
+                    String.valueOf(SubscriptionReplicator.DEFAULT_SNAPSHOT_INTERVAL))));
+            replicator.setRemovedSubscriptionTimeout(Long.parseLong(JavaUtil.getValue(config,
+                    EB_ELE_REMOVED_SUBSCRIPTION_TIMEOUT,
+                    String.valueOf(SubscriptionReplicator.DEFAULT_REMOVED_SUBSCRIPTION_TIMEOUT))));
+        } catch (NumberFormatException e) {
+            throw new EventBrokerConfigurationException("Invalid subscription replication configuration", e);
+        }
+
+        SharedMemoryMatchingManager inMemoryMatchingManager = getInMemoryMatchingCache().get(1);
 
-        if(getInMemoryMatchingCache().get(1) == null) {
+        if(inMemoryMatchingManager == null) {
             inMemoryMatchingManager = new SharedMemoryMatchingManager();
             getInMemoryMatchingCache().put(1, inMemoryMatchingManager);
         }
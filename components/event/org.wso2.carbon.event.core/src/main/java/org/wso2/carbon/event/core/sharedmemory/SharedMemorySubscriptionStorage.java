@@ -19,11 +19,10 @@
 
 package org.wso2.carbon.event.core.sharedmemory;
 
-import org.apache.axis2.clustering.ClusteringFault;
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.core.internal.util.JavaUtil;
 import org.wso2.carbon.event.core.sharedmemory.util.SharedMemoryCacheConstants;
-import org.wso2.carbon.event.core.sharedmemory.util.SharedMemoryCacheUtil;
+import org.wso2.carbon.event.core.sharedmemory.util.SubscriptionDelta;
+import org.wso2.carbon.event.core.sharedmemory.util.SubscriptionReplicator;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
 
@@ -33,46 +32,20 @@ import javax.cache.CacheManager;
 import javax.cache.Caching;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 
 
 /**
- * this class is used to keep the details of the subscription storage. Simply this contains
- * maps to keep the subscription object details with the topic details
+ * this class is used to keep the details of the subscription storage. The subscriptions are
+ * kept in a node local replica which is kept in sync with the other nodes of the cluster by
+ * replicating each add, renew and remove as a versioned delta, see {@link SubscriptionReplicator}.
  */
 @SuppressWarnings("serial")
 public class SharedMemorySubscriptionStorage implements Serializable {
 
-    private static boolean topicSubscriptionCacheInit =false;
     private static boolean tenantIDInMemorySubscriptionStorageCacheInit = false;
-	private static final Log log = LogFactory.getLog(SharedMemorySubscriptionStorage.class);
-
-    /**
-     * Cache to keep the subscription details with the topics. This is important in finding subscriptions
-     * for a particular topic when publishing a message to a topic.
-     */
-    public static Cache<String, SubscriptionContainer> getTopicSubscriptionCache() {
-        if (topicSubscriptionCacheInit) {
-            return Caching.getCacheManagerFactory()
-            		.getCacheManager(SharedMemoryCacheConstants.INMEMORY_EVENT_CACHE_MANAGER)
-            		.getCache(SharedMemoryCacheConstants.TOPIC_SUBSCRIPTION_CACHE);
-        } else {
-            CacheManager cacheManager = Caching.getCacheManagerFactory()
-            		.getCacheManager(SharedMemoryCacheConstants.INMEMORY_EVENT_CACHE_MANAGER);
-            topicSubscriptionCacheInit = true;
-
-            return cacheManager.<String, SubscriptionContainer>createCacheBuilder(SharedMemoryCacheConstants.TOPIC_SUBSCRIPTION_CACHE).
-                setExpiry(CacheConfiguration.ExpiryType.MODIFIED, new CacheConfiguration.Duration(TimeUnit.SECONDS, 
-                		SharedMemoryCacheConstants.CACHE_INVALIDATION_TIME)).
-                setExpiry(CacheConfiguration.ExpiryType.ACCESSED, new CacheConfiguration.Duration(TimeUnit.SECONDS, 
-                		SharedMemoryCacheConstants.CACHE_INVALIDATION_TIME)).
-                setStoreByValue(false).build();
-        }
-    }
 
     public static Cache<String, String> getSubscriptionIDTopicNameCache() {
         if (tenantIDInMemorySubscriptionStorageCacheInit) {
@@ -99,81 +72,41 @@ public class SharedMemorySubscriptionStorage implements Serializable {
 
     public void addSubscription(Subscription subscription) {
         String topicName = getTopicName(subscription.getTopicName());
-        SubscriptionContainer subscriptionsContainer = getTopicSubscriptionCache().get(topicName);
-
-        if (subscriptionsContainer == null){
-            subscriptionsContainer = new SubscriptionContainer(topicName);
-        }
-        
-        subscriptionsContainer.getSubscriptionsCache().put(subscription.getId(), subscription);
-        getTopicSubscriptionCache().put(topicName, subscriptionsContainer);
-        getSubscriptionIDTopicNameCache().put(subscription.getId(), topicName);
-        
-        //send cluster message to inform other nodes about subscription added to the system, so that everyone can add new one.
-        try {
-			SharedMemoryCacheUtil.sendAddSubscriptionClusterMessage(topicName, subscription.getId(), 
-					subscription.getTenantId(),
-					subscription.getTenantDomain());
-		} catch (ClusteringFault e) {
-			//This happen due to hazelcast clustering not setup correctly. subscription cluster will not send to other nodes.
-			log.error("Subscription cluster message sending failed",e);
-		}
+        SubscriptionReplicator.getInstance().replicate(SubscriptionDelta.OPERATION_ADD, subscription.getId(),
+                topicName, subscription);
     }
 
     public List<Subscription> getMatchingSubscriptions(String topicName) {
-        topicName = getTopicName(topicName);
-        List<Subscription> subscriptions = new ArrayList<Subscription>();
-
-        List<String> matchingTopicNames = getTopicMatchingNames(topicName);
-
-        for (String matchingTopicName : matchingTopicNames){
-            if (getTopicSubscriptionCache().get(matchingTopicName) != null){
-                SubscriptionContainer matchingContainer = getTopicSubscriptionCache().get(matchingTopicName);
-                Iterator<String> keysOfSubscription = matchingContainer.getSubscriptionsCache().keys();
-                
-                while(keysOfSubscription.hasNext()) {
-                	String key = keysOfSubscription.next();
-                	subscriptions.add(matchingContainer.getSubscriptionsCache().get(key));
-                }
-            }
-        }
-
-        return subscriptions;
+        return SubscriptionReplicator.getInstance().getReplica().getMatchingSubscriptions(getTopicName(topicName));
     }
 
     public void unSubscribe(String subscriptionID) throws EventBrokerException {
-        String topicName = getTopicName(getSubscriptionIDTopicNameCache().get(subscriptionID));
+        Subscription subscription = SubscriptionReplicator.getInstance().getReplica().getSubscription(subscriptionID);
 
-        if (topicName == null){
+        if (subscription == null){
             throw new EventBrokerException("Subscription with ID " + subscriptionID + " does not exits");
         }
 
-        SubscriptionContainer subscriptionContainer = getTopicSubscriptionCache().get(topicName);
-
-        if (subscriptionContainer == null){
-            throw new EventBrokerException("Subscription with ID " + subscriptionID + " does not exits");
-        }
-
-        subscriptionContainer.getSubscriptionsCache().remove(subscriptionID);
-        getSubscriptionIDTopicNameCache().remove(subscriptionID);
+        SubscriptionReplicator.getInstance().replicate(SubscriptionDelta.OPERATION_REMOVE, subscriptionID,
+                getTopicName(subscription.getTopicName()), null);
+        getSubscriptionIDTopicNameCache().remove(subscriptionID + "-notVerfied");
     }
 
     public void renewSubscription(Subscription subscription) throws EventBrokerException {
-        String topicName = getTopicName(subscription.getTopicName());
-        SubscriptionContainer subscriptionContainer = getTopicSubscriptionCache().get(topicName);
-
-        if (subscriptionContainer == null){
-            throw new EventBrokerException("There is no subscriptions with topic " + topicName);
-        }
-
-        Subscription existingSubscription = subscriptionContainer.getSubscriptionsCache().get(subscription.getId());
+        Subscription existingSubscription =
+                SubscriptionReplicator.getInstance().getReplica().getSubscription(subscription.getId());
 
         if (existingSubscription == null){
             throw new EventBrokerException("There is no subscription with subscription id " + subscription.getId());
         }
 
-        existingSubscription.setExpires(subscription.getExpires());
-        existingSubscription.setProperties(subscription.getProperties());
+        // the replicated subscription is shared with the publishing threads, so it is not changed in place
+        Subscription renewedSubscription =
+                JavaUtil.copySubscription(existingSubscription, existingSubscription.getTopicName());
+        renewedSubscription.setExpires(subscription.getExpires());
+        renewedSubscription.setProperties(subscription.getProperties());
+        SubscriptionReplicator.getInstance().replicate(SubscriptionDelta.OPERATION_RENEW, subscription.getId(),
+                getTopicName(existingSubscription.getTopicName()), renewedSubscription);
 
         String val = subscription.getProperties().get("notVerfied");
         if(val == null) {
@@ -187,31 +120,6 @@ public class SharedMemorySubscriptionStorage implements Serializable {
         }
     }
 
-    private List<String> getTopicMatchingNames(String topicName) {
-        List<String> matchingTopicNames = new ArrayList<String>();
-
-        if (topicName.equals("/")) {
-            matchingTopicNames.add("/#");
-        } else {
-            String currentTopicName = "";
-            String[] topicParts = topicName.split("/");
-            //the first part if the split parts are "" since always topics start with /
-            int i = 0; 
-
-            while (i < (topicParts.length)) {
-                currentTopicName = currentTopicName + topicParts[i] + "/";
-                matchingTopicNames.add(currentTopicName + "#");
-                if (i == (topicParts.length - 1)||i == (topicParts.length - 2)) {
-                    matchingTopicNames.add(currentTopicName + "*");
-                }
-                i++;
-            }
-        }
-
-        matchingTopicNames.add(topicName);
-        return matchingTopicNames;
-    }
-
     private String getTopicName(String topicName){
         if (!topicName.startsWith("/")){
             topicName = "/" + topicName;
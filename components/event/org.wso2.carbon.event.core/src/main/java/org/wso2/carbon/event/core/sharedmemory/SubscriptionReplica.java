@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.sharedmemory;
+
+import org.wso2.carbon.event.core.internal.delivery.TopicTrie;
+import org.wso2.carbon.event.core.sharedmemory.util.SubscriptionDelta;
+import org.wso2.carbon.event.core.sharedmemory.util.SubscriptionSnapshot;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * node local copy of the subscriptions of a tenant, built from the subscription deltas made
+ * by this node and the ones replicated from the other nodes of the cluster. It keeps the
+ * latest delta of every subscription, including the removed ones for a while so that an
+ * older delta arriving late does not bring a removed subscription back.
+ *
+ * The replica also keeps the sequence number of the last delta batch applied from each node,
+ * which tells from where to continue reading the delta log after a snapshot.
+ */
+public class SubscriptionReplica {
+
+    private final Map<String, SubscriptionDelta> subscriptionDeltaMap;
+    private final TopicTrie<Subscription> topicIndex;
+    private final Map<String, Long> originSequenceMap;
+
+    private volatile boolean caughtUp;
+
+    public SubscriptionReplica() {
+        this.subscriptionDeltaMap = new ConcurrentHashMap<String, SubscriptionDelta>();
+        this.topicIndex = new TopicTrie<Subscription>();
+        this.originSequenceMap = new HashMap<String, Long>();
+    }
+
+    /**
+     * applies the delta if it is newer than the one the replica has for the subscription.
+     * @param delta - subscription delta
+     * @return true if the delta was applied
+     */
+    public synchronized boolean apply(SubscriptionDelta delta) {
+        String subscriptionId = delta.getSubscriptionId();
+        SubscriptionDelta current = this.subscriptionDeltaMap.get(subscriptionId);
+        if (current != null && !delta.isNewerThan(current)) {
+            return false;
+        }
+        if (current != null && !current.isRemove()
+            && (delta.isRemove() || !current.getTopicName().equals(delta.getTopicName()))) {
+            this.topicIndex.remove(current.getTopicName(), subscriptionId);
+        }
+        if (!delta.isRemove()) {
+            this.topicIndex.put(delta.getTopicName(), subscriptionId, delta.getSubscription());
+        }
+        delta.setAppliedTime(System.currentTimeMillis());
+        this.subscriptionDeltaMap.put(subscriptionId, delta);
+        return true;
+    }
+
+    /**
+     * applies the deltas of the snapshot and moves the sequences of the nodes forward to the
+     * ones the snapshot was taken at.
+     * @param snapshot - snapshot taken by any node of the cluster
+     */
+    public synchronized void merge(SubscriptionSnapshot snapshot) {
+        for (SubscriptionDelta delta : snapshot.getDeltas()) {
+            apply(delta);
+        }
+        for (Map.Entry<String, Long> entry : snapshot.getSequences().entrySet()) {
+            if (entry.getValue() > getSequence(entry.getKey())) {
+                this.originSequenceMap.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param subscriptionId
+     * @return the subscription or null if it does not exist or has been removed
+     */
+    public Subscription getSubscription(String subscriptionId) {
+        SubscriptionDelta delta = this.subscriptionDeltaMap.get(subscriptionId);
+        return delta == null ? null : delta.getSubscription();
+    }
+
+    /**
+     * @param topicName - normalized published topic name
+     * @return subscriptions of the topic including the wild card ones
+     */
+    public List<Subscription> getMatchingSubscriptions(String topicName) {
+        List<Subscription> subscriptions = new ArrayList<Subscription>();
+        this.topicIndex.getMatches(topicName, subscriptions);
+        return subscriptions;
+    }
+
+    /**
+     * @param origin - node id
+     * @return sequence number of the last delta batch applied from the node, 0 if none
+     */
+    public synchronized long getSequence(String origin) {
+        Long sequence = this.originSequenceMap.get(origin);
+        return sequence == null ? 0 : sequence;
+    }
+
+    public synchronized void setSequence(String origin, long sequence) {
+        this.originSequenceMap.put(origin, sequence);
+    }
+
+    public synchronized List<String> getOrigins() {
+        return new ArrayList<String>(this.originSequenceMap.keySet());
+    }
+
+    public synchronized SubscriptionSnapshot createSnapshot() {
+        return new SubscriptionSnapshot(new ArrayList<SubscriptionDelta>(this.subscriptionDeltaMap.values()),
+                                        new HashMap<String, Long>(this.originSequenceMap));
+    }
+
+    /**
+     * forgets the subscriptions which were removed before the given time.
+     * @param removedBefore - local time in milliseconds
+     */
+    public synchronized void purgeRemoved(long removedBefore) {
+        for (Iterator<SubscriptionDelta> iterator = this.subscriptionDeltaMap.values().iterator();
+             iterator.hasNext();) {
+            SubscriptionDelta delta = iterator.next();
+            if (delta.isRemove() && delta.getAppliedTime() < removedBefore) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public boolean isCaughtUp() {
+        return caughtUp;
+    }
+
+    public void setCaughtUp(boolean caughtUp) {
+        this.caughtUp = caughtUp;
+    }
+}
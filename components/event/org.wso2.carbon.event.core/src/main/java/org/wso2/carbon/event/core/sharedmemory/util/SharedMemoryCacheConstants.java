@@ -29,6 +29,10 @@ public class SharedMemoryCacheConstants {
 	public static final String SUBSCRIPTION_ID_TOPIC_NAME_CACHE = "subscriptionIDTopicNameCache";
 	//topicName against subscriptionContainer cache
 	public static final String TOPIC_SUBSCRIPTION_CACHE = "topicSubscriptionCache";
+	//tenantID against subscription snapshot cache
+	public static final String SUBSCRIPTION_SNAPSHOT_CACHE = "subscriptionSnapshotCache";
+	//logged subscription delta batches cache
+	public static final String SUBSCRIPTION_DELTA_LOG_CACHE = "subscriptionDeltaLogCache";
 	//tenantID against subscription storage cache
 	public static final String TENANT_ID_INMEMORY_SUBSCRIPTION_STORAGE_CACHE = "tenantIDInMemorySubscriptionStorageCache";
 	//cache invalidation time
@@ -21,6 +21,7 @@ package org.wso2.carbon.event.core.sharedmemory.util;
 
 import org.apache.axis2.clustering.ClusteringAgent;
 import org.apache.axis2.clustering.ClusteringFault;
+import org.apache.axis2.clustering.ClusteringMessage;
 import org.apache.axis2.context.ConfigurationContext;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.event.core.sharedmemory.SharedMemoryMatchingManager;
@@ -30,10 +31,13 @@ import javax.cache.Cache;
 import javax.cache.CacheConfiguration;
 import javax.cache.CacheManager;
 import javax.cache.Caching;
+import java.util.ArrayList;
 import java.util.concurrent.TimeUnit;
 
 public class SharedMemoryCacheUtil {
     private static boolean cacheInit = false;
+    private static boolean snapshotCacheInit = false;
+    private static boolean deltaLogCacheInit = false;
 
     private SharedMemoryCacheUtil(){}
     
@@ -57,21 +61,63 @@ public class SharedMemoryCacheUtil {
     }
     
     /**
-     * This is to send clusterMessage to inform other nodes about subscription added to the system, so that everyone can add new one.
-     * @param topicName
-     * @param subsciptionID
-     * @param tenantID
-     * @param tenantName
+     * Cache to keep the latest subscription snapshot of each tenant.
+     */
+    public static Cache<Integer, SubscriptionSnapshot> getSubscriptionSnapshotCache() {
+        if (snapshotCacheInit) {
+            return Caching.getCacheManagerFactory()
+            		.getCacheManager(SharedMemoryCacheConstants.INMEMORY_EVENT_CACHE_MANAGER)
+            		.getCache(SharedMemoryCacheConstants.SUBSCRIPTION_SNAPSHOT_CACHE);
+        } else {
+            CacheManager cacheManager = Caching.getCacheManagerFactory()
+            		.getCacheManager(SharedMemoryCacheConstants.INMEMORY_EVENT_CACHE_MANAGER);
+            snapshotCacheInit = true;
+
+            return cacheManager.<Integer, SubscriptionSnapshot>createCacheBuilder(SharedMemoryCacheConstants.SUBSCRIPTION_SNAPSHOT_CACHE).
+                    setExpiry(CacheConfiguration.ExpiryType.MODIFIED, new CacheConfiguration.Duration(TimeUnit.SECONDS,
+                    		SharedMemoryCacheConstants.CACHE_INVALIDATION_TIME)).
+                    setExpiry(CacheConfiguration.ExpiryType.ACCESSED, new CacheConfiguration.Duration(TimeUnit.SECONDS,
+                    		SharedMemoryCacheConstants.CACHE_INVALIDATION_TIME)).
+                    setStoreByValue(false).build();
+        }
+    }
+
+    /**
+     * Cache to keep the recent subscription delta batches of each node, keyed by tenant id, node id and sequence.
+     */
+    public static Cache<String, ArrayList<SubscriptionDelta>> getSubscriptionDeltaLogCache() {
+        if (deltaLogCacheInit) {
+            return Caching.getCacheManagerFactory()
+            		.getCacheManager(SharedMemoryCacheConstants.INMEMORY_EVENT_CACHE_MANAGER)
+            		.getCache(SharedMemoryCacheConstants.SUBSCRIPTION_DELTA_LOG_CACHE);
+        } else {
+            CacheManager cacheManager = Caching.getCacheManagerFactory()
+            		.getCacheManager(SharedMemoryCacheConstants.INMEMORY_EVENT_CACHE_MANAGER);
+            deltaLogCacheInit = true;
+
+            return cacheManager.<String, ArrayList<SubscriptionDelta>>createCacheBuilder(SharedMemoryCacheConstants.SUBSCRIPTION_DELTA_LOG_CACHE).
+                    setExpiry(CacheConfiguration.ExpiryType.MODIFIED, new CacheConfiguration.Duration(TimeUnit.SECONDS,
+                    		SharedMemoryCacheConstants.CACHE_INVALIDATION_TIME)).
+                    setExpiry(CacheConfiguration.ExpiryType.ACCESSED, new CacheConfiguration.Duration(TimeUnit.SECONDS,
+                    		SharedMemoryCacheConstants.CACHE_INVALIDATION_TIME)).
+                    setStoreByValue(false).build();
+        }
+    }
+
+    /**
+     * This is to send a clusterMessage to the other nodes. Nothing is sent if clustering is not enabled.
+     * @param message
      * @throws ClusteringFault
      */
-	public static void sendAddSubscriptionClusterMessage(String topicName,String subsciptionID, 
-			int tenantID, String tenantName) throws ClusteringFault{
+	public static void sendClusterMessage(ClusteringMessage message) throws ClusteringFault{
 		ConfigurationContextService configContextService = (ConfigurationContextService) PrivilegedCarbonContext
 				.getThreadLocalCarbonContext().getOSGiService(ConfigurationContextService.class);
 		ConfigurationContext configContext = configContextService.getServerConfigContext();
 		ClusteringAgent agent = configContext.getAxisConfiguration().getClusteringAgent();
 
-		agent.sendMessage(new SubscriptionClusterMessage(topicName,subsciptionID,tenantID, tenantName), false);
-	}    
-	
+		if (agent != null) {
+			agent.sendMessage(message, false);
+		}
+	}
+
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.sharedmemory.util;
+
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.io.Serializable;
+
+/**
+ * a single subscription change replicated between the nodes of the cluster. Add and renew
+ * carry the subscription as it is after the change, remove only carries the id and the topic.
+ *
+ * Every change has a version, which is a logical clock value of the node which made the
+ * change. A node applies a change only if its version is newer than the one it has for the
+ * subscription, so changes can be applied more than once and in any order. Equal versions
+ * are ordered by the id of the node which made the change.
+ */
+public class SubscriptionDelta implements Serializable {
+
+    private static final long serialVersionUID = 5372818462251209741L;
+
+    public static final String OPERATION_ADD = "add";
+    public static final String OPERATION_RENEW = "renew";
+    public static final String OPERATION_REMOVE = "remove";
+
+    private String operation;
+    private String subscriptionId;
+    private String topicName;
+    private Subscription subscription;
+    private long version;
+    private String origin;
+
+    /**
+     * local time the delta was applied at, used to purge the removed subscriptions
+     */
+    private transient long appliedTime;
+
+    public SubscriptionDelta(String operation, String subscriptionId, String topicName,
+                             Subscription subscription, long version, String origin) {
+        this.operation = operation;
+        this.subscriptionId = subscriptionId;
+        this.topicName = topicName;
+        this.subscription = subscription;
+        this.version = version;
+        this.origin = origin;
+    }
+
+    /**
+     * @param other - delta of the same subscription
+     * @return true if this delta was made after the given one
+     */
+    public boolean isNewerThan(SubscriptionDelta other) {
+        if (this.version != other.version) {
+            return this.version > other.version;
+        }
+        return this.origin.compareTo(other.origin) > 0;
+    }
+
+    public boolean isRemove() {
+        return OPERATION_REMOVE.equals(this.operation);
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public String getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * @return normalized topic name of the subscription
+     */
+    public String getTopicName() {
+        return topicName;
+    }
+
+    /**
+     * @return subscription after the change, null for a remove
+     */
+    public Subscription getSubscription() {
+        return subscription;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getAppliedTime() {
+        return appliedTime;
+    }
+
+    public void setAppliedTime(long appliedTime) {
+        this.appliedTime = appliedTime;
+    }
+}
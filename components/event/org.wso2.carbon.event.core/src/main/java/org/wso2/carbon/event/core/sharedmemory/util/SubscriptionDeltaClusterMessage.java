@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.sharedmemory.util;
+
+import org.apache.axis2.clustering.ClusteringCommand;
+import org.apache.axis2.clustering.ClusteringFault;
+import org.apache.axis2.clustering.ClusteringMessage;
+import org.apache.axis2.context.ConfigurationContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+
+import java.util.ArrayList;
+
+/**
+ * cluster message carrying a batch of subscription deltas of a tenant from the node which
+ * made the changes to the other nodes.
+ */
+public class SubscriptionDeltaClusterMessage extends ClusteringMessage {
+
+    private static final long serialVersionUID = -1769210944362875520L;
+
+    private int tenantId;
+    private String tenantDomain;
+    private String origin;
+    private long sequence;
+    private ArrayList<SubscriptionDelta> deltas;
+
+    SubscriptionDeltaClusterMessage(int tenantId, String tenantDomain, String origin, long sequence,
+                                    ArrayList<SubscriptionDelta> deltas) {
+        this.tenantId = tenantId;
+        this.tenantDomain = tenantDomain;
+        this.origin = origin;
+        this.sequence = sequence;
+        this.deltas = deltas;
+    }
+
+    @Override
+    public ClusteringCommand getResponse() {
+        return null;
+    }
+
+    @Override
+    public void execute(ConfigurationContext configurationContext) throws ClusteringFault {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(this.tenantId);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(this.tenantDomain);
+            SubscriptionReplicator.getInstance().receive(this.origin, this.sequence, this.deltas);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+}
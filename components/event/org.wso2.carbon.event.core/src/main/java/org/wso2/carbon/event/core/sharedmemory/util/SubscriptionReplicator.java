@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.sharedmemory.util;
+
+import org.apache.axis2.clustering.ClusteringFault;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.CarbonContext;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.sharedmemory.SubscriptionReplica;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * replicates the subscription changes of the shared memory matching manager between the
+ * nodes of the cluster. A change is applied to the local replica straight away and queued as
+ * a delta. The queued deltas of a tenant are sent as one cluster message every
+ * replicationInterval milliseconds, or as soon as maxBatchSize deltas are queued. Only the
+ * latest delta of a subscription is kept in the queue, so a burst of changes to the same
+ * subscription is sent once.
+ *
+ * Every batch gets the next sequence number of the node and is also written to the delta
+ * log in the shared cache, where the last deltaLogSize batches of each node are kept. A node
+ * which receives a batch with a gap in the sequence reads the missing batches from the log.
+ * With its first batch and then every snapshotInterval batches a node writes its replica to
+ * the shared cache as a snapshot.
+ * A node which starts to serve a tenant loads the snapshot and then the batches logged
+ * after it, and falls back to the snapshot whenever the log does not have a batch any more.
+ */
+public class SubscriptionReplicator {
+
+    private static final Log log = LogFactory.getLog(SubscriptionReplicator.class);
+
+    public static final long DEFAULT_REPLICATION_INTERVAL = 100;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final int DEFAULT_DELTA_LOG_SIZE = 1000;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+    public static final long DEFAULT_REMOVED_SUBSCRIPTION_TIMEOUT = 10 * 60 * 1000;
+
+    private static SubscriptionReplicator instance = new SubscriptionReplicator();
+
+    /**
+     * identifies the deltas made by this node
+     */
+    private final String nodeId;
+
+    /**
+     * logical clock used to version the deltas. It is moved past the version of every
+     * applied delta, so a change always gets a newer version than the ones it is based on.
+     */
+    private final AtomicLong clock;
+
+    private final Map<Integer, SubscriptionReplica> replicaMap;
+    private final Map<Integer, TenantOutbox> outboxMap;
+
+    private long replicationInterval = DEFAULT_REPLICATION_INTERVAL;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private int deltaLogSize = DEFAULT_DELTA_LOG_SIZE;
+    private int snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+    private long removedSubscriptionTimeout = DEFAULT_REMOVED_SUBSCRIPTION_TIMEOUT;
+
+    private ScheduledExecutorService replicationExecutor;
+    private long lastPurgeTime;
+
+    private SubscriptionReplicator() {
+        this.nodeId = UUID.randomUUID().toString();
+        this.clock = new AtomicLong();
+        this.replicaMap = new ConcurrentHashMap<Integer, SubscriptionReplica>();
+        this.outboxMap = new ConcurrentHashMap<Integer, TenantOutbox>();
+        this.lastPurgeTime = System.currentTimeMillis();
+    }
+
+    public static SubscriptionReplicator getInstance() {
+        return instance;
+    }
+
+    /**
+     * returns the replica of the current tenant. The first call for a tenant loads the
+     * subscriptions from the snapshot and the delta log.
+     * @return subscription replica
+     */
+    public SubscriptionReplica getReplica() {
+        return getReplica(CarbonContext.getThreadLocalCarbonContext().getTenantId());
+    }
+
+    /**
+     * applies the change to the replica of the current tenant and queues it to be sent to
+     * the other nodes.
+     * @param operation - one of the SubscriptionDelta operations
+     * @param subscriptionId
+     * @param topicName - normalized topic name of the subscription
+     * @param subscription - subscription after the change, null for a remove
+     */
+    public void replicate(String operation, String subscriptionId, String topicName, Subscription subscription) {
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        SubscriptionReplica replica = getReplica(tenantId);
+        SubscriptionDelta delta = new SubscriptionDelta(operation, subscriptionId, topicName, subscription,
+                                                        this.clock.incrementAndGet(), this.nodeId);
+        replica.apply(delta);
+
+        TenantOutbox outbox = getOutbox(tenantId, CarbonContext.getThreadLocalCarbonContext().getTenantDomain());
+        int pendingCount;
+        synchronized (outbox) {
+            outbox.pendingDeltaMap.remove(subscriptionId);
+            outbox.pendingDeltaMap.put(subscriptionId, delta);
+            pendingCount = outbox.pendingDeltaMap.size();
+        }
+        ScheduledExecutorService executor = startReplicationTask();
+        if (pendingCount == this.maxBatchSize && executor != null) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    flushAll();
+                }
+            });
+        }
+    }
+
+    /**
+     * applies a batch of deltas received from another node. Missing batches of the node are
+     * read from the delta log first. This must be called in the flow of the tenant.
+     * @param origin - id of the node which sent the batch
+     * @param sequence - sequence number of the batch
+     * @param deltas - deltas of the batch
+     */
+    public void receive(String origin, long sequence, List<SubscriptionDelta> deltas) {
+        if (this.nodeId.equals(origin)) {
+            return;
+        }
+        int tenantId = CarbonContext.getThreadLocalCarbonContext().getTenantId();
+        SubscriptionReplica replica = getReplica(tenantId);
+        synchronized (replica) {
+            long lastSequence = replica.getSequence(origin);
+            if (sequence <= lastSequence) {
+                // already applied from the log or the snapshot
+                return;
+            }
+            if (sequence > lastSequence + 1) {
+                readDeltaLog(tenantId, replica, origin, lastSequence + 1, sequence - 1);
+            }
+            apply(replica, deltas);
+            replica.setSequence(origin, sequence);
+        }
+    }
+
+    public void setReplicationInterval(long replicationInterval) {
+        this.replicationInterval = replicationInterval;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setDeltaLogSize(int deltaLogSize) {
+        this.deltaLogSize = deltaLogSize;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public void setRemovedSubscriptionTimeout(long removedSubscriptionTimeout) {
+        this.removedSubscriptionTimeout = removedSubscriptionTimeout;
+    }
+
+    private SubscriptionReplica getReplica(int tenantId) {
+        SubscriptionReplica replica = this.replicaMap.get(tenantId);
+        if (replica == null) {
+            synchronized (this.replicaMap) {
+                replica = this.replicaMap.get(tenantId);
+                if (replica == null) {
+                    replica = new SubscriptionReplica();
+                    this.replicaMap.put(tenantId, replica);
+                }
+            }
+        }
+        if (!replica.isCaughtUp()) {
+            synchronized (replica) {
+                if (!replica.isCaughtUp()) {
+                    catchUp(tenantId, replica);
+                    replica.setCaughtUp(true);
+                }
+            }
+        }
+        return replica;
+    }
+
+    private TenantOutbox getOutbox(int tenantId, String tenantDomain) {
+        TenantOutbox outbox = this.outboxMap.get(tenantId);
+        if (outbox == null) {
+            synchronized (this.outboxMap) {
+                outbox = this.outboxMap.get(tenantId);
+                if (outbox == null) {
+                    outbox = new TenantOutbox(tenantId, tenantDomain);
+                    this.outboxMap.put(tenantId, outbox);
+                }
+            }
+        }
+        return outbox;
+    }
+
+    /**
+     * loads the snapshot of the tenant and the batches each node has logged after it.
+     */
+    private void catchUp(int tenantId, SubscriptionReplica replica) {
+        try {
+            SubscriptionSnapshot snapshot = SharedMemoryCacheUtil.getSubscriptionSnapshotCache().get(tenantId);
+            if (snapshot != null) {
+                replica.merge(snapshot);
+                observe(snapshot.getDeltas());
+            }
+            for (String origin : replica.getOrigins()) {
+                if (!this.nodeId.equals(origin)) {
+                    readDeltaLog(tenantId, replica, origin, replica.getSequence(origin) + 1, Long.MAX_VALUE);
+                }
+            }
+        } catch (Exception e) {
+            // the replica is still updated by the batches received from now on
+            log.error("Can not load the subscriptions of tenant " + tenantId + " from the shared cache", e);
+        }
+    }
+
+    /**
+     * applies the logged batches of the node from the first sequence up to the last one or
+     * the first batch which is not in the log. A batch which has been removed from the log
+     * before it was read is covered by reloading the snapshot.
+     */
+    private void readDeltaLog(int tenantId, SubscriptionReplica replica, String origin,
+                              long firstSequence, long lastSequence) {
+        for (long sequence = firstSequence; sequence <= lastSequence; sequence++) {
+            List<SubscriptionDelta> deltas =
+                    SharedMemoryCacheUtil.getSubscriptionDeltaLogCache().get(getLogKey(tenantId, origin, sequence));
+            if (deltas == null) {
+                if (lastSequence != Long.MAX_VALUE) {
+                    SubscriptionSnapshot snapshot =
+                            SharedMemoryCacheUtil.getSubscriptionSnapshotCache().get(tenantId);
+                    if (snapshot != null) {
+                        replica.merge(snapshot);
+                        observe(snapshot.getDeltas());
+                    }
+                    if (replica.getSequence(origin) < lastSequence) {
+                        log.warn("Subscription deltas " + replica.getSequence(origin) + " to " + lastSequence
+                                 + " of node " + origin + " are not available any more");
+                    }
+                }
+                return;
+            }
+            apply(replica, deltas);
+            replica.setSequence(origin, sequence);
+        }
+    }
+
+    private void apply(SubscriptionReplica replica, List<SubscriptionDelta> deltas) {
+        for (SubscriptionDelta delta : deltas) {
+            replica.apply(delta);
+        }
+        observe(deltas);
+    }
+
+    private void observe(List<SubscriptionDelta> deltas) {
+        long maxVersion = 0;
+        for (SubscriptionDelta delta : deltas) {
+            maxVersion = Math.max(maxVersion, delta.getVersion());
+        }
+        for (long current = this.clock.get(); current < maxVersion; current = this.clock.get()) {
+            if (this.clock.compareAndSet(current, maxVersion)) {
+                break;
+            }
+        }
+    }
+
+    private synchronized ScheduledExecutorService startReplicationTask() {
+        if (this.replicationExecutor != null) {
+            return this.replicationExecutor;
+        }
+        this.replicationExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SubscriptionReplicator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Math.max(1, this.replicationInterval);
+        this.replicationExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flushAll();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return this.replicationExecutor;
+    }
+
+    /**
+     * sends the queued deltas of all the tenants. Only called by the replication thread.
+     */
+    private void flushAll() {
+        try {
+            for (TenantOutbox outbox : this.outboxMap.values()) {
+                flush(outbox);
+            }
+            long currentTime = System.currentTimeMillis();
+            if (currentTime - this.lastPurgeTime > this.removedSubscriptionTimeout / 2) {
+                this.lastPurgeTime = currentTime;
+                for (SubscriptionReplica replica : this.replicaMap.values()) {
+                    replica.purgeRemoved(currentTime - this.removedSubscriptionTimeout);
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Error while replicating the subscription deltas", e);
+        }
+    }
+
+    private void flush(TenantOutbox outbox) {
+        ArrayList<SubscriptionDelta> deltas;
+        synchronized (outbox) {
+            if (outbox.pendingDeltaMap.isEmpty()) {
+                return;
+            }
+            deltas = new ArrayList<SubscriptionDelta>(outbox.pendingDeltaMap.values());
+            outbox.pendingDeltaMap.clear();
+        }
+        long sequence = ++outbox.sequence;
+
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(outbox.tenantId);
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(outbox.tenantDomain);
+
+            SharedMemoryCacheUtil.getSubscriptionDeltaLogCache()
+                    .put(getLogKey(outbox.tenantId, this.nodeId, sequence), deltas);
+            if (sequence > this.deltaLogSize) {
+                SharedMemoryCacheUtil.getSubscriptionDeltaLogCache()
+                        .remove(getLogKey(outbox.tenantId, this.nodeId, sequence - this.deltaLogSize));
+            }
+            SubscriptionReplica replica = getReplica(outbox.tenantId);
+            replica.setSequence(this.nodeId, sequence);
+            if (sequence == 1 || (this.snapshotInterval > 0 && sequence % this.snapshotInterval == 0)) {
+                // the first snapshot tells the nodes which start later that this node has a log
+                SharedMemoryCacheUtil.getSubscriptionSnapshotCache().put(outbox.tenantId, replica.createSnapshot());
+            }
+
+            try {
+                SharedMemoryCacheUtil.sendClusterMessage(new SubscriptionDeltaClusterMessage(
+                        outbox.tenantId, outbox.tenantDomain, this.nodeId, sequence, deltas));
+            } catch (ClusteringFault e) {
+                // the other nodes read the batch from the delta log when they get the next one
+                log.error("Subscription cluster message sending failed", e);
+            }
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    private static String getLogKey(int tenantId, String origin, long sequence) {
+        return tenantId + ":" + origin + ":" + sequence;
+    }
+
+    /**
+     * deltas of a tenant waiting to be sent
+     */
+    private static class TenantOutbox {
+
+        private final int tenantId;
+        private final String tenantDomain;
+        private final LinkedHashMap<String, SubscriptionDelta> pendingDeltaMap;
+        private long sequence;
+
+        private TenantOutbox(int tenantId, String tenantDomain) {
+            this.tenantId = tenantId;
+            this.tenantDomain = tenantDomain;
+            this.pendingDeltaMap = new LinkedHashMap<String, SubscriptionDelta>();
+        }
+    }
+}
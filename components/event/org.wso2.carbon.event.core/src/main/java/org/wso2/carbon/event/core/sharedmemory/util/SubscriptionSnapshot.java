@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.sharedmemory.util;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * compact state of the subscriptions of a tenant kept in the shared cache, which a node
+ * loads before it starts to apply the replicated deltas. It has the latest delta of every
+ * subscription and, per node, the sequence number of the last delta batch it includes. The
+ * batches after those are read from the delta log.
+ */
+public class SubscriptionSnapshot implements Serializable {
+
+    private static final long serialVersionUID = -2841106253958146632L;
+
+    private List<SubscriptionDelta> deltas;
+    private Map<String, Long> sequences;
+
+    public SubscriptionSnapshot(List<SubscriptionDelta> deltas, Map<String, Long> sequences) {
+        this.deltas = deltas;
+        this.sequences = sequences;
+    }
+
+    public List<SubscriptionDelta> getDeltas() {
+        return deltas;
+    }
+
+    public Map<String, Long> getSequences() {
+        return sequences;
+    }
+}
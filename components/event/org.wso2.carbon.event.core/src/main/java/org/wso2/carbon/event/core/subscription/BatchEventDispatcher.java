@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.subscription;
+
+import org.wso2.carbon.event.core.Message;
+
+import java.util.List;
+
+/**
+ * event dispatcher which can receive the events published together as a batch in one call.
+ * Event dispatchers which do not implement this interface are notified once per message.
+ */
+public interface BatchEventDispatcher extends EventDispatcher {
+
+    /**
+     * notify a batch of messages published to the topic of the subscription.
+     * @param messages - messages in the order they were published
+     * @param subscription
+     */
+    public void notify(List<Message> messages, Subscription subscription);
+}
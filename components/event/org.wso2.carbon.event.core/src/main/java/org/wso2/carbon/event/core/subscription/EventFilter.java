@@ -16,7 +16,9 @@
 
 package org.wso2.carbon.event.core.subscription;
 
-public class EventFilter {
+import java.io.Serializable;
+
+public class EventFilter implements Serializable {
 
     private String dialect;
     private String value;
@@ -51,6 +51,11 @@ public class Subscription implements Serializable {
     private int tenantId;
     private String mode;
 
+    /**
+     * expiry time in milliseconds computed from the expires calendar, 0 until it is computed
+     */
+    private transient volatile long expiryTime;
+
     public Subscription() {
         this.properties = new HashMap<String, String>();
     }
@@ -73,6 +78,21 @@ public class Subscription implements Serializable {
 
     public void setExpires(Calendar expires) {
         this.expires = expires;
+        this.expiryTime = 0;
+    }
+
+    /**
+     * returns the expiry time so that the expiry can be checked against the current time
+     * millis with out creating calendars.
+     * @return expiry time in milliseconds or Long.MAX_VALUE if the subscription does not expire
+     */
+    public long getExpiryTime() {
+        long time = this.expiryTime;
+        if (time == 0) {
+            time = (this.expires == null) ? Long.MAX_VALUE : this.expires.getTimeInMillis();
+            this.expiryTime = time;
+        }
+        return time;
     }
 
     public Map<String, String> getProperties() {
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.topic;
+
+import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+/**
+ * topic manager which can find the subscription of a topic and event sink without listing
+ * all the subscriptions of the topic. The event broker checks whether the topic manager
+ * implements this interface and scans the subscriptions of the topic otherwise.
+ */
+public interface IndexedTopicManager extends TopicManager {
+
+    /**
+     * finds a non expired subscription of the topic (not including the child topics) which sends
+     * the events to the given event sink. The event sink url is compared ignoring the case.
+     * @return the subscription or null if there is no such subscription
+     */
+    public Subscription getSubscription(String topicName, String eventSinkURL) throws EventBrokerException;
+}
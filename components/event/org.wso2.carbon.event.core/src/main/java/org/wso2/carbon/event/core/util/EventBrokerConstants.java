@@ -28,6 +28,9 @@ public interface EventBrokerConstants {
     String EB_CONF_ELE_DELIVERY_MANAGER = "deliveryManager";
     String EB_CONF_ELE_MATCHING_MANAGER = "matchingManager";
     String EB_CONF_ELE_EVENT_PUBLISHER = "eventPublisher";
+    String EB_CONF_ELE_AUTHORIZATION_CACHE = "authorizationCache";
+    String EB_CONF_ELE_SUBSCRIPTION_EXPIRY = "subscriptionExpiry";
+    String EB_CONF_ELE_METRICS = "metrics";
 
     String EB_CONF_ATTR_CLASS = "class";
 
@@ -41,6 +44,8 @@ public interface EventBrokerConstants {
     String EB_RES_OWNER = "owner";
     String EB_RES_TOPIC_NAME = "topicName";
     String EB_RES_MODE = "mode";
+    String EB_RES_FILTER_DIALECT = "filterDialect";
+    String EB_RES_FILTER = "filter";
 
     String EB_PERMISSION_SUBSCRIBE = "subscribe";
     String EB_PERMISSION_PUBLISH = "publish";
@@ -49,6 +54,10 @@ public interface EventBrokerConstants {
     String WS_EVENT_DISPATCHER_NAME = "wsEventDispatcher";
     String EVENT_SINK_DISPATCHER_NAME = "EventSinkDispatcher";
 
+    // content filter dialects, filters of the other dialects only name the topic
+    String EB_FILTER_DIALECT_CONTENT_XPATH = "http://wso2.org/ns/2014/eventing/dialect/xpath";
+    String EB_FILTER_DIALECT_PROPERTY = "http://wso2.org/ns/2014/eventing/dialect/property";
+
     int EB_NON_PERSISTENT = 1;
     int EB_PERSISTENT = 2;
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal;
+
+import junit.framework.TestCase;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+public class SubscriptionExpiryWheelTest extends TestCase {
+
+    private static final long TICK_DURATION = 10;
+
+    private RecordingHandler handler;
+    private SubscriptionExpiryWheel wheel;
+
+    protected void setUp() throws Exception {
+        this.handler = new RecordingHandler();
+        // a small wheel so that the expiry times span several rotations
+        this.wheel = new SubscriptionExpiryWheel(this.handler, TICK_DURATION, 4);
+    }
+
+    protected void tearDown() throws Exception {
+        this.wheel.stop();
+    }
+
+    public void testExpiresAfterExpiryTime() throws Exception {
+        long expiryTime = System.currentTimeMillis() + 100;
+        this.wheel.schedule(1, subscription("s1", expiryTime));
+        assertEquals(1, this.wheel.getScheduledCount());
+
+        this.handler.await(1, 2000);
+        assertEquals(1, this.handler.expired.size());
+        Expiry expiry = this.handler.expired.get(0);
+        assertEquals(1, expiry.tenantId);
+        assertEquals("s1", expiry.subscription.getId());
+        assertTrue("expired before its expiry time", expiry.time >= expiryTime);
+        assertTrue("expired too late", expiry.time <= expiryTime + 50 * TICK_DURATION);
+        assertEquals(0, this.wheel.getScheduledCount());
+    }
+
+    public void testAlreadyExpiredSubscriptionExpiresAtNextTick() throws Exception {
+        this.wheel.schedule(1, subscription("s1", System.currentTimeMillis() - 1000));
+        this.handler.await(1, 2000);
+        assertEquals(1, this.handler.expired.size());
+    }
+
+    public void testCancelledSubscriptionDoesNotExpire() throws Exception {
+        this.wheel.schedule(1, subscription("s1", System.currentTimeMillis() + 50));
+        this.wheel.schedule(1, subscription("s2", System.currentTimeMillis() + 100));
+        this.wheel.cancel(1, "s1");
+        assertEquals(1, this.wheel.getScheduledCount());
+
+        this.handler.await(1, 2000);
+        Thread.sleep(100);
+        assertEquals(1, this.handler.expired.size());
+        assertEquals("s2", this.handler.expired.get(0).subscription.getId());
+    }
+
+    public void testRenewalReplacesTheScheduledExpiry() throws Exception {
+        this.wheel.schedule(1, subscription("s1", System.currentTimeMillis() + 50));
+        long renewedExpiryTime = System.currentTimeMillis() + 300;
+        this.wheel.schedule(1, subscription("s1", renewedExpiryTime));
+        assertEquals(1, this.wheel.getScheduledCount());
+
+        this.handler.await(1, 2000);
+        Thread.sleep(100);
+        assertEquals(1, this.handler.expired.size());
+        assertTrue(this.handler.expired.get(0).time >= renewedExpiryTime);
+    }
+
+    public void testSubscriptionWithoutExpiryIsNotScheduled() throws Exception {
+        Subscription subscription = new Subscription();
+        subscription.setId("s1");
+        this.wheel.schedule(1, subscription);
+        assertEquals(0, this.wheel.getScheduledCount());
+
+        // scheduling without an expiry time also drops the expiry scheduled before
+        this.wheel.schedule(1, subscription("s2", System.currentTimeMillis() + 50));
+        Subscription renewed = new Subscription();
+        renewed.setId("s2");
+        this.wheel.schedule(1, renewed);
+        Thread.sleep(200);
+        assertEquals(0, this.handler.expired.size());
+    }
+
+    public void testSubscriptionsOfTenantsAreKeptApart() throws Exception {
+        this.wheel.schedule(1, subscription("s1", System.currentTimeMillis() + 50));
+        this.wheel.schedule(2, subscription("s1", System.currentTimeMillis() + 50));
+        assertEquals(2, this.wheel.getScheduledCount());
+        this.wheel.cancel(1, "s1");
+
+        this.handler.await(1, 2000);
+        Thread.sleep(100);
+        assertEquals(1, this.handler.expired.size());
+        assertEquals(2, this.handler.expired.get(0).tenantId);
+    }
+
+    public void testManySubscriptionsExpireInOrderOfTheirTicks() throws Exception {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 50; i++) {
+            this.wheel.schedule(1, subscription("s" + i, now + 20 + (i % 10) * 20));
+        }
+        this.handler.await(50, 5000);
+        assertEquals(50, this.handler.expired.size());
+        for (Expiry expiry : this.handler.expired) {
+            assertTrue(expiry.time >= expiry.subscription.getExpiryTime());
+        }
+    }
+
+    private static Subscription subscription(String id, long expiryTime) {
+        Subscription subscription = new Subscription();
+        subscription.setId(id);
+        Calendar expires = Calendar.getInstance();
+        expires.setTimeInMillis(expiryTime);
+        subscription.setExpires(expires);
+        return subscription;
+    }
+
+    private static class Expiry {
+
+        private final int tenantId;
+        private final Subscription subscription;
+        private final long time;
+
+        private Expiry(int tenantId, Subscription subscription, long time) {
+            this.tenantId = tenantId;
+            this.subscription = subscription;
+            this.time = time;
+        }
+    }
+
+    private static class RecordingHandler implements SubscriptionExpiryWheel.ExpiryHandler {
+
+        private final List<Expiry> expired = new ArrayList<Expiry>();
+
+        public synchronized void expire(int tenantId, Subscription subscription) {
+            this.expired.add(new Expiry(tenantId, subscription, System.currentTimeMillis()));
+            notifyAll();
+        }
+
+        private synchronized void await(int count, long timeout) throws InterruptedException {
+            long endTime = System.currentTimeMillis() + timeout;
+            while (this.expired.size() < count && System.currentTimeMillis() < endTime) {
+                wait(Math.max(1, endTime - System.currentTimeMillis()));
+            }
+        }
+    }
+}
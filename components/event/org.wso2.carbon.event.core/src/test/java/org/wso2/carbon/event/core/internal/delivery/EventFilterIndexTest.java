@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery;
+
+import junit.framework.TestCase;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.subscription.EventFilter;
+import org.wso2.carbon.event.core.subscription.Subscription;
+import org.wso2.carbon.event.core.util.EventBrokerConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class EventFilterIndexTest extends TestCase {
+
+    public void testParseEqualsPredicate() {
+        String[][] predicates = EventFilterIndex.parsePredicates("region = east");
+        assertEquals(1, predicates.length);
+        assertPredicate(predicates[0], "region", "east", null);
+    }
+
+    public void testParseNotEqualsPredicate() {
+        String[][] predicates = EventFilterIndex.parsePredicates("region!=east");
+        assertEquals(1, predicates.length);
+        assertPredicate(predicates[0], "region", null, "east");
+    }
+
+    public void testParseExistsPredicate() {
+        String[][] predicates = EventFilterIndex.parsePredicates(" priority ");
+        assertEquals(1, predicates.length);
+        assertPredicate(predicates[0], "priority", null, null);
+    }
+
+    public void testParseConjunction() {
+        String[][] predicates = EventFilterIndex.parsePredicates("region=east and type != test and priority");
+        assertEquals(3, predicates.length);
+        assertPredicate(predicates[0], "region", "east", null);
+        assertPredicate(predicates[1], "type", null, "test");
+        assertPredicate(predicates[2], "priority", null, null);
+    }
+
+    public void testParseValueWithEquals() {
+        // only the first = separates the name from the value
+        String[][] predicates = EventFilterIndex.parsePredicates("query=a=b");
+        assertPredicate(predicates[0], "query", "a=b", null);
+    }
+
+    public void testParseNamespaces() {
+        Map<String, String> namespaces = new HashMap<String, String>();
+        String expression = EventFilterIndex.parseNamespaces(
+                "xmlns:a=\"http://a.org\"  xmlns:b = \"http://b.org\" /a:order[b:price > 10]", namespaces);
+        assertEquals("/a:order[b:price > 10]", expression);
+        assertEquals(2, namespaces.size());
+        assertEquals("http://a.org", namespaces.get("a"));
+        assertEquals("http://b.org", namespaces.get("b"));
+    }
+
+    public void testParseWithoutNamespaces() {
+        Map<String, String> namespaces = new HashMap<String, String>();
+        assertEquals("//order", EventFilterIndex.parseNamespaces(" //order ", namespaces));
+        assertTrue(namespaces.isEmpty());
+    }
+
+    public void testPropertyFilterMatches() {
+        Subscription subscription = subscription("region=east and type!=test and priority");
+        assertTrue(EventFilterIndex.getInstance().matches(subscription, message("east", "live", "1")));
+        assertFalse(EventFilterIndex.getInstance().matches(subscription, message("west", "live", "1")));
+        assertFalse(EventFilterIndex.getInstance().matches(subscription, message("east", "test", "1")));
+        assertFalse(EventFilterIndex.getInstance().matches(subscription, message("east", "live", null)));
+    }
+
+    public void testTopicFilterMatchesEverything() {
+        // the standard XPath dialect names the topic and does not filter the content
+        Subscription subscription = new Subscription();
+        subscription.setEventFilter(new EventFilter("http://www.w3.org/TR/1999/REC-xpath-19991116", "/a/b"));
+        assertFalse(EventFilterIndex.isContentFilter(subscription.getEventFilter()));
+        assertTrue(EventFilterIndex.getInstance().matches(subscription, message("west", "test", null)));
+    }
+
+    public void testFilterSubscriptions() {
+        Subscription east = subscription("region=east");
+        Subscription west = subscription("region=west");
+        Subscription all = new Subscription();
+        List<Subscription> subscriptions = new ArrayList<Subscription>(Arrays.asList(all, east, west));
+        assertEquals(Arrays.asList(all, east),
+                EventFilterIndex.getInstance().filter(subscriptions, message("east", "live", null)));
+
+        // a list without content filters is not copied
+        List<Subscription> unfiltered = new ArrayList<Subscription>(Arrays.asList(all));
+        assertSame(unfiltered, EventFilterIndex.getInstance().filter(unfiltered, message("east", "live", null)));
+    }
+
+    private static void assertPredicate(String[] predicate, String name, String value, String excluded) {
+        assertEquals(name, predicate[0]);
+        assertEquals(value, predicate[1]);
+        assertEquals(excluded, predicate[2]);
+    }
+
+    private static Subscription subscription(String filter) {
+        Subscription subscription = new Subscription();
+        subscription.setEventFilter(new EventFilter(EventBrokerConstants.EB_FILTER_DIALECT_PROPERTY, filter));
+        return subscription;
+    }
+
+    private static Message message(String region, String type, String priority) {
+        Message message = new Message();
+        message.addProperty("region", region);
+        message.addProperty("type", type);
+        if (priority != null) {
+            message.addProperty("priority", priority);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class TopicTrieTest extends TestCase {
+
+    private TopicTrie<String> trie;
+
+    protected void setUp() throws Exception {
+        this.trie = new TopicTrie<String>();
+        this.trie.put("/a/b", "exact", "exact");
+        this.trie.put("/a/*", "child", "child");
+        this.trie.put("/a/#", "descendant", "descendant");
+        this.trie.put("/#", "all", "all");
+        this.trie.put("/x/y/z", "other", "other");
+    }
+
+    public void testExactMatch() {
+        assertEquals(set("exact", "child", "descendant", "all"), matches("/a/b"));
+    }
+
+    public void testChildWildcard() {
+        // * matches the topic itself and its direct children only
+        assertEquals(set("child", "descendant", "all"), matches("/a"));
+        assertEquals(set("child", "descendant", "all"), matches("/a/c"));
+        assertEquals(set("descendant", "all"), matches("/a/b/c"));
+    }
+
+    public void testDescendantWildcard() {
+        assertEquals(set("descendant", "all"), matches("/a/b/c/d"));
+        assertEquals(set("all"), matches("/x/y"));
+        assertEquals(set("other", "all"), matches("/x/y/z"));
+    }
+
+    public void testGet() {
+        assertEquals("child", this.trie.get("/a/*", "child"));
+        assertEquals("descendant", this.trie.get("/a/#", "descendant"));
+        assertNull(this.trie.get("/a/b", "child"));
+        assertNull(this.trie.get("/q", "exact"));
+    }
+
+    public void testRemove() {
+        assertEquals("exact", this.trie.remove("/a/b", "exact"));
+        assertNull(this.trie.remove("/a/b", "exact"));
+        assertEquals(set("child", "descendant", "all"), matches("/a/b"));
+        assertEquals("descendant", this.trie.remove("/a/#", "descendant"));
+        assertEquals(set("child", "all"), matches("/a/b"));
+    }
+
+    public void testRemovePrunesEmptyNodes() {
+        this.trie.remove("/a/b", "exact");
+        this.trie.remove("/a/*", "child");
+        this.trie.remove("/a/#", "descendant");
+        this.trie.remove("/#", "all");
+        assertFalse(this.trie.isEmpty());
+        this.trie.remove("/x/y/z", "other");
+        assertTrue(this.trie.isEmpty());
+        // pruned topics can be used again
+        this.trie.put("/x/y/z", "other", "other");
+        assertEquals(set("other"), matches("/x/y/z"));
+    }
+
+    public void testTopicChurnDoesNotGrowTree() {
+        for (int i = 0; i < 1000; i++) {
+            this.trie.put("/churn/" + i + "/leaf", "key", "value");
+            this.trie.remove("/churn/" + i + "/leaf", "key");
+        }
+        for (String[] entry : new String[][]{{"/a/b", "exact"}, {"/a/*", "child"},
+                {"/a/#", "descendant"}, {"/#", "all"}, {"/x/y/z", "other"}}) {
+            this.trie.remove(entry[0], entry[1]);
+        }
+        assertTrue(this.trie.isEmpty());
+    }
+
+    public void testStaticMatchesAgreesWithTrie() {
+        String[] topicNames = {"/", "/a", "/a/b", "/a/c", "/a/b/c", "/a/b/c/d", "/ab", "/x/y", "/x/y/z"};
+        String[][] entries = {{"/a/b", "exact"}, {"/a/*", "child"}, {"/a/#", "descendant"},
+                {"/#", "all"}, {"/x/y/z", "other"}};
+        this.trie.put("/*", "root child", "root child");
+        this.trie.put("/", "root", "root");
+        for (String topicName : topicNames) {
+            Set<String> matches = matches(topicName);
+            for (String[] entry : entries) {
+                assertEquals(entry[0] + " on " + topicName, matches.contains(entry[1]),
+                        TopicTrie.matches(entry[0], topicName));
+            }
+            assertEquals("/* on " + topicName, matches.contains("root child"), TopicTrie.matches("/*", topicName));
+            assertEquals("/ on " + topicName, matches.contains("root"), TopicTrie.matches("/", topicName));
+        }
+    }
+
+    private Set<String> matches(String topicName) {
+        Set<String> matches = new HashSet<String>();
+        this.trie.getMatches(topicName, matches);
+        return matches;
+    }
+
+    private static Set<String> set(String... values) {
+        Set<String> result = new HashSet<String>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.internal.delivery.inmemory;
+
+import junit.framework.TestCase;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.Calendar;
+import java.util.List;
+
+public class InMemorySubscriptionStorageTest extends TestCase {
+
+    private InMemorySubscriptionStorage storage;
+
+    protected void setUp() throws Exception {
+        this.storage = new InMemorySubscriptionStorage();
+        this.storage.addSubscription(subscription("s1", "/a/b"));
+        this.storage.addSubscription(subscription("s2", "/x/#"));
+    }
+
+    public void testFanOutIsCached() {
+        List<Subscription> fanOut = this.storage.getMatchingSubscriptions("/a/b");
+        assertEquals(1, fanOut.size());
+        assertSame(fanOut, this.storage.getMatchingSubscriptions("a/b"));
+    }
+
+    public void testUnrelatedSubscriptionKeepsFanOut() throws Exception {
+        List<Subscription> fanOut = this.storage.getMatchingSubscriptions("/a/b");
+        this.storage.addSubscription(subscription("s3", "/x/y"));
+        this.storage.unSubscribe("s2");
+        assertSame(fanOut, this.storage.getMatchingSubscriptions("/a/b"));
+    }
+
+    public void testMatchingSubscriptionRebuildsFanOut() throws Exception {
+        List<Subscription> fanOut = this.storage.getMatchingSubscriptions("/x/y/z");
+        assertEquals(1, fanOut.size());
+        this.storage.addSubscription(subscription("s3", "/x/y/*"));
+        assertEquals(2, this.storage.getMatchingSubscriptions("/x/y/z").size());
+        this.storage.unSubscribe("s2");
+        assertEquals(1, this.storage.getMatchingSubscriptions("/x/y/z").size());
+    }
+
+    public void testRenewKeepsFanOut() throws Exception {
+        List<Subscription> fanOut = this.storage.getMatchingSubscriptions("/a/b");
+        Subscription renewed = subscription("s1", "/a/b");
+        Calendar expires = Calendar.getInstance();
+        expires.add(Calendar.HOUR, 1);
+        renewed.setExpires(expires);
+        this.storage.renewSubscription(renewed);
+        assertSame(fanOut, this.storage.getMatchingSubscriptions("/a/b"));
+        assertEquals(expires, fanOut.get(0).getExpires());
+    }
+
+    private static Subscription subscription(String id, String topicName) {
+        Subscription subscription = new Subscription();
+        subscription.setId(id);
+        subscription.setTopicName(topicName);
+        return subscription;
+    }
+}
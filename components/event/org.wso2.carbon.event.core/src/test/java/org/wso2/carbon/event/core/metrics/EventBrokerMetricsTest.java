@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.core.metrics;
+
+import junit.framework.TestCase;
+import org.wso2.carbon.event.core.internal.util.BoundedThreadPoolExecutor;
+import org.wso2.carbon.event.core.internal.util.StripedExecutor;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class EventBrokerMetricsTest extends TestCase {
+
+    private CountDownLatch release;
+    private BoundedThreadPoolExecutor publishExecutor;
+    private StripedExecutor deliveryExecutor;
+
+    protected void setUp() throws Exception {
+        this.release = new CountDownLatch(1);
+        this.publishExecutor = new BoundedThreadPoolExecutor("TestPublisher", 1, 1, 1000, TimeUnit.MILLISECONDS,
+                1, BoundedThreadPoolExecutor.OVERFLOW_POLICY_REJECT, 0);
+        this.deliveryExecutor = new StripedExecutor("TestDeliveryManager", 1, 1000, 1,
+                BoundedThreadPoolExecutor.OVERFLOW_POLICY_REJECT, 0);
+        EventBrokerMetrics.getInstance().setPublishExecutors(this.publishExecutor, null);
+        EventBrokerMetrics.getInstance().setDeliveryExecutors(null, this.deliveryExecutor);
+        EventBrokerMetrics.getInstance().registerMBean();
+    }
+
+    protected void tearDown() throws Exception {
+        this.release.countDown();
+        EventBrokerMetrics.getInstance().unregisterMBean();
+        EventBrokerMetrics.getInstance().setPublishExecutors(null, null);
+        EventBrokerMetrics.getInstance().setDeliveryExecutors(null, null);
+        this.publishExecutor.shutdownNow();
+        this.deliveryExecutor.shutdown();
+    }
+
+    public void testExecutorQueuesThroughMBean() throws Exception {
+        assertEquals(0, getAttribute("PublishQueueDepth"));
+        assertEquals(0L, getAttribute("PublishRejectedCount"));
+        assertEquals(0, getAttribute("DeliveryQueueDepth"));
+        assertEquals(0L, getAttribute("DeliveryRejectedCount"));
+
+        fill(this.publishExecutor);
+        fill(this.deliveryExecutor);
+
+        assertEquals(1, getAttribute("PublishQueueDepth"));
+        assertEquals(1L, getAttribute("PublishRejectedCount"));
+        assertEquals(1, getAttribute("DeliveryQueueDepth"));
+        assertEquals(1L, getAttribute("DeliveryRejectedCount"));
+    }
+
+    /**
+     * blocks the only thread of the executor, queues one task and gets one rejected.
+     */
+    private void fill(BoundedThreadPoolExecutor executor) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new BlockingTask(started));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(new BlockingTask(new CountDownLatch(1)));
+        try {
+            executor.execute(new BlockingTask(new CountDownLatch(1)));
+            fail("the task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // the queue is full
+        }
+    }
+
+    private void fill(StripedExecutor executor) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute("key", new BlockingTask(started));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute("key", new BlockingTask(new CountDownLatch(1)));
+        try {
+            executor.execute("key", new BlockingTask(new CountDownLatch(1)));
+            fail("the task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // the queue of the lane is full
+        }
+    }
+
+    private static Object getAttribute(String name) throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        return mBeanServer.getAttribute(new ObjectName(EventBrokerMetrics.MBEAN_NAME), name);
+    }
+
+    private class BlockingTask implements Runnable {
+
+        private final CountDownLatch started;
+
+        private BlockingTask(CountDownLatch started) {
+            this.started = started;
+        }
+
+        public void run() {
+            this.started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
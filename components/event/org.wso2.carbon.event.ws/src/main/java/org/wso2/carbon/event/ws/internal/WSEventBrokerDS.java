@@ -36,6 +36,10 @@ public class WSEventBrokerDS {
         WSEventBrokerHolder.getInstance().registerWSEventDispatcher();
     }
 
+    protected void deactivate(ComponentContext context) {
+        WSEventBrokerHolder.getInstance().shutdownWSEventDispatcher();
+    }
+
     protected void setEventBroker(EventBroker eventBroker) {
         WSEventBrokerHolder.getInstance().registerEventBroker(eventBroker);
     }
@@ -16,15 +16,24 @@
 
 package org.wso2.carbon.event.ws.internal;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.event.core.EventBroker;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
+import org.wso2.carbon.event.ws.internal.exception.EventBrokerException;
 import org.wso2.carbon.event.ws.internal.notify.WSEventDispatcher;
+import org.wso2.carbon.event.ws.internal.util.EventBrokerUtils;
+import org.wso2.carbon.event.ws.internal.util.EventingConstants;
 import org.wso2.carbon.utils.ConfigurationContextService;
 
 public class WSEventBrokerHolder {
 
+    private static final Log log = LogFactory.getLog(WSEventBrokerHolder.class);
+
     private static WSEventBrokerHolder wsEventBrokerHolder = new WSEventBrokerHolder();
 
+    private WSEventDispatcher wsEventDispatcher;
+
     private EventBroker eventBroker;
 
     private ConfigurationContextService configurationContextService;
@@ -51,7 +60,21 @@ public class WSEventBrokerHolder {
 
     public void registerWSEventDispatcher(){
         WSEventDispatcher wsEventDispatcher = new WSEventDispatcher();
+        try {
+            wsEventDispatcher.configure(
+                    EventBrokerUtils.getEventBrokerConfig(EventingConstants.WSE_CONF_ELE_DISPATCHER));
+        } catch (EventBrokerException e) {
+            log.warn("Can not read the ws event dispatcher configuration, using the defaults", e);
+        }
+        this.wsEventDispatcher = wsEventDispatcher;
         this.eventBroker.registerEventDispatcher(
                 EventBrokerConstants.WS_EVENT_DISPATCHER_NAME, wsEventDispatcher);
     }
+
+    public void shutdownWSEventDispatcher(){
+        if (this.wsEventDispatcher != null) {
+            this.wsEventDispatcher.shutdown();
+            this.wsEventDispatcher = null;
+        }
+    }
 }
@@ -19,11 +19,15 @@
 package org.wso2.carbon.event.ws.internal.builders;
 
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.apache.axiom.om.OMAttribute;
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMContainer;
 import org.apache.axiom.om.OMNamespace;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.soap.SOAPFactory;
@@ -43,6 +47,7 @@ import org.wso2.carbon.event.ws.internal.builders.utils.BuilderUtils;
 import org.wso2.carbon.event.ws.internal.util.EventingConstants;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.subscription.EventFilter;
+import org.wso2.carbon.event.core.util.EventBrokerConstants;
 
 public class SubscribeCommandBuilder extends CommandBuilderConstants {
 
@@ -146,9 +151,13 @@ public class SubscribeCommandBuilder extends CommandBuilderConstants {
             if (subscription != null && filterElem != null) {
                 OMAttribute dialectAttribute = filterElem.getAttribute(ATT_DIALECT);
                 if (dialectAttribute != null && dialectAttribute.getAttributeValue() != null) {
+                    String filterValue = filterElem.getText().trim();
+                    if (EventBrokerConstants.EB_FILTER_DIALECT_CONTENT_XPATH.equals(
+                            dialectAttribute.getAttributeValue())) {
+                        filterValue = declareNamespaces(filterElem, filterValue);
+                    }
                     subscription.setEventFilter(
-                            new EventFilter(dialectAttribute.getAttributeValue(),
-                                    filterElem.getText().trim()));
+                            new EventFilter(dialectAttribute.getAttributeValue(), filterValue));
                 } else {
                     log.error("Error in creating subscription. Filter dialect not defined.");
                     throw new BuilderException(
@@ -275,4 +284,32 @@ public class SubscribeCommandBuilder extends CommandBuilderConstants {
         }
         return message;
     }
+
+    /**
+     * the XPath filter is stored as text, so the namespaces in scope of the filter element which
+     * the expression uses are declared in front of it as xmlns:prefix="uri".
+     * @param filterElem - filter element of the subscribe request
+     * @param expression - XPath expression of the filter
+     * @return the expression with the namespace declarations it needs
+     */
+    private String declareNamespaces(OMElement filterElem, String expression) {
+        StringBuffer declarations = new StringBuffer();
+        Set<String> prefixes = new HashSet<String>();
+        OMContainer container = filterElem;
+        while (container instanceof OMElement) {
+            OMElement element = (OMElement) container;
+            for (Iterator iterator = element.getAllDeclaredNamespaces(); iterator.hasNext();) {
+                OMNamespace namespace = (OMNamespace) iterator.next();
+                String prefix = namespace.getPrefix();
+                if (prefix != null && prefix.length() > 0 && prefixes.add(prefix)
+                    && expression.indexOf(prefix + ":") >= 0
+                    && expression.indexOf("xmlns:" + prefix + "=") < 0) {
+                    declarations.append("xmlns:").append(prefix).append("=\"")
+                            .append(namespace.getNamespaceURI()).append("\" ");
+                }
+            }
+            container = element.getParent();
+        }
+        return declarations.append(expression).toString();
+    }
 }
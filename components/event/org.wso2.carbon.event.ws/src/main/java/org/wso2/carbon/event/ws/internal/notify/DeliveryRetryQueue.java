@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.ws.internal.notify;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.subscription.Subscription;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * bounded queue of the notifications which could not be delivered to their event sink,
+ * either because the sink failed or because its circuit is open in the {@link EventSinkGuard}.
+ * The notifications are handed back to the dispatcher after an exponentially growing backoff,
+ * on the retry threads instead of the delivery threads of the event broker.
+ *
+ * Notifications to a sink which is only at its concurrency limit wait here for
+ * saturationDelay milliseconds, without counting as a retry.
+ */
+public class DeliveryRetryQueue {
+
+    private static final Log log = LogFactory.getLog(DeliveryRetryQueue.class);
+
+    public static final int DEFAULT_MAX_QUEUED_DELIVERIES = 10000;
+    public static final int DEFAULT_MAX_RETRIES = 10;
+    public static final long DEFAULT_INITIAL_BACKOFF = 1000;
+    public static final long DEFAULT_MAX_BACKOFF = 60 * 1000;
+    public static final long DEFAULT_SATURATION_DELAY = 100;
+    public static final int DEFAULT_RETRY_THREADS = 10;
+
+    /**
+     * dropped notifications are logged once per this many drops
+     */
+    private static final int DROP_LOG_INTERVAL = 1000;
+
+    private WSEventDispatcher eventDispatcher;
+
+    private int maxQueuedDeliveries = DEFAULT_MAX_QUEUED_DELIVERIES;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private long saturationDelay = DEFAULT_SATURATION_DELAY;
+    private int retryThreads = DEFAULT_RETRY_THREADS;
+
+    private final AtomicInteger queuedDeliveries = new AtomicInteger();
+    private final AtomicInteger droppedDeliveries = new AtomicInteger();
+
+    private ScheduledExecutorService retryExecutor;
+    private boolean shutdown;
+
+    public DeliveryRetryQueue(WSEventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * queues the notification to be delivered again after the backoff of the attempt.
+     * @param message - message to deliver
+     * @param subscription - subscription of the event sink
+     * @param attempt - number of retries already made for the notification
+     * @return false if the notification was dropped since the queue is full or the
+     * notification has been retried maxRetries times
+     */
+    public boolean offer(Message message, Subscription subscription, int attempt) {
+        if (attempt >= this.maxRetries) {
+            drop(subscription, "it has been retried " + attempt + " times");
+            return false;
+        }
+        return schedule(message, subscription, attempt + 1, getBackoff(attempt));
+    }
+
+    /**
+     * queues the notification to be delivered again once the event sink may have a free
+     * delivery slot. The notification keeps its number of retries.
+     * @param message - message to deliver
+     * @param subscription - subscription of the event sink
+     * @param attempt - number of retries already made for the notification
+     * @return false if the notification was dropped since the queue is full
+     */
+    public boolean delay(Message message, Subscription subscription, int attempt) {
+        return schedule(message, subscription, attempt, this.saturationDelay);
+    }
+
+    /**
+     * @return number of notifications waiting for a retry
+     */
+    public int getQueueDepth() {
+        return this.queuedDeliveries.get();
+    }
+
+    /**
+     * drops the queued notifications and stops the retry threads.
+     */
+    public synchronized void shutdown() {
+        this.shutdown = true;
+        if (this.retryExecutor != null) {
+            this.retryExecutor.shutdownNow();
+            this.retryExecutor = null;
+            this.queuedDeliveries.set(0);
+        }
+    }
+
+    public void setMaxQueuedDeliveries(int maxQueuedDeliveries) {
+        this.maxQueuedDeliveries = maxQueuedDeliveries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public void setSaturationDelay(long saturationDelay) {
+        this.saturationDelay = saturationDelay;
+    }
+
+    public void setRetryThreads(int retryThreads) {
+        this.retryThreads = retryThreads;
+    }
+
+    private boolean schedule(Message message, Subscription subscription, int attempt, long delay) {
+        if (this.queuedDeliveries.incrementAndGet() > this.maxQueuedDeliveries) {
+            this.queuedDeliveries.decrementAndGet();
+            drop(subscription, "the retry queue is full");
+            return false;
+        }
+        try {
+            getRetryExecutor().schedule(new Retry(message, subscription, attempt), delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            this.queuedDeliveries.decrementAndGet();
+            drop(subscription, "it can not be scheduled " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private long getBackoff(int attempt) {
+        // initialBackoff * 2^attempt without overflowing
+        long backoff = this.initialBackoff;
+        for (int i = 0; i < attempt && backoff < this.maxBackoff; i++) {
+            backoff = backoff * 2;
+        }
+        return Math.min(backoff, this.maxBackoff);
+    }
+
+    private void drop(Subscription subscription, String reason) {
+        int count = this.droppedDeliveries.incrementAndGet();
+        if (count == 1 || count % DROP_LOG_INTERVAL == 0) {
+            log.warn("Dropped a notification to " + subscription.getEventSinkURL() + " since " + reason
+                     + ", " + count + " notifications have been dropped");
+        }
+    }
+
+    private synchronized ScheduledExecutorService getRetryExecutor() {
+        if (this.shutdown) {
+            throw new IllegalStateException("the retry queue has been shut down");
+        }
+        if (this.retryExecutor == null) {
+            this.retryExecutor = Executors.newScheduledThreadPool(this.retryThreads, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "WSEventDeliveryRetry-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.retryExecutor;
+    }
+
+    /**
+     * notification waiting for its backoff to pass
+     */
+    private class Retry implements Runnable {
+
+        private final Message message;
+        private final Subscription subscription;
+        private final int attempt;
+
+        private Retry(Message message, Subscription subscription, int attempt) {
+            this.message = message;
+            this.subscription = subscription;
+            this.attempt = attempt;
+        }
+
+        public void run() {
+            queuedDeliveries.decrementAndGet();
+            try {
+                eventDispatcher.deliver(this.message, this.subscription, this.attempt, true);
+            } catch (Throwable e) {
+                log.error("Error while retrying the notification to " + this.subscription.getEventSinkURL(), e);
+            }
+        }
+    }
+}
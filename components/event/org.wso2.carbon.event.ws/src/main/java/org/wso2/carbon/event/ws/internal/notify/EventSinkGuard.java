@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.ws.internal.notify;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * bulkhead and circuit breaker of the event sink endpoints. Each endpoint may only take
+ * maxConcurrentDeliveries notifications at a time, so a slow sink can not hold more than that
+ * many delivery threads. After failureThreshold consecutive failures the circuit of the endpoint
+ * opens and no notification is let through for openTime milliseconds. Then one trial
+ * notification is let through, which closes the circuit if it succeeds and opens it again
+ * otherwise.
+ *
+ * Retries of an endpoint are let through one at a time, so that the retry threads are not all
+ * held by a few sinks which do not answer.
+ */
+public class EventSinkGuard {
+
+    private static final Log log = LogFactory.getLog(EventSinkGuard.class);
+
+    public static final String STATE_CLOSED = "closed";
+    public static final String STATE_OPEN = "open";
+    public static final String STATE_HALF_OPEN = "halfOpen";
+
+    /**
+     * results of tryAcquire
+     */
+    public static final int ACQUIRED = 0;
+    public static final int SATURATED = 1;
+    public static final int CIRCUIT_OPEN = 2;
+
+    public static final int DEFAULT_MAX_CONCURRENT_DELIVERIES = 10;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_TIME = 30 * 1000;
+    public static final int DEFAULT_MAX_ENDPOINTS = 1000;
+
+    private Map<String, Endpoint> endpointMap;
+
+    private int maxConcurrentDeliveries = DEFAULT_MAX_CONCURRENT_DELIVERIES;
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private long openTime = DEFAULT_OPEN_TIME;
+    private int maxEndpoints = DEFAULT_MAX_ENDPOINTS;
+
+    public EventSinkGuard() {
+        this.endpointMap = new ConcurrentHashMap<String, Endpoint>();
+    }
+
+    /**
+     * @param endpoint - event sink url
+     * @return the guarded state of the endpoint
+     */
+    public Endpoint getEndpoint(String endpoint) {
+        Endpoint guardedEndpoint = this.endpointMap.get(endpoint);
+        if (guardedEndpoint == null) {
+            synchronized (this.endpointMap) {
+                guardedEndpoint = this.endpointMap.get(endpoint);
+                if (guardedEndpoint == null) {
+                    if (this.endpointMap.size() >= this.maxEndpoints) {
+                        removeIdleEndpoints();
+                    }
+                    guardedEndpoint = new Endpoint(endpoint);
+                    this.endpointMap.put(endpoint, guardedEndpoint);
+                }
+            }
+        }
+        return guardedEndpoint;
+    }
+
+    /**
+     * takes a delivery slot of the endpoint. An acquired slot must be given back with
+     * {@link #release(Endpoint, boolean, boolean)}.
+     * @param endpoint - endpoint returned by getEndpoint
+     * @param retry - true if the delivery is a retry
+     * @return ACQUIRED, SATURATED if the endpoint is at its concurrency limit, or CIRCUIT_OPEN
+     * if notifications to the endpoint are held back
+     */
+    public int tryAcquire(Endpoint endpoint, boolean retry) {
+        return endpoint.tryAcquire(retry, System.currentTimeMillis());
+    }
+
+    /**
+     * gives back the delivery slot and records the result of the delivery.
+     * @param endpoint - endpoint of the acquired slot
+     * @param retry - true if the delivery was a retry
+     * @param success - false if the delivery failed
+     */
+    public void release(Endpoint endpoint, boolean retry, boolean success) {
+        endpoint.release(retry, success, System.currentTimeMillis());
+    }
+
+    /**
+     * @param endpoint - event sink url
+     * @return circuit state of the endpoint, one of the STATE values
+     */
+    public String getState(String endpoint) {
+        Endpoint guardedEndpoint = this.endpointMap.get(endpoint);
+        return guardedEndpoint == null ? STATE_CLOSED : guardedEndpoint.state;
+    }
+
+    public void setMaxConcurrentDeliveries(int maxConcurrentDeliveries) {
+        this.maxConcurrentDeliveries = maxConcurrentDeliveries;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public void setOpenTime(long openTime) {
+        this.openTime = openTime;
+    }
+
+    public void setMaxEndpoints(int maxEndpoints) {
+        this.maxEndpoints = maxEndpoints;
+    }
+
+    /**
+     * forgets the healthy endpoints which have no delivery in progress, a new state is
+     * created for them on their next delivery.
+     */
+    private void removeIdleEndpoints() {
+        for (Iterator<Endpoint> iterator = this.endpointMap.values().iterator(); iterator.hasNext();) {
+            Endpoint endpoint = iterator.next();
+            synchronized (endpoint) {
+                if (endpoint.isIdle()) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * delivery and circuit state of an event sink endpoint
+     */
+    public class Endpoint {
+
+        private final String url;
+        private int activeDeliveries;
+        private int activeRetries;
+        private int consecutiveFailures;
+        private volatile String state = STATE_CLOSED;
+        private long openedTime;
+
+        private Endpoint(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        private synchronized int tryAcquire(boolean retry, long currentTime) {
+            if (STATE_OPEN.equals(this.state)) {
+                if (currentTime - this.openedTime < openTime) {
+                    return CIRCUIT_OPEN;
+                }
+                // let one trial notification through
+                this.state = STATE_HALF_OPEN;
+            } else if (STATE_HALF_OPEN.equals(this.state) && this.activeDeliveries > 0) {
+                // the trial notification is still in progress
+                return CIRCUIT_OPEN;
+            }
+            if (this.activeDeliveries >= maxConcurrentDeliveries || (retry && this.activeRetries > 0)) {
+                return SATURATED;
+            }
+            this.activeDeliveries++;
+            if (retry) {
+                this.activeRetries++;
+            }
+            return ACQUIRED;
+        }
+
+        private synchronized void release(boolean retry, boolean success, long currentTime) {
+            this.activeDeliveries--;
+            if (retry) {
+                this.activeRetries--;
+            }
+            if (success) {
+                if (!STATE_CLOSED.equals(this.state)) {
+                    log.info("Event sink " + this.url + " is reachable again, resuming the notifications");
+                }
+                this.consecutiveFailures = 0;
+                this.state = STATE_CLOSED;
+            } else {
+                this.consecutiveFailures++;
+                if (STATE_HALF_OPEN.equals(this.state)
+                    || (STATE_CLOSED.equals(this.state) && this.consecutiveFailures >= failureThreshold)) {
+                    if (STATE_CLOSED.equals(this.state)) {
+                        log.warn("Event sink " + this.url + " failed " + this.consecutiveFailures
+                                 + " times in a row, holding back the notifications for " + openTime + " ms");
+                    }
+                    this.state = STATE_OPEN;
+                    this.openedTime = currentTime;
+                }
+            }
+        }
+
+        private boolean isIdle() {
+            return this.activeDeliveries == 0 && this.consecutiveFailures == 0 && STATE_CLOSED.equals(this.state);
+        }
+    }
+}
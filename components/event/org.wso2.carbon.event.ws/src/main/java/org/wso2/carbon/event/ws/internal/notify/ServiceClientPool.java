@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.wso2.carbon.event.ws.internal.notify;
+
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.client.ServiceClient;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.ws.internal.util.EventingConstants;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * keeps idle service clients per event sink endpoint so that notifications to the same sink
+ * reuse the clients instead of creating a new one per notification. A service client is not
+ * thread safe, hence a borrowed client is used by one thread until it is returned. clients of
+ * endpoints which have not been used for the idle timeout are cleaned up.
+ */
+public class ServiceClientPool {
+
+    private static final Log log = LogFactory.getLog(ServiceClientPool.class);
+
+    public static final int DEFAULT_MAX_IDLE_CLIENTS_PER_ENDPOINT = 20;
+    public static final int DEFAULT_MAX_ENDPOINTS = 1000;
+    public static final int DEFAULT_TIMEOUT = 10 * 1000;
+    public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    private ConcurrentMap<String, EndpointClients> endpointClientsMap;
+
+    private int maxIdleClientsPerEndpoint = DEFAULT_MAX_IDLE_CLIENTS_PER_ENDPOINT;
+    private int maxEndpoints = DEFAULT_MAX_ENDPOINTS;
+    private int timeout = DEFAULT_TIMEOUT;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    private ScheduledExecutorService evictionExecutor;
+    private volatile boolean closed;
+
+    public ServiceClientPool() {
+        this.endpointClientsMap = new ConcurrentHashMap<String, EndpointClients>();
+    }
+
+    /**
+     * returns a service client with the options set to publish to the given endpoint.
+     * @param configurationContext - client configuration context
+     * @param endpoint - event sink url
+     * @return service client without any headers
+     * @throws AxisFault - if a new client can not be created
+     */
+    public ServiceClient borrowClient(ConfigurationContext configurationContext, String endpoint)
+            throws AxisFault {
+        startEvictionTask();
+        EndpointClients endpointClients = this.endpointClientsMap.get(endpoint);
+        if (endpointClients != null) {
+            endpointClients.lastUsedTime = System.currentTimeMillis();
+            ServiceClient serviceClient = endpointClients.idleClients.poll();
+            if (serviceClient != null) {
+                endpointClients.idleClientCount.decrementAndGet();
+                if (endpointClients.configurationContext == configurationContext) {
+                    return serviceClient;
+                }
+                // configuration context has changed, so the client is not valid any more
+                cleanup(serviceClient);
+            }
+        }
+
+        ServiceClient serviceClient = new ServiceClient(configurationContext, null);
+        Options options = new Options();
+        options.setTo(new EndpointReference(endpoint));
+        options.setAction(EventingConstants.WSE_PUBLISH);
+        // a sink which does not answer must not hold the delivery thread for long
+        options.setTimeOutInMilliSeconds(this.timeout);
+        options.setProperty(HTTPConstants.SO_TIMEOUT, this.timeout);
+        options.setProperty(HTTPConstants.CONNECTION_TIMEOUT, this.timeout);
+        serviceClient.setOptions(options);
+        return serviceClient;
+    }
+
+    /**
+     * gives the client back to the pool.
+     * @param configurationContext - configuration context the client was created with
+     * @param endpoint - event sink url of the client
+     * @param serviceClient - borrowed client
+     * @param reusable - false if the client failed and should not be used again
+     */
+    public void returnClient(ConfigurationContext configurationContext, String endpoint,
+                             ServiceClient serviceClient, boolean reusable) {
+        serviceClient.removeHeaders();
+        try {
+            serviceClient.cleanupTransport();
+        } catch (AxisFault axisFault) {
+            log.debug("Can not clean up the transport of the service client of " + endpoint, axisFault);
+            reusable = false;
+        }
+        if (!reusable) {
+            cleanup(serviceClient);
+            return;
+        }
+
+        EndpointClients endpointClients = this.closed ? null : getEndpointClients(configurationContext, endpoint);
+        if (endpointClients == null
+            || endpointClients.idleClientCount.incrementAndGet() > this.maxIdleClientsPerEndpoint) {
+            if (endpointClients != null) {
+                endpointClients.idleClientCount.decrementAndGet();
+            }
+            cleanup(serviceClient);
+        } else {
+            endpointClients.idleClients.offer(serviceClient);
+            if (endpointClients.removed) {
+                // the endpoint was evicted while the client was in use
+                cleanup(endpointClients);
+            }
+        }
+    }
+
+    /**
+     * stops the eviction and cleans up all the idle clients. clients returned afterwards are
+     * cleaned up instead of being pooled.
+     */
+    public void close() {
+        this.closed = true;
+        synchronized (this) {
+            if (this.evictionExecutor != null) {
+                this.evictionExecutor.shutdownNow();
+                this.evictionExecutor = null;
+            }
+        }
+        for (String endpoint : this.endpointClientsMap.keySet()) {
+            remove(endpoint, this.endpointClientsMap.get(endpoint));
+        }
+    }
+
+    public void setMaxIdleClientsPerEndpoint(int maxIdleClientsPerEndpoint) {
+        this.maxIdleClientsPerEndpoint = maxIdleClientsPerEndpoint;
+    }
+
+    public void setMaxEndpoints(int maxEndpoints) {
+        this.maxEndpoints = maxEndpoints;
+    }
+
+    /**
+     * @param timeout - connection and read timeout in milliseconds of the notifications
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param idleTimeout - milliseconds after which the clients of an unused endpoint are
+     * cleaned up. 0 keeps them until the pool is closed
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    private synchronized void startEvictionTask() {
+        if (this.evictionExecutor != null || this.idleTimeout <= 0 || this.closed) {
+            return;
+        }
+        this.evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ServiceClientPoolEvictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(1000, this.idleTimeout / 2);
+        this.evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evictIdle();
+                } catch (Throwable e) {
+                    log.error("Error while evicting idle service clients", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIdle() {
+        long currentTime = System.currentTimeMillis();
+        for (Map.Entry<String, EndpointClients> entry : this.endpointClientsMap.entrySet()) {
+            if (currentTime - entry.getValue().lastUsedTime > this.idleTimeout) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void remove(String endpoint, EndpointClients endpointClients) {
+        if (endpointClients != null && this.endpointClientsMap.remove(endpoint, endpointClients)) {
+            endpointClients.removed = true;
+            cleanup(endpointClients);
+        }
+    }
+
+    private EndpointClients getEndpointClients(ConfigurationContext configurationContext, String endpoint) {
+        EndpointClients endpointClients = this.endpointClientsMap.get(endpoint);
+        if (endpointClients != null && endpointClients.configurationContext == configurationContext) {
+            return endpointClients;
+        }
+        synchronized (this.endpointClientsMap) {
+            endpointClients = this.endpointClientsMap.get(endpoint);
+            if (endpointClients == null || endpointClients.configurationContext != configurationContext) {
+                if (endpointClients == null && this.endpointClientsMap.size() >= this.maxEndpoints) {
+                    // too many sinks to keep clients for all of them
+                    return null;
+                }
+                if (endpointClients != null) {
+                    remove(endpoint, endpointClients);
+                }
+                endpointClients = new EndpointClients(configurationContext);
+                this.endpointClientsMap.put(endpoint, endpointClients);
+            }
+        }
+        return endpointClients;
+    }
+
+    private void cleanup(EndpointClients endpointClients) {
+        if (endpointClients == null) {
+            return;
+        }
+        for (ServiceClient serviceClient = endpointClients.idleClients.poll(); serviceClient != null;
+             serviceClient = endpointClients.idleClients.poll()) {
+            endpointClients.idleClientCount.decrementAndGet();
+            cleanup(serviceClient);
+        }
+    }
+
+    private void cleanup(ServiceClient serviceClient) {
+        try {
+            serviceClient.cleanup();
+        } catch (AxisFault axisFault) {
+            log.debug("Can not clean up the service client", axisFault);
+        }
+    }
+
+    /**
+     * idle clients of an endpoint
+     */
+    private static class EndpointClients {
+
+        private final ConfigurationContext configurationContext;
+        private final Queue<ServiceClient> idleClients;
+        private final AtomicInteger idleClientCount;
+        private volatile long lastUsedTime;
+        private volatile boolean removed;
+
+        private EndpointClients(ConfigurationContext configurationContext) {
+            this.configurationContext = configurationContext;
+            this.idleClients = new ConcurrentLinkedQueue<ServiceClient>();
+            this.idleClientCount = new AtomicInteger();
+            this.lastUsedTime = System.currentTimeMillis();
+        }
+    }
+}
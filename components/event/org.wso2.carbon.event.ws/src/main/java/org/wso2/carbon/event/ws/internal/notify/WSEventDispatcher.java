@@ -21,26 +21,67 @@ import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
 import org.apache.axis2.AxisFault;
-import org.apache.axis2.addressing.EndpointReference;
-import org.apache.axis2.client.Options;
 import org.apache.axis2.client.ServiceClient;
+import org.apache.axis2.context.ConfigurationContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.event.ws.internal.util.EventBrokerUtils;
 import org.wso2.carbon.event.ws.internal.util.EventingConstants;
 import org.wso2.carbon.event.ws.internal.WSEventBrokerHolder;
 import org.wso2.carbon.event.core.subscription.EventDispatcher;
 import org.wso2.carbon.event.core.subscription.Subscription;
 import org.wso2.carbon.event.core.Message;
+import org.wso2.carbon.event.core.metrics.EventBrokerMetrics;
 import org.wso2.carbon.utils.multitenancy.MultitenantConstants;
 import org.wso2.carbon.utils.ConfigurationContextService;
 
+import javax.xml.namespace.QName;
+
 public class WSEventDispatcher implements EventDispatcher {
 
      private static Log log = LogFactory.getLog(WSEventDispatcher.class);
 
+    private ServiceClientPool serviceClientPool = new ServiceClientPool();
+
+    private EventSinkGuard eventSinkGuard = new EventSinkGuard();
+
+    private DeliveryRetryQueue retryQueue = new DeliveryRetryQueue(this);
+
     public void notify(Message message, Subscription subscription) {
+        deliver(message, subscription, 0, false);
+    }
+
+    /**
+     * sends the notification if the event sink can take it, and parks it in the retry queue
+     * otherwise, so that a slow or unreachable sink does not hold the delivery threads.
+     * @param message - message to deliver
+     * @param subscription - subscription of the event sink
+     * @param attempt - number of retries already made for the notification
+     * @param queued - true if the notification comes from the retry queue
+     */
+    protected void deliver(Message message, Subscription subscription, int attempt, boolean queued) {
+
+        if (queued && subscription.getExpiryTime() < System.currentTimeMillis()) {
+            // the subscription has expired while the notification was waiting in the retry queue
+            return;
+        }
 
         String endpoint = subscription.getEventSinkURL();
+        EventSinkGuard.Endpoint guardedEndpoint = this.eventSinkGuard.getEndpoint(endpoint);
+        int result = this.eventSinkGuard.tryAcquire(guardedEndpoint, queued);
+        if (result != EventSinkGuard.ACQUIRED) {
+            boolean queuedAgain;
+            if (result == EventSinkGuard.SATURATED) {
+                // the sink is only busy, so waiting for a slot does not use up a retry
+                queuedAgain = this.retryQueue.delay(message, subscription, attempt);
+            } else {
+                queuedAgain = this.retryQueue.offer(message, subscription, attempt);
+            }
+            if (!queuedAgain) {
+                EventBrokerMetrics.getInstance().recordDispatchFailure(subscription.getTenantId(), endpoint);
+            }
+            return;
+        }
 
         String topic = subscription.getTopicName();
         OMFactory factory = OMAbstractFactory.getOMFactory();
@@ -62,14 +103,108 @@ public class WSEventDispatcher implements EventDispatcher {
 
         OMElement payload = message.getMessage().cloneOMElement();
 
+        boolean success = false;
         try {
             sendNotification(topicEle, domainElement, payload, endpoint);
+            success = true;
         } catch (Exception e) {
-            log.error("Unable to send message", e);
+            EventBrokerMetrics.getInstance().recordDispatchFailure(subscription.getTenantId(), endpoint);
+            log.error("Unable to send message to " + endpoint, e);
+        } finally {
+            this.eventSinkGuard.release(guardedEndpoint, queued, success);
+        }
+        if (!success) {
+            // the failure has been recorded, so a dropped retry is not recorded again
+            this.retryQueue.offer(message, subscription, attempt);
+        }
+    }
+
+    /**
+     * applies the wsEventDispatcher settings of the event-broker.xml.
+     * @param config - wsEventDispatcher element, or null to keep the defaults
+     */
+    public void configure(OMElement config) {
+        if (config == null) {
+            return;
+        }
+        OMElement clientPoolConfig = config.getFirstChildWithName(new QName(
+                config.getNamespace().getNamespaceURI(), EventingConstants.WSE_CONF_ELE_CLIENT_POOL));
+        if (clientPoolConfig != null) {
+            this.serviceClientPool.setMaxIdleClientsPerEndpoint(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    clientPoolConfig, EventingConstants.WSE_CONF_ELE_MAX_IDLE_CLIENTS_PER_ENDPOINT,
+                    Integer.toString(ServiceClientPool.DEFAULT_MAX_IDLE_CLIENTS_PER_ENDPOINT))));
+            this.serviceClientPool.setMaxEndpoints(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    clientPoolConfig, EventingConstants.WSE_CONF_ELE_MAX_ENDPOINTS,
+                    Integer.toString(ServiceClientPool.DEFAULT_MAX_ENDPOINTS))));
+            this.serviceClientPool.setTimeout(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    clientPoolConfig, EventingConstants.WSE_CONF_ELE_TIMEOUT,
+                    Integer.toString(ServiceClientPool.DEFAULT_TIMEOUT))));
+            this.serviceClientPool.setIdleTimeout(Long.parseLong(EventBrokerUtils.getConfigValue(
+                    clientPoolConfig, EventingConstants.WSE_CONF_ELE_IDLE_TIMEOUT,
+                    Long.toString(ServiceClientPool.DEFAULT_IDLE_TIMEOUT))));
+        }
+        OMElement eventSinkGuardConfig = config.getFirstChildWithName(new QName(
+                config.getNamespace().getNamespaceURI(), EventingConstants.WSE_CONF_ELE_EVENT_SINK_GUARD));
+        if (eventSinkGuardConfig != null) {
+            this.eventSinkGuard.setMaxConcurrentDeliveries(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    eventSinkGuardConfig, EventingConstants.WSE_CONF_ELE_MAX_CONCURRENT_DELIVERIES,
+                    Integer.toString(EventSinkGuard.DEFAULT_MAX_CONCURRENT_DELIVERIES))));
+            this.eventSinkGuard.setFailureThreshold(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    eventSinkGuardConfig, EventingConstants.WSE_CONF_ELE_FAILURE_THRESHOLD,
+                    Integer.toString(EventSinkGuard.DEFAULT_FAILURE_THRESHOLD))));
+            this.eventSinkGuard.setOpenTime(Long.parseLong(EventBrokerUtils.getConfigValue(
+                    eventSinkGuardConfig, EventingConstants.WSE_CONF_ELE_OPEN_TIME,
+                    Long.toString(EventSinkGuard.DEFAULT_OPEN_TIME))));
+            this.eventSinkGuard.setMaxEndpoints(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    eventSinkGuardConfig, EventingConstants.WSE_CONF_ELE_MAX_ENDPOINTS,
+                    Integer.toString(EventSinkGuard.DEFAULT_MAX_ENDPOINTS))));
+        }
+        OMElement retryQueueConfig = config.getFirstChildWithName(new QName(
+                config.getNamespace().getNamespaceURI(), EventingConstants.WSE_CONF_ELE_RETRY_QUEUE));
+        if (retryQueueConfig != null) {
+            this.retryQueue.setMaxQueuedDeliveries(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    retryQueueConfig, EventingConstants.WSE_CONF_ELE_MAX_QUEUED_DELIVERIES,
+                    Integer.toString(DeliveryRetryQueue.DEFAULT_MAX_QUEUED_DELIVERIES))));
+            this.retryQueue.setMaxRetries(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    retryQueueConfig, EventingConstants.WSE_CONF_ELE_MAX_RETRIES,
+                    Integer.toString(DeliveryRetryQueue.DEFAULT_MAX_RETRIES))));
+            this.retryQueue.setInitialBackoff(Long.parseLong(EventBrokerUtils.getConfigValue(
+                    retryQueueConfig, EventingConstants.WSE_CONF_ELE_INITIAL_BACKOFF,
+                    Long.toString(DeliveryRetryQueue.DEFAULT_INITIAL_BACKOFF))));
+            this.retryQueue.setMaxBackoff(Long.parseLong(EventBrokerUtils.getConfigValue(
+                    retryQueueConfig, EventingConstants.WSE_CONF_ELE_MAX_BACKOFF,
+                    Long.toString(DeliveryRetryQueue.DEFAULT_MAX_BACKOFF))));
+            this.retryQueue.setSaturationDelay(Long.parseLong(EventBrokerUtils.getConfigValue(
+                    retryQueueConfig, EventingConstants.WSE_CONF_ELE_SATURATION_DELAY,
+                    Long.toString(DeliveryRetryQueue.DEFAULT_SATURATION_DELAY))));
+            this.retryQueue.setRetryThreads(Integer.parseInt(EventBrokerUtils.getConfigValue(
+                    retryQueueConfig, EventingConstants.WSE_CONF_ELE_RETRY_THREADS,
+                    Integer.toString(DeliveryRetryQueue.DEFAULT_RETRY_THREADS))));
         }
     }
 
-    protected synchronized void sendNotification(OMElement topicHeader,
+    /**
+     * drops the notifications waiting for a retry and releases the pooled service clients.
+     * called when the dispatcher is unregistered.
+     */
+    public void shutdown() {
+        this.retryQueue.shutdown();
+        this.serviceClientPool.close();
+    }
+
+    public ServiceClientPool getServiceClientPool() {
+        return serviceClientPool;
+    }
+
+    public EventSinkGuard getEventSinkGuard() {
+        return eventSinkGuard;
+    }
+
+    public DeliveryRetryQueue getRetryQueue() {
+        return retryQueue;
+    }
+
+    protected void sendNotification(OMElement topicHeader,
                                     OMElement tenantDomainHeader,
                                     OMElement payload,
                                     String endpoint)
@@ -79,38 +214,30 @@ public class WSEventDispatcher implements EventDispatcher {
         // Dispatcher.
         ConfigurationContextService configurationContextService =
                 WSEventBrokerHolder.getInstance().getConfigurationContextService();
+        ConfigurationContext configurationContext = configurationContextService.getClientConfigContext();
 
-        ServiceClient serviceClient =
-                new ServiceClient(configurationContextService.getClientConfigContext(), null);
+        // service clients are pooled per endpoint and used by one thread at a time, so
+        // notifications do not need to be serialized
+        ServiceClient serviceClient = serviceClientPool.borrowClient(configurationContext, endpoint);
+        boolean reusable = false;
+        try {
+            serviceClient.addHeader(topicHeader);
 
-        Options options = new Options();
-        options.setTo(new EndpointReference(endpoint));
-        options.setAction(EventingConstants.WSE_PUBLISH);
-        serviceClient.setOptions(options);
-        serviceClient.addHeader(topicHeader);
+            if (tenantDomainHeader != null){
+                serviceClient.addHeader(tenantDomainHeader);
+            }
 
-        if (tenantDomainHeader != null){
-            serviceClient.addHeader(tenantDomainHeader);
+            serviceClient.fireAndForget(payload);
+            reusable = true;
+        } finally {
+            serviceClientPool.returnClient(configurationContext, endpoint, serviceClient, reusable);
         }
-
-        serviceClient.fireAndForget(payload);
     }
 
     protected void sendNotification(OMElement topicHeader,
                                     OMElement payload,
                                     String endpoint)
             throws AxisFault {
-        // The parameter args is used as a mechanism to pass any argument into this method, which
-        // is used by the implementations that extend the behavior of the default Carbon Event
-        // Dispatcher.
-        ServiceClient serviceClient = new ServiceClient();
-
-        Options options = new Options();
-        options.setTo(new EndpointReference(endpoint));
-        options.setAction(EventingConstants.WSE_PUBLISH);
-        serviceClient.setOptions(options);
-        serviceClient.addHeader(topicHeader);
-
-        serviceClient.fireAndForget(payload);
+        sendNotification(topicHeader, null, payload, endpoint);
     }
 }
@@ -39,6 +39,7 @@ import org.wso2.carbon.event.core.EventBroker;
 import org.wso2.carbon.event.core.Message;
 import org.wso2.carbon.event.core.util.EventBrokerConstants;
 import org.wso2.carbon.event.core.exception.EventBrokerException;
+import org.wso2.carbon.event.core.subscription.EventFilter;
 import org.wso2.carbon.event.core.subscription.Subscription;
 
 import javax.xml.namespace.QName;
@@ -125,7 +126,14 @@ public class CarbonEventingMessageReceiver extends AbstractMessageReceiver {
             if (subscription != null) {
                 // set the topic name using the url
                 String toAddress = mc.getOptions().getTo().getAddress();
-                String topicName = subscription.getEventFilter().getValue();
+                String topicName = null;
+                EventFilter eventFilter = subscription.getEventFilter();
+                if (eventFilter != null
+                    && !EventBrokerConstants.EB_FILTER_DIALECT_CONTENT_XPATH.equals(eventFilter.getDialect())
+                    && !EventBrokerConstants.EB_FILTER_DIALECT_PROPERTY.equals(eventFilter.getDialect())) {
+                    // the filter names the topic unless it is a content filter
+                    topicName = eventFilter.getValue();
+                }
 
                 if ((topicName == null) || (topicName.equals(""))) {
                     // we take string after the service name as the topic name
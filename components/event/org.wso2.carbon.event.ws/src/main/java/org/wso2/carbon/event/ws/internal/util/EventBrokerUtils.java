@@ -19,6 +19,7 @@
 package org.wso2.carbon.event.ws.internal.util;
 
 import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.impl.builder.StAXOMBuilder;
 import org.apache.axiom.om.xpath.AXIOMXPath;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.soap.SOAPFactory;
@@ -29,9 +30,19 @@ import org.apache.axis2.engine.AxisConfiguration;
 import org.jaxen.JaxenException;
 import org.wso2.carbon.context.CarbonContext;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.event.core.util.EventBrokerConstants;
 import org.wso2.carbon.event.ws.internal.exception.EventBrokerException;
 import org.wso2.carbon.event.ws.internal.exception.WSEventException;
+import org.wso2.carbon.utils.ServerConstants;
 
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.regex.Matcher;
 
 public class EventBrokerUtils {
@@ -117,4 +128,60 @@ public class EventBrokerUtils {
         }
         return topic;
     }
+
+    /**
+     * reads the given child element of the event broker element of the event-broker.xml.
+     *
+     * @param localPart - name of the child element
+     * @return the child element or null if the element is not configured
+     * @throws EventBrokerException - if the event-broker.xml can not be read
+     */
+    public static OMElement getEventBrokerConfig(String localPart) throws EventBrokerException {
+        String path = System.getProperty(ServerConstants.CARBON_HOME) + File.separator + "repository"
+                      + File.separator + "conf" + File.separator + EventBrokerConstants.EB_CONF;
+        InputStream inputStream = null;
+        try {
+            inputStream = new BufferedInputStream(new FileInputStream(new File(path)));
+            OMElement ebConfig = new StAXOMBuilder(
+                    XMLInputFactory.newInstance().createXMLStreamReader(inputStream)).getDocumentElement();
+            ebConfig.build();
+            OMElement eventBroker = ebConfig.getFirstChildWithName(new QName(
+                    EventBrokerConstants.EB_CONF_NAMESPACE, EventBrokerConstants.EB_CONF_ELE_EVENT_BROKER));
+            if (eventBroker == null) {
+                return null;
+            }
+            return eventBroker.getFirstChildWithName(
+                    new QName(EventBrokerConstants.EB_CONF_NAMESPACE, localPart));
+        } catch (IOException e) {
+            throw new EventBrokerException("Can not read " + EventBrokerConstants.EB_CONF
+                                           + " in the path : " + path, e);
+        } catch (XMLStreamException e) {
+            throw new EventBrokerException("Invalid XML for " + EventBrokerConstants.EB_CONF
+                                           + " located in the path : " + path, e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {
+                    // nothing to do
+                }
+            }
+        }
+    }
+
+    /**
+     * returns the text of the given child element or the default value if the element
+     * is not configured.
+     */
+    public static String getConfigValue(OMElement omElement, String localPart, String defaultValue) {
+        if (omElement == null) {
+            return defaultValue;
+        }
+        OMElement childElement = omElement.getFirstChildWithName(
+                new QName(omElement.getNamespace().getNamespaceURI(), localPart));
+        if (childElement == null) {
+            return defaultValue;
+        }
+        return childElement.getText().trim();
+    }
 }
@@ -117,4 +117,23 @@ public interface EventingConstants {
     String BROKER_SERVICE_NAME = "EventBrokerService";
 
     Pattern TO_ADDRESS_PATTERN = Pattern.compile("/services/.*/publish/(.*)");
+
+    // ws event dispatcher settings of the event-broker.xml
+    String WSE_CONF_ELE_DISPATCHER = "wsEventDispatcher";
+    String WSE_CONF_ELE_CLIENT_POOL = "clientPool";
+    String WSE_CONF_ELE_MAX_IDLE_CLIENTS_PER_ENDPOINT = "maxIdleClientsPerEndpoint";
+    String WSE_CONF_ELE_MAX_ENDPOINTS = "maxEndpoints";
+    String WSE_CONF_ELE_TIMEOUT = "timeout";
+    String WSE_CONF_ELE_IDLE_TIMEOUT = "idleTimeout";
+    String WSE_CONF_ELE_EVENT_SINK_GUARD = "eventSinkGuard";
+    String WSE_CONF_ELE_MAX_CONCURRENT_DELIVERIES = "maxConcurrentDeliveries";
+    String WSE_CONF_ELE_FAILURE_THRESHOLD = "failureThreshold";
+    String WSE_CONF_ELE_OPEN_TIME = "openTime";
+    String WSE_CONF_ELE_RETRY_QUEUE = "retryQueue";
+    String WSE_CONF_ELE_MAX_QUEUED_DELIVERIES = "maxQueuedDeliveries";
+    String WSE_CONF_ELE_MAX_RETRIES = "maxRetries";
+    String WSE_CONF_ELE_INITIAL_BACKOFF = "initialBackoff";
+    String WSE_CONF_ELE_MAX_BACKOFF = "maxBackoff";
+    String WSE_CONF_ELE_SATURATION_DELAY = "saturationDelay";
+    String WSE_CONF_ELE_RETRY_THREADS = "retryThreads";
 }
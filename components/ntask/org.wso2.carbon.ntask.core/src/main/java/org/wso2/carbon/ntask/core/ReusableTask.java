@@ -0,0 +1,28 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core;
+
+/**
+ * Marker interface for tasks which can be reused across the executions of a scheduled task.
+ * A reusable task is created, and its properties set and initialized once, and the same
+ * instance is executed on the following triggers, as long as the task properties do not
+ * change. If the task is still executing when it is triggered again, a new instance is used
+ * for that execution, so a reusable task is never executed concurrently. The reusable tasks
+ * must not keep state from an execution that is not valid for the next one.
+ */
+public interface ReusableTask extends Task {
+
+}
@@ -57,6 +57,14 @@ public class TaskServiceContext {
         return this.memberIds.size();
     }
     
+    public String getServerId(int index) {
+        return this.memberIds.get(index);
+    }
+
+    public int getServerIndex(String serverId) {
+        return this.memberIds.indexOf(serverId);
+    }
+
     public InetSocketAddress getServerAddress(int index) {
         String memberId = this.memberIds.get(index);
         Member member = this.memberMap.get(memberId);
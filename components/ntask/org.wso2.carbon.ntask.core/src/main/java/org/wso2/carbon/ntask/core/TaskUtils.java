@@ -21,7 +21,11 @@ import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.core.util.CryptoException;
 import org.wso2.carbon.ntask.common.TaskException;
 import org.wso2.carbon.ntask.common.TaskException.Code;
+import org.wso2.carbon.ntask.core.impl.JDBCTaskRepository;
+import org.wso2.carbon.ntask.core.impl.RegistryBasedTaskRepository;
 import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
+import org.wso2.carbon.ntask.core.service.TaskService.TaskRepositoryType;
+import org.wso2.carbon.ntask.core.service.TaskService.TaskServiceConfiguration;
 import org.wso2.carbon.registry.core.Registry;
 import org.wso2.carbon.registry.core.exceptions.RegistryException;
 import org.wso2.securevault.SecretResolver;
@@ -29,6 +33,7 @@ import org.wso2.securevault.SecretResolverFactory;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
+import java.util.List;
 
 /**
  * This class contains utitilty functions related to tasks.
@@ -158,4 +163,47 @@ public class TaskUtils {
             return true;
     }
 
+    /**
+     * Creates the task repository of the given task manager, of the type set in the task
+     * service configuration.
+     * @param tmId The task manager id
+     * @return The task repository
+     * @throws TaskException
+     */
+    public static TaskRepository createTaskRepository(TaskManagerId tmId) throws TaskException {
+        TaskServiceConfiguration config = TasksDSComponent.getTaskService().getServerConfiguration();
+        if (config.getTaskRepositoryType() == TaskRepositoryType.JDBC) {
+            return new JDBCTaskRepository(JDBCTaskRepository.getDataSource(
+                    getTaskRepositoryDataSource(config)), tmId.getTenantId(), tmId.getTaskType());
+        }
+        return new RegistryBasedTaskRepository(tmId.getTenantId(), tmId.getTaskType());
+    }
+
+    /**
+     * Returns the ids of the task managers of all the tenants which have tasks of the given type,
+     * from the task repository set in the task service configuration.
+     * @param taskType The task type
+     * @return The task manager ids
+     * @throws TaskException
+     */
+    public static List<TaskManagerId> getAllTenantTaskManagerIdsForType(String taskType)
+            throws TaskException {
+        TaskServiceConfiguration config = TasksDSComponent.getTaskService().getServerConfiguration();
+        if (config.getTaskRepositoryType() == TaskRepositoryType.JDBC) {
+            return JDBCTaskRepository.getAllTenantTaskManagersForType(JDBCTaskRepository.getDataSource(
+                    getTaskRepositoryDataSource(config)), taskType);
+        }
+        return RegistryBasedTaskRepository.getAllTenantTaskManagersForType(taskType);
+    }
+
+    private static String getTaskRepositoryDataSource(TaskServiceConfiguration config)
+            throws TaskException {
+        String dataSourceName = config.getTaskRepositoryDataSource();
+        if (dataSourceName == null || dataSourceName.trim().length() == 0) {
+            throw new TaskException("The 'taskRepositoryDataSource' must be set to use the " +
+                    TaskRepositoryType.JDBC + " task repository", Code.CONFIG_ERROR);
+        }
+        return dataSourceName.trim();
+    }
+
 }
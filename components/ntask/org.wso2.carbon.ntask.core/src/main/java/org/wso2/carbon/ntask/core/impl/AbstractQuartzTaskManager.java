@@ -33,6 +33,7 @@ import org.wso2.carbon.ntask.core.TaskUtils;
 import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
 
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * This class represents an abstract class implementation of TaskManager based on Quartz Scheduler.
@@ -47,8 +48,14 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
 
     private Scheduler scheduler;
 
+    private LocalTaskStateIndex localTaskStates = LocalTaskStateIndex.getInstance();
+
     private static final String TASK_TRIGGER_LISTENER_NAME = "TASK_TRIGGER_LISTENER";
 
+    private static final String TENANT_TASK_GROUP_PREFIX = "TENANT_";
+
+    private static final String TENANT_TASK_GROUP_TYPE_SEPARATOR = "_TYPE_";
+
     @SuppressWarnings({"unchecked"})
     public AbstractQuartzTaskManager(TaskRepository taskRepository) throws TaskException {
         this.taskRepository = taskRepository;
@@ -58,6 +65,7 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         } catch (SchedulerException e) {
             throw new TaskException("Error in initiating task trigger listener", Code.UNKNOWN, e);
         }
+        this.localTaskStates.listen(this.getScheduler());
     }
 
     public TaskRepository getTaskRepository() {
@@ -125,12 +133,16 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         }
     }
 
-    protected synchronized boolean deleteLocalTask(String taskName, 
+    protected boolean deleteLocalTask(String taskName, 
             boolean removeRegistration) throws TaskException {
         String taskGroup = this.getTenantTaskGroup();
         boolean result = false;
+        Lock lock = this.localTaskStates.getLock(taskGroup, taskName);
+        lock.lock();
         try {
             result = this.getScheduler().deleteJob(new JobKey(taskName, taskGroup));
+            TaskFactory.getInstance().evict(new JobKey(taskName, taskGroup));
+            this.localTaskStates.remove(this.getScheduler(), taskGroup, taskName);
             if (result) {
                 log.info("Task deleted: [" + this.getTenantId() +
                         "][" + this.getTaskType() + "][" + taskName + "]");
@@ -138,6 +150,8 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         } catch (SchedulerException e) {
             throw new TaskException("Error in deleting task with name: " + taskName,
                     Code.UNKNOWN, e);
+        } finally {
+            lock.unlock();
         }
         if (removeRegistration) {
             result &= this.getTaskRepository().deleteTask(taskName);
@@ -145,25 +159,31 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         return result;
     }
 
-    protected synchronized void deleteLocalTasks() throws TaskException {
+    protected void deleteLocalTasks() throws TaskException {
         List<TaskInfo> localTaskList = this.getAllLocalRunningTasks();
         for (TaskInfo task : localTaskList) {
             this.deleteLocalTask(task.getName(), false);
         }
     }
 
-    protected synchronized void pauseLocalTask(String taskName) throws TaskException {
+    protected void pauseLocalTask(String taskName) throws TaskException {
         String taskGroup = this.getTenantTaskGroup();
+        Lock lock = this.localTaskStates.getLock(taskGroup, taskName);
+        lock.lock();
         try {
             this.getScheduler().pauseJob(new JobKey(taskName, taskGroup));
+            this.localTaskStates.setPaused(this.getScheduler(), taskGroup, taskName);
         } catch (SchedulerException e) {
             throw new TaskException("Error in pausing task with name: " + taskName,
                     Code.UNKNOWN, e);
+        } finally {
+            lock.unlock();
         }
     }
 
     private String getTenantTaskGroup() {
-        return "TENANT_" + this.getTenantId() + "_TYPE_" + this.getTaskType();
+        return TENANT_TASK_GROUP_PREFIX + this.getTenantId() + TENANT_TASK_GROUP_TYPE_SEPARATOR +
+                this.getTaskType();
     }
 
     private JobDataMap getJobDataMapFromTaskInfo(TaskInfo taskInfo) {
@@ -173,7 +193,7 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         return dataMap;
     }
 
-    protected synchronized void scheduleAllTasks() throws TaskException {
+    protected void scheduleAllTasks() throws TaskException {
         List<TaskInfo> tasks = this.getTaskRepository().getAllTasks();
         for (TaskInfo task : tasks) {
             try {
@@ -184,39 +204,54 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         }
     }
 
-    protected synchronized void scheduleLocalTask(String taskName) throws TaskException {
+    protected void scheduleLocalTask(String taskName) throws TaskException {
         boolean paused = TaskUtils.isTaskPaused(this.getTaskRepository(), taskName);
         this.scheduleLocalTask(taskName, paused);
     }
 
-    protected synchronized void scheduleLocalTask(String taskName,
-                                                  boolean paused) throws TaskException {
+    protected void scheduleLocalTask(String taskName,
+                                     boolean paused) throws TaskException {
         TaskInfo taskInfo = this.getTaskRepository().getTask(taskName);
         String taskGroup = this.getTenantTaskGroup();
         if (taskInfo == null) {
             throw new TaskException("Non-existing task for scheduling with name: " + taskName,
                     Code.NO_TASK_EXISTS);
         }
-        if (this.containsLocalTask(taskName, taskGroup)) {
-            /* to make the scheduleLocalTask operation idempotent */
-            return;
-        }
-        Class<? extends Job> jobClass = taskInfo.getTriggerInfo().isDisallowConcurrentExecution() ?
-                NonConcurrentTaskQuartzJobAdapter.class : TaskQuartzJobAdapter.class;
-        JobDetail job = JobBuilder.newJob(jobClass).withIdentity(taskName, taskGroup).usingJobData(
-                this.getJobDataMapFromTaskInfo(taskInfo)).build();
-        Trigger trigger = this.getTriggerFromInfo(taskName, taskGroup, taskInfo.getTriggerInfo());
+        Lock lock = this.localTaskStates.getLock(taskGroup, taskName);
+        lock.lock();
         try {
-            this.getScheduler().scheduleJob(job, trigger);
-            if (paused) {
-                this.getScheduler().pauseJob(job.getKey());
+            /* the scheduler is checked rather than the local states, since a finished task
+             * is only removed from the scheduler after its trigger listeners are notified */
+            if (this.containsLocalTask(taskName, taskGroup)) {
+                /* to make the scheduleLocalTask operation idempotent */
+                return;
+            }
+            Class<? extends Job> jobClass = taskInfo.getTriggerInfo().isDisallowConcurrentExecution() ?
+                    NonConcurrentTaskQuartzJobAdapter.class : TaskQuartzJobAdapter.class;
+            JobDetail job = JobBuilder.newJob(jobClass).withIdentity(taskName, taskGroup).usingJobData(
+                    this.getJobDataMapFromTaskInfo(taskInfo)).build();
+            Trigger trigger = this.getTriggerFromInfo(taskName, taskGroup, taskInfo.getTriggerInfo());
+            /* the state is recorded first, so that it is removed if the task finishes right away */
+            this.localTaskStates.setScheduled(this.getScheduler(), taskGroup, taskName, paused);
+            try {
+                this.getScheduler().scheduleJob(job, trigger);
+                if (paused) {
+                    this.getScheduler().pauseJob(job.getKey());
+                }
+            } catch (SchedulerException e) {
+                if (!this.containsLocalTask(taskName, taskGroup)) {
+                    this.localTaskStates.remove(this.getScheduler(), taskGroup, taskName);
+                }
+                throw e;
             }
             log.info("Task scheduled: [" + this.getTenantId() +
                     "][" + this.getTaskType() + "][" + taskName + "]" + (paused ? "[Paused]" : ""));
         } catch (SchedulerException e) {
             throw new TaskException("Error in scheduling task with name: " + taskName,
                     Code.UNKNOWN, e);
-        }    
+        } finally {
+            lock.unlock();
+        }
     }
 
     private Trigger getTriggerFromInfo(String taskName, String taskGroup,
@@ -247,61 +282,136 @@ public abstract class AbstractQuartzTaskManager implements TaskManager {
         return trigger;
     }
 
-    protected synchronized void rescheduleLocalTask(String taskName) throws TaskException {
+    protected void rescheduleLocalTask(String taskName) throws TaskException {
         String taskGroup = this.getTenantTaskGroup();
         TaskInfo taskInfo = this.getTaskRepository().getTask(taskName);
         Trigger trigger = this.getTriggerFromInfo(taskName, taskGroup, taskInfo.getTriggerInfo());
+        Lock lock = this.localTaskStates.getLock(taskGroup, taskName);
+        lock.lock();
         try {
             boolean paused = TaskUtils.isTaskPaused(this.getTaskRepository(), taskName);
-            Date resultDate = this.getScheduler().rescheduleJob(
-                    new TriggerKey(taskName, taskGroup), trigger);
+            Date resultDate;
+            try {
+                resultDate = this.getScheduler().rescheduleJob(
+                        new TriggerKey(taskName, taskGroup), trigger);
+            } catch (SchedulerException e) {
+                /* the task keeps its previous trigger, unless it is no longer in the scheduler */
+                if (!this.containsLocalTask(taskName, taskGroup)) {
+                    this.localTaskStates.remove(this.getScheduler(), taskGroup, taskName);
+                }
+                throw e;
+            }
             if (resultDate == null) {
                 /* do normal schedule */
                 this.scheduleLocalTask(taskName, paused);
-            } else if (paused) {
-                this.pauseLocalTask(taskName);
+            } else {
+                /* the replaced trigger is reported as unscheduled, which drops the state, so it
+                 * is recorded again, unless the new trigger has already finished */
+                if (this.containsLocalTask(taskName, taskGroup)) {
+                    this.localTaskStates.setScheduled(this.getScheduler(), taskGroup, taskName, false);
+                }
+                if (paused) {
+                    this.pauseLocalTask(taskName);
+                }
             }
         } catch (SchedulerException e) {
             throw new TaskException("Error in rescheduling task with name: " + taskName,
                     Code.UNKNOWN, e);
+        } finally {
+            lock.unlock();
         }
     }
 
-    protected synchronized void resumeLocalTask(String taskName) throws TaskException {
+    protected void resumeLocalTask(String taskName) throws TaskException {
         String taskGroup = this.getTenantTaskGroup();
-        if (!this.containsLocalTask(taskName, taskGroup)) {
-            throw new TaskException("Non-existing task for resuming with name: " + taskName,
-                    Code.NO_TASK_EXISTS);
-        }
+        Lock lock = this.localTaskStates.getLock(taskGroup, taskName);
+        lock.lock();
         try {
+            if (!this.containsLocalTask(taskName, taskGroup)) {
+                throw new TaskException("Non-existing task for resuming with name: " + taskName,
+                        Code.NO_TASK_EXISTS);
+            }
             Trigger trigger = this.getScheduler().getTrigger(new TriggerKey(taskName, taskGroup));
             if (trigger instanceof OperableTrigger) {
                 ((OperableTrigger) trigger).setNextFireTime(
                         ((OperableTrigger) trigger).getFireTimeAfter(null));
             }
             this.getScheduler().resumeJob(new JobKey(taskName, taskGroup));
+            this.localTaskStates.setResumed(this.getScheduler(), taskGroup, taskName);
         } catch (SchedulerException e) {
             throw new TaskException("Error in resuming task with name: " + taskName,
                     Code.UNKNOWN, e);
+        } finally {
+            lock.unlock();
         }
     }
 
-    protected synchronized boolean isLocalTaskScheduled(String taskName) throws TaskException {
-        String taskGroup = this.getTenantTaskGroup();
-        return this.containsLocalTask(taskName, taskGroup);
+    protected boolean isLocalTaskScheduled(String taskName) throws TaskException {
+        return this.localTaskStates.isScheduled(this.getScheduler(), this.getTenantTaskGroup(),
+                taskName);
     }
 
     protected List<TaskInfo> getAllLocalRunningTasks() throws TaskException {
         List<TaskInfo> tasks = this.getTaskRepository().getAllTasks();
+        Set<String> scheduledTaskNames = this.localTaskStates.getScheduledTaskNames(
+                this.getScheduler(), this.getTenantTaskGroup());
         List<TaskInfo> result = new ArrayList<TaskInfo>();
         for (TaskInfo taskInfo : tasks) {
-            if (this.isLocalTaskScheduled(taskInfo.getName())) {
+            if (scheduledTaskNames.contains(taskInfo.getName())) {
                 result.add(taskInfo);
             }
         }
         return result;
     }
 
+    /**
+     * Returns the names of the tasks scheduled in this server for all the tenants of the
+     * current task type, by scanning the scheduler once rather than each tenant's repository.
+     * @return The task names, keyed by the tenant id
+     * @throws TaskException
+     */
+    protected Map<Integer, List<String>> getAllTenantsLocalRunningTaskNames() throws TaskException {
+        Map<Integer, List<String>> result = new HashMap<Integer, List<String>>();
+        try {
+            for (String taskGroup : this.getScheduler().getJobGroupNames()) {
+                Integer tenantId = getTenantIdOfTaskGroup(taskGroup);
+                if (tenantId == null || !taskGroup.equals(TENANT_TASK_GROUP_PREFIX + tenantId +
+                        TENANT_TASK_GROUP_TYPE_SEPARATOR + this.getTaskType())) {
+                    continue;
+                }
+                List<String> taskNames = new ArrayList<String>();
+                for (JobKey key : this.getScheduler().getJobKeys(GroupMatcher.jobGroupEquals(taskGroup))) {
+                    taskNames.add(key.getName());
+                }
+                result.put(tenantId, taskNames);
+            }
+        } catch (SchedulerException e) {
+            throw new TaskException("Error in retrieving the running tasks of all tenants",
+                    Code.UNKNOWN, e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tenant which a task group belongs to.
+     * @param taskGroup The Quartz job group of the task
+     * @return The tenant id, or null if the group is not a tenant task group
+     */
+    public static Integer getTenantIdOfTaskGroup(String taskGroup) {
+        if (taskGroup == null || !taskGroup.startsWith(TENANT_TASK_GROUP_PREFIX)) {
+            return null;
+        }
+        int index = taskGroup.indexOf(TENANT_TASK_GROUP_TYPE_SEPARATOR, TENANT_TASK_GROUP_PREFIX.length());
+        if (index == -1) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(taskGroup.substring(TENANT_TASK_GROUP_PREFIX.length(), index));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     protected List<TaskInfo> getAllFinishedTasks() throws TaskException {
         List<TaskInfo> tasks = this.getTaskRepository().getAllTasks();
         List<TaskInfo> result = new ArrayList<TaskInfo>();
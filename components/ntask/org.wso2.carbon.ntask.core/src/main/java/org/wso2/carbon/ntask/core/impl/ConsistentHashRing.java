@@ -0,0 +1,115 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * This class represents a consistent hash ring of the task server members. Each member is
+ * placed on the ring at a number of points (virtual nodes) in proportion to its weight, and a
+ * key is owned by the member at the first point following the key's hash. When a member joins
+ * or leaves, only the keys between the member's points and their predecessors change owners.
+ * A ring is immutable, and is tagged with the membership version it was built for.
+ */
+public class ConsistentHashRing {
+
+    /* message digests are not thread safe, and are costly to look up for every hash */
+    private static final ThreadLocal<MessageDigest> md5Digest = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final TreeMap<Long, String> ring;
+
+    private final Set<String> memberIds;
+
+    private final long membershipVersion;
+
+    /**
+     * Creates a hash ring.
+     * @param memberWeights The member ids mapped to their weights, a weight of 0 or less
+     *                      leaves the member out of the ring
+     * @param virtualNodes The number of points per unit of weight
+     * @param membershipVersion The membership version the ring is built for
+     */
+    public ConsistentHashRing(Map<String, Integer> memberWeights, int virtualNodes,
+                              long membershipVersion) {
+        this.ring = new TreeMap<Long, String>();
+        for (Map.Entry<String, Integer> entry : memberWeights.entrySet()) {
+            int points = virtualNodes * entry.getValue();
+            for (int i = 0; i < points; i++) {
+                this.ring.put(hash(entry.getKey() + "#" + i), entry.getKey());
+            }
+        }
+        this.memberIds = Collections.unmodifiableSet(new HashSet<String>(memberWeights.keySet()));
+        this.membershipVersion = membershipVersion;
+    }
+
+    /**
+     * Returns the member which owns the given key.
+     * @param key The key, e.g. the task name
+     * @return The member id, or null if the ring is empty
+     */
+    public String getMemberId(String key) {
+        if (this.ring.isEmpty()) {
+            return null;
+        }
+        SortedMap<Long, String> tail = this.ring.tailMap(hash(key));
+        return tail.isEmpty() ? this.ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    public Set<String> getMemberIds() {
+        return memberIds;
+    }
+
+    public long getMembershipVersion() {
+        return membershipVersion;
+    }
+
+    /**
+     * Hashes the given value with MD5, so the points are spread evenly on the ring and
+     * are the same in all the members.
+     */
+    private static long hash(String value) {
+        byte[] digest;
+        try {
+            /* digest() resets the message digest for the next use */
+            digest = md5Digest.get().digest(value.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (digest[i] & 0xFF);
+        }
+        return result;
+    }
+
+}
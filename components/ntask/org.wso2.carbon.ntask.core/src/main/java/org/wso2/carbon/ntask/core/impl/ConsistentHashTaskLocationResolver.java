@@ -0,0 +1,127 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.common.TaskException.Code;
+import org.wso2.carbon.ntask.core.TaskInfo;
+import org.wso2.carbon.ntask.core.TaskLocationResolver;
+import org.wso2.carbon.ntask.core.TaskServiceContext;
+import org.wso2.carbon.ntask.core.impl.clustered.ClusterGroupCommunicator;
+
+/**
+ * This class represents a TaskLocationResolver implementation, which assigns the locations
+ * using a consistent hash ring of the task server members, so that when a member joins or
+ * leaves, only about 1/N of the tasks move to another member. The ring is cached in the
+ * cluster group communicator until the membership changes.
+ * <property name="virtual-nodes">[points on the ring per member, default 160]</property>
+ * <property name="weight-[ip]:[port]">[relative weight of the member, default 1]</property>
+ * <property name="weight-[ip]">[relative weight of the members in the host]</property>
+ */
+public class ConsistentHashTaskLocationResolver implements TaskLocationResolver {
+
+    public static final String VIRTUAL_NODES_PROP = "virtual-nodes";
+
+    public static final String WEIGHT_PROP_PREFIX = "weight-";
+
+    private static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private int virtualNodes = DEFAULT_VIRTUAL_NODES;
+
+    private Map<String, Integer> weights = new HashMap<String, Integer>();
+
+    @Override
+    public void init(Map<String, String> properties) throws TaskException {
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            try {
+                if (VIRTUAL_NODES_PROP.equals(entry.getKey())) {
+                    this.virtualNodes = Integer.parseInt(entry.getValue().trim());
+                } else if (entry.getKey().startsWith(WEIGHT_PROP_PREFIX)) {
+                    this.weights.put(entry.getKey().substring(WEIGHT_PROP_PREFIX.length()),
+                            Integer.parseInt(entry.getValue().trim()));
+                }
+            } catch (NumberFormatException e) {
+                throw new TaskException("The ConsistentHashTaskLocationResolver property '" +
+                        entry.getKey() + "' must be an integer", Code.CONFIG_ERROR);
+            }
+        }
+        if (this.virtualNodes <= 0) {
+            throw new TaskException("The ConsistentHashTaskLocationResolver property '" +
+                    VIRTUAL_NODES_PROP + "' must be positive", Code.CONFIG_ERROR);
+        }
+    }
+
+    @Override
+    public int getLocation(TaskServiceContext ctx, TaskInfo taskInfo) throws TaskException {
+        ClusterGroupCommunicator clusterComm = ClusterGroupCommunicator.getInstance(ctx.getTaskType());
+        String ringId = this.getRingId();
+        ConsistentHashRing ring = clusterComm.getCachedHashRing(ringId);
+        if (ring == null || !this.isRingOfMembers(ring, ctx)) {
+            /* the version is read before the members are, so a membership change in between
+             * makes the new ring stale rather than the stale ring current */
+            long membershipVersion = clusterComm.getMembershipVersion();
+            ring = new ConsistentHashRing(this.getMemberWeights(ctx), this.virtualNodes,
+                    membershipVersion);
+            clusterComm.cacheHashRing(ringId, ring);
+        }
+        String memberId = ring.getMemberId(ctx.getTenantId() + ":" + taskInfo.getName());
+        int index = memberId == null ? -1 : ctx.getServerIndex(memberId);
+        /* if no member has a positive weight, fall back to the first server */
+        return index == -1 ? 0 : index;
+    }
+
+    private String getRingId() {
+        return ConsistentHashTaskLocationResolver.class.getName() + ":" + this.virtualNodes + ":" +
+                this.weights;
+    }
+
+    private boolean isRingOfMembers(ConsistentHashRing ring, TaskServiceContext ctx) {
+        if (ring.getMemberIds().size() > ctx.getServerCount()) {
+            return false;
+        }
+        for (int i = 0; i < ctx.getServerCount(); i++) {
+            if (!ring.getMemberIds().contains(ctx.getServerId(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, Integer> getMemberWeights(TaskServiceContext ctx) {
+        Map<String, Integer> result = new HashMap<String, Integer>();
+        for (int i = 0; i < ctx.getServerCount(); i++) {
+            result.put(ctx.getServerId(i), this.getWeight(ctx.getServerAddress(i)));
+        }
+        return result;
+    }
+
+    private int getWeight(InetSocketAddress address) {
+        if (address == null || address.getAddress() == null) {
+            return 1;
+        }
+        String host = address.getAddress().getHostAddress();
+        Integer weight = this.weights.get(host + ":" + address.getPort());
+        if (weight == null) {
+            weight = this.weights.get(host);
+        }
+        return weight == null ? 1 : weight;
+    }
+
+}
@@ -0,0 +1,667 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.base.MultitenantConstants;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.common.TaskException.Code;
+import org.wso2.carbon.ntask.core.TaskInfo;
+import org.wso2.carbon.ntask.core.TaskManagerId;
+import org.wso2.carbon.ntask.core.TaskRepository;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JDBC based task repository implementation. The task definitions are stored as JAXB
+ * serialized rows keyed by (tenant, type, name), and the metadata properties as rows keyed by
+ * (tenant, type, name, key), so that the tasks of all the tenants can be found with a single
+ * query. The multi-row writes are batched in one transaction, and write the existing rows with
+ * updates and the missing ones with inserts, which are retried with updates if a concurrent
+ * write inserts the same rows first. The data source is looked up
+ * from JNDI, and the tables are created from the bundled dbscripts on H2 and MySQL if they
+ * do not exist.
+ */
+public class JDBCTaskRepository implements TaskRepository {
+
+    private static final Log log = LogFactory.getLog(JDBCTaskRepository.class);
+
+    private static final String DB_SCRIPTS_PATH = "/dbscripts/ntask/";
+
+    private static final String TASKS_TABLE = "NTASK_TASKS";
+
+    private static final String SELECT_TASKS_SQL = "SELECT TASK_DEFINITION FROM NTASK_TASKS " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ?";
+
+    private static final String SELECT_TASK_SQL = "SELECT TASK_DEFINITION FROM NTASK_TASKS " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ? AND TASK_NAME = ?";
+
+    private static final String INSERT_TASK_SQL = "INSERT INTO NTASK_TASKS " +
+            "(TENANT_ID, TASK_TYPE, TASK_NAME, TASK_DEFINITION) VALUES (?, ?, ?, ?)";
+
+    private static final String UPDATE_TASK_SQL = "UPDATE NTASK_TASKS SET TASK_DEFINITION = ? " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ? AND TASK_NAME = ?";
+
+    private static final String DELETE_TASK_SQL = "DELETE FROM NTASK_TASKS " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ? AND TASK_NAME = ?";
+
+    private static final String SELECT_TENANTS_OF_TYPE_SQL = "SELECT DISTINCT TENANT_ID FROM NTASK_TASKS " +
+            "WHERE TASK_TYPE = ?";
+
+    private static final String SELECT_METADATA_PROP_SQL = "SELECT PROP_VALUE FROM NTASK_TASK_METADATA " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ? AND TASK_NAME = ? AND PROP_KEY = ?";
+
+    private static final String INSERT_METADATA_PROP_SQL = "INSERT INTO NTASK_TASK_METADATA " +
+            "(TENANT_ID, TASK_TYPE, TASK_NAME, PROP_KEY, PROP_VALUE) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_METADATA_PROP_SQL = "UPDATE NTASK_TASK_METADATA SET PROP_VALUE = ? " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ? AND TASK_NAME = ? AND PROP_KEY = ?";
+
+    private static final String DELETE_METADATA_PROPS_SQL = "DELETE FROM NTASK_TASK_METADATA " +
+            "WHERE TENANT_ID = ? AND TASK_TYPE = ? AND TASK_NAME = ?";
+
+    /* the SQL state class of the integrity constraint violations */
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION_SQL_STATE = "23";
+
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private static Map<String, DataSource> dataSources = new ConcurrentHashMap<String, DataSource>();
+
+    private static JAXBContext taskJAXBContext;
+
+    /* marshallers and unmarshallers are not thread safe, so each thread gets its own */
+    private static ThreadLocal<Marshaller> taskMarshaller = new ThreadLocal<Marshaller>() {
+        @Override
+        protected Marshaller initialValue() {
+            try {
+                return taskJAXBContext.createMarshaller();
+            } catch (JAXBException e) {
+                throw new RuntimeException("Error creating task marshaller: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    private static ThreadLocal<Unmarshaller> taskUnmarshaller = new ThreadLocal<Unmarshaller>() {
+        @Override
+        protected Unmarshaller initialValue() {
+            try {
+                return taskJAXBContext.createUnmarshaller();
+            } catch (JAXBException e) {
+                throw new RuntimeException("Error creating task unmarshaller: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    private DataSource dataSource;
+
+    private int tenantId;
+
+    private String taskType;
+
+    static {
+        try {
+            taskJAXBContext = JAXBContext.newInstance(TaskInfo.class);
+        } catch (JAXBException e) {
+            throw new RuntimeException("Error creating task marshaller/unmarshaller: "
+                    + e.getMessage());
+        }
+    }
+
+    public JDBCTaskRepository(DataSource dataSource, int tenantId, String taskType) {
+        this.dataSource = dataSource;
+        this.tenantId = tenantId;
+        this.taskType = taskType;
+    }
+
+    /**
+     * Looks up the data source with the given JNDI name, and creates the task tables in it
+     * if they do not exist.
+     * @param dataSourceName The JNDI name of the data source
+     * @return The data source
+     * @throws TaskException
+     */
+    public static DataSource getDataSource(String dataSourceName) throws TaskException {
+        DataSource dataSource = dataSources.get(dataSourceName);
+        if (dataSource == null) {
+            synchronized (JDBCTaskRepository.class) {
+                dataSource = dataSources.get(dataSourceName);
+                if (dataSource == null) {
+                    dataSource = lookupDataSource(dataSourceName);
+                    createTablesIfNotExist(dataSource);
+                    dataSources.put(dataSourceName, dataSource);
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    private static DataSource lookupDataSource(String dataSourceName) throws TaskException {
+        try {
+            PrivilegedCarbonContext.startTenantFlow();
+            PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(
+                    MultitenantConstants.SUPER_TENANT_DOMAIN_NAME, true);
+            return (DataSource) new InitialContext().lookup(dataSourceName);
+        } catch (NamingException e) {
+            throw new TaskException("Error in looking up the task repository data source '" +
+                    dataSourceName + "': " + e.getMessage(), Code.CONFIG_ERROR, e);
+        } finally {
+            PrivilegedCarbonContext.endTenantFlow();
+        }
+    }
+
+    /**
+     * Creates the task tables from the bundled script of the database, if they do not exist.
+     * @param dataSource The data source of the task repository
+     * @throws TaskException if the tables do not exist, and cannot be created
+     */
+    public static void createTablesIfNotExist(DataSource dataSource) throws TaskException {
+        Connection conn = null;
+        try {
+            conn = dataSource.getConnection();
+            DatabaseMetaData metaData = conn.getMetaData();
+            if (tableExists(metaData, TASKS_TABLE) || tableExists(metaData, TASKS_TABLE.toLowerCase())) {
+                return;
+            }
+            String product = metaData.getDatabaseProductName().toLowerCase();
+            String script;
+            if (product.contains("h2")) {
+                script = "h2.sql";
+            } else if (product.contains("mysql")) {
+                script = "mysql.sql";
+            } else {
+                throw new TaskException("The task repository tables do not exist, and cannot be " +
+                        "created automatically in " + metaData.getDatabaseProductName() +
+                        ", create them with the scripts in " + DB_SCRIPTS_PATH, Code.CONFIG_ERROR);
+            }
+            Statement stmt = conn.createStatement();
+            try {
+                for (String sql : readScript(DB_SCRIPTS_PATH + script)) {
+                    stmt.execute(sql);
+                }
+            } finally {
+                stmt.close();
+            }
+            log.info("Created the task repository tables in " + metaData.getDatabaseProductName());
+        } catch (SQLException e) {
+            throw new TaskException("Error in creating the task repository tables: " + e.getMessage(),
+                    Code.CONFIG_ERROR, e);
+        } catch (IOException e) {
+            throw new TaskException("Error in reading the task repository database script: " +
+                    e.getMessage(), Code.CONFIG_ERROR, e);
+        } finally {
+            close(conn);
+        }
+    }
+
+    private static boolean tableExists(DatabaseMetaData metaData, String table) throws SQLException {
+        ResultSet rs = metaData.getTables(null, null, table, null);
+        try {
+            return rs.next();
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static List<String> readScript(String path) throws IOException {
+        InputStream in = JDBCTaskRepository.class.getResourceAsStream(path);
+        if (in == null) {
+            throw new IOException("The database script " + path + " does not exist");
+        }
+        List<String> result = new ArrayList<String>();
+        StringBuilder sql = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("--")) {
+                    continue;
+                }
+                sql.append(line).append(' ');
+                if (line.endsWith(";")) {
+                    result.add(sql.substring(0, sql.lastIndexOf(";")));
+                    sql.setLength(0);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    @Override
+    public List<TaskInfo> getAllTasks() throws TaskException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = this.dataSource.getConnection();
+            stmt = conn.prepareStatement(SELECT_TASKS_SQL);
+            stmt.setInt(1, this.getTenantId());
+            stmt.setString(2, this.getTasksType());
+            rs = stmt.executeQuery();
+            List<TaskInfo> result = new ArrayList<TaskInfo>();
+            while (rs.next()) {
+                result.add(this.toTaskInfo(rs.getBytes(1)));
+            }
+            return result;
+        } catch (Exception e) {
+            throw new TaskException("Error in getting all tasks from repository: " + e.getMessage(),
+                    Code.CONFIG_ERROR, e);
+        } finally {
+            close(rs, stmt, conn);
+        }
+    }
+
+    @Override
+    public TaskInfo getTask(String taskName) throws TaskException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = this.dataSource.getConnection();
+            stmt = conn.prepareStatement(SELECT_TASK_SQL);
+            stmt.setInt(1, this.getTenantId());
+            stmt.setString(2, this.getTasksType());
+            stmt.setString(3, taskName);
+            rs = stmt.executeQuery();
+            if (!rs.next()) {
+                throw new TaskException("The task '" + taskName + "' does not exist",
+                        Code.NO_TASK_EXISTS);
+            }
+            return this.toTaskInfo(rs.getBytes(1));
+        } catch (TaskException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TaskException("Error in loading task '" + taskName + "' from repository: " +
+                    e.getMessage(), Code.CONFIG_ERROR, e);
+        } finally {
+            close(rs, stmt, conn);
+        }
+    }
+
+    @Override
+    public void addTask(TaskInfo taskInfo) throws TaskException {
+        this.addTasks(Collections.singletonList(taskInfo));
+    }
+
+    /**
+     * Adds or replaces the given tasks with batched statements in one transaction. As with
+     * the registry based repository, replacing a task clears its metadata properties.
+     * @param taskInfos The task information objects
+     * @throws TaskException
+     */
+    public void addTasks(List<TaskInfo> taskInfos) throws TaskException {
+        if (taskInfos.isEmpty()) {
+            return;
+        }
+        List<byte[]> definitions = new ArrayList<byte[]>(taskInfos.size());
+        try {
+            for (TaskInfo taskInfo : taskInfos) {
+                definitions.add(this.toBytes(taskInfo));
+            }
+        } catch (JAXBException e) {
+            throw new TaskException("Error in serializing the tasks: " + e.getMessage(),
+                    Code.CONFIG_ERROR, e);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                this.writeTasks(taskInfos, definitions);
+                return;
+            } catch (SQLException e) {
+                if (attempt >= MAX_WRITE_ATTEMPTS || !isIntegrityConstraintViolation(e)) {
+                    throw new TaskException("Error in adding tasks to the repository: " + e.getMessage(),
+                            Code.CONFIG_ERROR, e);
+                }
+                /* a concurrent write inserted some of the tasks first, they are updated this time */
+            }
+        }
+    }
+
+    private void writeTasks(List<TaskInfo> taskInfos, List<byte[]> definitions) throws SQLException {
+        Connection conn = null;
+        PreparedStatement deleteProps = null, updateTasks = null, insertTasks = null;
+        try {
+            conn = this.dataSource.getConnection();
+            conn.setAutoCommit(false);
+            deleteProps = conn.prepareStatement(DELETE_METADATA_PROPS_SQL);
+            updateTasks = conn.prepareStatement(UPDATE_TASK_SQL);
+            for (int i = 0; i < taskInfos.size(); i++) {
+                this.setTaskKey(deleteProps, 1, taskInfos.get(i).getName());
+                deleteProps.addBatch();
+                updateTasks.setBytes(1, definitions.get(i));
+                this.setTaskKey(updateTasks, 2, taskInfos.get(i).getName());
+                updateTasks.addBatch();
+            }
+            deleteProps.executeBatch();
+            int[] updateCounts = updateTasks.executeBatch();
+            insertTasks = conn.prepareStatement(INSERT_TASK_SQL);
+            boolean inserts = false;
+            for (int i = 0; i < taskInfos.size(); i++) {
+                if (!isUpdated(updateCounts[i], updateTasks, definitions.get(i), this.getTenantId(),
+                        this.getTasksType(), taskInfos.get(i).getName())) {
+                    this.setTaskKey(insertTasks, 1, taskInfos.get(i).getName());
+                    insertTasks.setBytes(4, definitions.get(i));
+                    insertTasks.addBatch();
+                    inserts = true;
+                }
+            }
+            if (inserts) {
+                insertTasks.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            close(deleteProps, updateTasks, insertTasks);
+            close(conn);
+        }
+    }
+
+    /**
+     * Checks whether a batched update changed its row. The drivers which do not give the
+     * update counts of the batches are asked again with the update run by itself.
+     */
+    private static boolean isUpdated(int updateCount, PreparedStatement update, Object... params)
+            throws SQLException {
+        if (updateCount != Statement.SUCCESS_NO_INFO) {
+            return updateCount > 0;
+        }
+        for (int i = 0; i < params.length; i++) {
+            update.setObject(i + 1, params[i]);
+        }
+        return update.executeUpdate() > 0;
+    }
+
+    private static boolean isIntegrityConstraintViolation(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if (current instanceof SQLIntegrityConstraintViolationException || (current.getSQLState() != null &&
+                    current.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION_SQL_STATE))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean deleteTask(String taskName) throws TaskException {
+        Connection conn = null;
+        PreparedStatement deleteProps = null, deleteTask = null;
+        try {
+            conn = this.dataSource.getConnection();
+            conn.setAutoCommit(false);
+            deleteProps = conn.prepareStatement(DELETE_METADATA_PROPS_SQL);
+            this.setTaskKey(deleteProps, 1, taskName);
+            deleteProps.executeUpdate();
+            deleteTask = conn.prepareStatement(DELETE_TASK_SQL);
+            this.setTaskKey(deleteTask, 1, taskName);
+            boolean result = deleteTask.executeUpdate() > 0;
+            conn.commit();
+            return result;
+        } catch (SQLException e) {
+            rollback(conn);
+            throw new TaskException("Error in deleting task '" + taskName + "' in the repository",
+                    Code.CONFIG_ERROR, e);
+        } finally {
+            close(deleteProps, deleteTask);
+            close(conn);
+        }
+    }
+
+    @Override
+    public String getTasksType() {
+        return taskType;
+    }
+
+    @Override
+    public int getTenantId() {
+        return tenantId;
+    }
+
+    @Override
+    public void setTaskMetadataProp(String taskName, String key, String value) throws TaskException {
+        this.setTaskMetadataProps(taskName, Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Sets the given task metadata properties with batched statements in one transaction.
+     * @param taskName The name of the task the metadata properties to be assigned to
+     * @param props The metadata properties
+     * @throws TaskException if the task does not exist
+     */
+    public void setTaskMetadataProps(String taskName, Map<String, String> props) throws TaskException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                this.writeTaskMetadataProps(taskName, props);
+                return;
+            } catch (SQLException e) {
+                if (attempt >= MAX_WRITE_ATTEMPTS || !isIntegrityConstraintViolation(e)) {
+                    throw new TaskException("Error in setting task metadata properties: " + e.getMessage(),
+                            Code.UNKNOWN, e);
+                }
+                /* a concurrent write inserted some of the properties first, they are updated this time */
+            }
+        }
+    }
+
+    private void writeTaskMetadataProps(String taskName, Map<String, String> props)
+            throws TaskException, SQLException {
+        Connection conn = null;
+        PreparedStatement checkTask = null, updateProps = null, insertProps = null;
+        ResultSet rs = null;
+        try {
+            conn = this.dataSource.getConnection();
+            conn.setAutoCommit(false);
+            checkTask = conn.prepareStatement(SELECT_TASK_SQL);
+            this.setTaskKey(checkTask, 1, taskName);
+            rs = checkTask.executeQuery();
+            if (!rs.next()) {
+                throw new TaskException("The task '" + taskName + "' does not exist",
+                        Code.NO_TASK_EXISTS);
+            }
+            List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(
+                    props.entrySet());
+            updateProps = conn.prepareStatement(UPDATE_METADATA_PROP_SQL);
+            for (Map.Entry<String, String> entry : entries) {
+                updateProps.setString(1, entry.getValue());
+                this.setTaskKey(updateProps, 2, taskName);
+                updateProps.setString(5, entry.getKey());
+                updateProps.addBatch();
+            }
+            int[] updateCounts = updateProps.executeBatch();
+            insertProps = conn.prepareStatement(INSERT_METADATA_PROP_SQL);
+            boolean inserts = false;
+            for (int i = 0; i < entries.size(); i++) {
+                Map.Entry<String, String> entry = entries.get(i);
+                if (!isUpdated(updateCounts[i], updateProps, entry.getValue(), this.getTenantId(),
+                        this.getTasksType(), taskName, entry.getKey())) {
+                    this.setTaskKey(insertProps, 1, taskName);
+                    insertProps.setString(4, entry.getKey());
+                    insertProps.setString(5, entry.getValue());
+                    insertProps.addBatch();
+                    inserts = true;
+                }
+            }
+            if (inserts) {
+                insertProps.executeBatch();
+            }
+            conn.commit();
+        } catch (TaskException e) {
+            rollback(conn);
+            throw e;
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            close(rs, checkTask, null);
+            close(updateProps, insertProps);
+            close(conn);
+        }
+    }
+
+    @Override
+    public String getTaskMetadataProp(String taskName, String key) throws TaskException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = this.dataSource.getConnection();
+            stmt = conn.prepareStatement(SELECT_METADATA_PROP_SQL);
+            this.setTaskKey(stmt, 1, taskName);
+            stmt.setString(4, key);
+            rs = stmt.executeQuery();
+            /* if the task itself does not exist, this returns null */
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            throw new TaskException("Error in getting task metadata properties: " + e.getMessage(),
+                    Code.UNKNOWN, e);
+        } finally {
+            close(rs, stmt, conn);
+        }
+    }
+
+    /**
+     * Returns the tenant task managers of the given task type which have tasks, with a single query.
+     * @param dataSource The data source of the task repository
+     * @param taskType The task type
+     * @return The task manager ids
+     * @throws TaskException
+     */
+    public static List<TaskManagerId> getAllTenantTaskManagersForType(DataSource dataSource,
+                                                                      String taskType) throws TaskException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement(SELECT_TENANTS_OF_TYPE_SQL);
+            stmt.setString(1, taskType);
+            rs = stmt.executeQuery();
+            List<TaskManagerId> tmList = new ArrayList<TaskManagerId>();
+            while (rs.next()) {
+                tmList.add(new TaskManagerId(rs.getInt(1), taskType));
+            }
+            return tmList;
+        } catch (SQLException e) {
+            throw new TaskException(e.getMessage(), Code.UNKNOWN, e);
+        } finally {
+            close(rs, stmt, conn);
+        }
+    }
+
+    /**
+     * Sets the tenant, type and name of a task as the statement parameters from the given index.
+     */
+    private void setTaskKey(PreparedStatement stmt, int index, String taskName) throws SQLException {
+        stmt.setInt(index, this.getTenantId());
+        stmt.setString(index + 1, this.getTasksType());
+        stmt.setString(index + 2, taskName);
+    }
+
+    private byte[] toBytes(TaskInfo taskInfo) throws JAXBException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        taskMarshaller.get().marshal(taskInfo, out);
+        return out.toByteArray();
+    }
+
+    private TaskInfo toTaskInfo(byte[] data) throws JAXBException {
+        TaskInfo taskInfo = (TaskInfo) taskUnmarshaller.get().unmarshal(new ByteArrayInputStream(data));
+        taskInfo.getProperties().put(TaskInfo.TENANT_ID_PROP, String.valueOf(this.getTenantId()));
+        return taskInfo;
+    }
+
+    private static void rollback(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            log.error("Error in rolling back the task repository transaction: " + e.getMessage(), e);
+        }
+    }
+
+    private static void close(Statement... stmts) {
+        for (Statement stmt : stmts) {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ignore) {
+                    /* ignore */
+                }
+            }
+        }
+    }
+
+    private static void close(ResultSet rs, Statement stmt, Connection conn) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (SQLException ignore) {
+                /* ignore */
+            }
+        }
+        close(stmt);
+        close(conn);
+    }
+
+    private static void close(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException ignore) {
+            /* the connection is closed anyway */
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            log.error("Error in closing the task repository connection: " + e.getMessage(), e);
+        }
+    }
+
+}
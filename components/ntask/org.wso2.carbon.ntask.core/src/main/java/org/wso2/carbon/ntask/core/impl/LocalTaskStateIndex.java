@@ -0,0 +1,346 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import org.quartz.JobKey;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.Trigger.TriggerState;
+import org.quartz.TriggerKey;
+import org.quartz.impl.matchers.GroupMatcher;
+import org.quartz.listeners.SchedulerListenerSupport;
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.common.TaskException.Code;
+import org.wso2.carbon.ntask.core.TaskManager.TaskState;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class keeps the local states of the tasks scheduled in this server, so that checking if
+ * a task is scheduled does not go to the scheduler. The states are kept per task group in
+ * concurrent maps, which are read without locking. The operations changing the schedule of a task
+ * take the lock of the task, which is one of a fixed set of locks shared by all the task managers,
+ * so that the operations on different tasks do not wait for each other. The states are kept in
+ * line with the changes made in the scheduler directly, and with the tasks finishing, by listening
+ * to the scheduler.
+ */
+public class LocalTaskStateIndex {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private static LocalTaskStateIndex instance = new LocalTaskStateIndex();
+
+    private Map<String, ConcurrentMap<String, TaskState>> groupStates;
+
+    private Lock[] locks;
+
+    private Scheduler scheduler;
+
+    private LocalTaskStateIndex() {
+        this.groupStates = new ConcurrentHashMap<String, ConcurrentMap<String, TaskState>>();
+        this.locks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new ReentrantLock();
+        }
+    }
+
+    public static LocalTaskStateIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts keeping the states in line with the given scheduler. If the scheduler is a new one,
+     * the states of the previous scheduler are dropped.
+     * @param scheduler The scheduler of the tasks
+     * @throws TaskException
+     */
+    public synchronized void listen(Scheduler scheduler) throws TaskException {
+        if (this.scheduler == scheduler) {
+            return;
+        }
+        try {
+            scheduler.getListenerManager().addSchedulerListener(new TaskStateListener(scheduler));
+        } catch (SchedulerException e) {
+            throw new TaskException("Error in listening to the task scheduler", Code.UNKNOWN, e);
+        }
+        this.groupStates.clear();
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Returns the lock to be held while changing the schedule of the given task.
+     * @param taskGroup The task group
+     * @param taskName The task name
+     * @return The lock of the task
+     */
+    public Lock getLock(String taskGroup, String taskName) {
+        int hash = taskGroup.hashCode() * 31 + taskName.hashCode();
+        return this.locks[(hash & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * Records a newly scheduled, or rescheduled task.
+     * @param scheduler The scheduler of the task
+     * @param taskGroup The task group
+     * @param taskName The task name
+     * @param paused Whether the task is paused
+     * @throws TaskException
+     */
+    public void setScheduled(Scheduler scheduler, String taskGroup, String taskName,
+                             boolean paused) throws TaskException {
+        this.getStates(scheduler, taskGroup).put(taskName, paused ? TaskState.PAUSED : TaskState.NORMAL);
+    }
+
+    /**
+     * Records a paused task, if it is scheduled.
+     */
+    public void setPaused(Scheduler scheduler, String taskGroup, String taskName) throws TaskException {
+        this.getStates(scheduler, taskGroup).replace(taskName, TaskState.NORMAL, TaskState.PAUSED);
+    }
+
+    /**
+     * Records a resumed task, if it is paused.
+     */
+    public void setResumed(Scheduler scheduler, String taskGroup, String taskName) throws TaskException {
+        this.getStates(scheduler, taskGroup).replace(taskName, TaskState.PAUSED, TaskState.NORMAL);
+    }
+
+    /**
+     * Records a deleted task.
+     */
+    public void remove(Scheduler scheduler, String taskGroup, String taskName) throws TaskException {
+        this.getStates(scheduler, taskGroup).remove(taskName);
+    }
+
+    /**
+     * Checks if the given task is scheduled in this server, paused or not.
+     */
+    public boolean isScheduled(Scheduler scheduler, String taskGroup,
+                               String taskName) throws TaskException {
+        return isScheduled(this.getStates(scheduler, taskGroup).get(taskName));
+    }
+
+    /**
+     * Returns a snapshot of the names of the tasks of the group scheduled in this server,
+     * paused or not.
+     */
+    public Set<String> getScheduledTaskNames(Scheduler scheduler,
+                                             String taskGroup) throws TaskException {
+        Set<String> result = new HashSet<String>();
+        for (Map.Entry<String, TaskState> entry : this.getStates(scheduler, taskGroup).entrySet()) {
+            if (isScheduled(entry.getValue())) {
+                result.add(entry.getKey());
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private static boolean isScheduled(TaskState state) {
+        return state == TaskState.NORMAL || state == TaskState.PAUSED;
+    }
+
+    private ConcurrentMap<String, TaskState> getStates(Scheduler scheduler,
+                                                       String taskGroup) throws TaskException {
+        ConcurrentMap<String, TaskState> states = this.groupStates.get(taskGroup);
+        if (states == null) {
+            synchronized (this.groupStates) {
+                states = this.groupStates.get(taskGroup);
+                if (states == null) {
+                    states = this.loadStates(scheduler, taskGroup);
+                    this.groupStates.put(taskGroup, states);
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Loads the states of the tasks of a group, which are already in the scheduler.
+     */
+    private ConcurrentMap<String, TaskState> loadStates(Scheduler scheduler,
+                                                        String taskGroup) throws TaskException {
+        ConcurrentMap<String, TaskState> states = new ConcurrentHashMap<String, TaskState>();
+        try {
+            for (JobKey key : scheduler.getJobKeys(GroupMatcher.jobGroupEquals(taskGroup))) {
+                TriggerState triggerState = scheduler.getTriggerState(
+                        new TriggerKey(key.getName(), taskGroup));
+                states.put(key.getName(), triggerState == TriggerState.PAUSED ?
+                        TaskState.PAUSED : TaskState.NORMAL);
+            }
+        } catch (SchedulerException e) {
+            throw new TaskException("Error in loading the states of the tasks in group: " + taskGroup,
+                    Code.UNKNOWN, e);
+        }
+        return states;
+    }
+
+    /**
+     * Removes a task which is no longer in the scheduler. If the group is not loaded yet, it
+     * will be loaded from the scheduler, which will not have the task by then.
+     */
+    private void removeState(String taskGroup, String taskName) {
+        ConcurrentMap<String, TaskState> states = this.groupStates.get(taskGroup);
+        if (states != null) {
+            states.remove(taskName);
+        }
+    }
+
+    private void replaceState(String taskGroup, String taskName, TaskState oldState,
+                              TaskState newState) {
+        ConcurrentMap<String, TaskState> states = this.groupStates.get(taskGroup);
+        if (states != null) {
+            states.replace(taskName, oldState, newState);
+        }
+    }
+
+    /**
+     * Changes the states of all the tasks of a group, or of all the groups if the group is null.
+     */
+    private void replaceStates(String taskGroup, TaskState oldState, TaskState newState) {
+        for (Map.Entry<String, ConcurrentMap<String, TaskState>> groupEntry : this.groupStates.entrySet()) {
+            if (taskGroup != null && !taskGroup.equals(groupEntry.getKey())) {
+                continue;
+            }
+            for (String taskName : groupEntry.getValue().keySet()) {
+                groupEntry.getValue().replace(taskName, oldState, newState);
+            }
+        }
+    }
+
+    /**
+     * Scheduler listener which applies the changes of the task schedules to the local states.
+     * The task and the job of a task have the same name and group.
+     */
+    private class TaskStateListener extends SchedulerListenerSupport {
+
+        private final Scheduler listenedScheduler;
+
+        public TaskStateListener(Scheduler listenedScheduler) {
+            this.listenedScheduler = listenedScheduler;
+        }
+
+        /**
+         * Checks if the states are still of the scheduler of this listener.
+         */
+        private boolean isActive() {
+            return scheduler == this.listenedScheduler;
+        }
+
+        @Override
+        public void triggerFinalized(Trigger trigger) {
+            /* the trigger will not fire again, and Quartz removes its job after this */
+            if (this.isActive()) {
+                removeState(trigger.getKey().getGroup(), trigger.getKey().getName());
+            }
+        }
+
+        @Override
+        public void jobUnscheduled(TriggerKey triggerKey) {
+            if (this.isActive()) {
+                removeState(triggerKey.getGroup(), triggerKey.getName());
+            }
+        }
+
+        @Override
+        public void jobDeleted(JobKey jobKey) {
+            if (this.isActive()) {
+                removeState(jobKey.getGroup(), jobKey.getName());
+            }
+        }
+
+        @Override
+        public void jobPaused(JobKey jobKey) {
+            if (this.isActive()) {
+                replaceState(jobKey.getGroup(), jobKey.getName(), TaskState.NORMAL, TaskState.PAUSED);
+            }
+        }
+
+        @Override
+        public void triggerPaused(TriggerKey triggerKey) {
+            if (this.isActive()) {
+                replaceState(triggerKey.getGroup(), triggerKey.getName(), TaskState.NORMAL,
+                        TaskState.PAUSED);
+            }
+        }
+
+        @Override
+        public void jobsPaused(String jobGroup) {
+            if (this.isActive()) {
+                replaceStates(jobGroup, TaskState.NORMAL, TaskState.PAUSED);
+            }
+        }
+
+        @Override
+        public void triggersPaused(String triggerGroup) {
+            if (this.isActive()) {
+                replaceStates(triggerGroup, TaskState.NORMAL, TaskState.PAUSED);
+            }
+        }
+
+        @Override
+        public void jobResumed(JobKey jobKey) {
+            if (this.isActive()) {
+                replaceState(jobKey.getGroup(), jobKey.getName(), TaskState.PAUSED, TaskState.NORMAL);
+            }
+        }
+
+        @Override
+        public void triggerResumed(TriggerKey triggerKey) {
+            if (this.isActive()) {
+                replaceState(triggerKey.getGroup(), triggerKey.getName(), TaskState.PAUSED,
+                        TaskState.NORMAL);
+            }
+        }
+
+        @Override
+        public void jobsResumed(String jobGroup) {
+            if (this.isActive()) {
+                replaceStates(jobGroup, TaskState.PAUSED, TaskState.NORMAL);
+            }
+        }
+
+        @Override
+        public void triggersResumed(String triggerGroup) {
+            if (this.isActive()) {
+                replaceStates(triggerGroup, TaskState.PAUSED, TaskState.NORMAL);
+            }
+        }
+
+        @Override
+        public void schedulingDataCleared() {
+            if (this.isActive()) {
+                groupStates.clear();
+            }
+        }
+
+        @Override
+        public void schedulerShutdown() {
+            if (this.isActive()) {
+                groupStates.clear();
+            }
+        }
+
+    }
+
+}
@@ -38,13 +38,20 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Registry based task repository implementation.
+ * Registry based task repository implementation. Unmarshalled task definitions are cached
+ * together with the content of their registry resource, and only unmarshalled again when the
+ * content has been changed, possibly by another node of the cluster. The content is compared
+ * rather than the last modified time, which has a coarse resolution and also changes with the
+ * task metadata properties.
  */
 public class RegistryBasedTaskRepository implements TaskRepository {
 
@@ -56,17 +63,39 @@ public class RegistryBasedTaskRepository implements TaskRepository {
 
     private String taskType;
 
-    private static Marshaller taskMarshaller;
+    private static JAXBContext taskJAXBContext;
 
-    private static Unmarshaller taskUnmarshaller;
+    /* marshallers and unmarshallers are not thread safe, so each thread gets its own */
+    private static ThreadLocal<Marshaller> taskMarshaller = new ThreadLocal<Marshaller>() {
+        @Override
+        protected Marshaller initialValue() {
+            try {
+                return taskJAXBContext.createMarshaller();
+            } catch (JAXBException e) {
+                throw new RuntimeException("Error creating task marshaller: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    private static ThreadLocal<Unmarshaller> taskUnmarshaller = new ThreadLocal<Unmarshaller>() {
+        @Override
+        protected Unmarshaller initialValue() {
+            try {
+                return taskJAXBContext.createUnmarshaller();
+            } catch (JAXBException e) {
+                throw new RuntimeException("Error creating task unmarshaller: " + e.getMessage(), e);
+            }
+        }
+    };
+
+    /* cached task definitions of all the tenants and task types, keyed by the registry path */
+    private static Map<String, CachedTaskInfo> taskInfoCache = new ConcurrentHashMap<String, CachedTaskInfo>();
 
     private int tenantId;
 
     static {
         try {
-            JAXBContext ctx = JAXBContext.newInstance(TaskInfo.class);
-            taskMarshaller = ctx.createMarshaller();
-            taskUnmarshaller = ctx.createUnmarshaller();
+            taskJAXBContext = JAXBContext.newInstance(TaskInfo.class);
         } catch (JAXBException e) {
             throw new RuntimeException("Error creating task marshaller/unmarshaller: "
                     + e.getMessage());
@@ -84,11 +113,11 @@ public class RegistryBasedTaskRepository implements TaskRepository {
     }
 
     private static Marshaller getTaskMarshaller() {
-        return taskMarshaller;
+        return taskMarshaller.get();
     }
 
     private static Unmarshaller getTaskUnmarshaller() {
-        return taskUnmarshaller;
+        return taskUnmarshaller.get();
     }
 
     public static Registry getRegistry() throws TaskException {
@@ -144,12 +173,12 @@ public class RegistryBasedTaskRepository implements TaskRepository {
             PrivilegedCarbonContext.startTenantFlow();
             PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(
                     MultitenantConstants.SUPER_TENANT_DOMAIN_NAME, true);
-            if (!getRegistry().resourceExists(currentTaskPath)) {
-                throw new TaskException("The task '" + taskName + "' does not exist",
-                        Code.NO_TASK_EXISTS);
-            }
             TaskInfo taskInfo = this.getTaskInfoRegistryPath(currentTaskPath);
             return taskInfo;
+        } catch (ResourceNotFoundException e) {
+            taskInfoCache.remove(currentTaskPath);
+            throw new TaskException("The task '" + taskName + "' does not exist",
+                    Code.NO_TASK_EXISTS);
         } catch (TaskException e) {
             throw e;
         } catch (Exception e) {
@@ -174,7 +203,9 @@ public class RegistryBasedTaskRepository implements TaskRepository {
             Resource resource = getRegistry().newResource();
             resource.setContentStream(in);
             getRegistry().put(currentTaskPath, resource);
+            this.cacheTaskInfo(currentTaskPath, out.toByteArray(), copyOf(taskInfo));
         } catch (Exception e) {
+            taskInfoCache.remove(currentTaskPath);
             throw new TaskException("Error in adding task '" + taskInfo.getName()
                     + "' to the repository: " + e.getMessage(), Code.CONFIG_ERROR, e);
         } finally {
@@ -190,6 +221,7 @@ public class RegistryBasedTaskRepository implements TaskRepository {
             PrivilegedCarbonContext.startTenantFlow();
             PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(
                     MultitenantConstants.SUPER_TENANT_DOMAIN_NAME, true);
+            taskInfoCache.remove(currentTaskPath);
             if (!getRegistry().resourceExists(currentTaskPath)) {
                 return false;
             }
@@ -213,25 +245,64 @@ public class RegistryBasedTaskRepository implements TaskRepository {
             PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantDomain(
                     MultitenantConstants.SUPER_TENANT_DOMAIN_NAME, true);
             Resource resource = getRegistry().get(path);
-            InputStream in = resource.getContentStream();
-            TaskInfo taskInfo;
+            byte[] content = readContent(resource);
+            CachedTaskInfo cachedTaskInfo = taskInfoCache.get(path);
+            if (cachedTaskInfo != null && Arrays.equals(cachedTaskInfo.content, content)) {
+                return copyOf(cachedTaskInfo.taskInfo);
+            }
             /*
-             * the following synchronized block is to avoid
-             * "org.xml.sax.SAXException: FWK005" error where the XML parser is
-             * not thread safe
+             * the unmarshaller is thread local, since the XML parser is not thread safe
+             * ("org.xml.sax.SAXException: FWK005")
              */
-            synchronized (getTaskUnmarshaller()) {
-                taskInfo = (TaskInfo) getTaskUnmarshaller().unmarshal(in);
-            }
-            in.close();
+            TaskInfo taskInfo = (TaskInfo) getTaskUnmarshaller().unmarshal(new ByteArrayInputStream(content));
             taskInfo.getProperties().put(TaskInfo.TENANT_ID_PROP,
                     String.valueOf(this.getTenantId()));
-            return taskInfo;
+            this.cacheTaskInfo(path, content, taskInfo);
+            return copyOf(taskInfo);
         } finally {
             PrivilegedCarbonContext.endTenantFlow();
         }
     }
 
+    /**
+     * caches the task definition against the content of its registry resource.
+     */
+    private void cacheTaskInfo(String path, byte[] content, TaskInfo taskInfo) {
+        if (!taskInfo.getProperties().containsKey(TaskInfo.TENANT_ID_PROP)) {
+            taskInfo.getProperties().put(TaskInfo.TENANT_ID_PROP, String.valueOf(this.getTenantId()));
+        }
+        taskInfoCache.put(path, new CachedTaskInfo(taskInfo, content));
+    }
+
+    private static byte[] readContent(Resource resource) throws Exception {
+        InputStream in = resource.getContentStream();
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * the cached task definitions are shared, so the callers get their own copy of the mutable parts.
+     */
+    private static TaskInfo copyOf(TaskInfo taskInfo) {
+        TaskInfo copy = new TaskInfo(taskInfo.getName(), taskInfo.getTaskClass(), taskInfo.getProperties(),
+                taskInfo.getTriggerInfo());
+        copy.setLocationResolverClass(taskInfo.getLocationResolverClass());
+        copy.setLocationResolverProperties(taskInfo.getLocationResolverProperties());
+        return copy;
+    }
+
     @Override
     public String getTasksType() {
         return taskType;
@@ -353,4 +424,19 @@ public class RegistryBasedTaskRepository implements TaskRepository {
         }
     }
 
+    /**
+     * unmarshalled task definition with the content of its registry resource.
+     */
+    private static class CachedTaskInfo {
+
+        private final TaskInfo taskInfo;
+
+        private final byte[] content;
+
+        private CachedTaskInfo(TaskInfo taskInfo, byte[] content) {
+            this.taskInfo = taskInfo;
+            this.content = content;
+        }
+    }
+
 }
@@ -0,0 +1,233 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import org.quartz.JobKey;
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.common.TaskException.Code;
+import org.wso2.carbon.ntask.core.ReusableTask;
+import org.wso2.carbon.ntask.core.Task;
+import org.wso2.carbon.ntask.core.TaskInfo;
+
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class creates the task instances for the task executions. The task class constructor
+ * and the tenant of a scheduled task are only looked up again when its properties change.
+ * The constructors are only held by the cached jobs, which are dropped when their tasks are
+ * deleted or when they are the least recently used, so the classes of the removed tasks are
+ * not kept loaded. The tasks implementing {@link ReusableTask} are initialized once and
+ * reused across the executions.
+ */
+public class TaskFactory {
+
+    private static final int MAX_CACHED_JOBS = 10000;
+
+    private static TaskFactory instance = new TaskFactory();
+
+    private Map<JobKey, CachedJob> jobCache;
+
+    private TaskFactory() {
+        /* access ordered, so the eldest entry is the least recently triggered job */
+        this.jobCache = Collections.synchronizedMap(
+                new LinkedHashMap<JobKey, CachedJob>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<JobKey, CachedJob> eldest) {
+                        return size() > MAX_CACHED_JOBS;
+                    }
+                });
+    }
+
+    public static TaskFactory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns a task for an execution of the given job, which must be given back with
+     * {@link #returnTask(TaskHandle)} after the execution.
+     * @param jobKey The key of the Quartz job of the task
+     * @param taskClassName The task class
+     * @param properties The task properties, as stored in the job data map
+     * @return The task handle
+     * @throws TaskException if the task cannot be created
+     */
+    public TaskHandle borrowTask(JobKey jobKey, String taskClassName,
+                                 Map<String, String> properties) throws TaskException {
+        CachedJob job = this.jobCache.get(jobKey);
+        if (job == null || !job.taskClassName.equals(taskClassName) || !job.hasProperties(properties)) {
+            job = new CachedJob(taskClassName, properties, this.getTaskConstructor(taskClassName));
+            this.jobCache.put(jobKey, job);
+        }
+        if (job.reusable && job.warmTaskInUse.compareAndSet(false, true)) {
+            if (job.warmTask == null) {
+                job.warmTask = this.newTask(job.constructor, properties);
+            }
+            return new TaskHandle(job, job.warmTask, job.tenantId, !job.warmTaskInitialized);
+        }
+        return new TaskHandle(null, this.newTask(job.constructor, properties), job.tenantId, true);
+    }
+
+    /**
+     * Gives back a task after its execution.
+     * @param handle The task handle returned by {@link #borrowTask(JobKey, String, Map)}
+     */
+    public void returnTask(TaskHandle handle) {
+        CachedJob job = handle.job;
+        if (job == null) {
+            return;
+        }
+        if (handle.isInitRequired()) {
+            /* the initialization failed, so the instance is not reused */
+            job.warmTask = null;
+        } else {
+            job.warmTaskInitialized = true;
+        }
+        job.warmTaskInUse.set(false);
+    }
+
+    /**
+     * Drops the cached state of a job, e.g. when its task is deleted.
+     * @param jobKey The key of the Quartz job of the task
+     */
+    public void evict(JobKey jobKey) {
+        this.jobCache.remove(jobKey);
+    }
+
+    private Constructor<? extends Task> getTaskConstructor(String taskClassName) throws TaskException {
+        try {
+            return Class.forName(taskClassName).asSubclass(Task.class).getConstructor();
+        } catch (Exception e) {
+            throw new TaskException("Error in loading the task class: " + taskClassName +
+                    ": " + e.getMessage(), Code.CONFIG_ERROR, e);
+        }
+    }
+
+    private Task newTask(Constructor<? extends Task> constructor, Map<String, String> properties)
+            throws TaskException {
+        Task task;
+        try {
+            task = constructor.newInstance();
+        } catch (Exception e) {
+            throw new TaskException("Error in creating the task: " + constructor.getDeclaringClass().getName() +
+                    ": " + e.getMessage(), Code.UNKNOWN, e);
+        }
+        task.setProperties(properties);
+        return task;
+    }
+
+    /**
+     * A task borrowed for an execution.
+     */
+    public static class TaskHandle {
+
+        private final CachedJob job;
+
+        private final Task task;
+
+        private final int tenantId;
+
+        private boolean initRequired;
+
+        private TaskHandle(CachedJob job, Task task, int tenantId, boolean initRequired) {
+            this.job = job;
+            this.task = task;
+            this.tenantId = tenantId;
+            this.initRequired = initRequired;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        public int getTenantId() {
+            return tenantId;
+        }
+
+        /**
+         * Checks whether {@link Task#init()} must be called before the task is executed.
+         */
+        public boolean isInitRequired() {
+            return initRequired;
+        }
+
+        /**
+         * Marks the task as initialized, to be called after {@link Task#init()} succeeds.
+         */
+        public void initialized() {
+            this.initRequired = false;
+        }
+
+    }
+
+    /**
+     * The parsed job data, and the warm task instance of a job.
+     */
+    private static class CachedJob {
+
+        private final String taskClassName;
+
+        private volatile Map<String, String> properties;
+
+        private final int tenantId;
+
+        private final Constructor<? extends Task> constructor;
+
+        private final boolean reusable;
+
+        private final AtomicBoolean warmTaskInUse = new AtomicBoolean();
+
+        /* guarded by warmTaskInUse */
+        private Task warmTask;
+
+        private boolean warmTaskInitialized;
+
+        private CachedJob(String taskClassName, Map<String, String> properties,
+                          Constructor<? extends Task> constructor) throws TaskException {
+            this.taskClassName = taskClassName;
+            this.properties = properties;
+            this.constructor = constructor;
+            this.reusable = ReusableTask.class.isAssignableFrom(constructor.getDeclaringClass());
+            try {
+                this.tenantId = Integer.parseInt(properties.get(TaskInfo.TENANT_ID_PROP));
+            } catch (Exception e) {
+                throw new TaskException("The task tenant id is missing or invalid in the task properties",
+                        Code.CONFIG_ERROR, e);
+            }
+        }
+
+        /**
+         * Checks whether the job has the given properties. The job data map gives the same
+         * properties instance on each trigger until the task is rescheduled, so they are only
+         * compared by content if the instance is different.
+         */
+        private boolean hasProperties(Map<String, String> properties) {
+            if (this.properties == properties) {
+                return true;
+            }
+            if (this.properties.equals(properties)) {
+                this.properties = properties;
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
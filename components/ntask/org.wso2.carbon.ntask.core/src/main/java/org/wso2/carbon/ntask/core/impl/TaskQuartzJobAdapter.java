@@ -24,7 +24,7 @@ import org.quartz.JobExecutionException;
 import org.wso2.carbon.context.PrivilegedCarbonContext;
 import org.wso2.carbon.ntask.common.TaskConstants;
 import org.wso2.carbon.ntask.core.Task;
-import org.wso2.carbon.ntask.core.TaskInfo;
+import org.wso2.carbon.ntask.core.impl.TaskFactory.TaskHandle;
 import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
 
 import java.util.Map;
@@ -55,18 +55,23 @@ public class TaskQuartzJobAdapter implements Job {
             throw new JobExecutionException("The task class is missing in the job data map");
         }
         try {
-            Task task = (Task) Class.forName(taskClassName).newInstance();
             Map<String, String> properties = (Map<String, String>) dataMap
                     .get(TaskConstants.TASK_PROPERTIES);
-            task.setProperties(properties);
-            int tenantId = Integer.parseInt(properties.get(TaskInfo.TENANT_ID_PROP));
+            TaskHandle taskHandle = TaskFactory.getInstance().borrowTask(
+                    ctx.getJobDetail().getKey(), taskClassName, properties);
             try {
                 PrivilegedCarbonContext.startTenantFlow();
-                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(tenantId, true);
-                task.init();
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(
+                        taskHandle.getTenantId(), true);
+                Task task = taskHandle.getTask();
+                if (taskHandle.isInitRequired()) {
+                    task.init();
+                    taskHandle.initialized();
+                }
                 task.execute();
             } finally {
                 PrivilegedCarbonContext.endTenantFlow();
+                TaskFactory.getInstance().returnTask(taskHandle);
             }
         } catch (Throwable e) {
             String msg = "Error in executing task: " + e.getMessage();
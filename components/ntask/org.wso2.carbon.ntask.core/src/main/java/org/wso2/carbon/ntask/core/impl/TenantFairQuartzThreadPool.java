@@ -0,0 +1,547 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.quartz.Job;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerConfigException;
+import org.quartz.SchedulerException;
+import org.quartz.simpl.PropertySettingJobFactory;
+import org.quartz.spi.ThreadPool;
+import org.quartz.spi.TriggerFiredBundle;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Quartz thread pool implementation with a bounded number of threads, which shares the threads
+ * fairly between the tenants. The fired tasks are queued per tenant, and the threads pick them
+ * with weighted fair queueing, so a tenant with many tasks firing at once can not starve the
+ * others. A tenant can also be limited to maxConcurrentTasksPerTenant tasks at a time, which is
+ * off by default, so a single tenant deployment can use all the threads; multi tenant
+ * deployments set it as org.quartz.threadPool.maxConcurrentTasksPerTenant.
+ * A task is only admitted in to the queue when all the threads are busy if its expected wait is
+ * within the misfire threshold; otherwise Quartz is held back, and the late triggers go
+ * through their misfire policies instead of piling up in the queue. The pool is configured
+ * through the Quartz properties, e.g. org.quartz.threadPool.threadCount, and the tenant
+ * weights are given as org.quartz.threadPool.tenantWeights=[tenant-id]:[weight],...
+ * The tenant of a fired task is taken from its job group, which is recorded by
+ * {@link TenantJobFactory}, so it must be set as org.quartz.scheduler.jobFactory.class;
+ * otherwise all the tasks are queued as of a single tenant.
+ */
+public class TenantFairQuartzThreadPool implements ThreadPool, TenantFairQuartzThreadPoolMBean {
+
+    private static final Log log = LogFactory.getLog(TenantFairQuartzThreadPool.class);
+
+    public static final String MBEAN_NAME = "org.wso2.carbon:type=Tasks,name=ThreadPool";
+
+    private static final int DEFAULT_THREAD_COUNT = 50;
+
+    /* 0 or less means no limit other than the thread count */
+    private static final int DEFAULT_MAX_CONCURRENT_TASKS_PER_TENANT = 0;
+
+    private static final int DEFAULT_MAX_QUEUED_TASKS = 1000;
+
+    private static final long DEFAULT_MISFIRE_THRESHOLD = 60000;
+
+    /* the tenant of the tasks which are not tenant tasks */
+    private static final int UNKNOWN_TENANT_ID = Integer.MIN_VALUE;
+
+    /* the weight given to the last run time in the average run time */
+    private static final double RUN_TIME_SMOOTHING_FACTOR = 0.1;
+
+    /* the tenant of the job last created by the Quartz scheduler thread, which hands the job
+     * run shell over to the thread pool right after creating the job */
+    private static final ThreadLocal<Integer> firedTenantId = new ThreadLocal<Integer>();
+
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
+    private int maxConcurrentTasksPerTenant = DEFAULT_MAX_CONCURRENT_TASKS_PER_TENANT;
+
+    private int maxQueuedTasks = DEFAULT_MAX_QUEUED_TASKS;
+
+    private long misfireThreshold = DEFAULT_MISFIRE_THRESHOLD;
+
+    private Map<Integer, Integer> tenantWeights = new HashMap<Integer, Integer>();
+
+    private String instanceName = "QuartzScheduler";
+
+    private final Object lock = new Object();
+
+    private final Map<Integer, TenantQueue> tenantQueues = new HashMap<Integer, TenantQueue>();
+
+    private int queuedTaskCount;
+
+    private int runningTaskCount;
+
+    private double virtualTime;
+
+    /* in milliseconds */
+    private double averageRunTime;
+
+    private boolean shutdown;
+
+    private List<Thread> workers;
+
+    private final AtomicLong executedTaskCount = new AtomicLong();
+
+    private final AtomicLong totalQueueWaitTime = new AtomicLong();
+
+    private final AtomicLong maxQueueWaitTime = new AtomicLong();
+
+    private final AtomicLong totalRunTime = new AtomicLong();
+
+    private final AtomicLong maxRunTime = new AtomicLong();
+
+    @Override
+    public void initialize() throws SchedulerConfigException {
+        if (this.threadCount <= 0) {
+            throw new SchedulerConfigException("The thread count must be positive");
+        }
+        if (this.maxConcurrentTasksPerTenant <= 0) {
+            this.maxConcurrentTasksPerTenant = this.threadCount;
+        }
+        this.workers = new ArrayList<Thread>(this.threadCount);
+        for (int i = 0; i < this.threadCount; i++) {
+            Thread worker = new Thread(new Worker(), this.instanceName + "_Worker-" + (i + 1));
+            worker.setDaemon(true);
+            this.workers.add(worker);
+            worker.start();
+        }
+        this.registerMBean();
+    }
+
+    @Override
+    public int blockForAvailableThreads() {
+        synchronized (this.lock) {
+            while (!this.shutdown) {
+                int availableThreads = this.getAvailableThreads();
+                if (availableThreads > 0) {
+                    return availableThreads;
+                }
+                try {
+                    this.lock.wait(500);
+                } catch (InterruptedException ignore) {
+                    /* the scheduler checks its state and calls again */
+                    return 0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the number of tasks Quartz may fire now, must be called holding the lock.
+     */
+    private int getAvailableThreads() {
+        int runnableTaskCount = this.getRunnableTaskCount();
+        int idleThreads = this.threadCount - this.runningTaskCount - runnableTaskCount;
+        if (idleThreads > 0) {
+            return idleThreads;
+        }
+        if (this.queuedTaskCount >= this.maxQueuedTasks) {
+            return 0;
+        }
+        double expectedWait = (runnableTaskCount + 1) * this.averageRunTime / this.threadCount;
+        return expectedWait < this.misfireThreshold ? 1 : 0;
+    }
+
+    /**
+     * Returns the number of queued tasks which can be taken by a thread now, i.e. leaving out
+     * the tasks of the tenants at their concurrency limit, as those do not hold a thread until
+     * one of the running tasks of the same tenant completes. Must be called holding the lock.
+     */
+    private int getRunnableTaskCount() {
+        int count = 0;
+        for (TenantQueue tenantQueue : this.tenantQueues.values()) {
+            int freeSlots = this.maxConcurrentTasksPerTenant - tenantQueue.runningTaskCount;
+            if (freeSlots > 0) {
+                count += Math.min(tenantQueue.tasks.size(), freeSlots);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean runInThread(Runnable runnable) {
+        if (runnable == null) {
+            return false;
+        }
+        int tenantId = getFiredTenantId();
+        synchronized (this.lock) {
+            if (this.shutdown) {
+                return false;
+            }
+            TenantQueue tenantQueue = this.tenantQueues.get(tenantId);
+            if (tenantQueue == null) {
+                Integer weight = this.tenantWeights.get(tenantId);
+                tenantQueue = new TenantQueue(tenantId, weight == null ? 1 : weight);
+                this.tenantQueues.put(tenantId, tenantQueue);
+            }
+            tenantQueue.lastFinishTag = Math.max(this.virtualTime, tenantQueue.lastFinishTag) +
+                    1.0 / tenantQueue.weight;
+            tenantQueue.tasks.add(new QueuedTask(runnable, tenantQueue, tenantQueue.lastFinishTag));
+            this.queuedTaskCount++;
+            this.lock.notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Takes the queued task with the smallest finish tag, of the tenants which are below their
+     * concurrency limit. Must be called holding the lock.
+     */
+    private QueuedTask nextTask() {
+        TenantQueue nextTenantQueue = null;
+        for (TenantQueue tenantQueue : this.tenantQueues.values()) {
+            if (tenantQueue.tasks.isEmpty() || tenantQueue.runningTaskCount >= this.maxConcurrentTasksPerTenant) {
+                continue;
+            }
+            if (nextTenantQueue == null ||
+                    tenantQueue.tasks.getFirst().finishTag < nextTenantQueue.tasks.getFirst().finishTag) {
+                nextTenantQueue = tenantQueue;
+            }
+        }
+        if (nextTenantQueue == null) {
+            return null;
+        }
+        QueuedTask task = nextTenantQueue.tasks.removeFirst();
+        nextTenantQueue.runningTaskCount++;
+        this.queuedTaskCount--;
+        this.runningTaskCount++;
+        this.virtualTime = task.finishTag;
+        return task;
+    }
+
+    private void taskCompleted(QueuedTask task, long runTime) {
+        synchronized (this.lock) {
+            task.tenantQueue.runningTaskCount--;
+            this.runningTaskCount--;
+            if (this.averageRunTime == 0) {
+                this.averageRunTime = runTime;
+            } else {
+                this.averageRunTime += RUN_TIME_SMOOTHING_FACTOR * (runTime - this.averageRunTime);
+            }
+            if (task.tenantQueue.tasks.isEmpty() && task.tenantQueue.runningTaskCount == 0) {
+                this.tenantQueues.remove(task.tenantQueue.tenantId);
+            }
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the tenant of the job last created in the current thread, and clears it, so it is
+     * not carried over to a runnable which is not a fired job.
+     */
+    private static int getFiredTenantId() {
+        Integer tenantId = firedTenantId.get();
+        firedTenantId.remove();
+        return tenantId == null ? UNKNOWN_TENANT_ID : tenantId;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    @Override
+    public int getPoolSize() {
+        return this.threadCount;
+    }
+
+    @Override
+    public void setInstanceId(String instanceId) {
+    }
+
+    @Override
+    public void setInstanceName(String instanceName) {
+        this.instanceName = instanceName;
+    }
+
+    @Override
+    public void shutdown(boolean waitForJobsToComplete) {
+        synchronized (this.lock) {
+            this.shutdown = true;
+            if (!waitForJobsToComplete) {
+                /* the queued tasks are dropped, the running ones are let to complete */
+                for (TenantQueue tenantQueue : this.tenantQueues.values()) {
+                    this.queuedTaskCount -= tenantQueue.tasks.size();
+                    tenantQueue.tasks.clear();
+                }
+            }
+            this.lock.notifyAll();
+        }
+        if (waitForJobsToComplete && this.workers != null) {
+            for (Thread worker : this.workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        this.unregisterMBean();
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = this.getMBeanName();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            log.warn("Error in registering the task thread pool MBean: " + e.getMessage(), e);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = this.getMBeanName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            log.warn("Error in unregistering the task thread pool MBean: " + e.getMessage(), e);
+        }
+    }
+
+    private ObjectName getMBeanName() throws MalformedObjectNameException {
+        return new ObjectName(MBEAN_NAME + ",scheduler=" + ObjectName.quote(this.instanceName));
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the maximum number of tasks of a tenant running at a time, 0 or less for no limit
+     * other than the thread count.
+     */
+    public void setMaxConcurrentTasksPerTenant(int maxConcurrentTasksPerTenant) {
+        this.maxConcurrentTasksPerTenant = maxConcurrentTasksPerTenant;
+    }
+
+    @Override
+    public int getMaxConcurrentTasksPerTenant() {
+        return maxConcurrentTasksPerTenant;
+    }
+
+    public void setMaxQueuedTasks(int maxQueuedTasks) {
+        this.maxQueuedTasks = maxQueuedTasks;
+    }
+
+    /**
+     * Sets the maximum expected time in milliseconds a task may wait in the queue, this should
+     * match the misfire threshold of the job store.
+     */
+    public void setMisfireThreshold(long misfireThreshold) {
+        this.misfireThreshold = misfireThreshold;
+    }
+
+    /**
+     * Sets the weights of the tenants, in the format of [tenant-id]:[weight],...
+     * The tenants not given have the weight of 1.
+     */
+    public void setTenantWeights(String tenantWeights) {
+        Map<Integer, Integer> result = new HashMap<Integer, Integer>();
+        for (String entry : tenantWeights.split(",")) {
+            if (entry.trim().length() == 0) {
+                continue;
+            }
+            String[] tokens = entry.split(":");
+            try {
+                int weight = Integer.parseInt(tokens[1].trim());
+                if (weight > 0) {
+                    result.put(Integer.parseInt(tokens[0].trim()), weight);
+                }
+            } catch (Exception e) {
+                throw new IllegalArgumentException("The tenant weights must be in the format of " +
+                        "[tenant-id]:[weight],..., invalid entry: " + entry);
+            }
+        }
+        this.tenantWeights = result;
+    }
+
+    @Override
+    public int getRunningTaskCount() {
+        synchronized (this.lock) {
+            return runningTaskCount;
+        }
+    }
+
+    @Override
+    public int getQueuedTaskCount() {
+        synchronized (this.lock) {
+            return queuedTaskCount;
+        }
+    }
+
+    @Override
+    public int getActiveTenantCount() {
+        synchronized (this.lock) {
+            return tenantQueues.size();
+        }
+    }
+
+    @Override
+    public long getExecutedTaskCount() {
+        return executedTaskCount.get();
+    }
+
+    @Override
+    public long getAverageQueueWaitTime() {
+        long count = this.getExecutedTaskCount();
+        return count == 0 ? 0 : this.totalQueueWaitTime.get() / count;
+    }
+
+    @Override
+    public long getMaxQueueWaitTime() {
+        return maxQueueWaitTime.get();
+    }
+
+    @Override
+    public long getAverageRunTime() {
+        long count = this.getExecutedTaskCount();
+        return count == 0 ? 0 : this.totalRunTime.get() / count;
+    }
+
+    @Override
+    public long getMaxRunTime() {
+        return maxRunTime.get();
+    }
+
+    /**
+     * The queued tasks of a tenant.
+     */
+    private static class TenantQueue {
+
+        private final int tenantId;
+
+        private final int weight;
+
+        private final LinkedList<QueuedTask> tasks = new LinkedList<QueuedTask>();
+
+        private int runningTaskCount;
+
+        private double lastFinishTag;
+
+        public TenantQueue(int tenantId, int weight) {
+            this.tenantId = tenantId;
+            this.weight = weight;
+        }
+
+    }
+
+    /**
+     * A fired task waiting for a thread.
+     */
+    private static class QueuedTask {
+
+        private final Runnable runnable;
+
+        private final TenantQueue tenantQueue;
+
+        private final double finishTag;
+
+        private final long queuedTime;
+
+        public QueuedTask(Runnable runnable, TenantQueue tenantQueue, double finishTag) {
+            this.runnable = runnable;
+            this.tenantQueue = tenantQueue;
+            this.finishTag = finishTag;
+            this.queuedTime = System.currentTimeMillis();
+        }
+
+    }
+
+    /**
+     * Quartz job factory which records the tenant of each fired job, by its job group, for the
+     * thread pool to queue the job run shell under.
+     */
+    public static class TenantJobFactory extends PropertySettingJobFactory {
+
+        @Override
+        public Job newJob(TriggerFiredBundle bundle, Scheduler scheduler) throws SchedulerException {
+            firedTenantId.set(AbstractQuartzTaskManager.getTenantIdOfTaskGroup(
+                    bundle.getJobDetail().getKey().getGroup()));
+            return super.newJob(bundle, scheduler);
+        }
+
+    }
+
+    /**
+     * Worker thread which runs the queued tasks.
+     */
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                QueuedTask task;
+                synchronized (lock) {
+                    while ((task = nextTask()) == null) {
+                        if (shutdown && queuedTaskCount == 0) {
+                            return;
+                        }
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException ignore) {
+                            /* checked again in the loop */
+                        }
+                    }
+                }
+                long startTime = System.currentTimeMillis();
+                long queueWaitTime = startTime - task.queuedTime;
+                totalQueueWaitTime.addAndGet(queueWaitTime);
+                updateMax(maxQueueWaitTime, queueWaitTime);
+                try {
+                    task.runnable.run();
+                } catch (Throwable e) {
+                    log.error("Error in running the task: " + e.getMessage(), e);
+                } finally {
+                    long runTime = System.currentTimeMillis() - startTime;
+                    executedTaskCount.incrementAndGet();
+                    totalRunTime.addAndGet(runTime);
+                    updateMax(maxRunTime, runTime);
+                    taskCompleted(task, runTime);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+/**
+ * This interface represents the JMX view of the tenant fair Quartz thread pool.
+ */
+public interface TenantFairQuartzThreadPoolMBean {
+
+    public int getThreadCount();
+
+    public int getMaxConcurrentTasksPerTenant();
+
+    public int getRunningTaskCount();
+
+    public int getQueuedTaskCount();
+
+    public int getActiveTenantCount();
+
+    public long getExecutedTaskCount();
+
+    /**
+     * Returns the average time in milliseconds the tasks waited in the queue for a thread.
+     */
+    public long getAverageQueueWaitTime();
+
+    public long getMaxQueueWaitTime();
+
+    /**
+     * Returns the average time in milliseconds the tasks took to run.
+     */
+    public long getAverageRunTime();
+
+    public long getMaxRunTime();
+
+}
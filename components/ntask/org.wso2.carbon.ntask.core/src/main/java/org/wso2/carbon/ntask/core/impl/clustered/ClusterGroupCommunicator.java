@@ -22,6 +22,7 @@ import org.apache.commons.logging.LogFactory;
 import org.wso2.carbon.ntask.common.TaskException;
 import org.wso2.carbon.ntask.common.TaskException.Code;
 import org.wso2.carbon.ntask.core.TaskManager;
+import org.wso2.carbon.ntask.core.impl.ConsistentHashRing;
 import org.wso2.carbon.ntask.core.impl.clustered.rpc.TaskCall;
 import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
 import org.wso2.carbon.ntask.core.service.TaskService;
@@ -32,7 +33,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents the cluster group communicator used by clustered task
@@ -44,8 +47,6 @@ public class ClusterGroupCommunicator implements MembershipListener {
 
     private static final String TASK_SERVER_STARTUP_COUNTER = "__TASK_SERVER_STARTUP_COUNTER__";
 
-    private static final int MISSING_TASKS_ON_ERROR_RETRY_COUNT = 3;
-
     private static final String CARBON_TASKS_MEMBER_ID_MAP = "__CARBON_TASKS_MEMBER_ID_MAP__";
 
     public static final String TASK_SERVER_COUNT_SYS_PROP = "task.server.count";
@@ -62,6 +63,13 @@ public class ClusterGroupCommunicator implements MembershipListener {
 
     private String taskType;
 
+    private MissingTaskScheduler missingTaskScheduler;
+
+    /* incremented whenever the members of the group may have changed */
+    private final AtomicLong membershipVersion = new AtomicLong();
+
+    private Map<String, ConsistentHashRing> hashRingCache = new ConcurrentHashMap<String, ConsistentHashRing>();
+
     public static ClusterGroupCommunicator getInstance(String taskType) throws TaskException {
         if (communicatorMap.containsKey(taskType)) {
             return communicatorMap.get(taskType);
@@ -83,21 +91,29 @@ public class ClusterGroupCommunicator implements MembershipListener {
             throw new TaskException("ClusterGroupCommunicator cannot initialize, " +
             		"Hazelcast is not initialized", Code.CONFIG_ERROR);
         }
+        this.missingTaskScheduler = new MissingTaskScheduler(this);
         this.getHazelcast().getCluster().addMembershipListener(this);
         this.refreshMembers();
+        /* the other members join the group by adding themselves to the map */
+        this.getHazelcast().<String, Member>getMap(CARBON_TASKS_MEMBER_ID_MAP + "#" + taskType)
+                .addEntryListener(new MembersMapListener(), false);
     }
     
-    private void refreshMembers() {
+    /* synchronized with getMemberIds, since the cleanups of the missing task scheduler workers
+     * may refresh the members while the others read them */
+    private synchronized void refreshMembers() {
     	/* create a distributed map to track the members in the current group */
         this.membersMap = this.getHazelcast().getMap(CARBON_TASKS_MEMBER_ID_MAP + "#" + taskType);
         /* check and remove expired members */
         this.checkAndRemoveExpiredMembers();
+        this.membershipVersion.incrementAndGet();
     }
     
     public void addMyselfToGroup() {
     	Member member = this.getHazelcast().getCluster().getLocalMember();
         /* add myself to the queue */
         this.membersMap.put(this.getIdFromMember(member), member);
+        this.membershipVersion.incrementAndGet();
         /* increment the task server count */
         this.getHazelcast().getAtomicLong(this.getStartupCounterName()).incrementAndGet();
     }
@@ -204,6 +220,59 @@ public class ClusterGroupCommunicator implements MembershipListener {
         }
     }
 
+    /**
+     * Sends the calls to their members all at once and waits for all the results, so the time
+     * taken is bounded by the slowest member rather than the number of calls.
+     * @param memberCalls The calls to be sent, keyed by the member id
+     * @return The results, keyed by the member id
+     * @throws TaskException if any of the calls fail
+     */
+    public <V> Map<String, V> sendReceive(Map<String, ? extends TaskCall<V>> memberCalls)
+            throws TaskException {
+        IExecutorService es = this.getHazelcast().getExecutorService(NTASK_P2P_COMM_EXECUTOR);
+        Map<String, Future<V>> futures = new HashMap<String, Future<V>>();
+        for (Map.Entry<String, ? extends TaskCall<V>> entry : memberCalls.entrySet()) {
+            futures.put(entry.getKey(), es.submitToMember(entry.getValue(),
+                    this.getMemberFromId(entry.getKey())));
+        }
+        Map<String, V> result = new HashMap<String, V>();
+        for (Map.Entry<String, Future<V>> entry : futures.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().get());
+            } catch (Exception e) {
+                throw new TaskException("Error in cluster message send-receive with member: "
+                        + entry.getKey() + ": " + e.getMessage(), Code.UNKNOWN, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current membership version, which changes whenever a member joins or
+     * leaves the group.
+     */
+    public long getMembershipVersion() {
+        return membershipVersion.get();
+    }
+
+    /**
+     * Returns the hash ring cached with the given id, if it was built for the current
+     * membership version.
+     * @param ringId The ring id, which identifies the ring configuration
+     * @return The ring, or null if there is no valid ring cached
+     */
+    public ConsistentHashRing getCachedHashRing(String ringId) {
+        ConsistentHashRing ring = this.hashRingCache.get(ringId);
+        if (ring == null || ring.getMembershipVersion() != this.getMembershipVersion()) {
+            return null;
+        }
+        return ring;
+    }
+
+    public void cacheHashRing(String ringId, ConsistentHashRing ring) {
+        this.hashRingCache.put(ringId, ring);
+    }
+
     @Override
     public void memberAdded(MembershipEvent event) {
         /* ignored; the member addition for this group is handled in 
@@ -211,39 +280,34 @@ public class ClusterGroupCommunicator implements MembershipListener {
     }
 
     private void scheduleAllMissingTasks() throws TaskException {
-        for (TaskManager tm : getTaskService().getAllTenantTaskManagersForType(this.getTaskType())) {
+        this.scheduleAllMissingTasks(getTaskService().getAllTenantTaskManagersForType(this.getTaskType()));
+    }
+
+    /**
+     * Schedules the missing tasks of all the given task managers in parallel.
+     * @param tms The task managers, the non-clustered ones are ignored
+     * @throws TaskException
+     * @see MissingTaskScheduler
+     */
+    public void scheduleAllMissingTasks(List<TaskManager> tms) throws TaskException {
+        List<ClusteredTaskManager> clusteredTms = new ArrayList<ClusteredTaskManager>();
+        for (TaskManager tm : tms) {
             if (tm instanceof ClusteredTaskManager) {
-                this.scheduleMissingTasksWithRetryOnError((ClusteredTaskManager) tm);
+                clusteredTms.add((ClusteredTaskManager) tm);
             }
         }
+        this.getMissingTaskScheduler().scheduleAllMissingTasks(clusteredTms);
     }
 
-    private void scheduleMissingTasksWithRetryOnError(ClusteredTaskManager tm) {
-        int count = MISSING_TASKS_ON_ERROR_RETRY_COUNT;
-        while (count > 0) {
-            try {
-            	tm.scheduleMissingTasks();
-                break;
-            } catch (TaskException e) {
-            	boolean retry = (count > 1);
-                log.error("Encountered error(s) in scheduling missing tasks ["
-                        + tm.getTaskType() + "][" + tm.getTenantId() + "]:- \n" +
-                        e.getMessage() + "\n" + (retry ? "Retrying [" +
-                        ((MISSING_TASKS_ON_ERROR_RETRY_COUNT - count) + 1) + "]..." : "Giving up."));
-                if (retry) {
-                   /* coming up is a retry operation, lets do some cleanup */
-        		   this.cleanupTaskCluster();
-                }
-            }
-            count--;
-        }
+    public MissingTaskScheduler getMissingTaskScheduler() {
+        return missingTaskScheduler;
     }
-    
+
     /**
      * Cleanup up possible inconsistencies that can happen because of cluster instability,
      * e.g. cluster messages being lost etc..
      */
-    private void cleanupTaskCluster() {
+    void cleanupTaskCluster() {
     	this.refreshMembers();
     }
 
@@ -252,6 +316,7 @@ public class ClusterGroupCommunicator implements MembershipListener {
         if (this.getHazelcast().getLifecycleService().isRunning()) {
             String id = this.getIdFromMember(event.getMember());
             this.membersMap.remove(id);
+            this.membershipVersion.incrementAndGet();
             try {
                 if (this.isLeader()) {
                     log.info("Task [" + this.getTaskType() + "] member departed [" + event.getMember().toString()
@@ -273,4 +338,26 @@ public class ClusterGroupCommunicator implements MembershipListener {
         return membersMap;
     }
 
+    /**
+     * Listener of the group members map, which tracks the membership version.
+     */
+    private class MembersMapListener extends EntryAdapter<String, Member> {
+
+        @Override
+        public void entryAdded(EntryEvent<String, Member> event) {
+            membershipVersion.incrementAndGet();
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<String, Member> event) {
+            membershipVersion.incrementAndGet();
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<String, Member> event) {
+            membershipVersion.incrementAndGet();
+        }
+
+    }
+
 }
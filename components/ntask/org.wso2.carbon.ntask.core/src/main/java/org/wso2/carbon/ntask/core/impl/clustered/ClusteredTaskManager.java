@@ -23,8 +23,10 @@ import org.wso2.carbon.ntask.core.impl.clustered.rpc.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class represents a clustered task manager, which is used when tasks are
@@ -34,6 +36,9 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
 
     private static final String TASK_MEMBER_LOCATION_META_PROP_ID = "TASK_MEMBER_LOCATION_META_PROP_ID";
 
+    /* serializes the calls of the task location resolvers */
+    private static final Object LOCATION_RESOLVER_LOCK = new Object();
+
     public ClusteredTaskManager(TaskRepository taskRepository) throws TaskException {
         super(taskRepository);
     }
@@ -58,20 +63,17 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
 
     public void scheduleMissingTasks() throws TaskException {
         List<List<TaskInfo>> tasksInServers = this.getAllRunningTasksInServers();
-        List<TaskInfo> scheduledTasks = new ArrayList<TaskInfo>();
+        Set<String> scheduledTaskNames = new HashSet<String>();
         for (List<TaskInfo> entry : tasksInServers) {
-            scheduledTasks.addAll(entry);
+            for (TaskInfo task : entry) {
+                scheduledTaskNames.add(task.getName());
+            }
         }
-        /* add already finished tasks */
-        scheduledTasks.addAll(this.getAllFinishedTasks());
-        List<TaskInfo> allTasks = this.getAllTasks();
-        List<TaskInfo> missingTasks = new ArrayList<TaskInfo>(allTasks);
-        missingTasks.removeAll(scheduledTasks);
         StringBuilder errors = new StringBuilder();
         boolean error = false;
-        for (TaskInfo task : missingTasks) {
+        for (String taskName : this.getMissingTaskNames(scheduledTaskNames)) {
             try {
-                this.scheduleTask(task.getName());
+                this.scheduleTask(taskName);
             } catch (Exception e) {
                 errors.append(e.getMessage() + "\n");
                 error = true;
@@ -82,6 +84,27 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
         }
     }
 
+    /**
+     * Returns the tasks which are neither scheduled in any of the members, nor finished.
+     * @param scheduledTaskNames The names of the tasks scheduled in the cluster
+     * @return The names of the tasks to be scheduled
+     * @throws TaskException
+     */
+    public List<String> getMissingTaskNames(Set<String> scheduledTaskNames) throws TaskException {
+        Set<String> existingTaskNames = new HashSet<String>(scheduledTaskNames);
+        /* add already finished tasks */
+        for (TaskInfo task : this.getAllFinishedTasks()) {
+            existingTaskNames.add(task.getName());
+        }
+        List<String> missingTaskNames = new ArrayList<String>();
+        for (TaskInfo task : this.getAllTasks()) {
+            if (!existingTaskNames.contains(task.getName())) {
+                missingTaskNames.add(task.getName());
+            }
+        }
+        return missingTaskNames;
+    }
+
     public void scheduleTask(String taskName) throws TaskException {
         String memberId = this.getMemberIdFromTaskName(taskName, true);
         this.setServerLocationOfTask(taskName, memberId);
@@ -98,8 +121,33 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
         try {
             List<TaskInfo> tasks = this.getAllTasks();
             Map<String, TaskState> result = new HashMap<String, TaskState>();
+            /* group the tasks by the member they are running in, and ask each member
+             * for the states of all its tasks with one call */
+            List<String> memberIds = this.getMemberIds();
+            Map<String, List<String>> memberTasks = new HashMap<String, List<String>>();
             for (TaskInfo task : tasks) {
-                result.put(task.getName(), this.getTaskState(task.getName()));
+                String memberId = this.getServerLocationOfTask(task.getName());
+                if (memberId == null || !memberIds.contains(memberId)) {
+                    result.put(task.getName(), TaskState.NONE);
+                    continue;
+                }
+                List<String> taskNames = memberTasks.get(memberId);
+                if (taskNames == null) {
+                    taskNames = new ArrayList<String>();
+                    memberTasks.put(memberId, taskNames);
+                }
+                taskNames.add(task.getName());
+            }
+            Map<String, TaskStatesCall> memberCalls = new HashMap<String, TaskStatesCall>();
+            for (Map.Entry<String, List<String>> entry : memberTasks.entrySet()) {
+                TaskStatesCall taskStatesCall = new TaskStatesCall(entry.getValue());
+                taskStatesCall.setTenantId(this.getTenantId());
+                taskStatesCall.setTaskType(this.getTaskType());
+                memberCalls.put(entry.getKey(), taskStatesCall);
+            }
+            for (Map<String, TaskState> memberStates : this.getClusterComm().sendReceive(
+                    memberCalls).values()) {
+                result.putAll(memberStates);
             }
             return result;
         } catch (Exception e) {
@@ -198,19 +246,14 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
     }
 
     private String locateMemberForTask(String taskName) throws TaskException {
-        int location = getTaskLocation(taskName);
-        List<String> ids;
-        try {
-            ids = this.getMemberIds();
-        } catch (Exception e) {
-            throw new TaskException("Error in getting member ids: " + e.getMessage(), Code.UNKNOWN,
-                    e);
-        }
-        int index = location % ids.size();
-        return ids.get(index);
+        /* the location is an index in to the member ids of the context, so the same list
+         * must be used to resolve it */
+        TaskServiceContext ctx = this.getTaskServiceContext();
+        int location = getTaskLocation(taskName, ctx);
+        return ctx.getServerId(location % ctx.getServerCount());
     }
 
-    private int getTaskLocation(String taskName) throws TaskException {
+    private int getTaskLocation(String taskName, TaskServiceContext ctx) throws TaskException {
         TaskInfo taskInfo = this.getTask(taskName);
         TaskLocationResolver locationResolver;
         try {
@@ -219,7 +262,6 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
         } catch (Exception e) {
             throw new TaskException(e.getMessage(), Code.UNKNOWN, e);
         }
-        TaskServiceContext ctx = this.getTaskServiceContext();
         if (ctx.getServerCount() == 0) {
             throw new TaskException("No available task nodes for resolving a task location", 
                     Code.TASK_NODE_NOT_AVAILABLE);
@@ -228,8 +270,13 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
         if (props == null) {
         	props = new HashMap<String, String>();
         }
-        locationResolver.init(props);
-        return locationResolver.getLocation(ctx, taskInfo);
+        /* the location resolvers are not required to be thread safe, and may share state between
+         * their instances, e.g. the round robin counter, while the missing task scheduler resolves
+         * the locations from several workers, so the resolver calls are serialized */
+        synchronized (LOCATION_RESOLVER_LOCK) {
+            locationResolver.init(props);
+            return locationResolver.getLocation(ctx, taskInfo);
+        }
     }
 
     public List<List<TaskInfo>> getAllRunningTasksInServers() throws TaskException {
@@ -289,6 +336,10 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
         return getAllLocalRunningTasks();
     }
 
+    public Map<Integer, List<String>> getAllTenantsFinalRunningTaskNamesInServer() throws Exception {
+        return getAllTenantsLocalRunningTaskNames();
+    }
+
     public TaskState getTaskState(String memberId, String taskName) throws Exception {
         return this.sendReceive(memberId, new TaskStateCall(taskName));
     }
@@ -297,6 +348,14 @@ public class ClusteredTaskManager extends AbstractQuartzTaskManager {
         return getLocalTaskState(taskName);
     }
 
+    public Map<String, TaskState> getFinalTaskStates(List<String> taskNames) throws Exception {
+        Map<String, TaskState> result = new HashMap<String, TaskState>();
+        for (String taskName : taskNames) {
+            result.put(taskName, getLocalTaskState(taskName));
+        }
+        return result;
+    }
+
     public void scheduleTask(String memberId, String taskName) throws TaskException {
         this.sendReceive(memberId, new ScheduleTaskCall(taskName));
     }
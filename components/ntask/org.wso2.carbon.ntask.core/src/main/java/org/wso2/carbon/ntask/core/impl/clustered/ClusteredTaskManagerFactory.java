@@ -19,7 +19,7 @@ import org.wso2.carbon.ntask.common.TaskException;
 import org.wso2.carbon.ntask.core.TaskManager;
 import org.wso2.carbon.ntask.core.TaskManagerId;
 import org.wso2.carbon.ntask.core.TaskRepository;
-import org.wso2.carbon.ntask.core.impl.RegistryBasedTaskRepository;
+import org.wso2.carbon.ntask.core.TaskUtils;
 import org.wso2.carbon.ntask.core.impl.standalone.StandaloneTaskManagerFactory;
 import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
 
@@ -36,8 +36,7 @@ public class ClusteredTaskManagerFactory extends StandaloneTaskManagerFactory {
     
     @Override
     protected TaskManager createTaskManager(TaskManagerId tmId) throws TaskException {
-        TaskRepository taskRepo = new RegistryBasedTaskRepository(tmId.getTenantId(),
-                tmId.getTaskType());
+        TaskRepository taskRepo = TaskUtils.createTaskRepository(tmId);
         return new ClusteredTaskManager(taskRepo);
     }
     
@@ -0,0 +1,418 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl.clustered;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.carbon.context.PrivilegedCarbonContext;
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.core.impl.clustered.rpc.AllTenantsRunningTasksInServerCall;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class schedules the missing tasks of all the tenants of a task type, which is done at
+ * startup and when a member leaves the cluster. The tasks running in the members are fetched
+ * once for all the tenants, by querying the members in parallel, and the tenants are then
+ * processed by a bounded pool of workers. The rate at which the tasks are scheduled can be
+ * limited, so that a large recovery does not flood the members. The progress of a run is
+ * exposed through JMX as org.wso2.carbon:type=Tasks,name=MissingTaskScheduler,taskType=[type].
+ */
+public class MissingTaskScheduler implements MissingTaskSchedulerMBean {
+
+    private static final Log log = LogFactory.getLog(MissingTaskScheduler.class);
+
+    public static final String WORKER_COUNT_SYS_PROP = "task.recovery.worker.count";
+
+    public static final String SCHEDULE_RATE_SYS_PROP = "task.recovery.schedule.rate";
+
+    public static final String MBEAN_NAME_PREFIX = "org.wso2.carbon:type=Tasks,name=MissingTaskScheduler,taskType=";
+
+    private static final int DEFAULT_WORKER_COUNT = 10;
+
+    /* no limit */
+    private static final int DEFAULT_SCHEDULE_RATE = -1;
+
+    private static final int MISSING_TASKS_ON_ERROR_RETRY_COUNT = 3;
+
+    private static final long PROGRESS_LOG_INTERVAL = 10000;
+
+    private ClusterGroupCommunicator clusterComm;
+
+    private int workerCount;
+
+    private int scheduleRate;
+
+    private final Object scheduleRateLock = new Object();
+
+    private long nextScheduleTime;
+
+    private volatile boolean running;
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private final AtomicInteger tenantCount = new AtomicInteger();
+
+    private final AtomicInteger processedTenantCount = new AtomicInteger();
+
+    private final AtomicInteger missingTaskCount = new AtomicInteger();
+
+    private final AtomicInteger scheduledTaskCount = new AtomicInteger();
+
+    private final AtomicInteger failedTaskCount = new AtomicInteger();
+
+    private final AtomicLong lastProgressLogTime = new AtomicLong();
+
+    private final Object cleanupLock = new Object();
+
+    public MissingTaskScheduler(ClusterGroupCommunicator clusterComm) {
+        this.clusterComm = clusterComm;
+        this.workerCount = Integer.getInteger(WORKER_COUNT_SYS_PROP, DEFAULT_WORKER_COUNT);
+        this.scheduleRate = Integer.getInteger(SCHEDULE_RATE_SYS_PROP, DEFAULT_SCHEDULE_RATE);
+        this.registerMBean();
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME_PREFIX + ObjectName.quote(this.getTaskType()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            log.warn("Error in registering the missing task scheduler MBean [" + this.getTaskType() + "]: " +
+                    e.getMessage(), e);
+        }
+    }
+
+    public ClusterGroupCommunicator getClusterComm() {
+        return clusterComm;
+    }
+
+    public String getTaskType() {
+        return this.getClusterComm().getTaskType();
+    }
+
+    /**
+     * Schedules the tasks of the given task managers which are not running in any of the members.
+     * The errors in scheduling the tasks of a tenant are logged, and do not stop the
+     * processing of the other tenants.
+     * @param tms The task managers of the tenants
+     * @throws TaskException if the running tasks cannot be retrieved from the members
+     */
+    public synchronized void scheduleAllMissingTasks(List<ClusteredTaskManager> tms) throws TaskException {
+        this.tenantCount.set(tms.size());
+        this.processedTenantCount.set(0);
+        this.missingTaskCount.set(0);
+        this.scheduledTaskCount.set(0);
+        this.failedTaskCount.set(0);
+        this.startTime = System.currentTimeMillis();
+        this.lastProgressLogTime.set(this.startTime);
+        this.running = true;
+        try {
+            if (tms.isEmpty()) {
+                return;
+            }
+            Map<Integer, Set<String>> scheduledTaskNames = this.getAllScheduledTaskNames(tms.get(0));
+            ExecutorService executor = new ThreadPoolExecutor(this.workerCount, this.workerCount,
+                    0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new WorkerThreadFactory(this.getTaskType()));
+            try {
+                List<Future<?>> futures = new ArrayList<Future<?>>();
+                for (ClusteredTaskManager tm : tms) {
+                    futures.add(executor.submit(new TenantMissingTasksWorker(tm,
+                            scheduledTaskNames.get(tm.getTenantId()))));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TaskException("Interrupted while scheduling missing tasks [" +
+                        this.getTaskType() + "]", TaskException.Code.UNKNOWN, e);
+            } catch (ExecutionException e) {
+                throw new TaskException("Error in scheduling missing tasks [" + this.getTaskType() +
+                        "]: " + e.getMessage(), TaskException.Code.UNKNOWN, e);
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            this.endTime = System.currentTimeMillis();
+            this.running = false;
+        }
+        log.info("Scheduled missing tasks [" + this.getTaskType() + "] of " + this.getTenantCount() +
+                " tenants in " + this.getElapsedTime() + " ms: " + this.getMissingTaskCount() + " missing, " +
+                this.getScheduledTaskCount() + " scheduled, " + this.getFailedTaskCount() + " failed.");
+    }
+
+    /**
+     * Retrieves the tasks running in all the members, with one call per member for all the tenants.
+     */
+    private Map<Integer, Set<String>> getAllScheduledTaskNames(ClusteredTaskManager tm) throws TaskException {
+        int count = 1;
+        while (true) {
+            try {
+                Map<String, AllTenantsRunningTasksInServerCall> memberCalls =
+                        new HashMap<String, AllTenantsRunningTasksInServerCall>();
+                for (String memberId : this.getClusterComm().getMemberIds()) {
+                    AllTenantsRunningTasksInServerCall call = new AllTenantsRunningTasksInServerCall();
+                    call.setTenantId(tm.getTenantId());
+                    call.setTaskType(tm.getTaskType());
+                    memberCalls.put(memberId, call);
+                }
+                Map<Integer, Set<String>> result = new HashMap<Integer, Set<String>>();
+                for (Map<Integer, List<String>> memberTasks : this.getClusterComm().sendReceive(
+                        memberCalls).values()) {
+                    for (Map.Entry<Integer, List<String>> entry : memberTasks.entrySet()) {
+                        Set<String> taskNames = result.get(entry.getKey());
+                        if (taskNames == null) {
+                            taskNames = new HashSet<String>();
+                            result.put(entry.getKey(), taskNames);
+                        }
+                        taskNames.addAll(entry.getValue());
+                    }
+                }
+                return result;
+            } catch (TaskException e) {
+                if (count >= MISSING_TASKS_ON_ERROR_RETRY_COUNT) {
+                    throw e;
+                }
+                log.warn("Error in retrieving the running tasks of the members [" + this.getTaskType() +
+                        "]: " + e.getMessage() + ", retrying [" + count + "]...");
+                /* a member may have gone away meanwhile */
+                this.getClusterComm().cleanupTaskCluster();
+            }
+            count++;
+        }
+    }
+
+    private void scheduleMissingTasks(ClusteredTaskManager tm, Set<String> scheduledTaskNames) {
+        List<String> missingTaskNames;
+        try {
+            missingTaskNames = tm.getMissingTaskNames(scheduledTaskNames == null ?
+                    new HashSet<String>() : scheduledTaskNames);
+        } catch (TaskException e) {
+            log.error("Error in finding the missing tasks [" + tm.getTaskType() + "][" +
+                    tm.getTenantId() + "]: " + e.getMessage(), e);
+            return;
+        }
+        this.missingTaskCount.addAndGet(missingTaskNames.size());
+        for (String taskName : missingTaskNames) {
+            this.scheduleTaskWithRetryOnError(tm, taskName);
+        }
+    }
+
+    private void scheduleTaskWithRetryOnError(ClusteredTaskManager tm, String taskName) {
+        int count = MISSING_TASKS_ON_ERROR_RETRY_COUNT;
+        while (count > 0) {
+            long membershipVersion = this.getClusterComm().getMembershipVersion();
+            try {
+                this.acquireSchedulePermit();
+                tm.scheduleTask(taskName);
+                this.scheduledTaskCount.incrementAndGet();
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (TaskException e) {
+                boolean retry = (count > 1);
+                log.error("Encountered error in scheduling missing task [" + tm.getTaskType() + "][" +
+                        tm.getTenantId() + "][" + taskName + "]:- \n" + e.getMessage() + "\n" +
+                        (retry ? "Retrying [" + ((MISSING_TASKS_ON_ERROR_RETRY_COUNT - count) + 1) +
+                        "]..." : "Giving up."));
+                if (retry) {
+                    /* coming up is a retry operation, lets do some cleanup */
+                    this.cleanupTaskCluster(membershipVersion);
+                }
+            }
+            count--;
+        }
+        this.failedTaskCount.incrementAndGet();
+    }
+
+    /**
+     * Cleans up the task cluster after a failure of a worker. The workers fail together when a
+     * member goes away, so the cleanups are done one at a time, and skipped if the members have
+     * been refreshed since the worker read the membership version.
+     */
+    private void cleanupTaskCluster(long membershipVersion) {
+        synchronized (this.cleanupLock) {
+            if (this.getClusterComm().getMembershipVersion() == membershipVersion) {
+                this.getClusterComm().cleanupTaskCluster();
+            }
+        }
+    }
+
+    /**
+     * Waits until the next task can be scheduled, if the schedule rate is limited.
+     */
+    private void acquireSchedulePermit() throws InterruptedException {
+        if (this.scheduleRate <= 0) {
+            return;
+        }
+        long waitTime;
+        synchronized (this.scheduleRateLock) {
+            long now = System.nanoTime();
+            if (this.nextScheduleTime - now < 0) {
+                this.nextScheduleTime = now;
+            }
+            waitTime = this.nextScheduleTime - now;
+            this.nextScheduleTime += TimeUnit.SECONDS.toNanos(1) / this.scheduleRate;
+        }
+        if (waitTime > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+
+    private void logProgress() {
+        long now = System.currentTimeMillis();
+        long lastLogTime = this.lastProgressLogTime.get();
+        if (now - lastLogTime >= PROGRESS_LOG_INTERVAL &&
+                this.lastProgressLogTime.compareAndSet(lastLogTime, now)) {
+            log.info("Scheduling missing tasks [" + this.getTaskType() + "]: " +
+                    this.getProcessedTenantCount() + "/" + this.getTenantCount() + " tenants processed, " +
+                    this.getScheduledTaskCount() + "/" + this.getMissingTaskCount() + " tasks scheduled, " +
+                    this.getFailedTaskCount() + " failed...");
+        }
+    }
+
+    /**
+     * Checks whether the missing tasks are being scheduled at the moment.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the time taken by the current, or else the last, run in milliseconds.
+     */
+    public long getElapsedTime() {
+        return (this.isRunning() ? System.currentTimeMillis() : this.endTime) - this.startTime;
+    }
+
+    public int getTenantCount() {
+        return tenantCount.get();
+    }
+
+    public int getProcessedTenantCount() {
+        return processedTenantCount.get();
+    }
+
+    public int getMissingTaskCount() {
+        return missingTaskCount.get();
+    }
+
+    public int getScheduledTaskCount() {
+        return scheduledTaskCount.get();
+    }
+
+    public int getFailedTaskCount() {
+        return failedTaskCount.get();
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = workerCount;
+    }
+
+    public int getScheduleRate() {
+        return scheduleRate;
+    }
+
+    /**
+     * Sets the maximum number of tasks scheduled per second, 0 or less for no limit.
+     */
+    public void setScheduleRate(int scheduleRate) {
+        this.scheduleRate = scheduleRate;
+    }
+
+    /**
+     * Worker which schedules the missing tasks of a tenant.
+     */
+    private class TenantMissingTasksWorker implements Runnable {
+
+        private ClusteredTaskManager tm;
+
+        private Set<String> scheduledTaskNames;
+
+        public TenantMissingTasksWorker(ClusteredTaskManager tm, Set<String> scheduledTaskNames) {
+            this.tm = tm;
+            this.scheduledTaskNames = scheduledTaskNames;
+        }
+
+        @Override
+        public void run() {
+            try {
+                PrivilegedCarbonContext.startTenantFlow();
+                PrivilegedCarbonContext.getThreadLocalCarbonContext().setTenantId(
+                        this.tm.getTenantId(), true);
+                scheduleMissingTasks(this.tm, this.scheduledTaskNames);
+            } finally {
+                PrivilegedCarbonContext.endTenantFlow();
+                processedTenantCount.incrementAndGet();
+                logProgress();
+            }
+        }
+
+    }
+
+    /**
+     * Thread factory of the missing task scheduler workers.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String taskType;
+
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public WorkerThreadFactory(String taskType) {
+            this.taskType = taskType;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MissingTaskScheduler-" + this.taskType + "-" +
+                    this.threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl.clustered;
+
+/**
+ * This interface represents the JMX view of the progress of the missing task scheduler of a
+ * task type.
+ */
+public interface MissingTaskSchedulerMBean {
+
+    public String getTaskType();
+
+    public boolean isRunning();
+
+    /**
+     * Returns the time taken by the current, or else the last, run in milliseconds.
+     */
+    public long getElapsedTime();
+
+    public int getTenantCount();
+
+    public int getProcessedTenantCount();
+
+    public int getMissingTaskCount();
+
+    public int getScheduledTaskCount();
+
+    public int getFailedTaskCount();
+
+    public int getWorkerCount();
+
+    public int getScheduleRate();
+
+}
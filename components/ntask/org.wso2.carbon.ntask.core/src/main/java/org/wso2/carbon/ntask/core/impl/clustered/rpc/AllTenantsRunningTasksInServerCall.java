@@ -0,0 +1,35 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl.clustered.rpc;
+
+import java.util.List;
+import java.util.Map;
+
+import org.wso2.carbon.ntask.core.impl.clustered.ClusteredTaskManager;
+
+/**
+ * Running tasks of all the tenants in server RPC call implementation.
+ */
+public class AllTenantsRunningTasksInServerCall extends TaskCall<Map<Integer, List<String>>> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Map<Integer, List<String>> doWork(ClusteredTaskManager tm) throws Exception {
+        return tm.getAllTenantsFinalRunningTaskNamesInServer();
+    }
+
+}
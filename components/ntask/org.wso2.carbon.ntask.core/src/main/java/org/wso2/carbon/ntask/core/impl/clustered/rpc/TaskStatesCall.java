@@ -0,0 +1,47 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl.clustered.rpc;
+
+import org.wso2.carbon.ntask.core.TaskManager.TaskState;
+import org.wso2.carbon.ntask.core.impl.clustered.ClusteredTaskManager;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Task states RPC call implementation, which returns the states of a group of tasks
+ * running in the same member.
+ */
+public class TaskStatesCall extends TaskCall<Map<String, TaskState>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<String> taskNames;
+
+    public TaskStatesCall(List<String> taskNames) {
+        this.taskNames = taskNames;
+    }
+
+    public List<String> getTaskNames() {
+        return taskNames;
+    }
+
+    @Override
+    public Map<String, TaskState> doWork(ClusteredTaskManager tm) throws Exception {
+        return tm.getFinalTaskStates(this.getTaskNames());
+    }
+
+}
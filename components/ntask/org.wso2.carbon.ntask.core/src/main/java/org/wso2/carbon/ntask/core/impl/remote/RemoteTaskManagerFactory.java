@@ -23,7 +23,7 @@ import org.wso2.carbon.ntask.core.TaskManager;
 import org.wso2.carbon.ntask.core.TaskManagerFactory;
 import org.wso2.carbon.ntask.core.TaskManagerId;
 import org.wso2.carbon.ntask.core.TaskRepository;
-import org.wso2.carbon.ntask.core.impl.RegistryBasedTaskRepository;
+import org.wso2.carbon.ntask.core.TaskUtils;
 import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
 import org.wso2.carbon.ntask.core.service.TaskService.TaskServiceConfiguration;
 import org.wso2.carbon.remotetasks.stub.admin.common.RemoteTaskAdmin;
@@ -41,8 +41,7 @@ public class RemoteTaskManagerFactory implements TaskManagerFactory {
 
     @Override
     public TaskManager getTaskManager(TaskManagerId tmId) throws TaskException {
-        TaskRepository taskRepo = new RegistryBasedTaskRepository(tmId.getTenantId(),
-                tmId.getTaskType());
+        TaskRepository taskRepo = TaskUtils.createTaskRepository(tmId);
         return new RemoteTaskManager(taskRepo, getRemoteTaskAdmin());
     }
 
@@ -20,7 +20,7 @@ import org.wso2.carbon.ntask.core.TaskManager;
 import org.wso2.carbon.ntask.core.TaskManagerFactory;
 import org.wso2.carbon.ntask.core.TaskManagerId;
 import org.wso2.carbon.ntask.core.TaskRepository;
-import org.wso2.carbon.ntask.core.impl.RegistryBasedTaskRepository;
+import org.wso2.carbon.ntask.core.TaskUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -38,16 +38,14 @@ public class StandaloneTaskManagerFactory implements TaskManagerFactory {
     }
 
     protected TaskManager createTaskManager(TaskManagerId tmId) throws TaskException {
-        TaskRepository taskRepo = new RegistryBasedTaskRepository(tmId.getTenantId(),
-                tmId.getTaskType());
+        TaskRepository taskRepo = TaskUtils.createTaskRepository(tmId);
         return new StandaloneTaskManager(taskRepo);
     }
 
     @Override
     public List<TaskManager> getStartupSchedulingTaskManagersForType(String taskType)
             throws TaskException {
-        List<TaskManagerId> tmIds = RegistryBasedTaskRepository
-                .getAllTenantTaskManagersForType(taskType);
+        List<TaskManagerId> tmIds = TaskUtils.getAllTenantTaskManagerIdsForType(taskType);
         List<TaskManager> result = new ArrayList<TaskManager>();
         for (TaskManagerId tmId : tmIds) {
             result.add(this.createTaskManager(tmId));
@@ -57,8 +55,7 @@ public class StandaloneTaskManagerFactory implements TaskManagerFactory {
 
     @Override
     public List<TaskManager> getAllTenantTaskManagersForType(String taskType) throws TaskException {
-        List<TaskManagerId> tmIds = RegistryBasedTaskRepository
-                .getAllTenantTaskManagersForType(taskType);
+        List<TaskManagerId> tmIds = TaskUtils.getAllTenantTaskManagerIdsForType(taskType);
         List<TaskManager> result = new ArrayList<TaskManager>();
         for (TaskManagerId tmId : tmIds) {
             result.add(this.createTaskManager(tmId));
@@ -27,7 +27,7 @@ import org.quartz.Scheduler;
 import org.quartz.impl.StdSchedulerFactory;
 import org.wso2.carbon.core.ServerStartupObserver;
 import org.wso2.carbon.ntask.core.TaskStartupHandler;
-import org.wso2.carbon.ntask.core.impl.QuartzCachedThreadPool;
+import org.wso2.carbon.ntask.core.impl.TenantFairQuartzThreadPool;
 import org.wso2.carbon.ntask.core.impl.TaskAxis2ConfigurationContextObserver;
 import org.wso2.carbon.ntask.core.service.TaskService;
 import org.wso2.carbon.ntask.core.service.impl.TaskServiceImpl;
@@ -114,7 +114,9 @@ public class TasksDSComponent {
     private Properties getStandardQuartzProps() {
         Properties result = new Properties();
         result.put("org.quartz.scheduler.skipUpdateCheck", "true");
-        result.put("org.quartz.threadPool.class", QuartzCachedThreadPool.class.getName());
+        result.put("org.quartz.threadPool.class", TenantFairQuartzThreadPool.class.getName());
+        result.put("org.quartz.scheduler.jobFactory.class",
+                TenantFairQuartzThreadPool.TenantJobFactory.class.getName());
         return result;
     }
 
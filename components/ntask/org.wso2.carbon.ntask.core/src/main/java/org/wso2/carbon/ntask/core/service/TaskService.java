@@ -98,10 +98,18 @@ public interface TaskService {
         
         Map<String, String> getLocationResolverProperties();
 
+        TaskRepositoryType getTaskRepositoryType();
+
+        String getTaskRepositoryDataSource();
+
     }
 
     public static enum TaskServerMode {
         STANDALONE, CLUSTERED, REMOTE, AUTO
     }
 
+    public static enum TaskRepositoryType {
+        REGISTRY, JDBC
+    }
+
 }
@@ -133,6 +133,15 @@ public class TaskServiceImpl implements TaskService {
         }
         List<TaskManager> startupTms = this.getTaskManagerFactory()
                 .getStartupSchedulingTaskManagersForType(taskType);
+        if (this.getEffectiveTaskServerMode() == TaskServerMode.CLUSTERED) {
+            /* the leader schedules the missing tasks of all the tenants in one go, instead of
+             * each task manager querying all the members separately */
+            ClusterGroupCommunicator clusterComm = ClusterGroupCommunicator.getInstance(taskType);
+            if (clusterComm.isLeader()) {
+                clusterComm.scheduleAllMissingTasks(startupTms);
+            }
+            return;
+        }
         for (TaskManager tm : startupTms) {
             tm.initStartupTasks();
         }
@@ -204,6 +213,10 @@ public class TaskServiceImpl implements TaskService {
         
         private Map<String, String> locationResolverProperties;
 
+        private TaskRepositoryType taskRepositoryType;
+
+        private String taskRepositoryDataSource;
+
         public TaskServiceConfigurationImpl(TaskServiceXMLConfiguration taskXMLConfig) {
             this.processXMLConfig(taskXMLConfig);
             this.processSystemProps();
@@ -219,6 +232,8 @@ public class TaskServiceImpl implements TaskService {
             this.remoteServerPassword = taskXMLConfig.getRemoteServerPassword();
             this.taskServerMode = taskXMLConfig.getTaskServerMode();
             this.taskServerCount = taskXMLConfig.getTaskServerCount();
+            this.taskRepositoryType = taskXMLConfig.getTaskRepositoryType();
+            this.taskRepositoryDataSource = taskXMLConfig.getTaskRepositoryDataSource();
             DefaultLocationResolver locationResolver = taskXMLConfig.getDefaultLocationResolver();
             this.locationResolverClass = locationResolver.getLocationResolverClass();
             this.locationResolverProperties = this.extractLocationResolverProperties(locationResolver);
@@ -248,6 +263,9 @@ public class TaskServiceImpl implements TaskService {
                 this.taskServerMode = TaskServerMode.AUTO;
                 
             }
+            if (this.taskRepositoryType == null) {
+                this.taskRepositoryType = TaskRepositoryType.REGISTRY;
+            }
             if (this.taskServerCount == -1) {
                 String taskServerCountStr = System.getProperty(
                         ClusterGroupCommunicator.TASK_SERVER_COUNT_SYS_PROP);
@@ -311,6 +329,16 @@ public class TaskServiceImpl implements TaskService {
 			return locationResolverProperties;
 		}
 
+        @Override
+        public TaskRepositoryType getTaskRepositoryType() {
+            return taskRepositoryType;
+        }
+
+        @Override
+        public String getTaskRepositoryDataSource() {
+            return taskRepositoryDataSource;
+        }
+
     }
 
     public TaskServerMode getEffectiveTaskServerMode() {
@@ -21,6 +21,7 @@ import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlValue;
 
+import org.wso2.carbon.ntask.core.service.TaskService.TaskRepositoryType;
 import org.wso2.carbon.ntask.core.service.TaskService.TaskServerMode;
 
 /**
@@ -41,6 +42,10 @@ public class TaskServiceXMLConfiguration {
 
     private String remoteServerPassword;
 
+    private TaskRepositoryType taskRepositoryType;
+
+    private String taskRepositoryDataSource;
+
     private DefaultLocationResolver defaultLocationResolver = new DefaultLocationResolver(DEFAULT_LOCATION_RESOLVER_CLASS);
 
     public static final String DEFAULT_LOCATION_RESOLVER_CLASS = "org.wso2.carbon.ntask.core.impl.RoundRobinTaskLocationResolver";
@@ -97,6 +102,24 @@ public class TaskServiceXMLConfiguration {
     public void setRemoteServerPassword(String remoteServerPassword) {
         this.remoteServerPassword = remoteServerPassword;
     }
+
+    @XmlElement(nillable = true)
+    public TaskRepositoryType getTaskRepositoryType() {
+        return taskRepositoryType;
+    }
+
+    public void setTaskRepositoryType(TaskRepositoryType taskRepositoryType) {
+        this.taskRepositoryType = taskRepositoryType;
+    }
+
+    @XmlElement(nillable = true)
+    public String getTaskRepositoryDataSource() {
+        return taskRepositoryDataSource;
+    }
+
+    public void setTaskRepositoryDataSource(String taskRepositoryDataSource) {
+        this.taskRepositoryDataSource = taskRepositoryDataSource;
+    }
     
     @XmlElement(name = "defaultLocationResolver", nillable = true, required = false)
     public DefaultLocationResolver getDefaultLocationResolver() {
@@ -0,0 +1,18 @@
+CREATE TABLE IF NOT EXISTS NTASK_TASKS (
+    TENANT_ID INTEGER NOT NULL,
+    TASK_TYPE VARCHAR(255) NOT NULL,
+    TASK_NAME VARCHAR(255) NOT NULL,
+    TASK_DEFINITION BLOB NOT NULL,
+    PRIMARY KEY (TENANT_ID, TASK_TYPE, TASK_NAME)
+);
+
+CREATE INDEX IF NOT EXISTS NTASK_TASKS_TYPE_IDX ON NTASK_TASKS (TASK_TYPE, TENANT_ID);
+
+CREATE TABLE IF NOT EXISTS NTASK_TASK_METADATA (
+    TENANT_ID INTEGER NOT NULL,
+    TASK_TYPE VARCHAR(255) NOT NULL,
+    TASK_NAME VARCHAR(255) NOT NULL,
+    PROP_KEY VARCHAR(255) NOT NULL,
+    PROP_VALUE VARCHAR(4000),
+    PRIMARY KEY (TENANT_ID, TASK_TYPE, TASK_NAME, PROP_KEY)
+);
@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS NTASK_TASKS (
+    TENANT_ID INTEGER NOT NULL,
+    TASK_TYPE VARCHAR(255) NOT NULL,
+    TASK_NAME VARCHAR(255) NOT NULL,
+    TASK_DEFINITION BLOB NOT NULL,
+    PRIMARY KEY (TENANT_ID, TASK_TYPE, TASK_NAME),
+    INDEX NTASK_TASKS_TYPE_IDX (TASK_TYPE, TENANT_ID)
+) ENGINE INNODB;
+
+CREATE TABLE IF NOT EXISTS NTASK_TASK_METADATA (
+    TENANT_ID INTEGER NOT NULL,
+    TASK_TYPE VARCHAR(255) NOT NULL,
+    TASK_NAME VARCHAR(255) NOT NULL,
+    PROP_KEY VARCHAR(255) NOT NULL,
+    PROP_VALUE VARCHAR(4000),
+    PRIMARY KEY (TENANT_ID, TASK_TYPE, TASK_NAME, PROP_KEY)
+) ENGINE INNODB;
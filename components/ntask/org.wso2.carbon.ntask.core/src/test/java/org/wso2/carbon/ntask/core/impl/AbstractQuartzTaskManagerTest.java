@@ -0,0 +1,186 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import junit.framework.TestCase;
+import org.h2.jdbcx.JdbcDataSource;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.impl.StdSchedulerFactory;
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.core.TaskInfo;
+import org.wso2.carbon.ntask.core.TaskInfo.TriggerInfo;
+import org.wso2.carbon.ntask.core.impl.standalone.StandaloneTaskManager;
+import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
+import org.wso2.carbon.ntask.core.service.TaskService;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Properties;
+
+/**
+ * Tests that the local task states stay in line with the scheduler when it fails to change the
+ * schedule of a task. The tasks are kept in an in-memory H2 database and scheduled in a RAM job
+ * store scheduler, which is not started, so the tasks never fire.
+ */
+public class AbstractQuartzTaskManagerTest extends TestCase {
+
+    private static final String TASK_TYPE = "TEST_TASKS";
+
+    private static int instanceCount;
+
+    private JdbcDataSource dataSource;
+
+    private Scheduler scheduler;
+
+    private FailingSchedulerHandler schedulerHandler;
+
+    private StandaloneTaskManager taskManager;
+
+    @Override
+    protected void setUp() throws Exception {
+        /* the task definitions are unmarshalled with the default constructor of TaskInfo, which
+         * reads the server configuration of the task service */
+        setStaticField("taskService", Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                new Class<?>[] { TaskService.class }, new NullInvocationHandler()));
+        this.dataSource = new JdbcDataSource();
+        this.dataSource.setURL("jdbc:h2:mem:ntask_manager_test_" + instanceCount + ";DB_CLOSE_DELAY=-1");
+        JDBCTaskRepository.createTablesIfNotExist(this.dataSource);
+
+        Properties props = new Properties();
+        props.put("org.quartz.scheduler.instanceName", "TaskManagerTest_" + (instanceCount++));
+        props.put("org.quartz.scheduler.skipUpdateCheck", "true");
+        props.put("org.quartz.threadPool.threadCount", "1");
+        this.scheduler = new StdSchedulerFactory(props).getScheduler();
+        this.schedulerHandler = new FailingSchedulerHandler(this.scheduler);
+        setStaticField("scheduler", Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                new Class<?>[] { Scheduler.class }, this.schedulerHandler));
+        this.taskManager = new StandaloneTaskManager(new JDBCTaskRepository(this.dataSource, 1, TASK_TYPE));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.scheduler.shutdown();
+        Connection conn = this.dataSource.getConnection();
+        try {
+            conn.createStatement().execute("DROP ALL OBJECTS");
+        } finally {
+            conn.close();
+        }
+        setStaticField("scheduler", null);
+        setStaticField("taskService", null);
+    }
+
+    public void testFailedRescheduleOfUnscheduledTask() throws Exception {
+        this.taskManager.registerLocalTask(this.task("task1"));
+        this.schedulerHandler.failReschedule = true;
+        try {
+            this.taskManager.rescheduleLocalTask("task1");
+            fail("The reschedule did not fail");
+        } catch (TaskException e) {
+            /* expected */
+        }
+        assertFalse(this.taskManager.isLocalTaskScheduled("task1"));
+    }
+
+    public void testFailedRescheduleOfScheduledTask() throws Exception {
+        this.taskManager.registerLocalTask(this.task("task1"));
+        this.taskManager.scheduleLocalTask("task1", false);
+        assertTrue(this.taskManager.isLocalTaskScheduled("task1"));
+        this.schedulerHandler.failReschedule = true;
+        try {
+            this.taskManager.rescheduleLocalTask("task1");
+            fail("The reschedule did not fail");
+        } catch (TaskException e) {
+            /* expected */
+        }
+        /* the task keeps its previous trigger */
+        assertTrue(this.taskManager.isLocalTaskScheduled("task1"));
+    }
+
+    public void testReschedule() throws Exception {
+        this.taskManager.registerLocalTask(this.task("task1"));
+        this.taskManager.rescheduleLocalTask("task1");
+        assertTrue(this.taskManager.isLocalTaskScheduled("task1"));
+        this.taskManager.rescheduleLocalTask("task1");
+        assertTrue(this.taskManager.isLocalTaskScheduled("task1"));
+    }
+
+    private TaskInfo task(String name) {
+        TaskInfo task = new TaskInfo();
+        task.setName(name);
+        task.setTaskClass("org.wso2.carbon.ntask.core.TestTask");
+        task.setProperties(new HashMap<String, String>());
+        task.setTriggerInfo(new TriggerInfo("0 * * * * ?"));
+        return task;
+    }
+
+    private static void setStaticField(String name, Object value) throws Exception {
+        Field field = TasksDSComponent.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    /**
+     * Passes the calls to the given scheduler, failing the reschedules when asked to.
+     */
+    private static class FailingSchedulerHandler implements InvocationHandler {
+
+        private final Scheduler scheduler;
+
+        private volatile boolean failReschedule;
+
+        private FailingSchedulerHandler(Scheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (this.failReschedule && method.getName().equals("rescheduleJob")) {
+                throw new SchedulerException("Reschedule failure");
+            }
+            try {
+                return method.invoke(this.scheduler, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
+    /**
+     * Implements the task service and its configuration with null values, which gives tasks
+     * without a location resolver.
+     */
+    private static class NullInvocationHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getReturnType() == TaskService.TaskServiceConfiguration.class) {
+                return Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                        new Class<?>[] { TaskService.TaskServiceConfiguration.class }, this);
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests the key distribution of the consistent hash ring, and that a membership change only
+ * moves the keys of the members which joined or left.
+ */
+public class ConsistentHashRingTest extends TestCase {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final int KEY_COUNT = 20000;
+
+    public void testEmptyRing() {
+        ConsistentHashRing ring = new ConsistentHashRing(new HashMap<String, Integer>(), VIRTUAL_NODES, 0);
+        assertNull(ring.getMemberId("task"));
+    }
+
+    public void testSameKeySameMember() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(this.members(5, 1), VIRTUAL_NODES, 1);
+        ConsistentHashRing ring2 = new ConsistentHashRing(this.members(5, 1), VIRTUAL_NODES, 2);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring1.getMemberId(this.key(i)), ring2.getMemberId(this.key(i)));
+        }
+    }
+
+    public void testDistribution() {
+        int memberCount = 5;
+        ConsistentHashRing ring = new ConsistentHashRing(this.members(memberCount, 1), VIRTUAL_NODES, 0);
+        Map<String, Integer> counts = this.countKeys(ring);
+        assertEquals(memberCount, counts.size());
+        int expected = KEY_COUNT / memberCount;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            assertTrue("member " + entry.getKey() + " owns " + entry.getValue() + " keys, expected about " +
+                    expected, Math.abs(entry.getValue() - expected) < expected * 0.25);
+        }
+    }
+
+    public void testWeightedDistribution() {
+        Map<String, Integer> members = this.members(3, 1);
+        members.put("heavy", 2);
+        members.put("none", 0);
+        ConsistentHashRing ring = new ConsistentHashRing(members, VIRTUAL_NODES, 0);
+        Map<String, Integer> counts = this.countKeys(ring);
+        assertFalse(counts.containsKey("none"));
+        int expected = KEY_COUNT / 5;
+        assertTrue(Math.abs(counts.get("heavy") - 2 * expected) < 2 * expected * 0.25);
+    }
+
+    public void testMemberAddedMovesOnlyItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(this.members(5, 1), VIRTUAL_NODES, 0);
+        Map<String, Integer> members = this.members(5, 1);
+        members.put("member-new", 1);
+        ConsistentHashRing after = new ConsistentHashRing(members, VIRTUAL_NODES, 1);
+        int moved = 0;
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String oldOwner = before.getMemberId(this.key(i));
+            String newOwner = after.getMemberId(this.key(i));
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("member-new", newOwner);
+                moved++;
+            }
+        }
+        /* about 1/6 of the keys move to the new member */
+        int expected = KEY_COUNT / 6;
+        assertTrue("moved " + moved + " keys, expected about " + expected,
+                Math.abs(moved - expected) < expected * 0.25);
+    }
+
+    public void testMemberRemovedMovesOnlyItsKeys() {
+        ConsistentHashRing before = new ConsistentHashRing(this.members(5, 1), VIRTUAL_NODES, 0);
+        Map<String, Integer> members = this.members(5, 1);
+        members.remove("member-2");
+        ConsistentHashRing after = new ConsistentHashRing(members, VIRTUAL_NODES, 1);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String oldOwner = before.getMemberId(this.key(i));
+            String newOwner = after.getMemberId(this.key(i));
+            if ("member-2".equals(oldOwner)) {
+                assertFalse("member-2".equals(newOwner));
+            } else {
+                assertEquals(oldOwner, newOwner);
+            }
+        }
+    }
+
+    private Map<String, Integer> members(int count, int weight) {
+        Map<String, Integer> members = new HashMap<String, Integer>();
+        for (int i = 0; i < count; i++) {
+            members.put("member-" + i, weight);
+        }
+        return members;
+    }
+
+    private String key(int i) {
+        return "-1234:task-" + i;
+    }
+
+    private Map<String, Integer> countKeys(ConsistentHashRing ring) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String memberId = ring.getMemberId(this.key(i));
+            Integer count = counts.get(memberId);
+            counts.put(memberId, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,248 @@
+/**
+ *  Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.wso2.carbon.ntask.core.impl;
+
+import junit.framework.TestCase;
+import org.h2.jdbcx.JdbcDataSource;
+import org.wso2.carbon.ntask.common.TaskException;
+import org.wso2.carbon.ntask.common.TaskException.Code;
+import org.wso2.carbon.ntask.core.TaskInfo;
+import org.wso2.carbon.ntask.core.TaskInfo.TriggerInfo;
+import org.wso2.carbon.ntask.core.TaskManagerId;
+import org.wso2.carbon.ntask.core.internal.TasksDSComponent;
+import org.wso2.carbon.ntask.core.service.TaskService;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests the JDBC task repository against an in-memory H2 database, created with the bundled
+ * H2 script.
+ */
+public class JDBCTaskRepositoryTest extends TestCase {
+
+    private static final String TASK_TYPE = "TEST_TASKS";
+
+    private static int databaseCount;
+
+    private JdbcDataSource dataSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        /* the task definitions are unmarshalled with the default constructor of TaskInfo, which
+         * reads the server configuration of the task service */
+        setTaskService((TaskService) Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                new Class<?>[] { TaskService.class }, new NullInvocationHandler()));
+        this.dataSource = new JdbcDataSource();
+        this.dataSource.setURL("jdbc:h2:mem:ntask_test_" + (databaseCount++) + ";DB_CLOSE_DELAY=-1");
+        JDBCTaskRepository.createTablesIfNotExist(this.dataSource);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Connection conn = this.dataSource.getConnection();
+        try {
+            conn.createStatement().execute("DROP ALL OBJECTS");
+        } finally {
+            conn.close();
+        }
+        setTaskService(null);
+    }
+
+    public void testAddGetDeleteTask() throws Exception {
+        JDBCTaskRepository repository = this.repository(1);
+        repository.addTask(this.task("task1", "value1"));
+        TaskInfo task = repository.getTask("task1");
+        assertEquals("task1", task.getName());
+        assertEquals("value1", task.getProperties().get("key"));
+        assertEquals("1", task.getProperties().get(TaskInfo.TENANT_ID_PROP));
+        assertEquals(1, repository.getAllTasks().size());
+
+        assertTrue(repository.deleteTask("task1"));
+        assertFalse(repository.deleteTask("task1"));
+        assertTrue(repository.getAllTasks().isEmpty());
+        try {
+            repository.getTask("task1");
+            fail("The deleted task is returned");
+        } catch (TaskException e) {
+            assertEquals(Code.NO_TASK_EXISTS, e.getCode());
+        }
+    }
+
+    public void testReplaceTask() throws Exception {
+        JDBCTaskRepository repository = this.repository(1);
+        repository.addTask(this.task("task1", "value1"));
+        repository.setTaskMetadataProp("task1", "state", "PAUSED");
+        repository.addTask(this.task("task1", "value2"));
+        assertEquals("value2", repository.getTask("task1").getProperties().get("key"));
+        assertEquals(1, repository.getAllTasks().size());
+        /* as with the registry based repository, replacing a task clears its metadata */
+        assertNull(repository.getTaskMetadataProp("task1", "state"));
+    }
+
+    public void testAddTasks() throws Exception {
+        JDBCTaskRepository repository = this.repository(1);
+        repository.addTask(this.task("task1", "value1"));
+        repository.addTasks(Arrays.asList(this.task("task1", "value2"), this.task("task2", "value3")));
+        assertEquals("value2", repository.getTask("task1").getProperties().get("key"));
+        assertEquals("value3", repository.getTask("task2").getProperties().get("key"));
+        assertEquals(2, repository.getAllTasks().size());
+    }
+
+    public void testConcurrentAddTask() throws Exception {
+        final JDBCTaskRepository repository = this.repository(1);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Exception> errors = new ArrayList<Exception>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final String value = "value" + i;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 20; j++) {
+                            repository.addTask(task("task1", value));
+                        }
+                    } catch (Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue("Errors in adding the same task concurrently: " + errors, errors.isEmpty());
+        assertEquals(1, repository.getAllTasks().size());
+    }
+
+    public void testMetadataProps() throws Exception {
+        JDBCTaskRepository repository = this.repository(1);
+        repository.addTask(this.task("task1", "value1"));
+        assertNull(repository.getTaskMetadataProp("task1", "state"));
+        repository.setTaskMetadataProp("task1", "state", "PAUSED");
+        assertEquals("PAUSED", repository.getTaskMetadataProp("task1", "state"));
+        repository.setTaskMetadataProp("task1", "state", "NORMAL");
+        assertEquals("NORMAL", repository.getTaskMetadataProp("task1", "state"));
+
+        Map<String, String> props = new HashMap<String, String>();
+        props.put("state", "FINISHED");
+        props.put("owner", "node1");
+        repository.setTaskMetadataProps("task1", props);
+        assertEquals("FINISHED", repository.getTaskMetadataProp("task1", "state"));
+        assertEquals("node1", repository.getTaskMetadataProp("task1", "owner"));
+
+        /* the metadata of another tenant's task of the same name is separate */
+        assertNull(this.repository(2).getTaskMetadataProp("task1", "state"));
+
+        repository.deleteTask("task1");
+        assertNull(repository.getTaskMetadataProp("task1", "state"));
+    }
+
+    public void testMetadataPropOfMissingTask() throws Exception {
+        try {
+            this.repository(1).setTaskMetadataProp("task1", "state", "PAUSED");
+            fail("The metadata is set on a task which does not exist");
+        } catch (TaskException e) {
+            assertEquals(Code.NO_TASK_EXISTS, e.getCode());
+        }
+    }
+
+    public void testTenantIsolation() throws Exception {
+        this.repository(1).addTask(this.task("task1", "value1"));
+        this.repository(2).addTask(this.task("task1", "value2"));
+        assertEquals("value1", this.repository(1).getTask("task1").getProperties().get("key"));
+        assertEquals("2", this.repository(2).getTask("task1").getProperties().get(TaskInfo.TENANT_ID_PROP));
+        this.repository(2).deleteTask("task1");
+        assertEquals(1, this.repository(1).getAllTasks().size());
+        assertTrue(this.repository(2).getAllTasks().isEmpty());
+    }
+
+    public void testTenantDiscovery() throws Exception {
+        this.repository(1).addTask(this.task("task1", "value1"));
+        this.repository(1).addTask(this.task("task2", "value1"));
+        this.repository(2).addTask(this.task("task1", "value1"));
+        new JDBCTaskRepository(this.dataSource, 3, "OTHER_TASKS").addTask(this.task("task1", "value1"));
+        List<TaskManagerId> tmIds = JDBCTaskRepository.getAllTenantTaskManagersForType(
+                this.dataSource, TASK_TYPE);
+        assertEquals(2, tmIds.size());
+        assertEquals(new HashSet<TaskManagerId>(Arrays.asList(new TaskManagerId(1, TASK_TYPE),
+                new TaskManagerId(2, TASK_TYPE))), new HashSet<TaskManagerId>(tmIds));
+        assertTrue(JDBCTaskRepository.getAllTenantTaskManagersForType(
+                this.dataSource, "NO_TASKS").isEmpty());
+    }
+
+    public void testCreateTablesIfExist() throws Exception {
+        this.repository(1).addTask(this.task("task1", "value1"));
+        JDBCTaskRepository.createTablesIfNotExist(this.dataSource);
+        assertEquals(1, this.repository(1).getAllTasks().size());
+    }
+
+    private JDBCTaskRepository repository(int tenantId) {
+        return new JDBCTaskRepository(this.dataSource, tenantId, TASK_TYPE);
+    }
+
+    private TaskInfo task(String name, String value) {
+        TaskInfo task = new TaskInfo();
+        task.setName(name);
+        task.setTaskClass("org.wso2.carbon.ntask.core.TestTask");
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("key", value);
+        task.setProperties(properties);
+        task.setTriggerInfo(new TriggerInfo("0 * * * * ?"));
+        return task;
+    }
+
+    private static void setTaskService(TaskService taskService) throws Exception {
+        Field field = TasksDSComponent.class.getDeclaredField("taskService");
+        field.setAccessible(true);
+        field.set(null, taskService);
+    }
+
+    /**
+     * Implements the task service and its configuration with null values, which gives tasks
+     * without a location resolver.
+     */
+    private static class NullInvocationHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getReturnType() == TaskService.TaskServiceConfiguration.class) {
+                return Proxy.newProxyInstance(this.getClass().getClassLoader(),
+                        new Class<?>[] { TaskService.TaskServiceConfiguration.class }, this);
+            }
+            return null;
+        }
+
+    }
+
+}